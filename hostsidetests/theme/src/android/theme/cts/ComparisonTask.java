@@ -22,9 +22,20 @@ import com.android.tradefed.device.ITestDevice;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.File;
 import java.lang.String;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.imageio.ImageIO;
 
@@ -37,17 +48,31 @@ public class ComparisonTask implements Callable<Boolean> {
 
     private static final int IMAGE_THRESHOLD = 2;
 
+    /** Images with fewer pixels are compared on the calling thread. */
+    private static final int PARALLEL_MIN_PIXELS = 256 * 1024;
+
+    /** Bands with fewer rows are not split any further. */
+    private static final int BAND_MIN_ROWS = 16;
+
+    /** Compares the bands of large images, shared by all the comparisons. */
+    private static final ForkJoinPool sPool =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     private static final String STORAGE_PATH_DEVICE = "/sdcard/cts-holo-assets/%s.png";
 
     private final ITestDevice mDevice;
 
-    private final File mReference;
+    private final ReferenceImages mReferences;
 
     private final String mName;
 
-    public ComparisonTask(ITestDevice device, File reference, String name) {
+    /**
+     * @param references the reference images, which must contain the image named
+     *        {@code name + ".png"}
+     */
+    public ComparisonTask(ITestDevice device, ReferenceImages references, String name) {
         mDevice = device;
-        mReference = reference;
+        mReferences = references;
         mName = name;
     }
 
@@ -64,7 +89,7 @@ public class ComparisonTask implements Callable<Boolean> {
             }
             mDevice.pullFile(remoteGenerated, generated);
 
-            final BufferedImage ref = ImageIO.read(mReference);
+            final ReferenceImages.Image ref = mReferences.getImage(mName + ".png");
             final BufferedImage gen = ImageIO.read(generated);
             if (compare(ref, gen, IMAGE_THRESHOLD)) {
                 success = true;
@@ -85,73 +110,247 @@ public class ComparisonTask implements Callable<Boolean> {
         return success;
     }
 
-    private static boolean compare(BufferedImage reference, BufferedImage generated, int threshold) {
+    /**
+     * Returns whether the images have the same size and no channel of any pixel differs by
+     * more than the threshold. Logs how much they differ if they do.
+     */
+    private boolean compare(ReferenceImages.Image reference, BufferedImage generated,
+            int threshold) {
         final int w = generated.getWidth();
         final int h = generated.getHeight();
-        if (w != reference.getWidth() || h != reference.getHeight()) {
+        if (w != reference.mWidth || h != reference.mHeight) {
+            Log.logAndDisplay(LogLevel.INFO, TAG, String.format(
+                    "%s: generated image is %dx%d, reference is %dx%d", mName, w, h,
+                    reference.mWidth, reference.mHeight));
             return false;
         }
 
-        for (int i = 0; i < w; i++) {
-            for (int j = 0; j < h; j++) {
-                final int p1 = reference.getRGB(i, j);
-                final int p2 = generated.getRGB(i, j);
-                final int dr = (p1 & 0x000000FF) - (p2 & 0x000000FF);
-                final int dg = ((p1 & 0x0000FF00) - (p2 & 0x0000FF00)) >> 8;
-                final int db = ((p1 & 0x00FF0000) - (p2 & 0x00FF0000)) >> 16;
-                final int da = ((p1 & 0xFF000000) - (p2 & 0xFF000000)) >> 24;
-
-                if (Math.abs(db) > threshold ||
-                        Math.abs(dg) > threshold ||
-                        Math.abs(dr) > threshold ||
-                        Math.abs(da) > threshold) {
-                    return false;
+        final int[] ref = reference.mPixels;
+        final int[] gen = getPixels(generated);
+        if (countDifferences(ref, gen, w, h, threshold, true).mDifferingPixels == 0) {
+            return true;
+        }
+        final Differences differences = countDifferences(ref, gen, w, h, threshold, false);
+        Log.logAndDisplay(LogLevel.INFO, TAG, String.format(
+                "%s: %d of %d pixels differ by more than %d, max channel delta %d", mName,
+                differences.mDifferingPixels, w * h, threshold, differences.mMaxDelta));
+        return false;
+    }
+
+    /**
+     * Counts the pixels of which a channel differs by more than the threshold. Large images
+     * are split into bands of rows which are compared in parallel.
+     *
+     * @param stopAtFirst whether to stop at the first differing pixel, in which case the count
+     *        only tells whether there is one
+     */
+    private static Differences countDifferences(int[] reference, int[] generated, int width,
+            int height, int threshold, boolean stopAtFirst) {
+        final Differences differences = new Differences(reference, generated, width, 0, height,
+                threshold, stopAtFirst ? new AtomicBoolean() : null);
+        if ((long) width * height < PARALLEL_MIN_PIXELS) {
+            differences.compute();
+        } else {
+            sPool.invoke(differences);
+        }
+        return differences;
+    }
+
+    /**
+     * Returns the largest difference of the channels of two ARGB pixels. The alpha difference
+     * is taken modulo 256, as it always has been, so that verdicts stay the same.
+     */
+    private static int maxChannelDelta(int p1, int p2) {
+        final int db = Math.abs((p1 & 0x000000FF) - (p2 & 0x000000FF));
+        final int dg = Math.abs(((p1 & 0x0000FF00) - (p2 & 0x0000FF00)) >> 8);
+        final int dr = Math.abs(((p1 & 0x00FF0000) - (p2 & 0x00FF0000)) >> 16);
+        final int da = Math.abs(((p1 & 0xFF000000) - (p2 & 0xFF000000)) >> 24);
+        return Math.max(Math.max(db, dg), Math.max(dr, da));
+    }
+
+    /**
+     * Compares a band of rows of two images, splitting it further if it is large.
+     */
+    private static final class Differences extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] mReference;
+        private final int[] mGenerated;
+        private final int mWidth;
+        private final int mStartRow;
+        private final int mEndRow;
+        private final int mThreshold;
+        /** Set once a difference was found, if the comparison stops at the first one. */
+        private final AtomicBoolean mFound;
+
+        int mDifferingPixels;
+        int mMaxDelta;
+
+        Differences(int[] reference, int[] generated, int width, int startRow, int endRow,
+                int threshold, AtomicBoolean found) {
+            mReference = reference;
+            mGenerated = generated;
+            mWidth = width;
+            mStartRow = startRow;
+            mEndRow = endRow;
+            mThreshold = threshold;
+            mFound = found;
+        }
+
+        @Override
+        protected void compute() {
+            final int rows = mEndRow - mStartRow;
+            if (rows > BAND_MIN_ROWS && (long) rows * mWidth >= PARALLEL_MIN_PIXELS / 2
+                    && getPool() != null) {
+                final int middle = mStartRow + rows / 2;
+                final Differences top = new Differences(mReference, mGenerated, mWidth,
+                        mStartRow, middle, mThreshold, mFound);
+                final Differences bottom = new Differences(mReference, mGenerated, mWidth,
+                        middle, mEndRow, mThreshold, mFound);
+                invokeAll(top, bottom);
+                mDifferingPixels = top.mDifferingPixels + bottom.mDifferingPixels;
+                mMaxDelta = Math.max(top.mMaxDelta, bottom.mMaxDelta);
+                return;
+            }
+            for (int row = mStartRow; row < mEndRow; row++) {
+                if (mFound != null && mFound.get()) {
+                    return;
                 }
+                final int end = (row + 1) * mWidth;
+                for (int i = row * mWidth; i < end; i++) {
+                    final int p1 = mReference[i];
+                    final int p2 = mGenerated[i];
+                    if (p1 == p2) {
+                        continue;
+                    }
+                    final int delta = maxChannelDelta(p1, p2);
+                    if (delta > mMaxDelta) {
+                        mMaxDelta = delta;
+                    }
+                    if (delta > mThreshold) {
+                        mDifferingPixels++;
+                        if (mFound != null) {
+                            mFound.set(true);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the ARGB pixels of the image in row-major order, as {@link BufferedImage#getRGB}
+     * would. The rasters of the image types ImageIO reads PNGs into are read directly.
+     */
+    static int[] getPixels(BufferedImage image) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final Raster raster = image.getRaster();
+        final DataBuffer buffer = raster.getDataBuffer();
+        final boolean packed = raster.getMinX() == 0 && raster.getMinY() == 0
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && buffer.getNumBanks() == 1 && buffer.getOffset() == 0;
+        final int type = image.getType();
+        if (packed && (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                && isPacked(raster, 1, w)) {
+            final int[] data = ((DataBufferInt) buffer).getData();
+            final int[] pixels = Arrays.copyOf(data, w * h);
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] |= 0xFF000000;
+                }
+            }
+            return pixels;
+        } else if (packed && type == BufferedImage.TYPE_4BYTE_ABGR && isPacked(raster, 4, w)) {
+            final byte[] data = ((DataBufferByte) buffer).getData();
+            final int[] pixels = new int[w * h];
+            for (int i = 0, j = 0; i < pixels.length; i++, j += 4) {
+                pixels[i] = (data[j] & 0xFF) << 24 | (data[j + 3] & 0xFF) << 16
+                        | (data[j + 2] & 0xFF) << 8 | (data[j + 1] & 0xFF);
+            }
+            return pixels;
+        } else if (packed && type == BufferedImage.TYPE_3BYTE_BGR && isPacked(raster, 3, w)) {
+            final byte[] data = ((DataBufferByte) buffer).getData();
+            final int[] pixels = new int[w * h];
+            for (int i = 0, j = 0; i < pixels.length; i++, j += 3) {
+                pixels[i] = 0xFF000000 | (data[j + 2] & 0xFF) << 16
+                        | (data[j + 1] & 0xFF) << 8 | (data[j] & 0xFF);
+            }
+            return pixels;
+        }
+        return image.getRGB(0, 0, w, h, null, 0, w);
+    }
+
+    /**
+     * Returns whether the rows of the raster follow each other without gaps, with the given
+     * number of data elements per pixel.
+     */
+    private static boolean isPacked(Raster raster, int elementsPerPixel, int width) {
+        final SampleModel model = raster.getSampleModel();
+        if (elementsPerPixel == 1) {
+            return model instanceof SinglePixelPackedSampleModel
+                    && ((SinglePixelPackedSampleModel) model).getScanlineStride() == width;
+        }
+        if (!(model instanceof PixelInterleavedSampleModel)) {
+            return false;
+        }
+        final PixelInterleavedSampleModel interleaved = (PixelInterleavedSampleModel) model;
+        final int[] offsets = interleaved.getBandOffsets();
+        for (int band = 0; band < offsets.length; band++) {
+            // ABGR and BGR rasters store their bands in reverse order.
+            if (offsets[band] != elementsPerPixel - 1 - band) {
+                return false;
             }
         }
-        return true;
+        return interleaved.getPixelStride() == elementsPerPixel
+                && interleaved.getScanlineStride() == width * elementsPerPixel;
     }
 
-    private static void createDiff(BufferedImage image1, BufferedImage image2, File out)
+    private static void createDiff(ReferenceImages.Image image1, BufferedImage image2, File out)
             throws Exception {
-        final int w1 = image1.getWidth();
-        final int h1 = image1.getHeight();
+        final int w1 = image1.mWidth;
+        final int h1 = image1.mHeight;
         final int w2 = image2.getWidth();
         final int h2 = image2.getHeight();
         final int width = Math.max(w1, w2);
         final int height = Math.max(h1, h2);
+        final int[] pixels1 = image1.mPixels;
+        final int[] pixels2 = getPixels(image2);
         // The diff will contain image1, image2 and the difference between the two.
-        final BufferedImage diff = new BufferedImage(width * 3, height, BufferedImage.TYPE_INT_ARGB);
+        final int[] diff = new int[width * 3 * height];
 
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
+        for (int j = 0; j < height; j++) {
+            final int row = j * width * 3;
+            for (int i = 0; i < width; i++) {
                 final boolean inBounds1 = i < w1 && j < h1;
                 final boolean inBounds2 = i < w2 && j < h2;
                 int color1 = Color.WHITE.getRGB();
                 int color2 = Color.WHITE.getRGB();
                 int color3;
                 if (inBounds1 && inBounds2) {
-                    color1 = image1.getRGB(i, j);
-                    color2 = image2.getRGB(i, j);
+                    color1 = pixels1[j * w1 + i];
+                    color2 = pixels2[j * w2 + i];
                     color3 = color1 == color2 ? color1 : Color.RED.getRGB();
                 } else if (inBounds1 && !inBounds2) {
-                    color1 = image1.getRGB(i, j);
+                    color1 = pixels1[j * w1 + i];
                     color3 = Color.BLUE.getRGB();
                 } else if (!inBounds1 && inBounds2) {
-                    color2 = image2.getRGB(i, j);
+                    color2 = pixels2[j * w2 + i];
                     color3 = Color.GREEN.getRGB();
                 } else {
                     color3 = Color.MAGENTA.getRGB();
                 }
-                int x = i;
-                diff.setRGB(x, j, color1);
-                x += width;
-                diff.setRGB(x, j, color2);
-                x += width;
-                diff.setRGB(x, j, color3);
+                diff[row + i] = color1;
+                diff[row + width + i] = color2;
+                diff[row + 2 * width + i] = color3;
             }
         }
-        ImageIO.write(diff, "png", out);
+        final BufferedImage image =
+                new BufferedImage(width * 3, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width * 3, height, diff, 0, width * 3);
+        ImageIO.write(image, "png", out);
     }
 
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.theme.cts;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The reference images of a density bucket.
+ *
+ * The zip resource of a bucket is read once per process and its PNGs are kept in memory, so
+ * all tests and devices with that density share them without extracting any files. Decoded
+ * images are kept in a cache which is shared by all buckets and bounded by the size of their
+ * pixels.
+ */
+public class ReferenceImages {
+
+    /** The maximum total size of the pixels of the decoded images which are kept. */
+    private static final long MAX_DECODED_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * A decoded reference image.
+     */
+    public static class Image {
+        final int mWidth;
+        final int mHeight;
+        /** The ARGB pixels in row-major order. */
+        final int[] mPixels;
+
+        Image(int width, int height, int[] pixels) {
+            mWidth = width;
+            mHeight = height;
+            mPixels = pixels;
+        }
+    }
+
+    /** The reference images by the resource they were read from. */
+    private static final Map<String, ReferenceImages> sReferences =
+            new HashMap<String, ReferenceImages>();
+
+    /** The decoded images by resource and image name, least recently used first. */
+    private static final LinkedHashMap<String, Image> sDecoded =
+            new LinkedHashMap<String, Image>(16, 0.75f, true);
+
+    private static long sDecodedBytes;
+
+    private final String mResource;
+
+    /** The PNG files by name. */
+    private final Map<String, byte[]> mImages;
+
+    private ReferenceImages(String resource, Map<String, byte[]> images) {
+        mResource = resource;
+        mImages = images;
+    }
+
+    /**
+     * Returns the reference images in the given zip resource, reading them the first time.
+     * A missing resource has no images.
+     */
+    public static synchronized ReferenceImages get(Class<?> owner, String resource)
+            throws IOException {
+        ReferenceImages references = sReferences.get(resource);
+        if (references == null) {
+            references = new ReferenceImages(resource, readZip(owner, resource));
+            sReferences.put(resource, references);
+        }
+        return references;
+    }
+
+    private static Map<String, byte[]> readZip(Class<?> owner, String resource)
+            throws IOException {
+        final InputStream zipStream = owner.getResourceAsStream(resource);
+        if (zipStream == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, byte[]> images = new HashMap<String, byte[]>();
+        final ZipInputStream in = new ZipInputStream(zipStream);
+        try {
+            ZipEntry ze;
+            final byte[] buffer = new byte[64 * 1024];
+            while ((ze = in.getNextEntry()) != null) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                        ze.getSize() > 0 ? (int) ze.getSize() : buffer.length);
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                images.put(ze.getName(), out.toByteArray());
+            }
+        } finally {
+            in.close();
+        }
+        return images;
+    }
+
+    public boolean isEmpty() {
+        return mImages.isEmpty();
+    }
+
+    public boolean contains(String name) {
+        return mImages.containsKey(name);
+    }
+
+    /**
+     * Returns the decoded image with the given name, or null if there is none.
+     */
+    public Image getImage(String name) throws IOException {
+        final byte[] png = mImages.get(name);
+        if (png == null) {
+            return null;
+        }
+        final String key = mResource + ":" + name;
+        synchronized (ReferenceImages.class) {
+            final Image image = sDecoded.get(key);
+            if (image != null) {
+                return image;
+            }
+        }
+        // Decode outside of the lock, so that other images can be decoded meanwhile.
+        final BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+        if (decoded == null) {
+            throw new IOException("Cannot decode reference image " + key);
+        }
+        final Image image = new Image(decoded.getWidth(), decoded.getHeight(),
+                ComparisonTask.getPixels(decoded));
+        synchronized (ReferenceImages.class) {
+            final Image previous = sDecoded.put(key, image);
+            if (previous != null) {
+                sDecodedBytes -= 4L * previous.mPixels.length;
+            }
+            sDecodedBytes += 4L * image.mPixels.length;
+            final Iterator<Image> eldest = sDecoded.values().iterator();
+            while (sDecodedBytes > MAX_DECODED_BYTES && eldest.hasNext()) {
+                final Image evicted = eldest.next();
+                if (evicted == image) {
+                    break;
+                }
+                sDecodedBytes -= 4L * evicted.mPixels.length;
+                eldest.remove();
+            }
+        }
+        return image;
+    }
+}
@@ -30,11 +30,8 @@ import com.android.tradefed.testtype.IAbiReceiver;
 import com.android.tradefed.testtype.IBuildReceiver;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.lang.String;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Scanner;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
@@ -42,8 +39,6 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 /**
  * Test to check the Holo theme has not been changed.
@@ -172,7 +167,7 @@ public class ThemeHostTest extends DeviceTestCase implements IAbiReceiver, IBuil
 
     private final int NUM_LAYOUTS = LAYOUTS.length;
 
-    private final HashMap<String, File> mReferences = new HashMap<String, File>();
+    private ReferenceImages mReferences;
 
     /** The ABI to use. */
     private IAbi mAbi;
@@ -225,39 +220,17 @@ public class ThemeHostTest extends DeviceTestCase implements IAbiReceiver, IBuil
         Log.logAndDisplay(LogLevel.INFO, TAG, "Loading resources from " + zip);
 
 
-        final InputStream zipStream = this.getClass().getResourceAsStream(zip);
-        if (zipStream != null) {
-            final ZipInputStream in = new ZipInputStream(zipStream);
-            try {
-                ZipEntry ze;
-                final byte[] buffer = new byte[1024];
-                while ((ze = in.getNextEntry()) != null) {
-                    final String name = ze.getName();
-                    final File tmp = File.createTempFile("ref_" + name, ".png");
-                    final FileOutputStream out = new FileOutputStream(tmp);
-                    int count;
-                    while ((count = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, count);
-                    }
-                    out.flush();
-                    out.close();
-                    mReferences.put(name, tmp);
-                }
-            } finally {
-                in.close();
-            }
-        }
+        // The images are only read from the zip by the first test with this density.
+        mReferences = ReferenceImages.get(getClass(), zip);
 
-        mExecutionService = Executors.newFixedThreadPool(2);// 2 worker threads
+        // One worker thread per core, but at least two to overlap pulling and comparing images.
+        mExecutionService = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
         mCompletionService = new ExecutorCompletionService<Boolean>(mExecutionService);
     }
 
     @Override
     protected void tearDown() throws Exception {
-        // Delete the temp files
-        for (File ref : mReferences.values()) {
-            ref.delete();
-        }
         mExecutionService.shutdown();
         // Remove the APK.
         mDevice.uninstallPackage(PACKAGE);
@@ -285,13 +258,12 @@ public class ThemeHostTest extends DeviceTestCase implements IAbiReceiver, IBuil
             for (int j = 0; j < NUM_LAYOUTS; j++) {
                 final String name = String.format("%s_%s", themeName, LAYOUTS[j]);
                 if (runCapture(i, j, name)) {
-                    final File ref = mReferences.get(name + ".png");
-                    if (!ref.exists()) {
+                    if (!mReferences.contains(name + ".png")) {
                         Log.logAndDisplay(LogLevel.INFO, TAG,
                                 "Skipping theme test due to missing reference for reference image " + name);
                         continue;
                     }
-                    mCompletionService.submit(new ComparisonTask(mDevice, ref, name));
+                    mCompletionService.submit(new ComparisonTask(mDevice, mReferences, name));
                     numTasks++;
                 } else {
                     Log.logAndDisplay(LogLevel.ERROR, TAG, "Capture failed: " + name);
@@ -17,14 +17,27 @@
 package android.cts.util;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A poor man's implementation of the readelf command. This program is designed
  * to parse ELF (Executable and Linkable Format) files.
+ * <p>
+ * The file is memory-mapped and only the headers are parsed up front. A symbol
+ * table is indexed the first time one of its symbols is looked up.
  */
 public class ReadElf implements AutoCloseable {
     /** The magic values for the ELF identification. */
@@ -122,10 +135,163 @@ public class ReadElf implements AutoCloseable {
         }
     }
 
+
+    /**
+     * Receives the ELF files found by
+     * {@link ReadElf#scanDirectory(File, FileFilter, Visitor, int)}.
+     * Implementations must be thread-safe if more than one thread is used.
+     */
+    public interface Visitor {
+        /**
+         * Called once for every ELF file. The file is closed when this
+         * returns.
+         */
+        void visit(File file, ReadElf elf) throws IOException;
+    }
+
+    /**
+     * The symbols of one symbol table, looked up by name through an open
+     * addressing hash table of symbol indices. The names stay in the mapped
+     * string table; only the symbols which are looked up become objects.
+     */
+    private final class SymbolTable {
+        private final long mTableOffset;
+        private final long mTableSize;
+        private final long mStrOffset;
+        private final long mStrSize;
+        private final int mEntrySize;
+
+        /** Symbol index + 1 per slot, 0 for an empty slot. */
+        private int[] mSlots;
+        /** Name hash per slot. */
+        private int[] mHashes;
+
+        SymbolTable(long tableOffset, long tableSize, long strOffset, long strSize) {
+            mTableOffset = tableOffset;
+            mTableSize = tableSize;
+            mStrOffset = strOffset;
+            mStrSize = strSize;
+            mEntrySize = (mAddrSize == 8) ? 24 : 16;
+        }
+
+        boolean isIndexed() {
+            return mSlots != null;
+        }
+
+        Symbol get(String name) {
+            if (mSlots == null) {
+                index();
+            }
+            byte[] bytes = name.getBytes();
+            int hash = hash(bytes);
+            int mask = mSlots.length - 1;
+            for (int slot = hash & mask; mSlots[slot] != 0; slot = (slot + 1) & mask) {
+                if (mHashes[slot] == hash) {
+                    int symbol = mSlots[slot] - 1;
+                    if (nameEquals(symbol, bytes)) {
+                        return new Symbol(name, getStInfo(symbol));
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void index() {
+            long available = Math.max(0, mBuffer.limit() - mTableOffset);
+            int count = (int) (Math.min(mTableSize, available) / mEntrySize);
+            int capacity = Integer.highestOneBit(Math.max(count, 8) * 2 - 1) << 1;
+            int[] slots = new int[capacity];
+            int[] hashes = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < count; ++i) {
+                int start = getNameStart(i);
+                if (start < 0) {
+                    continue;
+                }
+                int end = findNul(start, mStrOffset + mStrSize);
+                if (end < 0) {
+                    continue;
+                }
+                int hash = hash(start, end);
+                int slot = hash & mask;
+                for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+                    // A later symbol of the same name replaces the earlier one.
+                    if (hashes[slot] == hash && nameEquals(slots[slot] - 1, start, end)) {
+                        break;
+                    }
+                }
+                slots[slot] = i + 1;
+                hashes[slot] = hash;
+            }
+            mHashes = hashes;
+            mSlots = slots;
+        }
+
+        /** Returns the position of the name of a symbol, or -1 if it has none. */
+        private int getNameStart(int symbol) {
+            long st_name = readWord(mTableOffset + (long) symbol * mEntrySize);
+            if (st_name == 0 || mStrOffset == 0 || st_name >= mStrSize) {
+                return -1;
+            }
+            return position(mStrOffset + st_name);
+        }
+
+        private int getStInfo(int symbol) {
+            long entry = mTableOffset + (long) symbol * mEntrySize;
+            // st_info follows st_name in Elf64_Sym, st_size in Elf32_Sym.
+            return mBuffer.get(position(entry + ((mAddrSize == 8) ? 4 : 12))) & 0xff;
+        }
+
+        private boolean nameEquals(int symbol, byte[] bytes) {
+            int start = getNameStart(symbol);
+            long limit = Math.min(mStrOffset + mStrSize, mBuffer.limit());
+            if (start + bytes.length >= limit) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; ++i) {
+                if (mBuffer.get(start + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return mBuffer.get(start + bytes.length) == 0;
+        }
+
+        private boolean nameEquals(int symbol, int start, int end) {
+            int otherStart = getNameStart(symbol);
+            int length = end - start;
+            for (int i = 0; i <= length; ++i) {
+                if (mBuffer.get(otherStart + i) != mBuffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int hash(int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; ++i) {
+                hash = 31 * hash + mBuffer.get(i);
+            }
+            return spread(hash);
+        }
+
+        private int hash(byte[] bytes) {
+            int hash = 0;
+            for (byte b : bytes) {
+                hash = 31 * hash + b;
+            }
+            return spread(hash);
+        }
+
+        private int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
     private final String mPath;
-    private final RandomAccessFile mFile;
-    private final byte[] mBuffer = new byte[512];
-    private int mEndian;
+    /** The mapped file, which stays valid after the file is closed. */
+    private final ByteBuffer mBuffer;
+    private volatile boolean mClosed;
     private boolean mIsDynamic;
     private boolean mIsPIE;
     private int mType;
@@ -161,16 +327,105 @@ public class ReadElf implements AutoCloseable {
     /** Dynamic String Table size */
     private long mDynStrSize;
 
-    /** Symbol Table symbol names */
-    private Map<String, Symbol> mSymbols;
+    /** Symbol Table, indexed on first use */
+    private SymbolTable mSymbols;
 
-    /** Dynamic Symbol Table symbol names */
-    private Map<String, Symbol> mDynamicSymbols;
+    /** Dynamic Symbol Table, indexed on first use */
+    private SymbolTable mDynamicSymbols;
 
     public static ReadElf read(File file) throws IOException {
         return new ReadElf(file);
     }
 
+    /**
+     * Reads every ELF file under a directory and passes it to a visitor.
+     * Files which are not ELF files are skipped, as are directories which
+     * are symbolic links.
+     *
+     * @param dir the directory to scan recursively
+     * @param filter the files to read, or null to read all files
+     * @param visitor receives every ELF file
+     * @param numThreads the number of threads reading files, 1 to read them
+     *        on the calling thread
+     * @throws IOException if an ELF file is invalid or cannot be read, or the
+     *         visitor throws one
+     */
+    public static void scanDirectory(File dir, FileFilter filter, final Visitor visitor,
+            int numThreads) throws IOException {
+        List<File> files = new ArrayList<File>();
+        listFiles(dir.getCanonicalFile(), filter, files);
+
+        if (numThreads <= 1) {
+            for (File file : files) {
+                visitFile(file, visitor);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>(files.size());
+            for (final File file : files) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        visitFile(file, visitor);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted scanning " + dir);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Failed to scan " + dir, cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void listFiles(File dir, FileFilter filter, List<File> result)
+            throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                if (f.getAbsolutePath().equals(f.getCanonicalPath())) {
+                    listFiles(f, filter, result);
+                }
+            } else if (f.isFile() && (filter == null || filter.accept(f))) {
+                result.add(f);
+            }
+        }
+    }
+
+    private static void visitFile(File file, Visitor visitor) throws IOException {
+        ReadElf elf;
+        try {
+            elf = read(file);
+        } catch (IllegalArgumentException notElf) {
+            return;
+        }
+        try {
+            visitor.visit(file, elf);
+        } finally {
+            elf.close();
+        }
+    }
+
     public static void main(String[] args) throws IOException {
         for (String arg : args) {
             ReadElf re = new ReadElf(new File(arg));
@@ -194,42 +449,54 @@ public class ReadElf implements AutoCloseable {
 
     private ReadElf(File file) throws IOException {
         mPath = file.getPath();
-        mFile = new RandomAccessFile(file, "r");
 
-        if (mFile.length() < EI_NIDENT) {
-            throw new IllegalArgumentException("Too small to be an ELF file: " + file);
-        }
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size < EI_NIDENT) {
+                throw new IllegalArgumentException("Too small to be an ELF file: " + file);
+            }
 
-        readHeader();
-    }
+            // Check the identification before mapping, most files in a scan aren't ELF files.
+            ByteBuffer ident = ByteBuffer.allocate(EI_NIDENT);
+            while (ident.hasRemaining()) {
+                if (channel.read(ident, ident.position()) < 0) {
+                    throw new IllegalArgumentException("Too small to be an ELF file: " + file);
+                }
+            }
+            for (int i = 0; i < ELFMAG.length; ++i) {
+                if (ident.get(i) != ELFMAG[i]) {
+                    throw new IllegalArgumentException("Invalid ELF file: " + mPath);
+                }
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Too large ELF file: " + mPath);
+            }
+
+            mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            in.close();
+        }
 
-    @Override
-    public void close() {
         try {
-            mFile.close();
-        } catch (IOException ignored) {
+            readHeader();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated ELF file: " + mPath);
         }
     }
 
+    /**
+     * Closes this file. Symbol tables which have not been indexed yet can no
+     * longer be looked up.
+     */
     @Override
-    protected void finalize() throws Throwable {
-        try {
-            close();
-        } finally {
-            super.finalize();
-        }
+    public void close() {
+        mClosed = true;
     }
 
     private void readHeader() throws IOException {
-        mFile.seek(0);
-        mFile.readFully(mBuffer, 0, EI_NIDENT);
-
-        if (mBuffer[0] != ELFMAG[0] || mBuffer[1] != ELFMAG[1] ||
-                mBuffer[2] != ELFMAG[2] || mBuffer[3] != ELFMAG[3]) {
-            throw new IllegalArgumentException("Invalid ELF file: " + mPath);
-        }
-
-        int elfClass = mBuffer[EI_CLASS];
+        int elfClass = mBuffer.get(EI_CLASS);
         if (elfClass == ELFCLASS32) {
             mAddrSize = 4;
         } else if (elfClass == ELFCLASS64) {
@@ -238,17 +505,18 @@ public class ReadElf implements AutoCloseable {
             throw new IOException("Invalid ELF EI_CLASS: " + elfClass + ": " + mPath);
         }
 
-        mEndian = mBuffer[EI_DATA];
-        if (mEndian == ELFDATA2LSB) {
-        } else if (mEndian == ELFDATA2MSB) {
-            throw new IOException("Unsupported ELFDATA2MSB file: " + mPath);
+        int endian = mBuffer.get(EI_DATA);
+        if (endian == ELFDATA2LSB) {
+            mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (endian == ELFDATA2MSB) {
+            mBuffer.order(ByteOrder.BIG_ENDIAN);
         } else {
-            throw new IOException("Invalid ELF EI_DATA: " + mEndian + ": " + mPath);
+            throw new IOException("Invalid ELF EI_DATA: " + endian + ": " + mPath);
         }
 
-        mType = readHalf();
+        mType = readHalf(EI_NIDENT);
 
-        int e_machine = readHalf();
+        int e_machine = readHalf(EI_NIDENT + 2);
         if (e_machine != EM_386 && e_machine != EM_X86_64 &&
                 e_machine != EM_AARCH64 && e_machine != EM_ARM &&
                 e_machine != EM_MIPS &&
@@ -266,45 +534,40 @@ public class ReadElf implements AutoCloseable {
                     e_machine + "/" + elfClass + ": " + mPath);
         }
 
-        long e_version = readWord();
+        long e_version = readWord(EI_NIDENT + 4);
         if (e_version != EV_CURRENT) {
             throw new IOException("Invalid e_version: " + e_version + ": " + mPath);
         }
 
-        long e_entry = readAddr();
+        // e_entry follows e_version, then the header offsets.
+        long pos = EI_NIDENT + 8 + mAddrSize;
+        long ph_off = readOff(pos);
+        long sh_off = readOff(pos + mAddrSize);
 
-        long ph_off = readOff();
-        long sh_off = readOff();
-
-        long e_flags = readWord();
-        int e_ehsize = readHalf();
-        int e_phentsize = readHalf();
-        int e_phnum = readHalf();
-        int e_shentsize = readHalf();
-        int e_shnum = readHalf();
-        int e_shstrndx = readHalf();
+        // e_flags and e_ehsize follow the header offsets.
+        pos += 2 * mAddrSize + 6;
+        int e_phentsize = readHalf(pos);
+        int e_phnum = readHalf(pos + 2);
+        int e_shentsize = readHalf(pos + 4);
+        int e_shnum = readHalf(pos + 6);
+        int e_shstrndx = readHalf(pos + 8);
 
         readSectionHeaders(sh_off, e_shnum, e_shentsize, e_shstrndx);
         readProgramHeaders(ph_off, e_phnum, e_phentsize);
     }
 
-    private void readSectionHeaders(long sh_off, int e_shnum, int e_shentsize, int e_shstrndx)
-            throws IOException {
+    private void readSectionHeaders(long sh_off, int e_shnum, int e_shentsize, int e_shstrndx) {
+        // sh_name, sh_type and sh_flags precede sh_addr, sh_offset and sh_size.
+        final long offsetOfOffset = 8 + 2 * mAddrSize;
+        final long offsetOfSize = 8 + 3 * mAddrSize;
+
         // Read the Section Header String Table offset first.
         {
-            mFile.seek(sh_off + e_shstrndx * e_shentsize);
-
-            long sh_name = readWord();
-            long sh_type = readWord();
-            long sh_flags = readX(mAddrSize);
-            long sh_addr = readAddr();
-            long sh_offset = readOff();
-            long sh_size = readX(mAddrSize);
-            // ...
-
+            long header = sh_off + (long) e_shstrndx * e_shentsize;
+            long sh_type = readWord(header + 4);
             if (sh_type == SHT_STRTAB) {
-                mShStrTabOffset = sh_offset;
-                mShStrTabSize = sh_size;
+                mShStrTabOffset = readOff(header + offsetOfOffset);
+                mShStrTabSize = readX(header + offsetOfSize);
             }
         }
 
@@ -314,32 +577,27 @@ public class ReadElf implements AutoCloseable {
                 continue;
             }
 
-            mFile.seek(sh_off + i * e_shentsize);
-
-            long sh_name = readWord();
-            long sh_type = readWord();
-            long sh_flags = readX(mAddrSize);
-            long sh_addr = readAddr();
-            long sh_offset = readOff();
-            long sh_size = readX(mAddrSize);
+            long header = sh_off + (long) i * e_shentsize;
+            long sh_name = readWord(header);
+            long sh_type = readWord(header + 4);
 
             if (sh_type == SHT_SYMTAB || sh_type == SHT_DYNSYM) {
                 final String symTabName = readShStrTabEntry(sh_name);
                 if (".symtab".equals(symTabName)) {
-                    mSymTabOffset = sh_offset;
-                    mSymTabSize = sh_size;
+                    mSymTabOffset = readOff(header + offsetOfOffset);
+                    mSymTabSize = readX(header + offsetOfSize);
                 } else if (".dynsym".equals(symTabName)) {
-                    mDynSymOffset = sh_offset;
-                    mDynSymSize = sh_size;
+                    mDynSymOffset = readOff(header + offsetOfOffset);
+                    mDynSymSize = readX(header + offsetOfSize);
                 }
             } else if (sh_type == SHT_STRTAB) {
                 final String strTabName = readShStrTabEntry(sh_name);
                 if (".strtab".equals(strTabName)) {
-                    mStrTabOffset = sh_offset;
-                    mStrTabSize = sh_size;
+                    mStrTabOffset = readOff(header + offsetOfOffset);
+                    mStrTabSize = readX(header + offsetOfSize);
                 } else if (".dynstr".equals(strTabName)) {
-                    mDynStrOffset = sh_offset;
-                    mDynStrSize = sh_size;
+                    mDynStrOffset = readOff(header + offsetOfOffset);
+                    mDynStrSize = readX(header + offsetOfSize);
                 }
             } else if (sh_type == SHT_DYNAMIC) {
                 mIsDynamic = true;
@@ -347,20 +605,15 @@ public class ReadElf implements AutoCloseable {
         }
     }
 
-    private void readProgramHeaders(long ph_off, int e_phnum, int e_phentsize) throws IOException {
-        for (int i = 0; i < e_phnum; ++i) {
-            mFile.seek(ph_off + i * e_phentsize);
+    private void readProgramHeaders(long ph_off, int e_phnum, int e_phentsize) {
+        // In Elf64_phdr p_flags precedes p_offset; in Elf32_phdr p_flags is at the end.
+        final long offsetOfVaddr = (mAddrSize == 8) ? 16 : 8;
 
-            long p_type = readWord();
+        for (int i = 0; i < e_phnum; ++i) {
+            long header = ph_off + (long) i * e_phentsize;
+            long p_type = readWord(header);
             if (p_type == PT_LOAD) {
-                if (mAddrSize == 8) {
-                    // Only in Elf64_phdr; in Elf32_phdr p_flags is at the end.
-                    long p_flags = readWord();
-                }
-                long p_offset = readOff();
-                long p_vaddr = readAddr();
-                // ...
-
+                long p_vaddr = readAddr(header + offsetOfVaddr);
                 if (p_vaddr == 0) {
                     mIsPIE = true;
                 }
@@ -368,127 +621,96 @@ public class ReadElf implements AutoCloseable {
         }
     }
 
-    private HashMap<String, Symbol> readSymbolTable(long symStrOffset, long symStrSize,
-            long tableOffset, long tableSize) throws IOException {
-        HashMap<String, Symbol> result = new HashMap<String, Symbol>();
-        mFile.seek(tableOffset);
-        while (mFile.getFilePointer() < tableOffset + tableSize) {
-            long st_name = readWord();
-            int st_info;
-            if (mAddrSize == 8) {
-                st_info = readByte();
-                int st_other = readByte();
-                int st_shndx = readHalf();
-                long st_value = readAddr();
-                long st_size = readX(mAddrSize);
-            } else {
-                long st_value = readAddr();
-                long st_size = readWord();
-                st_info = readByte();
-                int st_other = readByte();
-                int st_shndx = readHalf();
-            }
-            if (st_name == 0) {
-                continue;
-            }
-
-            final String symName = readStrTabEntry(symStrOffset, symStrSize, st_name);
-            if (symName != null) {
-                Symbol s = new Symbol(symName, st_info);
-                result.put(symName, s);
-            }
-        }
-        return result;
-    }
-
-    private String readShStrTabEntry(long strOffset) throws IOException {
+    private String readShStrTabEntry(long strOffset) {
         if (mShStrTabOffset == 0 || strOffset < 0 || strOffset >= mShStrTabSize) {
             return null;
         }
-        return readString(mShStrTabOffset + strOffset);
+        int start = position(mShStrTabOffset + strOffset);
+        int end = findNul(start, mShStrTabOffset + mShStrTabSize);
+        if (end < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = mBuffer.get(start + i);
+        }
+        return new String(bytes);
     }
 
-    private String readStrTabEntry(long tableOffset, long tableSize, long strOffset)
-            throws IOException {
-        if (tableOffset == 0 || strOffset < 0 || strOffset >= tableSize) {
-            return null;
+    /**
+     * Returns the position of the first NUL at or after {@code start} and
+     * before {@code limit}, or -1 if there is none.
+     */
+    private int findNul(int start, long limit) {
+        int end = (int) Math.min(limit, mBuffer.limit());
+        for (int i = start; i < end; ++i) {
+            if (mBuffer.get(i) == 0) {
+                return i;
+            }
         }
-        return readString(tableOffset + strOffset);
+        return -1;
     }
 
-    private int readHalf() throws IOException {
-        return (int) readX(2);
+    private int position(long offset) {
+        if (offset < 0 || offset > mBuffer.limit()) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " outside of " + mPath);
+        }
+        return (int) offset;
     }
 
-    private long readWord() throws IOException {
-        return readX(4);
+    private int readHalf(long offset) {
+        return mBuffer.getShort(position(offset)) & 0xffff;
     }
 
-    private long readOff() throws IOException {
-        return readX(mAddrSize);
+    private long readWord(long offset) {
+        return mBuffer.getInt(position(offset)) & 0xffffffffL;
     }
 
-    private long readAddr() throws IOException {
-        return readX(mAddrSize);
+    private long readOff(long offset) {
+        return readX(offset);
     }
 
-    private long readX(int byteCount) throws IOException {
-        mFile.readFully(mBuffer, 0, byteCount);
+    private long readAddr(long offset) {
+        return readX(offset);
+    }
 
-        int answer = 0;
-        if (mEndian == ELFDATA2LSB) {
-            for (int i = byteCount - 1; i >= 0; i--) {
-                answer = (answer << 8) | (mBuffer[i] & 0xff);
-            }
-        } else {
-            final int N = byteCount - 1;
-            for (int i = 0; i <= N; ++i) {
-                answer = (answer << 8) | (mBuffer[i] & 0xff);
-            }
+    private long readX(long offset) {
+        if (mAddrSize == 8) {
+            return mBuffer.getLong(position(offset));
         }
-
-        return answer;
+        return readWord(offset);
     }
 
-    private String readString(long offset) throws IOException {
-        long originalOffset = mFile.getFilePointer();
-        mFile.seek(offset);
-        mFile.readFully(mBuffer, 0, (int) Math.min(mBuffer.length, mFile.length() - offset));
-        mFile.seek(originalOffset);
-
-        for (int i = 0; i < mBuffer.length; ++i) {
-            if (mBuffer[i] == 0) {
-                return new String(mBuffer, 0, i);
+    public Symbol getSymbol(String name) {
+        synchronized (this) {
+            if (mSymbols == null) {
+                mSymbols = new SymbolTable(mSymTabOffset, mSymTabSize,
+                        mStrTabOffset, mStrTabSize);
             }
         }
-
-        return null;
-    }
-
-    private int readByte() throws IOException {
-        return mFile.read() & 0xff;
+        return lookup(mSymbols, name);
     }
 
-    public Symbol getSymbol(String name) {
-        if (mSymbols == null) {
-            try {
-                mSymbols = readSymbolTable(mStrTabOffset, mStrTabSize, mSymTabOffset, mSymTabSize);
-            } catch (IOException e) {
-                return null;
+    public Symbol getDynamicSymbol(String name) {
+        synchronized (this) {
+            if (mDynamicSymbols == null) {
+                mDynamicSymbols = new SymbolTable(mDynSymOffset, mDynSymSize,
+                        mDynStrOffset, mDynStrSize);
             }
         }
-        return mSymbols.get(name);
+        return lookup(mDynamicSymbols, name);
     }
 
-    public Symbol getDynamicSymbol(String name) {
-        if (mDynamicSymbols == null) {
+    private Symbol lookup(SymbolTable table, String name) {
+        synchronized (table) {
+            if (mClosed && !table.isIndexed()) {
+                return null;
+            }
             try {
-                mDynamicSymbols = readSymbolTable(
-                        mDynStrOffset, mDynStrSize, mDynSymOffset, mDynSymSize);
-            } catch (IOException e) {
+                return table.get(name);
+            } catch (IndexOutOfBoundsException e) {
                 return null;
             }
         }
-        return mDynamicSymbols.get(name);
     }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.cts.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures {@link ReadElf} on the host. By default it scans the native
+ * libraries of the running JDK, the way AbiTest scans a device image, and
+ * looks up a few symbols of every file.
+ * <p>
+ * Usage: ReadElfBenchmark [DIR] [ROUNDS] [THREADS]
+ */
+public class ReadElfBenchmark {
+    private static final String[] SYMBOLS = { "JNI_OnLoad", "main", "malloc", "_init", };
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : System.getProperty("java.home"));
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        final AtomicInteger files = new AtomicInteger();
+        final AtomicInteger found = new AtomicInteger();
+        ReadElf.Visitor visitor = new ReadElf.Visitor() {
+            @Override
+            public void visit(File file, ReadElf elf) {
+                files.incrementAndGet();
+                for (String name : SYMBOLS) {
+                    if (elf.getDynamicSymbol(name) != null) {
+                        found.incrementAndGet();
+                    }
+                    if (elf.getSymbol(name) != null) {
+                        found.incrementAndGet();
+                    }
+                }
+            }
+        };
+
+        long[] sequential = new long[rounds];
+        long[] parallel = new long[rounds];
+        for (int i = 0; i < rounds; ++i) {
+            files.set(0);
+            found.set(0);
+            long start = System.nanoTime();
+            ReadElf.scanDirectory(dir, null, visitor, 1);
+            sequential[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ReadElf.scanDirectory(dir, null, visitor, threads);
+            parallel[i] = System.nanoTime() - start;
+        }
+
+        System.out.println(dir + ": " + files.get() / 2 + " ELF files, "
+                + found.get() / 2 + " symbols found per scan");
+        System.out.println("1 thread:   median " + median(sequential) + " ms, first "
+                + sequential[0] / 1000000 + " ms");
+        System.out.println(threads + " threads:  median " + median(parallel) + " ms, first "
+                + parallel[0] / 1000000 + " ms");
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1000000;
+    }
+}
@@ -19,8 +19,6 @@ package com.android.json.stream;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Closeable;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Reads a JSON (<a href="http://www.ietf.org/rfc/rfc4627.txt">RFC 4627</a>)
@@ -172,6 +170,28 @@ public final class JsonReader implements Closeable {
     private static final String TRUE = "true";
     private static final String FALSE = "false";
 
+    /*
+     * The scopes of the stack, see JsonScope. They are ints so that the stack
+     * is a plain array.
+     */
+    private static final int EMPTY_ARRAY = 0;
+    private static final int NONEMPTY_ARRAY = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_DOCUMENT = 5;
+    private static final int NONEMPTY_DOCUMENT = 6;
+    private static final int CLOSED = 7;
+
+    /** The number of entries of the name table, a power of two. */
+    private static final int NAME_TABLE_SIZE = 256;
+
+    /** The largest powers of ten that are exact doubles, for decoding numbers. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
     /** The input JSON. */
     private final Reader in;
 
@@ -188,9 +208,10 @@ public final class JsonReader implements Closeable {
     private int pos = 0;
     private int limit = 0;
 
-    private final List<JsonScope> stack = new ArrayList<JsonScope>();
+    private int[] stack = new int[32];
+    private int stackSize = 0;
     {
-        push(JsonScope.EMPTY_DOCUMENT);
+        push(EMPTY_DOCUMENT);
     }
 
     /**
@@ -204,7 +225,8 @@ public final class JsonReader implements Closeable {
 
     /*
      * For the next literal value, we may have the text value, or the position
-     * and length in the buffer.
+     * and length in the buffer. The text of a number is only created if it is
+     * read as a string; until the token is consumed it stays in the buffer.
      */
     private String value;
     private int valuePos;
@@ -213,6 +235,12 @@ public final class JsonReader implements Closeable {
     /** True if we're currently handling a skipValue() call. */
     private boolean skipping = false;
 
+    /**
+     * Recently read names by hash of their characters, or null if names
+     * aren't interned.
+     */
+    private String[] nameTable;
+
     /**
      * Creates a new instance that reads a JSON-encoded stream from {@code in}.
      */
@@ -248,6 +276,17 @@ public final class JsonReader implements Closeable {
         this.lenient = lenient;
     }
 
+    /**
+     * Configure this parser to return the same {@code String} instance for
+     * recurring names, such as the keys of an array of similar objects. This
+     * saves creating a string for every name that was recently read. The
+     * names are kept in a small table owned by this reader; they are not
+     * {@link String#intern() interned} globally. Off by default.
+     */
+    public void setInternNames(boolean internNames) {
+        this.nameTable = internNames ? new String[NAME_TABLE_SIZE] : null;
+    }
+
     /**
      * Consumes the next token from the JSON stream and asserts that it is the
      * beginning of a new array.
@@ -309,7 +348,7 @@ public final class JsonReader implements Closeable {
 
         switch (peekStack()) {
             case EMPTY_DOCUMENT:
-                replaceTop(JsonScope.NONEMPTY_DOCUMENT);
+                replaceTop(NONEMPTY_DOCUMENT);
                 JsonToken firstToken = nextValue();
                 if (token != JsonToken.BEGIN_ARRAY && token != JsonToken.BEGIN_OBJECT) {
                     throw new IOException(
@@ -379,7 +418,7 @@ public final class JsonReader implements Closeable {
             throw new IllegalStateException("Expected a string but was " + peek());
         }
 
-        String result = value;
+        String result = (value != null) ? value : numberText();
         advance();
         return result;
     }
@@ -431,7 +470,7 @@ public final class JsonReader implements Closeable {
             throw new IllegalStateException("Expected a double but was " + token);
         }
 
-        double result = Double.parseDouble(value);
+        double result = (value != null) ? Double.parseDouble(value) : decodeDouble();
         advance();
         return result;
     }
@@ -453,13 +492,18 @@ public final class JsonReader implements Closeable {
         }
 
         long result;
-        try {
-            result = Long.parseLong(value);
-        } catch (NumberFormatException ignored) {
-            double asDouble = Double.parseDouble(value); // don't catch this NumberFormatException
-            result = (long) asDouble;
-            if ((double) result != asDouble) {
-                throw new NumberFormatException(value);
+        if (value == null && isShortInteger()) {
+            result = decodeInteger();
+        } else {
+            String value = (this.value != null) ? this.value : numberText();
+            try {
+                result = Long.parseLong(value);
+            } catch (NumberFormatException ignored) {
+                double asDouble = Double.parseDouble(value); // don't catch this NumberFormatException
+                result = (long) asDouble;
+                if ((double) result != asDouble) {
+                    throw new NumberFormatException(value);
+                }
             }
         }
 
@@ -484,13 +528,22 @@ public final class JsonReader implements Closeable {
         }
 
         int result;
-        try {
-            result = Integer.parseInt(value);
-        } catch (NumberFormatException ignored) {
-            double asDouble = Double.parseDouble(value); // don't catch this NumberFormatException
-            result = (int) asDouble;
-            if ((double) result != asDouble) {
-                throw new NumberFormatException(value);
+        if (value == null && isShortInteger()) {
+            long asLong = decodeInteger();
+            result = (int) asLong;
+            if (result != asLong) {
+                throw new NumberFormatException(numberText());
+            }
+        } else {
+            String value = (this.value != null) ? this.value : numberText();
+            try {
+                result = Integer.parseInt(value);
+            } catch (NumberFormatException ignored) {
+                double asDouble = Double.parseDouble(value); // don't catch this NumberFormatException
+                result = (int) asDouble;
+                if ((double) result != asDouble) {
+                    throw new NumberFormatException(value);
+                }
             }
         }
 
@@ -504,8 +557,8 @@ public final class JsonReader implements Closeable {
     public void close() throws IOException {
         value = null;
         token = null;
-        stack.clear();
-        stack.add(JsonScope.CLOSED);
+        stackSize = 0;
+        push(CLOSED);
         in.close();
     }
 
@@ -531,28 +584,33 @@ public final class JsonReader implements Closeable {
         }
     }
 
-    private JsonScope peekStack() {
-        return stack.get(stack.size() - 1);
+    private int peekStack() {
+        return stack[stackSize - 1];
     }
 
-    private JsonScope pop() {
-        return stack.remove(stack.size() - 1);
+    private int pop() {
+        return stack[--stackSize];
     }
 
-    private void push(JsonScope newTop) {
-        stack.add(newTop);
+    private void push(int newTop) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = newTop;
     }
 
     /**
      * Replace the value on the top of the stack with the given value.
      */
-    private void replaceTop(JsonScope newTop) {
-        stack.set(stack.size() - 1, newTop);
+    private void replaceTop(int newTop) {
+        stack[stackSize - 1] = newTop;
     }
 
     private JsonToken nextInArray(boolean firstElement) throws IOException {
         if (firstElement) {
-            replaceTop(JsonScope.NONEMPTY_ARRAY);
+            replaceTop(NONEMPTY_ARRAY);
         } else {
             /* Look for a comma before each element after the first element. */
             switch (nextNonWhitespace()) {
@@ -622,7 +680,7 @@ public final class JsonReader implements Closeable {
             case '\'':
                 checkLenient(); // fall-through
             case '"':
-                name = nextString((char) quote);
+                name = nextString((char) quote, nameTable != null);
                 break;
             default:
                 checkLenient();
@@ -633,7 +691,7 @@ public final class JsonReader implements Closeable {
                 }
         }
 
-        replaceTop(JsonScope.DANGLING_NAME);
+        replaceTop(DANGLING_NAME);
         return token = JsonToken.NAME;
     }
 
@@ -655,7 +713,7 @@ public final class JsonReader implements Closeable {
                 throw syntaxError("Expected ':'");
         }
 
-        replaceTop(JsonScope.NONEMPTY_OBJECT);
+        replaceTop(NONEMPTY_OBJECT);
         return nextValue();
     }
 
@@ -663,17 +721,17 @@ public final class JsonReader implements Closeable {
         int c = nextNonWhitespace();
         switch (c) {
             case '{':
-                push(JsonScope.EMPTY_OBJECT);
+                push(EMPTY_OBJECT);
                 return token = JsonToken.BEGIN_OBJECT;
 
             case '[':
-                push(JsonScope.EMPTY_ARRAY);
+                push(EMPTY_ARRAY);
                 return token = JsonToken.BEGIN_ARRAY;
 
             case '\'':
                 checkLenient(); // fall-through
             case '"':
-                value = nextString((char) c);
+                value = nextString((char) c, false);
                 return token = JsonToken.STRING;
 
             default:
@@ -804,7 +862,7 @@ public final class JsonReader implements Closeable {
      * @throws NumberFormatException if any unicode escape sequences are
      *     malformed.
      */
-    private String nextString(char quote) throws IOException {
+    private String nextString(char quote, boolean intern) throws IOException {
         StringBuilder builder = null;
         do {
             /* the index of the first character not yet appended to the builder. */
@@ -816,13 +874,19 @@ public final class JsonReader implements Closeable {
                     if (skipping) {
                         return "skipped!";
                     } else if (builder == null) {
-                        return new String(buffer, start, pos - start - 1);
+                        return intern
+                                ? internName(start, pos - start - 1)
+                                : new String(buffer, start, pos - start - 1);
                     } else {
                         builder.append(buffer, start, pos - start - 1);
                         return builder.toString();
                     }
 
                 } else if (c == '\\') {
+                    if (skipping) {
+                        readEscapeCharacter();
+                        continue;
+                    }
                     if (builder == null) {
                         builder = new StringBuilder();
                     }
@@ -832,10 +896,12 @@ public final class JsonReader implements Closeable {
                 }
             }
 
-            if (builder == null) {
-                builder = new StringBuilder();
+            if (!skipping) {
+                if (builder == null) {
+                    builder = new StringBuilder();
+                }
+                builder.append(buffer, start, pos - start);
             }
-            builder.append(buffer, start, pos - start);
         } while (fillBuffer(1));
 
         throw syntaxError("Unterminated string");
@@ -898,7 +964,9 @@ public final class JsonReader implements Closeable {
             if (builder == null) {
                 builder = new StringBuilder();
             }
-            builder.append(buffer, pos, i);
+            if (!skipping) {
+                builder.append(buffer, pos, i);
+            }
             valueLength += i;
             pos += i;
             i = 0;
@@ -1020,9 +1088,139 @@ public final class JsonReader implements Closeable {
             value = FALSE;
             return JsonToken.BOOLEAN;
         } else {
-            value = new String(buffer, valuePos, valueLength);
-            return decodeNumber(buffer, valuePos, valueLength);
+            JsonToken result = decodeNumber(buffer, valuePos, valueLength);
+            if (result == JsonToken.NUMBER) {
+                // the text is created on demand, see numberText()
+                value = null;
+            } else {
+                value = skipping ? "skipped!" : new String(buffer, valuePos, valueLength);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns the text of the current number, which is still in the buffer.
+     */
+    private String numberText() {
+        return new String(buffer, valuePos, valueLength);
+    }
+
+    /**
+     * Returns true if the current number is an integer of at most 18 digits,
+     * so that it fits in a long.
+     */
+    private boolean isShortInteger() {
+        int start = (buffer[valuePos] == '-') ? valuePos + 1 : valuePos;
+        int end = valuePos + valueLength;
+        if (end - start > 18) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < '0' || buffer[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the current number, which must be a short integer.
+     */
+    private long decodeInteger() {
+        boolean negative = buffer[valuePos] == '-';
+        long result = 0;
+        for (int i = negative ? valuePos + 1 : valuePos; i < valuePos + valueLength; i++) {
+            result = result * 10 + (buffer[i] - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Decodes the current number. Numbers of up to 15 significant digits and
+     * a decimal exponent of up to 22 are exact as the product or quotient of
+     * two doubles; others are left to {@link Double#parseDouble}.
+     */
+    private double decodeDouble() {
+        int i = valuePos;
+        int end = valuePos + valueLength;
+        boolean negative = buffer[i] == '-';
+        if (negative) {
+            i++;
         }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        for (; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+            mantissa = mantissa * 10 + (buffer[i] - '0');
+            if (mantissa != 0) {
+                digits++;
+            }
+        }
+        if (i < end && buffer[i] == '.') {
+            for (i++; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+                mantissa = mantissa * 10 + (buffer[i] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                exponent--;
+            }
+        }
+        if (digits > 15) {
+            return Double.parseDouble(numberText());
+        }
+        if (i < end) {
+            // 'e' or 'E'
+            i++;
+            boolean negativeExponent = buffer[i] == '-';
+            if (negativeExponent || buffer[i] == '+') {
+                i++;
+            }
+            int explicitExponent = 0;
+            for (; i < end; i++) {
+                explicitExponent = explicitExponent * 10 + (buffer[i] - '0');
+                if (explicitExponent > POWERS_OF_TEN.length * 2) {
+                    return Double.parseDouble(numberText());
+                }
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        double result = mantissa;
+        if (exponent < 0 && exponent >= -22) {
+            result /= POWERS_OF_TEN[-exponent];
+        } else if (exponent >= 0 && exponent <= 22) {
+            result *= POWERS_OF_TEN[exponent];
+        } else if (mantissa != 0) {
+            return Double.parseDouble(numberText());
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Returns the name of {@code length} chars at {@code start} of the
+     * buffer, reusing the previous name of the same hash if it is equal.
+     */
+    private String internName(int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (NAME_TABLE_SIZE - 1);
+        String cached = nameTable[slot];
+        if (cached != null && cached.length() == length && cached.hashCode() == hash) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == buffer[start + i]) {
+                i++;
+            }
+            if (i == length) {
+                return cached;
+            }
+        }
+        String result = new String(buffer, start, length);
+        nameTable[slot] = result;
+        return result;
     }
 
     /**
@@ -18,7 +18,10 @@ package com.android.json.stream;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -113,15 +116,41 @@ import java.util.List;
  *     writer.endArray();
  *   }}</pre>
  *
+ * <h3>Writing bytes</h3>
+ * A writer created for an {@link OutputStream} or a {@link
+ * WritableByteChannel} encodes the document as UTF-8 into its own buffer and
+ * writes that buffer to the stream or channel when it is full, on {@link
+ * #flush} and on {@link #close}. This avoids the {@link Writer} and its
+ * encoder; the stream doesn't need to be buffered.
+ *
  * <p>Each {@code JsonWriter} may be used to write a single JSON stream.
  * Instances of this class are not thread safe. Calls that would result in a
  * malformed JSON string will fail with an {@link IllegalStateException}.
  */
 public final class JsonWriter implements Closeable {
 
-    /** The output data, containing at most one top-level array or object. */
+    /** The size of the buffer of a writer that writes bytes. */
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The output data, containing at most one top-level array or object. Null
+     * if this writer writes bytes.
+     */
     private final Writer out;
 
+    /** The stream or channel the bytes are written to, or null if writing to a Writer. */
+    private final OutputStream byteOut;
+    private final WritableByteChannel channel;
+
+    /** The UTF-8 encoded output not yet written to byteOut or channel. */
+    private final byte[] bytes;
+    private int count;
+
+    /** Wraps bytes to write them to the channel. */
+    private final ByteBuffer channelBuffer;
+
     private final List<JsonScope> stack = new ArrayList<JsonScope>();
     {
         stack.add(JsonScope.EMPTY_DOCUMENT);
@@ -148,6 +177,41 @@ public final class JsonWriter implements Closeable {
             throw new NullPointerException("out == null");
         }
         this.out = out;
+        this.byteOut = null;
+        this.channel = null;
+        this.bytes = null;
+        this.channelBuffer = null;
+    }
+
+    /**
+     * Creates a new instance that writes a UTF-8 encoded JSON stream to
+     * {@code out}. The writer buffers its output, so {@code out} doesn't need
+     * to be buffered.
+     */
+    public JsonWriter(OutputStream out) {
+        if (out == null) {
+            throw new NullPointerException("out == null");
+        }
+        this.out = null;
+        this.byteOut = out;
+        this.channel = null;
+        this.bytes = new byte[BUFFER_SIZE];
+        this.channelBuffer = null;
+    }
+
+    /**
+     * Creates a new instance that writes a UTF-8 encoded JSON stream to
+     * {@code channel}. The writer buffers its output.
+     */
+    public JsonWriter(WritableByteChannel channel) {
+        if (channel == null) {
+            throw new NullPointerException("channel == null");
+        }
+        this.out = null;
+        this.byteOut = null;
+        this.channel = channel;
+        this.bytes = new byte[BUFFER_SIZE];
+        this.channelBuffer = ByteBuffer.wrap(bytes);
     }
 
     /**
@@ -213,7 +277,7 @@ public final class JsonWriter implements Closeable {
     private JsonWriter open(JsonScope empty, String openBracket) throws IOException {
         beforeValue(true);
         stack.add(empty);
-        out.write(openBracket);
+        write(openBracket);
         return this;
     }
 
@@ -232,7 +296,7 @@ public final class JsonWriter implements Closeable {
         if (context == nonempty) {
             newline();
         }
-        out.write(closeBracket);
+        write(closeBracket);
         return this;
     }
 
@@ -287,7 +351,7 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter nullValue() throws IOException {
         beforeValue(false);
-        out.write("null");
+        write("null");
         return this;
     }
 
@@ -298,7 +362,7 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter value(boolean value) throws IOException {
         beforeValue(false);
-        out.write(value ? "true" : "false");
+        write(value ? "true" : "false");
         return this;
     }
 
@@ -310,14 +374,36 @@ public final class JsonWriter implements Closeable {
      * @return this writer.
      */
     public JsonWriter value(double value) throws IOException {
-        if (Double.isNaN(value) || Double.isInfinite(value)) {
-            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
-        }
+        checkFinite(value);
         beforeValue(false);
-        out.append(Double.toString(value));
+        write(Double.toString(value));
         return this;
     }
 
+    /**
+     * Encodes {@code values} as an array of numbers. This is the same as
+     * writing each value between {@link #beginArray} and {@link #endArray}.
+     *
+     * @param values finite values, or null to encode a null literal. May not
+     *     contain {@link Double#isNaN() NaNs} or {@link Double#isInfinite()
+     *     infinities}; nothing is written if it does.
+     * @return this writer.
+     */
+    public JsonWriter value(double[] values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        for (double value : values) {
+            checkFinite(value);
+        }
+        beginArray();
+        for (double value : values) {
+            beforeValue(false);
+            write(Double.toString(value));
+        }
+        return endArray();
+    }
+
     /**
      * Encodes {@code value}.
      *
@@ -325,25 +411,70 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter value(long value) throws IOException {
         beforeValue(false);
-        out.write(Long.toString(value));
+        writeLong(value);
         return this;
     }
 
     /**
-     * Ensures all buffered data is written to the underlying {@link Writer}
-     * and flushes that writer.
+     * Encodes {@code values} as an array of numbers. This is the same as
+     * writing each value between {@link #beginArray} and {@link #endArray}.
+     *
+     * @param values the values, or null to encode a null literal.
+     * @return this writer.
+     */
+    public JsonWriter value(long[] values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        beginArray();
+        for (long value : values) {
+            beforeValue(false);
+            writeLong(value);
+        }
+        return endArray();
+    }
+
+    private static void checkFinite(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+    }
+
+    /**
+     * Ensures all buffered data is written to the underlying {@link Writer},
+     * stream or channel and flushes that writer or stream.
      */
     public void flush() throws IOException {
-        out.flush();
+        if (out != null) {
+            out.flush();
+        } else {
+            flushBytes();
+            if (byteOut != null) {
+                byteOut.flush();
+            }
+        }
     }
 
     /**
-     * Flushes and closes this writer and the underlying {@link Writer}.
+     * Flushes and closes this writer and the underlying {@link Writer},
+     * stream or channel.
      *
      * @throws IOException if the JSON document is incomplete.
      */
     public void close() throws IOException {
-        out.close();
+        if (out != null) {
+            out.close();
+        } else {
+            try {
+                flushBytes();
+            } finally {
+                if (byteOut != null) {
+                    byteOut.close();
+                } else {
+                    channel.close();
+                }
+            }
+        }
 
         if (peek() != JsonScope.NONEMPTY_DOCUMENT) {
             throw new IOException("Incomplete document");
@@ -351,7 +482,9 @@ public final class JsonWriter implements Closeable {
     }
 
     private void string(String value) throws IOException {
-        out.write("\"");
+        write('"');
+        /* the index of the first character not yet written. */
+        int start = 0;
         for (int i = 0, length = value.length(); i < length; i++) {
             char c = value.charAt(i);
 
@@ -361,45 +494,180 @@ public final class JsonWriter implements Closeable {
              * quotation mark, reverse solidus, and the control characters
              * (U+0000 through U+001F)."
              */
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '/') {
+                continue;
+            }
+
+            write(value, start, i);
+            start = i + 1;
             switch (c) {
                 case '"':
                 case '\\':
                 case '/':
-                    out.write('\\');
-                    out.write(c);
+                    write('\\');
+                    write(c);
                     break;
 
                 case '\t':
-                    out.write("\\t");
+                    write("\\t");
                     break;
 
                 case '\b':
-                    out.write("\\b");
+                    write("\\b");
                     break;
 
                 case '\n':
-                    out.write("\\n");
+                    write("\\n");
                     break;
 
                 case '\r':
-                    out.write("\\r");
+                    write("\\r");
                     break;
 
                 case '\f':
-                    out.write("\\f");
+                    write("\\f");
                     break;
 
                 default:
-                    if (c <= 0x1F) {
-                        out.write(String.format("\\u%04x", (int) c));
-                    } else {
-                        out.write(c);
-                    }
+                    write("\\u00");
+                    write(HEX_DIGITS[c >> 4]);
+                    write(HEX_DIGITS[c & 0xf]);
                     break;
             }
+        }
+        write(value, start, value.length());
+        write('"');
+    }
+
+    /**
+     * Writes an ASCII character.
+     */
+    private void write(char c) throws IOException {
+        if (out != null) {
+            out.write(c);
+        } else {
+            if (count == bytes.length) {
+                flushBytes();
+            }
+            bytes[count++] = (byte) c;
+        }
+    }
+
+    /**
+     * Writes a string of ASCII characters.
+     */
+    private void write(String s) throws IOException {
+        if (out != null) {
+            out.write(s);
+        } else {
+            int length = s.length();
+            if (count + length > bytes.length) {
+                flushBytes();
+                if (length > bytes.length) {
+                    write(s, 0, length);
+                    return;
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                bytes[count++] = (byte) s.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Writes the characters {@code start} to {@code end} of {@code s}, which
+     * need no escaping.
+     */
+    private void write(String s, int start, int end) throws IOException {
+        if (start == end) {
+            return;
+        }
+        if (out != null) {
+            out.write(s, start, end - start);
+            return;
+        }
+
+        int i = start;
+        while (i < end) {
+            if (count == bytes.length) {
+                flushBytes();
+            }
+            // Copy ASCII characters for as long as they fit.
+            int limit = Math.min(end, i + bytes.length - count);
+            char c = 0;
+            while (i < limit && (c = s.charAt(i)) < 0x80) {
+                bytes[count++] = (byte) c;
+                i++;
+            }
+            if (i == limit) {
+                continue;
+            }
+
+            if (count + 4 > bytes.length) {
+                flushBytes();
+            }
+            i++;
+            if (c < 0x800) {
+                bytes[count++] = (byte) (0xc0 | (c >> 6));
+                bytes[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (!Character.isSurrogate(c)) {
+                bytes[count++] = (byte) (0xe0 | (c >> 12));
+                bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i < end
+                    && Character.isLowSurrogate(s.charAt(i))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(i++));
+                bytes[count++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[count++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                // unpaired surrogate, replaced like an OutputStreamWriter does
+                bytes[count++] = '?';
+            }
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (out != null || value == Long.MIN_VALUE) {
+            write(Long.toString(value));
+            return;
+        }
+        if (count + 20 > bytes.length) {
+            flushBytes();
+        }
+        if (value < 0) {
+            bytes[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = count + digits - 1; i >= count; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
 
+    /**
+     * Writes the buffered bytes to the stream or channel.
+     */
+    private void flushBytes() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (byteOut != null) {
+            byteOut.write(bytes, 0, count);
+        } else {
+            channelBuffer.clear();
+            channelBuffer.limit(count);
+            while (channelBuffer.hasRemaining()) {
+                channel.write(channelBuffer);
+            }
         }
-        out.write("\"");
+        count = 0;
     }
 
     private void newline() throws IOException {
@@ -407,9 +675,9 @@ public final class JsonWriter implements Closeable {
             return;
         }
 
-        out.write("\n");
+        write('\n');
         for (int i = 1; i < stack.size(); i++) {
-            out.write(indent);
+            write(indent, 0, indent.length());
         }
     }
 
@@ -420,7 +688,7 @@ public final class JsonWriter implements Closeable {
     private void beforeName() throws IOException {
         JsonScope context = peek();
         if (context == JsonScope.NONEMPTY_OBJECT) { // first in object
-            out.write(',');
+            write(',');
         } else if (context != JsonScope.EMPTY_OBJECT) { // not in an object!
             throw new IllegalStateException("Nesting problem: " + stack);
         }
@@ -452,12 +720,12 @@ public final class JsonWriter implements Closeable {
                 break;
 
             case NONEMPTY_ARRAY: // another in array
-                out.append(',');
+                write(',');
                 newline();
                 break;
 
             case DANGLING_NAME: // value for name
-                out.append(separator);
+                write(separator);
                 replaceTop(JsonScope.NONEMPTY_OBJECT);
                 break;
 
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures {@link JsonReader} on a large generated document shaped like a
+ * device info payload: an array of objects with recurring names, numbers,
+ * strings and nested arrays.
+ *
+ * <p>Usage: JsonReaderBenchmark [OBJECTS] [ROUNDS]
+ */
+public class JsonReaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int objects = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String json = generate(objects);
+        System.out.println("Document of " + json.length() / 1024 + " KiB");
+
+        long[] typed = new long[rounds];
+        long[] interned = new long[rounds];
+        long[] strings = new long[rounds];
+        long[] skipped = new long[rounds];
+        long check = 0;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            check += readTyped(json, false);
+            typed[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            check += readTyped(json, true);
+            interned[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            check += readStrings(json);
+            strings[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.skipValue();
+            reader.close();
+            skipped[i] = System.nanoTime() - start;
+        }
+        print("typed values", typed, json);
+        print("typed values, interned names", interned, json);
+        print("all values as strings", strings, json);
+        print("skipValue", skipped, json);
+        System.out.println("(checksum " + check + ")");
+    }
+
+    private static long readTyped(String json, boolean internNames) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setInternNames(internNames);
+        long check = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("id") || name.equals("memory")) {
+                    check += reader.nextLong();
+                } else if (name.equals("density") || name.equals("refresh_rate")) {
+                    check += (long) reader.nextDouble();
+                } else if (name.equals("sizes")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        check += reader.nextInt();
+                    }
+                    reader.endArray();
+                } else if (name.equals("extra")) {
+                    reader.skipValue();
+                } else {
+                    check += reader.nextString().length();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        reader.close();
+        return check;
+    }
+
+    private static long readStrings(String json) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        long check = 0;
+        int depth = 0;
+        do {
+            switch (reader.peek()) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    depth--;
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    depth--;
+                    break;
+                case NAME:
+                    check += reader.nextName().length();
+                    break;
+                default:
+                    check += reader.nextString().length();
+            }
+        } while (depth > 0);
+        reader.close();
+        return check;
+    }
+
+    private static String generate(int objects) {
+        Random random = new Random(0);
+        StringBuilder json = new StringBuilder();
+        json.append('[');
+        for (int i = 0; i < objects; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\n  {\"id\": ").append(i)
+                    .append(", \"build_fingerprint\": \"android/device/generic:5.1/LMY").append(i % 97)
+                    .append("/").append(random.nextInt(1000000)).append(":userdebug/test-keys\"")
+                    .append(", \"memory\": ").append(random.nextInt(Integer.MAX_VALUE) * 4L)
+                    .append(", \"density\": ").append(random.nextInt(640)).append('.')
+                    .append(random.nextInt(100))
+                    .append(", \"refresh_rate\": ").append(random.nextDouble() * 120)
+                    .append(", \"sizes\": [");
+            for (int j = 0; j < 8; j++) {
+                json.append(j > 0 ? ", " : "").append(random.nextInt(4096));
+            }
+            json.append("], \"description\": \"line one\\nline \\\"two\\\"\"")
+                    .append(", \"extra\": {\"features\": [\"android.hardware.camera\", ")
+                    .append("\"android.hardware.wifi\"], \"scores\": [1.5e3, -2.25, 1000]}}");
+        }
+        json.append("\n]\n");
+        return json.toString();
+    }
+
+    private static void print(String name, long[] times, String json) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        System.out.printf("%-30s median %6.1f ms, %6.1f MB/s%n", name, median / 1e6,
+                json.length() / (median / 1e9) / (1024 * 1024));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures {@link JsonWriter} writing a large metrics report: series of
+ * timestamps and values with names and descriptions. It compares writing
+ * through a {@link java.io.Writer} with writing UTF-8 bytes directly, one
+ * value at a time and with the array writers.
+ *
+ * <p>Usage: JsonWriterBenchmark [SERIES] [ROUNDS]
+ */
+public class JsonWriterBenchmark {
+
+    private static final int SAMPLES = 500;
+
+    /** Counts and discards the bytes written to it. */
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int series = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(0);
+        String[] names = new String[series];
+        String[] descriptions = new String[series];
+        long[][] timestamps = new long[series][SAMPLES];
+        double[][] values = new double[series][SAMPLES];
+        for (int i = 0; i < series; i++) {
+            names[i] = "android.cts.metrics/frame_time_" + i;
+            descriptions[i] = "Frame time of \"scenario " + i + "\" in us\n\tmeasured on device";
+            long time = 1420070400000L + random.nextInt(1000000);
+            for (int j = 0; j < SAMPLES; j++) {
+                time += random.nextInt(100);
+                timestamps[i][j] = time;
+                values[i][j] = random.nextGaussian() * 1000;
+            }
+        }
+
+        long[] viaWriter = new long[rounds];
+        long[] viaBytes = new long[rounds];
+        long[] viaArrays = new long[rounds];
+        long[] sizes = new long[3];
+        for (int round = 0; round < rounds; round++) {
+            CountingOutputStream out = new CountingOutputStream();
+            long start = System.nanoTime();
+            write(new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8"))),
+                    names, descriptions, timestamps, values, false);
+            viaWriter[round] = System.nanoTime() - start;
+            sizes[0] = out.count;
+
+            out = new CountingOutputStream();
+            start = System.nanoTime();
+            write(new JsonWriter(out), names, descriptions, timestamps, values, false);
+            viaBytes[round] = System.nanoTime() - start;
+            sizes[1] = out.count;
+
+            out = new CountingOutputStream();
+            start = System.nanoTime();
+            write(new JsonWriter(out), names, descriptions, timestamps, values, true);
+            viaArrays[round] = System.nanoTime() - start;
+            sizes[2] = out.count;
+        }
+        if (sizes[0] != sizes[1] || sizes[0] != sizes[2]) {
+            throw new AssertionError("Outputs differ in size: " + Arrays.toString(sizes));
+        }
+
+        System.out.println("Report of " + sizes[0] / 1024 + " KiB");
+        print("Writer", viaWriter, sizes[0]);
+        print("OutputStream", viaBytes, sizes[0]);
+        print("OutputStream, array values", viaArrays, sizes[0]);
+    }
+
+    private static void write(JsonWriter writer, String[] names, String[] descriptions,
+            long[][] timestamps, double[][] values, boolean useArrays) throws IOException {
+        writer.beginArray();
+        for (int i = 0; i < names.length; i++) {
+            writer.beginObject();
+            writer.name("name").value(names[i]);
+            writer.name("description").value(descriptions[i]);
+            writer.name("timestamps");
+            if (useArrays) {
+                writer.value(timestamps[i]);
+            } else {
+                writer.beginArray();
+                for (long timestamp : timestamps[i]) {
+                    writer.value(timestamp);
+                }
+                writer.endArray();
+            }
+            writer.name("values");
+            if (useArrays) {
+                writer.value(values[i]);
+            } else {
+                writer.beginArray();
+                for (double value : values[i]) {
+                    writer.value(value);
+                }
+                writer.endArray();
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.close();
+    }
+
+    private static void print(String name, long[] times, long size) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        System.out.printf("%-28s median %6.1f ms, %6.1f MB/s%n", name, median / 1e6,
+                size / (median / 1e9) / (1024 * 1024));
+    }
+}
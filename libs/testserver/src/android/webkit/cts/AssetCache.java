@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.webkit.cts;
+
+import org.apache.http.entity.ByteArrayEntity;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of served assets, bounded by the total size of
+ * their content. Assets never change while a test package runs, so the cache
+ * is shared by all the servers of a process.
+ */
+final class AssetCache {
+
+    /**
+     * The content of an asset with the headers which only depend on it.
+     */
+    static final class Asset {
+        final byte[] mData;
+        final String mContentType;
+        final String mContentLength;
+
+        Asset(byte[] data, String contentType) {
+            mData = data;
+            mContentType = contentType;
+            mContentLength = Integer.toString(data.length);
+        }
+
+        /**
+         * Returns a new entity for the content of this asset.
+         */
+        ByteArrayEntity createEntity() {
+            ByteArrayEntity entity = new ByteArrayEntity(mData);
+            entity.setContentType(mContentType);
+            return entity;
+        }
+    }
+
+    private final int mMaxBytes;
+    private final int mMaxAssetBytes;
+    private final LinkedHashMap<String, Asset> mAssets =
+            new LinkedHashMap<String, Asset>(16, 0.75f, true);
+    private int mBytes;
+
+    /**
+     * @param maxBytes the maximum total size of the cached assets
+     * @param maxAssetBytes the size of the largest asset to cache
+     */
+    AssetCache(int maxBytes, int maxAssetBytes) {
+        mMaxBytes = maxBytes;
+        mMaxAssetBytes = maxAssetBytes;
+    }
+
+    /**
+     * Returns whether an asset of the given size would be cached.
+     */
+    boolean isCacheable(long size) {
+        return size <= mMaxAssetBytes;
+    }
+
+    synchronized Asset get(String key) {
+        return mAssets.get(key);
+    }
+
+    /**
+     * Adds an asset, evicting the least recently used ones as needed. Assets
+     * which are too large are not added.
+     */
+    synchronized void put(String key, Asset asset) {
+        if (!isCacheable(asset.mData.length)) {
+            return;
+        }
+        Asset previous = mAssets.put(key, asset);
+        if (previous != null) {
+            mBytes -= previous.mData.length;
+        }
+        mBytes += asset.mData.length;
+        Iterator<Map.Entry<String, Asset>> eldest = mAssets.entrySet().iterator();
+        while (mBytes > mMaxBytes) {
+            mBytes -= eldest.next().getValue().mData.length;
+            eldest.remove();
+        }
+    }
+}
@@ -19,7 +19,6 @@ import libcore.io.Base64;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
-import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -28,55 +27,43 @@ import org.apache.http.NameValuePair;
 import org.apache.http.RequestLine;
 import org.apache.http.StatusLine;
 import org.apache.http.client.utils.URLEncodedUtils;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.entity.FileEntity;
-import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.DefaultHttpServerConnection;
-import org.apache.http.impl.cookie.DateUtils;
 import org.apache.http.message.BasicHttpResponse;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.CoreProtocolPNames;
-import org.apache.http.params.HttpParams;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.net.Uri;
-import android.os.Environment;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.net.URLConnection;
+import java.nio.channels.ServerSocketChannel;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.Hashtable;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -119,6 +106,9 @@ public class CtsTestServer {
     public static final String NOLENGTH_POSTFIX = "nolength";
     private static final int DELAY_MILLIS = 2000;
 
+    private static final int ASSET_CACHE_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_CACHED_ASSET_BYTES = 1024 * 1024;
+
     public static final String AUTH_REALM = "Android CTS";
     public static final String AUTH_USER = "cts";
     public static final String AUTH_PASS = "secret";
@@ -138,6 +128,10 @@ public class CtsTestServer {
 
     private static Hashtable<Integer, String> sReasons;
 
+    /** Caches the small assets of all the servers of this process. */
+    private static final AssetCache sAssetCache =
+            new AssetCache(ASSET_CACHE_BYTES, MAX_CACHED_ASSET_BYTES);
+
     private ServerThread mServerThread;
     private String mServerUri;
     private AssetManager mAssets;
@@ -651,8 +645,7 @@ public class CtsTestServer {
                     }
                 }
                 if (length > 0 && mimeType != null) {
-                    ByteArrayEntity entity = new ByteArrayEntity(new byte[length]);
-                    entity.setContentType(mimeType);
+                    RepeatedByteEntity entity = new RepeatedByteEntity((byte) 0, length, mimeType);
                     response = createResponse(HttpStatus.SC_OK);
                     response.setEntity(entity);
                     response.addHeader("Content-Disposition", "attachment; filename=test.bin");
@@ -669,29 +662,12 @@ public class CtsTestServer {
             path = path.substring(ASSET_PREFIX.length());
             // request for an asset file
             try {
-                InputStream in;
-                if (path.startsWith(RAW_PREFIX)) {
-                  String resourceName = path.substring(RAW_PREFIX.length());
-                  int id = mResources.getIdentifier(resourceName, "raw", mContext.getPackageName());
-                  if (id == 0) {
-                    Log.w(TAG, "Can't find raw resource " + resourceName);
-                    throw new IOException();
-                  }
-                  in = mResources.openRawResource(id);
-                } else {
-                  in = mAssets.open(path);
-                }
                 response = createResponse(HttpStatus.SC_OK);
-                InputStreamEntity entity = new InputStreamEntity(in, in.available());
-                String mimeType =
-                    mMap.getMimeTypeFromExtension(MimeTypeMap.getFileExtensionFromUrl(path));
-                if (mimeType == null) {
-                    mimeType = "text/html";
-                }
-                entity.setContentType(mimeType);
-                response.setEntity(entity);
-                if (query == null || !query.contains(NOLENGTH_POSTFIX)) {
-                    response.setHeader("Content-Length", "" + entity.getContentLength());
+                boolean withLength = query == null || !query.contains(NOLENGTH_POSTFIX);
+                setAssetEntity(response, path, withLength);
+                if (!withLength) {
+                    // The end of the content is only signalled by closing the connection.
+                    response.setHeader("Connection", "close");
                 }
             } catch (IOException e) {
                 response = null;
@@ -809,28 +785,101 @@ public class CtsTestServer {
         return response;
     }
 
+    /**
+     * Sets the content of the given asset or raw resource as the entity of the response, with
+     * its Content-Length if requested. Small assets are served from
+     * {@link #sAssetCache}, large uncompressed ones straight from the APK.
+     * @param path The path of the asset. See {@link AssetManager#open(String)}
+     */
+    private void setAssetEntity(HttpResponse response, String path, boolean withLength)
+            throws IOException {
+        String key = mContext.getPackageName() + ":" + path;
+        AssetCache.Asset asset = sAssetCache.get(key);
+        if (asset == null) {
+            String mimeType =
+                    mMap.getMimeTypeFromExtension(MimeTypeMap.getFileExtensionFromUrl(path));
+            if (mimeType == null) {
+                mimeType = "text/html";
+            }
+            InputStream in;
+            if (path.startsWith(RAW_PREFIX)) {
+                String resourceName = path.substring(RAW_PREFIX.length());
+                int id = mResources.getIdentifier(resourceName, "raw", mContext.getPackageName());
+                if (id == 0) {
+                    Log.w(TAG, "Can't find raw resource " + resourceName);
+                    throw new IOException();
+                }
+                in = mResources.openRawResource(id);
+            } else {
+                AssetFileDescriptor fd = openAssetFd(path);
+                if (fd != null && fd.getLength() >= 0
+                        && !sAssetCache.isCacheable(fd.getLength())) {
+                    FileInputStream stream = fd.createInputStream();
+                    response.setEntity(new FileChannelEntity(stream.getChannel(),
+                            fd.getStartOffset(), fd.getLength(), stream, mimeType));
+                    if (withLength) {
+                        response.setHeader("Content-Length", Long.toString(fd.getLength()));
+                    }
+                    return;
+                }
+                if (fd != null) {
+                    fd.close();
+                }
+                in = mAssets.open(path);
+            }
+            asset = new AssetCache.Asset(readFully(in), mimeType);
+            sAssetCache.put(key, asset);
+        }
+        response.setEntity(asset.createEntity());
+        if (withLength) {
+            response.setHeader("Content-Length", asset.mContentLength);
+        }
+    }
+
+    /**
+     * Opens the file descriptor of an asset, or returns null if the asset is compressed.
+     */
+    private AssetFileDescriptor openAssetFd(String path) {
+        try {
+            return mAssets.openFd(path);
+        } catch (IOException e) {
+            // compressed assets cannot be opened as file descriptors
+            return null;
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 32));
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
     private void setDateHeaders(HttpResponse response) {
         long time = System.currentTimeMillis();
         synchronized (this) {
             if (mDocValidity != 0) {
-                String expires = DateUtils.formatDate(new Date(time + mDocValidity),
-                        DateUtils.PATTERN_RFC1123);
-                response.addHeader("Expires", expires);
+                response.addHeader("Expires", HttpDates.format(time + mDocValidity));
             }
             if (mDocAge != 0) {
-                String modified = DateUtils.formatDate(new Date(time - mDocAge),
-                        DateUtils.PATTERN_RFC1123);
-                response.addHeader("Last-Modified", modified);
+                response.addHeader("Last-Modified", HttpDates.format(time - mDocAge));
             }
         }
-        response.addHeader("Date", DateUtils.formatDate(new Date(), DateUtils.PATTERN_RFC1123));
+        response.addHeader("Date", HttpDates.format(time));
     }
 
     /**
      * Create an empty response with the given status.
      */
     private static HttpResponse createResponse(int status) {
-        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_0, status, null);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
 
         // Fill in error reason. Avoid use of the ReasonPhraseCatalog, which is Locale-dependent.
         String reason = getReasonString(status);
@@ -863,52 +912,25 @@ public class CtsTestServer {
     }
 
     private static HttpResponse createTestDownloadResponse(Uri uri) throws IOException {
-        String downloadId = uri.getQueryParameter(DOWNLOAD_ID_PARAMETER);
         int numBytes = uri.getQueryParameter(NUM_BYTES_PARAMETER) != null
                 ? Integer.parseInt(uri.getQueryParameter(NUM_BYTES_PARAMETER))
                 : 0;
         HttpResponse response = createResponse(HttpStatus.SC_OK);
         response.setHeader("Content-Length", Integer.toString(numBytes));
-        response.setEntity(createFileEntity(downloadId, numBytes));
+        response.setEntity(new RepeatedByteEntity((byte) 1, numBytes, "application/octet-stream"));
         return response;
     }
 
-    private static FileEntity createFileEntity(String downloadId, int numBytes) throws IOException {
-        String storageState = Environment.getExternalStorageState();
-        if (Environment.MEDIA_MOUNTED.equalsIgnoreCase(storageState)) {
-            File storageDir = Environment.getExternalStorageDirectory();
-            File file = new File(storageDir, downloadId + ".bin");
-            BufferedOutputStream stream = new BufferedOutputStream(new FileOutputStream(file));
-            byte data[] = new byte[1024];
-            for (int i = 0; i < data.length; i++) {
-                data[i] = 1;
-            }
-            try {
-                for (int i = 0; i < numBytes / data.length; i++) {
-                    stream.write(data);
-                }
-                stream.write(data, 0, numBytes % data.length);
-                stream.flush();
-            } finally {
-                stream.close();
-            }
-            return new FileEntity(file, "application/octet-stream");
-        } else {
-            throw new IllegalStateException("External storage must be mounted for this test!");
-        }
-    }
-
     protected DefaultHttpServerConnection createHttpServerConnection() {
         return new DefaultHttpServerConnection();
     }
 
-    private static class ServerThread extends Thread {
+    private static class ServerThread extends Thread implements HttpConnectionServer.Handler {
         private CtsTestServer mServer;
         private ServerSocket mSocket;
         private SslMode mSsl;
-        private boolean mIsCancelled;
         private SSLContext mSslContext;
-        private ExecutorService mExecutorService = Executors.newFixedThreadPool(20);
+        private HttpConnectionServer mConnectionServer;
 
         /**
          * Defines the keystore contents for the server, BKS version. Holds just a
@@ -970,7 +992,9 @@ public class CtsTestServer {
             while (true) {
                 try {
                     if (mSsl == SslMode.INSECURE) {
-                        mSocket = new ServerSocket(0);
+                        // Sockets of a channel can be written to with FileChannel.transferTo.
+                        mSocket = ServerSocketChannel.open().socket();
+                        mSocket.bind(new InetSocketAddress(0));
                     } else {  // Use SSL
                         mSslContext = SSLContext.getInstance("TLS");
                         mSslContext.init(getKeyManagers(), mServer.getTrustManagers(), null);
@@ -981,6 +1005,7 @@ public class CtsTestServer {
                             ((SSLServerSocket) mSocket).setNeedClientAuth(true);
                         }
                     }
+                    mConnectionServer = new HttpConnectionServer(mSocket, this);
                     return;
                 } catch (IOException e) {
                     Log.w(TAG, e);
@@ -994,50 +1019,26 @@ public class CtsTestServer {
         }
 
         public void run() {
-            while (!mIsCancelled) {
-                try {
-                    Socket socket = mSocket.accept();
-
-                    DefaultHttpServerConnection conn = mServer.createHttpServerConnection();
-                    HttpParams params = new BasicHttpParams();
-                    params.setParameter(CoreProtocolPNames.PROTOCOL_VERSION, HttpVersion.HTTP_1_0);
-                    conn.bind(socket, params);
-
-                    // Determine whether we need to shutdown early before
-                    // parsing the response since conn.close() will crash
-                    // for SSL requests due to UnsupportedOperationException.
-                    HttpRequest request = conn.receiveRequestHeader();
-                    if (isShutdownRequest(request)) {
-                        mIsCancelled = true;
-                    }
-                    if (request instanceof HttpEntityEnclosingRequest) {
-                        conn.receiveRequestEntity( (HttpEntityEnclosingRequest) request);
-                    }
-
-                    mExecutorService.submit(new HandleResponseTask(conn, request));
-                } catch (IOException e) {
-                    // normal during shutdown, ignore
-                    Log.w(TAG, e);
-                } catch (HttpException e) {
-                    Log.w(TAG, e);
-                } catch (UnsupportedOperationException e) {
-                    // DefaultHttpServerConnection's close() throws an
-                    // UnsupportedOperationException.
-                    Log.w(TAG, e);
-                }
-            }
+            mConnectionServer.serve();
             try {
-                mExecutorService.shutdown();
-                mExecutorService.awaitTermination(1L, TimeUnit.MINUTES);
                 mSocket.close();
             } catch (IOException ignored) {
                 // safe to ignore
-            } catch (InterruptedException e) {
-                Log.e(TAG, "Shutting down threads", e);
             }
         }
 
-        private static boolean isShutdownRequest(HttpRequest request) {
+        @Override
+        public DefaultHttpServerConnection createConnection() {
+            return mServer.createHttpServerConnection();
+        }
+
+        @Override
+        public HttpResponse getResponse(HttpRequest request) throws Exception {
+            return mServer.getResponse(request);
+        }
+
+        @Override
+        public boolean isShutdownRequest(HttpRequest request) {
             RequestLine requestLine = request.getRequestLine();
             String uriString = requestLine.getUri();
             URI uri = URI.create(uriString);
@@ -1045,26 +1046,9 @@ public class CtsTestServer {
             return path.equals(SHUTDOWN_PREFIX);
         }
 
-        private class HandleResponseTask implements Callable<Void> {
-
-            private DefaultHttpServerConnection mConnection;
-
-            private HttpRequest mRequest;
-
-            public HandleResponseTask(DefaultHttpServerConnection connection,
-                    HttpRequest request) {
-                this.mConnection = connection;
-                this.mRequest = request;
-            }
-
-            @Override
-            public Void call() throws Exception {
-                HttpResponse response = mServer.getResponse(mRequest);
-                mConnection.sendResponseHeader(response);
-                mConnection.sendResponseEntity(response);
-                mConnection.close();
-                return null;
-            }
+        @Override
+        public void onError(Exception e) {
+            Log.w(TAG, e);
         }
     }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.webkit.cts;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An entity which is a region of a file, such as an uncompressed asset inside
+ * an APK. {@link HttpConnectionServer} sends it to plain sockets with
+ * {@link FileChannel#transferTo}, so the content is not copied through the
+ * Java heap. The file is closed once the entity has been written.
+ */
+final class FileChannelEntity extends AbstractHttpEntity {
+
+    private final FileChannel mChannel;
+    private final long mStart;
+    private final long mLength;
+    private final Closeable mFile;
+
+    /**
+     * @param file closed together with the channel once the entity has been
+     *     written, may be null
+     */
+    FileChannelEntity(FileChannel channel, long start, long length, Closeable file,
+            String contentType) {
+        mChannel = channel;
+        mStart = start;
+        mLength = length;
+        mFile = file;
+        setContentType(contentType);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return mLength;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return Channels.newInputStream(mChannel.position(mStart));
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        transferTo(Channels.newChannel(out));
+        out.flush();
+    }
+
+    /**
+     * Writes the content to the given channel and closes the file.
+     */
+    void transferTo(WritableByteChannel target) throws IOException {
+        try {
+            long position = mStart;
+            long end = mStart + mLength;
+            while (position < end) {
+                long count = mChannel.transferTo(position, end - position, target);
+                if (count <= 0) {
+                    throw new IOException("Unexpected end of file at " + position);
+                }
+                position += count;
+            }
+        } finally {
+            consumeContent();
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return mChannel.isOpen();
+    }
+
+    @Override
+    public void consumeContent() throws IOException {
+        mChannel.close();
+        if (mFile != null) {
+            mFile.close();
+        }
+    }
+}
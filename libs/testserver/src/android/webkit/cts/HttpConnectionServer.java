@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.webkit.cts;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.impl.DefaultHttpServerConnection;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Serves HTTP/1.1 requests from a server socket over persistent connections.
+ *
+ * The accepting thread only accepts sockets; each connection is served by its
+ * own thread, which performs the TLS handshake for SSL sockets and then reads
+ * and answers requests until the client closes the connection, asks for it to
+ * be closed or leaves it idle for too long. Pipelined requests are answered in
+ * order. A slow client therefore only ever blocks its own connection.
+ */
+final class HttpConnectionServer {
+
+    /** How long a persistent connection may stay idle before it is closed. */
+    private static final int IDLE_TIMEOUT_MILLIS = 30 * 1000;
+
+    /**
+     * Creates the responses of an {@link HttpConnectionServer}.
+     */
+    interface Handler {
+        /** Creates the connection to bind an accepted socket to. */
+        DefaultHttpServerConnection createConnection();
+
+        /**
+         * Returns the response to the given request. The request entity, if
+         * any, has already been read into memory.
+         */
+        HttpResponse getResponse(HttpRequest request) throws Exception;
+
+        /**
+         * Returns whether the server should stop once it has answered the
+         * given request.
+         */
+        boolean isShutdownRequest(HttpRequest request);
+
+        /** Reports an unexpected failure to serve a connection. */
+        void onError(Exception e);
+    }
+
+    private final ServerSocket mServerSocket;
+    private final Handler mHandler;
+    private final ExecutorService mExecutorService = Executors.newCachedThreadPool();
+    /** The connections which are waiting for their next request. */
+    private final Set<DefaultHttpServerConnection> mIdleConnections =
+            new HashSet<DefaultHttpServerConnection>();
+    private volatile boolean mIsCancelled;
+
+    HttpConnectionServer(ServerSocket serverSocket, Handler handler) {
+        mServerSocket = serverSocket;
+        mHandler = handler;
+    }
+
+    /**
+     * Accepts and serves connections until a shutdown request has been
+     * answered or {@link #stop} is called. Connections which are still busy
+     * then are given up to a minute to finish their current response.
+     */
+    void serve() {
+        while (!mIsCancelled) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mExecutorService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // normal during shutdown, which closes the server socket
+                if (!mIsCancelled) {
+                    mHandler.onError(e);
+                }
+            }
+        }
+        closeIdleConnections();
+        try {
+            mExecutorService.shutdown();
+            mExecutorService.awaitTermination(1L, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            mHandler.onError(e);
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the idle ones.
+     */
+    void stop() {
+        mIsCancelled = true;
+        try {
+            mServerSocket.close();
+        } catch (IOException ignored) {
+            // safe to ignore
+        }
+        closeIdleConnections();
+    }
+
+    private void serveConnection(Socket socket) {
+        DefaultHttpServerConnection conn = mHandler.createConnection();
+        try {
+            if (socket instanceof SSLSocket) {
+                ((SSLSocket) socket).startHandshake();
+            }
+            HttpParams params = new BasicHttpParams();
+            params.setParameter(CoreProtocolPNames.PROTOCOL_VERSION, HttpVersion.HTTP_1_1);
+            conn.bind(socket, params);
+            conn.setSocketTimeout(IDLE_TIMEOUT_MILLIS);
+            while (serveRequest(conn, socket)) {
+                // keep serving requests on this connection
+            }
+        } catch (SocketTimeoutException e) {
+            // the connection was idle for too long
+        } catch (IOException e) {
+            // the client closed the connection, or the server is shutting down
+        } catch (Exception e) {
+            mHandler.onError(e);
+        } finally {
+            synchronized (mIdleConnections) {
+                mIdleConnections.remove(conn);
+            }
+            closeConnection(conn, socket);
+        }
+    }
+
+    /**
+     * Reads a request from the given connection and answers it.
+     *
+     * @param socket the socket the connection is bound to
+     * @return whether the connection should be kept open for another request
+     */
+    private boolean serveRequest(DefaultHttpServerConnection conn, Socket socket)
+            throws Exception {
+        synchronized (mIdleConnections) {
+            if (mIsCancelled) {
+                return false;
+            }
+            mIdleConnections.add(conn);
+        }
+        HttpRequest request;
+        try {
+            request = conn.receiveRequestHeader();
+        } finally {
+            synchronized (mIdleConnections) {
+                mIdleConnections.remove(conn);
+            }
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+            conn.receiveRequestEntity(entityRequest);
+            // Read the whole entity now, so that the next request can be read
+            // from the connection and the handler can keep the entity.
+            HttpEntity entity = entityRequest.getEntity();
+            if (entity != null) {
+                entityRequest.setEntity(new BufferedHttpEntity(entity));
+            }
+        }
+
+        boolean isShutdownRequest = mHandler.isShutdownRequest(request);
+        HttpResponse response = mHandler.getResponse(request);
+        boolean keepAlive = prepareResponse(request, response,
+                !isShutdownRequest && !mIsCancelled);
+        HttpEntity entity = response.getEntity();
+        try {
+            conn.sendResponseHeader(response);
+            if (canHaveEntity(request, response)) {
+                if (entity instanceof FileChannelEntity && socket.getChannel() != null
+                        && response.containsHeader(HTTP.CONTENT_LEN)) {
+                    // Let the kernel copy the file to the socket.
+                    conn.flush();
+                    ((FileChannelEntity) entity).transferTo(socket.getChannel());
+                } else {
+                    conn.sendResponseEntity(response);
+                }
+            }
+            conn.flush();
+        } finally {
+            if (entity instanceof FileChannelEntity) {
+                entity.consumeContent();
+            }
+        }
+
+        if (isShutdownRequest) {
+            stop();
+        }
+        return keepAlive;
+    }
+
+    /**
+     * Makes sure the end of the response can be detected without closing the
+     * connection, and tells the client whether the connection will be kept
+     * open.
+     *
+     * A response which must be terminated by closing the connection, such as
+     * one which deliberately has no Content-Length, should set a
+     * "Connection: close" header.
+     *
+     * @return whether the connection should be kept open
+     */
+    private static boolean prepareResponse(HttpRequest request, HttpResponse response,
+            boolean keepAlive) {
+        keepAlive &= isKeepAlive(request.getProtocolVersion(),
+                request.getFirstHeader(HTTP.CONN_DIRECTIVE));
+        if (hasToken(response.getFirstHeader(HTTP.CONN_DIRECTIVE), HTTP.CONN_CLOSE)) {
+            keepAlive = false;
+        } else if (!response.containsHeader(HTTP.TRANSFER_ENCODING)
+                && !response.containsHeader(HTTP.CONTENT_LEN)) {
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                response.setHeader(HTTP.CONTENT_LEN, "0");
+            } else if (entity.getContentLength() >= 0) {
+                response.setHeader(HTTP.CONTENT_LEN, Long.toString(entity.getContentLength()));
+            } else {
+                keepAlive = false;
+            }
+        }
+        response.setHeader(HTTP.CONN_DIRECTIVE, keepAlive ? HTTP.CONN_KEEP_ALIVE : HTTP.CONN_CLOSE);
+        return keepAlive;
+    }
+
+    /**
+     * Returns whether a request of the given version with the given
+     * Connection header asks for the connection to be kept open.
+     */
+    private static boolean isKeepAlive(ProtocolVersion version, Header connection) {
+        if (hasToken(connection, HTTP.CONN_CLOSE)) {
+            return false;
+        }
+        if (version.lessEquals(HttpVersion.HTTP_1_0)) {
+            return hasToken(connection, HTTP.CONN_KEEP_ALIVE);
+        }
+        return true;
+    }
+
+    private static boolean hasToken(Header header, String token) {
+        if (header == null) {
+            return false;
+        }
+        for (String value : header.getValue().split(",")) {
+            if (value.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean canHaveEntity(HttpRequest request, HttpResponse response) {
+        if ("HEAD".equalsIgnoreCase(request.getRequestLine().getMethod())) {
+            return false;
+        }
+        int status = response.getStatusLine().getStatusCode();
+        return status >= HttpStatus.SC_OK
+                && status != HttpStatus.SC_NO_CONTENT
+                && status != HttpStatus.SC_NOT_MODIFIED;
+    }
+
+    private void closeIdleConnections() {
+        synchronized (mIdleConnections) {
+            for (DefaultHttpServerConnection conn : mIdleConnections) {
+                try {
+                    conn.shutdown();
+                } catch (IOException ignored) {
+                    // safe to ignore
+                }
+            }
+            mIdleConnections.clear();
+        }
+    }
+
+    private static void closeConnection(DefaultHttpServerConnection conn, Socket socket) {
+        try {
+            if (conn.isOpen()) {
+                conn.close();
+            } else {
+                socket.close();
+            }
+        } catch (IOException ignored) {
+            // safe to ignore
+        } catch (UnsupportedOperationException e) {
+            // DefaultHttpServerConnection's close() throws an
+            // UnsupportedOperationException for SSL sockets.
+            try {
+                conn.shutdown();
+            } catch (IOException ignored) {
+                // safe to ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.webkit.cts;
+
+import org.apache.http.impl.cookie.DateUtils;
+
+import java.util.Date;
+
+/**
+ * Formats the dates of HTTP headers. The format only has a resolution of a
+ * second, so the recently formatted seconds are remembered instead of being
+ * formatted again for every response.
+ */
+final class HttpDates {
+
+    private static final int CACHE_SIZE = 16;
+
+    private static final class FormattedSecond {
+        final long mSecond;
+        final String mText;
+
+        FormattedSecond(long second, String text) {
+            mSecond = second;
+            mText = text;
+        }
+    }
+
+    /** Indexed by the second modulo the cache size. */
+    private static final FormattedSecond[] sCache = new FormattedSecond[CACHE_SIZE];
+
+    private HttpDates() {
+    }
+
+    /**
+     * Returns the given time in the RFC 1123 format of HTTP dates.
+     */
+    static String format(long timeMillis) {
+        long second = timeMillis / 1000;
+        if (timeMillis < 0 && second * 1000 != timeMillis) {
+            second--;
+        }
+        int index = (int) (second & (CACHE_SIZE - 1));
+        FormattedSecond formatted = sCache[index];
+        if (formatted == null || formatted.mSecond != second) {
+            formatted = new FormattedSecond(second, DateUtils.formatDate(
+                    new Date(second * 1000), DateUtils.PATTERN_RFC1123));
+            sCache[index] = formatted;
+        }
+        return formatted.mText;
+    }
+}
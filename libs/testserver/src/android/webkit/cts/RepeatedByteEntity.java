@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.webkit.cts;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An entity which consists of a single byte value repeated a number of times.
+ * The content is generated while it is written, so arbitrarily large payloads
+ * need neither memory nor a file.
+ */
+final class RepeatedByteEntity extends AbstractHttpEntity {
+
+    private static final int BLOCK_SIZE = 16 * 1024;
+
+    private final byte mValue;
+    private final long mLength;
+
+    RepeatedByteEntity(byte value, long length, String contentType) {
+        mValue = value;
+        mLength = length;
+        setContentType(contentType);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return mLength;
+    }
+
+    @Override
+    public InputStream getContent() {
+        return new InputStream() {
+            private long mRemaining = mLength;
+
+            @Override
+            public int read() {
+                if (mRemaining == 0) {
+                    return -1;
+                }
+                mRemaining--;
+                return mValue & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) {
+                if (count == 0) {
+                    return 0;
+                }
+                if (mRemaining == 0) {
+                    return -1;
+                }
+                int n = (int) Math.min(count, mRemaining);
+                Arrays.fill(buffer, offset, offset + n, mValue);
+                mRemaining -= n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, mRemaining);
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        byte[] block = new byte[(int) Math.min(BLOCK_SIZE, mLength)];
+        Arrays.fill(block, mValue);
+        for (long remaining = mLength; remaining > 0; remaining -= block.length) {
+            out.write(block, 0, (int) Math.min(block.length, remaining));
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -20,7 +20,6 @@ import org.apache.http.RequestLine;
 import org.apache.http.StatusLine;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.DefaultHttpServerConnection;
-import org.apache.http.impl.cookie.DateUtils;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreProtocolPNames;
@@ -40,7 +39,6 @@ import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
@@ -71,6 +69,7 @@ public class TestWebServer {
     private static TestWebServer sInstance;
     private static TestWebServer sSecureInstance;
     private static Hashtable<Integer, String> sReasons;
+    private static Hashtable<Integer, ByteArrayEntity> sReasonEntities;
 
     private final ServerThread mServerThread;
     private String mServerUri;
@@ -78,6 +77,8 @@ public class TestWebServer {
 
     private static class Response {
         final byte[] mResponseData;
+        final ByteArrayEntity mEntity;
+        final String mContentLength;
         final List<Pair<String, String>> mResponseHeaders;
         final boolean mIsRedirect;
         final Runnable mResponseAction;
@@ -88,6 +89,9 @@ public class TestWebServer {
             mIsRedirect = isRedirect;
             mIsNotFound = isNotFound;
             mResponseData = responseData;
+            // The entity only reads the data, so it can be shared by all the requests.
+            mEntity = createEntity(responseData);
+            mContentLength = Long.toString(mEntity.getContentLength());
             mResponseHeaders = responseHeaders == null ?
                     new ArrayList<Pair<String, String>>() : responseHeaders;
             mResponseAction = responseAction;
@@ -425,9 +429,8 @@ public class TestWebServer {
             if (response.mResponseAction != null) response.mResponseAction.run();
 
             httpResponse = createResponse(HttpStatus.SC_OK);
-            ByteArrayEntity entity = createEntity(response.mResponseData);
-            httpResponse.setEntity(entity);
-            httpResponse.setHeader("Content-Length", "" + entity.getContentLength());
+            httpResponse.setEntity(response.mEntity);
+            httpResponse.setHeader("Content-Length", response.mContentLength);
             for (Pair<String, String> header : response.mResponseHeaders) {
                 httpResponse.addHeader(header.first, header.second);
             }
@@ -440,7 +443,7 @@ public class TestWebServer {
     }
 
     private void setDateHeaders(HttpResponse response) {
-        response.addHeader("Date", DateUtils.formatDate(new Date(), DateUtils.PATTERN_RFC1123));
+        response.addHeader("Date", HttpDates.format(System.currentTimeMillis()));
     }
 
     /**
@@ -448,7 +451,7 @@ public class TestWebServer {
      */
     private HttpResponse createResponse(int status) {
         HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_0, status, null);
-        String reason = null;
+        ByteArrayEntity entity = null;
 
         // This synchronized silences findbugs.
         synchronized (TestWebServer.class) {
@@ -458,19 +461,26 @@ public class TestWebServer {
                 sReasons.put(HttpStatus.SC_NOT_FOUND, "Not Found");
                 sReasons.put(HttpStatus.SC_FORBIDDEN, "Forbidden");
                 sReasons.put(HttpStatus.SC_MOVED_TEMPORARILY, "Moved Temporarily");
+                sReasonEntities = new Hashtable<Integer, ByteArrayEntity>();
             }
             // Fill in error reason. Avoid use of the ReasonPhraseCatalog, which is
             // Locale-dependent.
-            reason = sReasons.get(status);
+            String reason = sReasons.get(status);
+            if (reason != null) {
+                entity = sReasonEntities.get(status);
+                if (entity == null) {
+                    StringBuffer buf = new StringBuffer("<html><head><title>");
+                    buf.append(reason);
+                    buf.append("</title></head><body>");
+                    buf.append(reason);
+                    buf.append("</body></html>");
+                    entity = createEntity(buf.toString().getBytes());
+                    sReasonEntities.put(status, entity);
+                }
+            }
         }
 
-        if (reason != null) {
-            StringBuffer buf = new StringBuffer("<html><head><title>");
-            buf.append(reason);
-            buf.append("</title></head><body>");
-            buf.append(reason);
-            buf.append("</body></html>");
-            ByteArrayEntity entity = createEntity(buf.toString().getBytes());
+        if (entity != null) {
             response.setEntity(entity);
             response.setHeader("Content-Length", "" + entity.getContentLength());
         }
@@ -480,7 +490,7 @@ public class TestWebServer {
     /**
      * Create a string entity for the given content.
      */
-    private ByteArrayEntity createEntity(byte[] data) {
+    private static ByteArrayEntity createEntity(byte[] data) {
         ByteArrayEntity entity = new ByteArrayEntity(data);
         entity.setContentType("text/html");
         return entity;
@@ -26,6 +26,8 @@ import com.google.common.collect.Iterables;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -34,6 +36,7 @@ import java.util.Set;
 import java.util.regex.Pattern;
 import vogar.commands.Command;
 import vogar.util.Log;
+import vogar.util.SubstringMatcher;
 
 /**
  * A database of expected outcomes. Entries in this database come in two forms.
@@ -48,11 +51,21 @@ import vogar.util.Log;
  *
  * <p>If an outcome matches both an outcome expectation and a failure
  * expectation, the outcome expectation will be returned.
+ *
+ * <p>Names and their packages are looked up in a single pass over the name.
+ * Failure expectations given as a substring are matched by finding all
+ * substrings in the output in one pass; only those given as a pattern run a
+ * regex.
  */
 public final class ExpectationStore {
     private static final int PATTERN_FLAGS = Pattern.MULTILINE | Pattern.DOTALL;
     private final Map<String, Expectation> outcomes = new LinkedHashMap<String, Expectation>();
     private final Map<String, Expectation> failures = new LinkedHashMap<String, Expectation>();
+    /** The literal substring of each failure expectation that has one, by failure name. */
+    private final Map<String, String> failureSubstrings = new HashMap<String, String>();
+    private final NameIndex outcomeNames = new NameIndex();
+    /** The failures prepared for matching, or null if not prepared since the last change. */
+    private volatile CompiledFailures compiledFailures;
 
     private ExpectationStore() {}
 
@@ -80,10 +93,9 @@ public final class ExpectationStore {
             return exactNameMatch;
         }
 
-        for (Map.Entry<String, Expectation> entry : failures.entrySet()) {
-            if (entry.getValue().matches(outcome)) {
-                return entry.getValue();
-            }
+        Expectation failure = compileFailures().get(outcome);
+        if (failure != null) {
+            return failure;
         }
 
         Expectation byName = getByNameOrPackage(outcome.getName());
@@ -91,19 +103,16 @@ public final class ExpectationStore {
     }
 
     private Expectation getByNameOrPackage(String name) {
-        while (true) {
-            Expectation expectation = outcomes.get(name);
-            if (expectation != null) {
-                return expectation;
-            }
-
-            int dotOrHash = Math.max(name.lastIndexOf('.'), name.lastIndexOf('#'));
-            if (dotOrHash == -1) {
-                return null;
-            }
+        return outcomeNames.getByNameOrPackage(name);
+    }
 
-            name = name.substring(0, dotOrHash);
+    private CompiledFailures compileFailures() {
+        CompiledFailures result = compiledFailures;
+        if (result == null) {
+            result = new CompiledFailures(failures, failureSubstrings);
+            compiledFailures = result;
         }
+        return result;
     }
 
     public static ExpectationStore parse(Set<File> expectationFiles, ModeId mode) throws IOException {
@@ -143,6 +152,7 @@ public final class ExpectationStore {
         boolean isFailure = false;
         Result result = Result.SUCCESS;
         Pattern pattern = Expectation.MATCH_ALL_PATTERN;
+        String substring = null;
         Set<String> names = new LinkedHashSet<String>();
         Set<String> tags = new LinkedHashSet<String>();
         Set<ModeId> modes = null;
@@ -163,8 +173,10 @@ public final class ExpectationStore {
                 names.add(reader.nextString());
             } else if (name.equals("pattern")) {
                 pattern = Pattern.compile(reader.nextString(), PATTERN_FLAGS);
+                substring = null;
             } else if (name.equals("substring")) {
-                pattern = Pattern.compile(".*" + Pattern.quote(reader.nextString()) + ".*", PATTERN_FLAGS);
+                substring = reader.nextString();
+                pattern = Pattern.compile(".*" + Pattern.quote(substring) + ".*", PATTERN_FLAGS);
             } else if (name.equals("tags")) {
                 readStrings(reader, tags);
             } else if (name.equals("description")) {
@@ -194,6 +206,14 @@ public final class ExpectationStore {
             if (map.put(name, expectation) != null) {
                 throw new IllegalArgumentException("Duplicate expectations for " + name);
             }
+            if (!isFailure) {
+                outcomeNames.put(name, expectation);
+            } else if (substring != null) {
+                failureSubstrings.put(name, substring);
+            }
+        }
+        if (isFailure) {
+            compiledFailures = null;
         }
     }
 
@@ -252,4 +272,141 @@ public final class ExpectationStore {
             }
         }
     }
+
+    /**
+     * The outcome expectations by name, in an open addressing table keyed by
+     * {@link String#hashCode()}. Since the hash of a string is built up from
+     * its prefixes, a single pass over a name yields the hashes of all of its
+     * package and class prefixes, and they are looked up without creating
+     * substrings.
+     */
+    private static final class NameIndex {
+        private String[] names = new String[64];
+        private Expectation[] expectations = new Expectation[64];
+        private int size;
+
+        void put(String name, Expectation expectation) {
+            if (2 * (size + 1) > names.length) {
+                String[] oldNames = names;
+                Expectation[] oldExpectations = expectations;
+                names = new String[oldNames.length * 2];
+                expectations = new Expectation[oldExpectations.length * 2];
+                for (int i = 0; i < oldNames.length; i++) {
+                    if (oldNames[i] != null) {
+                        insert(oldNames[i], oldExpectations[i]);
+                    }
+                }
+            }
+            if (insert(name, expectation)) {
+                size++;
+            }
+        }
+
+        private boolean insert(String name, Expectation expectation) {
+            int mask = names.length - 1;
+            int slot = spread(name.hashCode()) & mask;
+            for (; names[slot] != null; slot = (slot + 1) & mask) {
+                if (names[slot].equals(name)) {
+                    expectations[slot] = expectation;
+                    return false;
+                }
+            }
+            names[slot] = name;
+            expectations[slot] = expectation;
+            return true;
+        }
+
+        /**
+         * Returns the expectation of {@code name}, or of its longest prefix
+         * that ends before a '.' or '#', or null if there is none.
+         */
+        Expectation getByNameOrPackage(String name) {
+            Expectation result = null;
+            int hash = 0;
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c == '.' || c == '#') {
+                    Expectation byPrefix = get(name, i, hash);
+                    if (byPrefix != null) {
+                        result = byPrefix;
+                    }
+                }
+                hash = 31 * hash + c;
+            }
+            Expectation byName = get(name, name.length(), hash);
+            return byName != null ? byName : result;
+        }
+
+        /** Returns the expectation of the first {@code length} chars of {@code name}. */
+        private Expectation get(String name, int length, int hash) {
+            int mask = names.length - 1;
+            for (int slot = spread(hash) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+                String candidate = names[slot];
+                if (candidate.length() == length && candidate.hashCode() == hash
+                        && name.startsWith(candidate)) {
+                    return expectations[slot];
+                }
+            }
+            return null;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * The failure expectations in order. Those with a literal substring are
+     * matched by a single {@link SubstringMatcher} pass over the output.
+     */
+    private static final class CompiledFailures {
+        private final Expectation[] expectations;
+        /** The index of each expectation's substring in the matcher, or -1. */
+        private final int[] substringIndices;
+        private final SubstringMatcher matcher;
+
+        CompiledFailures(Map<String, Expectation> failures, Map<String, String> substrings) {
+            expectations = new Expectation[failures.size()];
+            substringIndices = new int[failures.size()];
+            List<String> literals = new ArrayList<String>();
+            int i = 0;
+            for (Map.Entry<String, Expectation> entry : failures.entrySet()) {
+                expectations[i] = entry.getValue();
+                String substring = substrings.get(entry.getKey());
+                if (substring != null) {
+                    substringIndices[i] = literals.size();
+                    literals.add(substring);
+                } else {
+                    substringIndices[i] = -1;
+                }
+                i++;
+            }
+            matcher = literals.isEmpty() ? null : new SubstringMatcher(literals);
+        }
+
+        /** Returns the first failure expectation matching {@code outcome}, or null. */
+        Expectation get(Outcome outcome) {
+            boolean[] found = null;
+            for (int i = 0; i < expectations.length; i++) {
+                Expectation expectation = expectations[i];
+                int substringIndex = substringIndices[i];
+                if (substringIndex == -1) {
+                    if (expectation.matches(outcome)) {
+                        return expectation;
+                    }
+                    continue;
+                }
+                if (!expectation.resultMatches(outcome)) {
+                    continue;
+                }
+                if (found == null) {
+                    found = matcher.find(outcome.getOutput());
+                }
+                if (found[substringIndex]) {
+                    return expectation;
+                }
+            }
+            return null;
+        }
+    }
 }
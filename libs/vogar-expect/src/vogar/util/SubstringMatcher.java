@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds which of a fixed set of literal strings occur in a text, in a single
+ * pass over the text. This is an Aho-Corasick automaton.
+ */
+public final class SubstringMatcher {
+
+    private static final int[] NO_MATCHES = new int[0];
+
+    /** The characters of the transitions of each state, sorted. */
+    private final char[][] transitionChars;
+    /** The target states of the transitions of each state. */
+    private final int[][] transitionTargets;
+    /** The state to fall back to when a state has no transition for a character. */
+    private final int[] failures;
+    /** The indices of the strings which end in each state. */
+    private final int[][] matches;
+    private final int count;
+
+    /**
+     * @param strings the strings to find. Their indices in this list identify
+     *     them in {@link #find}.
+     */
+    public SubstringMatcher(List<String> strings) {
+        this.count = strings.size();
+
+        // Build the trie of the strings.
+        List<StringBuilder> chars = new ArrayList<StringBuilder>();
+        List<List<Integer>> targets = new ArrayList<List<Integer>>();
+        List<List<Integer>> ends = new ArrayList<List<Integer>>();
+        addState(chars, targets, ends);
+        for (int i = 0; i < strings.size(); i++) {
+            String s = strings.get(i);
+            int state = 0;
+            for (int c = 0; c < s.length(); c++) {
+                int index = chars.get(state).indexOf(String.valueOf(s.charAt(c)));
+                if (index == -1) {
+                    chars.get(state).append(s.charAt(c));
+                    targets.get(state).add(chars.size());
+                    state = addState(chars, targets, ends);
+                } else {
+                    state = targets.get(state).get(index);
+                }
+            }
+            ends.get(state).add(i);
+        }
+
+        int states = chars.size();
+        transitionChars = new char[states][];
+        transitionTargets = new int[states][];
+        for (int state = 0; state < states; state++) {
+            char[] stateChars = chars.get(state).toString().toCharArray();
+            int[] stateTargets = new int[stateChars.length];
+            char[] sorted = stateChars.clone();
+            Arrays.sort(sorted);
+            for (int t = 0; t < stateChars.length; t++) {
+                stateTargets[Arrays.binarySearch(sorted, stateChars[t])] =
+                        targets.get(state).get(t);
+            }
+            transitionChars[state] = sorted;
+            transitionTargets[state] = stateTargets;
+        }
+
+        // Compute the failure states breadth-first, so that the failure state
+        // of a state's parent is known when the state is visited. A state
+        // also matches everything its failure state matches.
+        failures = new int[states];
+        matches = new int[states][];
+        matches[0] = toArray(ends.get(0));
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int child : transitionTargets[0]) {
+            matches[child] = merge(ends.get(child), matches[0]);
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int t = 0; t < transitionChars[state].length; t++) {
+                char c = transitionChars[state][t];
+                int child = transitionTargets[state][t];
+                int failure = failures[state];
+                int next;
+                while ((next = next(failure, c)) == -1 && failure != 0) {
+                    failure = failures[failure];
+                }
+                failures[child] = (next == -1) ? 0 : next;
+                matches[child] = merge(ends.get(child), matches[failures[child]]);
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Returns which strings occur in {@code text}, indexed like the strings
+     * this matcher was created with.
+     */
+    public boolean[] find(CharSequence text) {
+        boolean[] found = new boolean[count];
+        int state = 0;
+        for (int i : matches[0]) {
+            found[i] = true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = next(state, c)) == -1 && state != 0) {
+                state = failures[state];
+            }
+            state = (next == -1) ? 0 : next;
+            for (int match : matches[state]) {
+                found[match] = true;
+            }
+        }
+        return found;
+    }
+
+    private int next(int state, char c) {
+        int index = Arrays.binarySearch(transitionChars[state], c);
+        return index < 0 ? -1 : transitionTargets[state][index];
+    }
+
+    private static int addState(List<StringBuilder> chars, List<List<Integer>> targets,
+            List<List<Integer>> ends) {
+        chars.add(new StringBuilder());
+        targets.add(new ArrayList<Integer>());
+        ends.add(new ArrayList<Integer>());
+        return chars.size() - 1;
+    }
+
+    private static int[] merge(List<Integer> ends, int[] inherited) {
+        if (ends.isEmpty()) {
+            return inherited;
+        }
+        int[] result = Arrays.copyOf(toArray(ends), ends.size() + inherited.length);
+        System.arraycopy(inherited, 0, result, ends.size(), inherited.length);
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        if (values.isEmpty()) {
+            return NO_MATCHES;
+        }
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.signature.cts.tests;
+
+import android.signature.cts.FailureType;
+import android.signature.cts.JDiffClassDescription;
+import android.signature.cts.ResultObserver;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures {@link JDiffClassDescription#checkSignatureCompliance()} on the host JVM. The API
+ * descriptions are generated from a set of JDK classes and their public nested classes, and then
+ * checked against the same classes, like the signature test checks current.xml against the
+ * classes of the device.
+ *
+ * Usage: java -cp signature-tests.jar:signature-hostside.jar
+ *     android.signature.cts.tests.JDiffClassDescriptionBenchmark [ROUNDS]
+ *
+ * The first round is the one that matters, since the signature test checks every class once.
+ * The failures are reported as a count, so that changes to the checker can be verified to report
+ * the same results.
+ */
+public class JDiffClassDescriptionBenchmark {
+
+    private static final Class<?>[] SEED_CLASSES = {
+        Object.class, String.class, StringBuilder.class, Character.class, Integer.class,
+        Long.class, Double.class, Math.class, System.class, Thread.class, ThreadLocal.class,
+        Class.class, ClassLoader.class, Enum.class, Throwable.class, Runtime.class,
+        java.util.ArrayList.class, java.util.LinkedList.class, java.util.HashMap.class,
+        java.util.TreeMap.class, java.util.LinkedHashMap.class, java.util.HashSet.class,
+        java.util.TreeSet.class, java.util.ArrayDeque.class, java.util.PriorityQueue.class,
+        java.util.Collections.class, java.util.Arrays.class, java.util.Calendar.class,
+        java.util.GregorianCalendar.class, java.util.Locale.class, java.util.Formatter.class,
+        java.util.Scanner.class, java.util.Properties.class, java.util.BitSet.class,
+        java.util.Vector.class, java.util.Hashtable.class, java.util.Random.class,
+        java.util.concurrent.ConcurrentHashMap.class, java.util.concurrent.Executors.class,
+        java.util.concurrent.ThreadPoolExecutor.class, java.util.concurrent.TimeUnit.class,
+        java.util.concurrent.locks.ReentrantLock.class,
+        java.util.concurrent.locks.ReentrantReadWriteLock.class,
+        java.util.concurrent.atomic.AtomicInteger.class, java.util.regex.Pattern.class,
+        java.util.regex.Matcher.class, java.util.zip.ZipFile.class, java.io.File.class,
+        java.io.PrintStream.class, java.io.PrintWriter.class, java.io.BufferedReader.class,
+        java.io.DataInputStream.class, java.io.DataOutputStream.class,
+        java.io.ObjectInputStream.class, java.io.ObjectOutputStream.class,
+        java.io.RandomAccessFile.class, java.net.URI.class, java.net.URL.class,
+        java.net.Socket.class, java.net.ServerSocket.class, java.net.InetAddress.class,
+        java.nio.ByteBuffer.class, java.nio.CharBuffer.class, java.nio.channels.FileChannel.class,
+        java.nio.charset.Charset.class, java.math.BigInteger.class, java.math.BigDecimal.class,
+        java.text.SimpleDateFormat.class, java.text.DecimalFormat.class,
+        java.text.MessageFormat.class, java.security.MessageDigest.class,
+        java.security.KeyStore.class, java.lang.reflect.Proxy.class,
+        java.lang.ref.WeakReference.class,
+    };
+
+    private static class CountingObserver implements ResultObserver {
+        int mFailures;
+
+        @Override
+        public void notifyFailure(FailureType type, String name, String errorMessage) {
+            mFailures++;
+        }
+    }
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        for (Class<?> seed : SEED_CLASSES) {
+            addWithNestedClasses(seed, classes);
+        }
+        int members = 0;
+        for (Class<?> clz : classes) {
+            members += getApiMethods(clz).size() + getApiConstructors(clz).size()
+                    + getApiFields(clz).size();
+        }
+        System.out.println(classes.size() + " classes, " + members + " members");
+
+        // The checker is silent on success, but logs classes it cannot load.
+        for (int round = 1; round <= rounds; round++) {
+            // descriptions are modified by the check, so they are created for every round
+            CountingObserver observer = new CountingObserver();
+            List<JDiffClassDescription> descriptions = new ArrayList<JDiffClassDescription>();
+            for (Class<?> clz : classes) {
+                descriptions.add(describe(clz, observer));
+            }
+
+            long start = System.nanoTime();
+            for (JDiffClassDescription description : descriptions) {
+                description.checkSignatureCompliance();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println(String.format("round %d: %.1f ms, %d failures", round,
+                    elapsed / 1e6, observer.mFailures));
+        }
+    }
+
+    private static void addWithNestedClasses(Class<?> clz, Set<Class<?>> classes) {
+        if (!Modifier.isPublic(clz.getModifiers()) || !classes.add(clz)) {
+            return;
+        }
+        for (Class<?> nested : clz.getDeclaredClasses()) {
+            addWithNestedClasses(nested, classes);
+        }
+    }
+
+    private static JDiffClassDescription describe(Class<?> clz, ResultObserver observer) {
+        String pkg = clz.getPackage().getName();
+        String name = clz.getCanonicalName().substring(pkg.length() + 1);
+        JDiffClassDescription description = new JDiffClassDescription(pkg, name, observer);
+        description.setType(clz.isInterface()
+                ? JDiffClassDescription.JDiffType.INTERFACE
+                : JDiffClassDescription.JDiffType.CLASS);
+        // the API xml has no interface, enum or annotation flags
+        description.setModifier(clz.getModifiers() & (Modifier.PUBLIC | Modifier.PROTECTED
+                | Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL | Modifier.ABSTRACT));
+        if (clz.getSuperclass() != null) {
+            description.setExtendsClass(clz.getSuperclass().getCanonicalName());
+        }
+        for (Class<?> implemented : clz.getInterfaces()) {
+            description.addImplInterface(implemented.getCanonicalName());
+        }
+
+        for (Field field : getApiFields(clz)) {
+            description.addField(new JDiffClassDescription.JDiffField(field.getName(),
+                    typeToString(field.getGenericType()), field.getModifiers()));
+        }
+        for (Constructor<?> constructor : getApiConstructors(clz)) {
+            JDiffClassDescription.JDiffConstructor jdiffConstructor =
+                    new JDiffClassDescription.JDiffConstructor(clz.getSimpleName(),
+                            constructor.getModifiers());
+            Type[] params = constructor.getGenericParameterTypes();
+            // the implicit outer instance of inner classes is not part of the API
+            int first = params.length == constructor.getParameterTypes().length
+                    && clz.isMemberClass() && !Modifier.isStatic(clz.getModifiers()) ? 1 : 0;
+            for (int i = first; i < params.length; i++) {
+                jdiffConstructor.addParam(typeToString(params[i]));
+            }
+            description.addConstructor(jdiffConstructor);
+        }
+        for (Method method : getApiMethods(clz)) {
+            // like jdiff, interface methods are not described as abstract
+            int modifiers = clz.isInterface()
+                    ? method.getModifiers() & ~Modifier.ABSTRACT
+                    : method.getModifiers();
+            JDiffClassDescription.JDiffMethod jdiffMethod = new JDiffClassDescription.JDiffMethod(
+                    method.getName(), modifiers, typeToString(method.getGenericReturnType()));
+            for (Type param : method.getGenericParameterTypes()) {
+                jdiffMethod.addParam(typeToString(param));
+            }
+            description.addMethod(jdiffMethod);
+        }
+        return description;
+    }
+
+    private static boolean isApi(int modifiers) {
+        return (modifiers & (Modifier.PUBLIC | Modifier.PROTECTED)) != 0;
+    }
+
+    private static List<Field> getApiFields(Class<?> clz) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Field field : clz.getDeclaredFields()) {
+            if (isApi(field.getModifiers()) && !field.isSynthetic()) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private static List<Constructor<?>> getApiConstructors(Class<?> clz) {
+        List<Constructor<?>> constructors = new ArrayList<Constructor<?>>();
+        for (Constructor<?> constructor : clz.getDeclaredConstructors()) {
+            if (isApi(constructor.getModifiers()) && !constructor.isSynthetic()) {
+                constructors.add(constructor);
+            }
+        }
+        return constructors;
+    }
+
+    private static List<Method> getApiMethods(Class<?> clz) {
+        List<Method> methods = new ArrayList<Method>();
+        for (Method method : clz.getDeclaredMethods()) {
+            if (isApi(method.getModifiers()) && !method.isSynthetic() && !method.isBridge()) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    /** Formats a type like the API xml file does. */
+    private static String typeToString(Type type) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) type;
+            StringBuilder sb = new StringBuilder(typeToString(pt.getRawType())).append("<");
+            Type[] arguments = pt.getActualTypeArguments();
+            for (int i = 0; i < arguments.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(typeToString(arguments[i]));
+            }
+            return sb.append(">").toString();
+        } else if (type instanceof TypeVariable) {
+            return ((TypeVariable<?>) type).getName();
+        } else if (type instanceof Class) {
+            return ((Class<?>) type).getCanonicalName();
+        } else if (type instanceof GenericArrayType) {
+            return typeToString(((GenericArrayType) type).getGenericComponentType()) + "[]";
+        } else if (type instanceof WildcardType) {
+            WildcardType wt = (WildcardType) type;
+            if (wt.getLowerBounds().length > 0) {
+                return "? super " + typeToString(wt.getLowerBounds()[0]);
+            }
+            Type upperBound = wt.getUpperBounds()[0];
+            return upperBound == Object.class ? "?" : "? extends " + typeToString(upperBound);
+        }
+        throw new IllegalArgumentException("Unknown type: " + type);
+    }
+}
@@ -26,6 +26,7 @@ import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -53,10 +54,28 @@ public class JDiffClassDescription {
         INTERFACE, CLASS
     }
 
+    /**
+     * The classes found so far by their canonical name. Nested classes of the same top level
+     * class share the lookup of the top level class.
+     */
+    private static final Map<String, Class<?>> sClassCache =
+            Collections.synchronizedMap(new HashMap<String, Class<?>>());
+
+    /**
+     * The field maps built so far, see {@link #buildFieldMap(Class)}. Subclasses and
+     * implementations reuse the maps of their super types.
+     */
+    private static final Map<Class<?>, Map<String, Field>> sFieldMapCache =
+            Collections.synchronizedMap(new HashMap<Class<?>, Map<String, Field>>());
+
     @SuppressWarnings("unchecked")
     private Class<?> mClass;
     // A map of field name to field of the fields contained in {@code mClass}
     private Map<String, Field> mClassFieldMap;
+    // The declared methods of {@code mClass} by name and number of parameters
+    private Map<String, List<Method>> mClassMethodMap;
+    // The declared constructors of {@code mClass} by number of parameters in the API
+    private Map<Integer, List<Constructor<?>>> mClassConstructorMap;
 
     private String mPackageName;
     private String mShortClassName;
@@ -442,12 +461,16 @@ public class JDiffClassDescription {
         checkClassCompliance();
         if (mClass != null) {
             mClassFieldMap = buildFieldMap(mClass);
+            mClassMethodMap = buildMethodMap(mClass);
+            mClassConstructorMap = buildConstructorMap(mClass);
             checkFieldsCompliance();
             checkConstructorCompliance();
             checkMethodCompliance();
-        } else {
-            mClassFieldMap = null;
         }
+        // the maps are only needed during the check
+        mClassFieldMap = null;
+        mClassMethodMap = null;
+        mClassConstructorMap = null;
     }
 
     /**
@@ -581,19 +604,44 @@ public class JDiffClassDescription {
      * @param method description of the method to find
      * @return the reflected method, or null if not found.
      */
-    @SuppressWarnings("unchecked")
     private Method findMatchingMethod(JDiffMethod method) {
-        Method[] methods = mClass.getDeclaredMethods();
-
-        for (Method m : methods) {
-            if (matches(method, m)) {
-                return m;
+        List<Method> methods = mClassMethodMap.get(
+                getMethodKey(method.mName, method.mParamList.size()));
+        if (methods != null) {
+            for (Method m : methods) {
+                if (matches(method, m)) {
+                    return m;
+                }
             }
         }
 
         return null;
     }
 
+    private static String getMethodKey(String name, int numberOfParams) {
+        return name + "/" + numberOfParams;
+    }
+
+    /**
+     * Indexes the declared methods of a class by name and number of parameters. The parameter
+     * types of the API xml file may be type variables, so they cannot be part of the key, and
+     * are compared by {@link #matches(JDiffMethod, Method)}. Each list keeps the order of
+     * {@link Class#getDeclaredMethods()}.
+     */
+    private static Map<String, List<Method>> buildMethodMap(Class<?> testClass) {
+        Map<String, List<Method>> methodMap = new HashMap<String, List<Method>>();
+        for (Method m : testClass.getDeclaredMethods()) {
+            String key = getMethodKey(m.getName(), m.getParameterTypes().length);
+            List<Method> methods = methodMap.get(key);
+            if (methods == null) {
+                methods = new ArrayList<Method>(1);
+                methodMap.put(key, methods);
+            }
+            methods.add(m);
+        }
+        return methodMap;
+    }
+
     /**
      * Compares the parameter from the API and the parameter from
      * reflection.
@@ -668,44 +716,69 @@ public class JDiffClassDescription {
      * @param jdiffDes constructor description to find.
      * @return reflected constructor, or null if not found.
      */
-    @SuppressWarnings("unchecked")
     private Constructor<?> findMatchingConstructor(JDiffConstructor jdiffDes) {
-        for (Constructor<?> c : mClass.getDeclaredConstructors()) {
+        ArrayList<String> jdiffParamList = jdiffDes.mParamList;
+        List<Constructor<?>> constructors = mClassConstructorMap.get(jdiffParamList.size());
+        if (constructors == null) {
+            return null;
+        }
+        for (Constructor<?> c : constructors) {
             Type[] params = c.getGenericParameterTypes();
-            boolean isStaticClass = ((mClass.getModifiers() & Modifier.STATIC) != 0);
-
-            int startParamOffset = 0;
-            int numberOfParams = params.length;
-
-            // non-static inner class -> skip implicit parent pointer
-            // as first arg
-            if (mClass.isMemberClass() && !isStaticClass && params.length >= 1) {
-                startParamOffset = 1;
-                --numberOfParams;
-            }
-
-            ArrayList<String> jdiffParamList = jdiffDes.mParamList;
-            if (jdiffParamList.size() == numberOfParams) {
-                boolean isFound = true;
-                // i counts jdiff params, j counts reflected params
-                int i = 0;
-                int j = startParamOffset;
-                while (i < jdiffParamList.size()) {
-                    if (!compareParam(jdiffParamList.get(i), params[j])) {
-                        isFound = false;
-                        break;
-                    }
-                    ++i;
-                    ++j;
-                }
-                if (isFound) {
-                    return c;
+            boolean isFound = true;
+            // i counts jdiff params, j counts reflected params
+            int i = 0;
+            int j = getImplicitParamCount(mClass, params.length);
+            while (i < jdiffParamList.size()) {
+                if (!compareParam(jdiffParamList.get(i), params[j])) {
+                    isFound = false;
+                    break;
                 }
+                ++i;
+                ++j;
+            }
+            if (isFound) {
+                return c;
             }
         }
         return null;
     }
 
+    /**
+     * Returns the number of leading constructor parameters which are not part of the API.
+     *
+     * @param testClass the class declaring the constructor
+     * @param numberOfParams the number of parameters of the constructor
+     */
+    private static int getImplicitParamCount(Class<?> testClass, int numberOfParams) {
+        boolean isStaticClass = ((testClass.getModifiers() & Modifier.STATIC) != 0);
+        // non-static inner class -> skip implicit parent pointer
+        // as first arg
+        if (testClass.isMemberClass() && !isStaticClass && numberOfParams >= 1) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Indexes the declared constructors of a class by the number of their parameters in the
+     * API. Each list keeps the order of {@link Class#getDeclaredConstructors()}.
+     */
+    private static Map<Integer, List<Constructor<?>>> buildConstructorMap(Class<?> testClass) {
+        Map<Integer, List<Constructor<?>>> constructorMap =
+                new HashMap<Integer, List<Constructor<?>>>();
+        for (Constructor<?> c : testClass.getDeclaredConstructors()) {
+            int numberOfParams = c.getGenericParameterTypes().length;
+            numberOfParams -= getImplicitParamCount(testClass, numberOfParams);
+            List<Constructor<?>> constructors = constructorMap.get(numberOfParams);
+            if (constructors == null) {
+                constructors = new ArrayList<Constructor<?>>(1);
+                constructorMap.put(numberOfParams, constructors);
+            }
+            constructors.add(c);
+        }
+        return constructorMap;
+    }
+
     /**
      * Checks all fields in test class for compliance with the API
      * xml.
@@ -998,15 +1071,24 @@ public class JDiffClassDescription {
     private Class<?> findMatchingClass() {
         // even if there are no . in the string, split will return an
         // array of length 1
+        Class<?> cached = sClassCache.get(mAbsoluteClassName);
+        if (cached != null) {
+            return cached;
+        }
+
         String[] classNameParts = mShortClassName.split("\\.");
         String currentName = mPackageName + "." + classNameParts[0];
 
         try {
             // Check to see if the class we're looking for is the top
             // level class.
-            Class<?> clz = Class.forName(currentName,
-                    false,
-                    this.getClass().getClassLoader());
+            Class<?> clz = sClassCache.get(currentName);
+            if (clz == null) {
+                clz = Class.forName(currentName,
+                        false,
+                        this.getClass().getClassLoader());
+                sClassCache.put(clz.getCanonicalName(), clz);
+            }
             if (clz.getCanonicalName().equals(mAbsoluteClassName)) {
                 return clz;
             }
@@ -1018,6 +1100,7 @@ public class JDiffClassDescription {
                     return null;
                 }
                 if (clz.getCanonicalName().equals(mAbsoluteClassName)) {
+                    sClassCache.put(mAbsoluteClassName, clz);
                     return clz;
                 }
             }
@@ -1193,12 +1276,18 @@ public class JDiffClassDescription {
     }
 
     /**
-     * Scan a class (an its entire inheritance chain) for fields.
+     * Scan a class (an its entire inheritance chain) for fields. The
+     * result is cached, so every class is only scanned once.
      *
      * @return a {@link Map} of fieldName to {@link Field}
      */
     private static Map<String, Field> buildFieldMap(Class testClass) {
-        Map<String, Field> fieldMap = new HashMap<String, Field>();
+        Map<String, Field> fieldMap = sFieldMapCache.get(testClass);
+        if (fieldMap != null) {
+            return fieldMap;
+        }
+
+        fieldMap = new HashMap<String, Field>();
         // Scan the superclass
         if (testClass.getSuperclass() != null) {
             fieldMap.putAll(buildFieldMap(testClass.getSuperclass()));
@@ -1214,6 +1303,8 @@ public class JDiffClassDescription {
             fieldMap.put(field.getName(), field);
         }
 
+        fieldMap = Collections.unmodifiableMap(fieldMap);
+        sFieldMapCache.put(testClass, fieldMap);
         return fieldMap;
     }
 
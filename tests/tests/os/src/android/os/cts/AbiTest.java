@@ -19,10 +19,25 @@ package android.os.cts;
 import android.cts.util.ReadElf;
 
 import java.io.File;
+import java.io.FileFilter;
 
 import junit.framework.TestCase;
 
 public class AbiTest extends TestCase {
+    private static final FileFilter ELF_CANDIDATES = new FileFilter() {
+        @Override
+        public boolean accept(File f) {
+            return f.getName().endsWith(".so") || f.canExecute();
+        }
+    };
+
+    private static final ReadElf.Visitor IGNORE = new ReadElf.Visitor() {
+        @Override
+        public void visit(File file, ReadElf elf) {
+            // Reading the headers rejects any unsupported ELF files.
+        }
+    };
+
     public void testNo64() throws Exception {
         for (String dir : new File("/").list()) {
             if (!dir.equals("data") && !dir.equals("dev") && !dir.equals("proc") && !dir.equals("sys")) {
@@ -40,27 +55,9 @@ public class AbiTest extends TestCase {
             return;
         }
 
-        File[] files = dir.listFiles();
-        if (files == null) {
-            return;
-        }
-
-        for (File f : files) {
-            if (f.isDirectory()) {
-                checkElfFilesInDirectory(f);
-            } else if (f.getName().endsWith(".so") || f.canExecute()) {
-                ReadElf elf = null;
-                try { // TODO: switch to try-with-resources.
-                    elf = ReadElf.read(f);
-                } catch (IllegalArgumentException ignored) {
-                    // If it's not actually an ELF file, we don't care.
-                } finally {
-                    if (elf != null) {
-                        elf.close();
-                    }
-                }
-            }
-        }
+        // Files which aren't ELF files are skipped, symbolic links to directories aren't followed.
+        ReadElf.scanDirectory(dir, ELF_CANDIDATES, IGNORE,
+                Runtime.getRuntime().availableProcessors());
     }
 
     private static boolean isSymbolicLink(File f) throws Exception {
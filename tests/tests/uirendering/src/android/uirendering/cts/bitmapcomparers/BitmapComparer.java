@@ -34,6 +34,28 @@ public abstract class BitmapComparer {
     public abstract boolean verifySame(int[] ideal, int[] given, int offset, int stride, int width,
             int height);
 
+    /**
+     * Returns whether {@link #verifySame} is known to pass for any two identical bitmaps of the
+     * given size. Comparers which do not know return false, so they are always run.
+     */
+    public boolean acceptsIdentical(int width, int height) {
+        return false;
+    }
+
+    /**
+     * Compares the two bitmaps like {@link #verifySame}, but first checks whether they are
+     * identical. Identical bitmaps are accepted right away if the comparer
+     * {@link #acceptsIdentical accepts them}, without running the comparison.
+     */
+    public boolean verifySameOrIdentical(int[] ideal, int[] given, int offset, int stride,
+            int width, int height) {
+        if (width > 0 && height > 0 && acceptsIdentical(width, height)
+                && ComparisonEngine.isIdentical(ideal, given, offset, stride, width, height)) {
+            return true;
+        }
+        return verifySame(ideal, given, offset, stride, width, height);
+    }
+
     /**
      * Compare the two bitmaps using RenderScript, if the comparer
      * {@link supportsRenderScript() supports it}. If it does not, this method will throw an
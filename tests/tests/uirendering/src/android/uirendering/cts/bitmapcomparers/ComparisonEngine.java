@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.uirendering.cts.bitmapcomparers;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The pixel arithmetic of the Java comparers. It does not depend on the Android framework, so
+ * it also runs on a host JVM.
+ *
+ * Large images are split into bands of rows which are compared in parallel. Every result is
+ * computed with the same floating point operations, in the same order, as a single loop over
+ * the pixels would, so the verdicts never depend on the number of threads.
+ */
+final class ComparisonEngine {
+    /** The value of {@link android.graphics.Color#WHITE}. */
+    static final int WHITE = 0xFFFFFFFF;
+
+    /** Images with fewer pixels are compared on the calling thread. */
+    private static final int PARALLEL_MIN_PIXELS = 256 * 1024;
+
+    /** Bands with fewer pixels are not split any further. */
+    private static final int BAND_MIN_PIXELS = 32 * 1024;
+
+    /*
+     * The constants of MSSIMComparer that are not compile time constants, recomputed here so
+     * that the comparer class, which needs RenderScript, is never loaded.
+     */
+    private static final double SSIM_C1 =
+            Math.pow(MSSIMComparer.CONSTANT_L * MSSIMComparer.CONSTANT_K1, 2);
+    private static final double SSIM_C2 =
+            Math.pow(MSSIMComparer.CONSTANT_L * MSSIMComparer.CONSTANT_K2, 2);
+
+    private static final ForkJoinPool sPool =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** The value of a channel divided by 255, as MeanSquaredComparer sums them. */
+    private static final float[] CHANNEL = new float[256];
+
+    /** The weighted channels of the luminosity, as MSSIMComparer adds them up. */
+    private static final double[] RED_INTENSITY = new double[256];
+    private static final double[] GREEN_INTENSITY = new double[256];
+    private static final double[] BLUE_INTENSITY = new double[256];
+
+    static {
+        for (int i = 0 ; i < 256 ; i++) {
+            CHANNEL[i] = i / 255.0f;
+            // Math.pow(x, 1) is exactly x, so the gamma of 1 is left out.
+            RED_INTENSITY[i] = 0.21f * (double) (i / 255f);
+            GREEN_INTENSITY[i] = 0.72f * (double) (i / 255f);
+            BLUE_INTENSITY[i] = 0.07f * (double) (i / 255f);
+        }
+    }
+
+    private ComparisonEngine() {
+    }
+
+    /**
+     * Some work on a range of rows, which returns a count that is summed over all rows.
+     */
+    private interface Rows {
+        long process(int startRow, int endRow);
+    }
+
+    private static final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Rows mRows;
+        private final int mStartRow;
+        private final int mEndRow;
+        private final int mMinRows;
+        long mCount;
+
+        Band(Rows rows, int startRow, int endRow, int minRows) {
+            mRows = rows;
+            mStartRow = startRow;
+            mEndRow = endRow;
+            mMinRows = minRows;
+        }
+
+        @Override
+        protected void compute() {
+            final int rows = mEndRow - mStartRow;
+            if (rows < 2 * mMinRows) {
+                mCount = mRows.process(mStartRow, mEndRow);
+                return;
+            }
+            final int middle = mStartRow + rows / 2;
+            final Band top = new Band(mRows, mStartRow, middle, mMinRows);
+            final Band bottom = new Band(mRows, middle, mEndRow, mMinRows);
+            invokeAll(top, bottom);
+            mCount = top.mCount + bottom.mCount;
+        }
+    }
+
+    /**
+     * Runs the work on all rows, in parallel bands if there are enough pixels.
+     */
+    private static long processRows(int rowCount, long pixelsPerRow, Rows rows) {
+        if (rowCount * pixelsPerRow < PARALLEL_MIN_PIXELS || sPool.getParallelism() < 2) {
+            return rows.process(0, rowCount);
+        }
+        final int minRows = (int) Math.max(1, BAND_MIN_PIXELS / Math.max(1, pixelsPerRow));
+        final Band band = new Band(rows, 0, rowCount, minRows);
+        sPool.invoke(band);
+        return band.mCount;
+    }
+
+    /**
+     * Returns whether all the pixels are exactly the same. It stops at the first difference.
+     */
+    static boolean isIdentical(int[] ideal, int[] given, int offset, int stride, int width,
+            int height) {
+        for (int y = 0 ; y < height ; y++) {
+            final int rowStart = offset + y * stride;
+            final int rowEnd = rowStart + width;
+            for (int index = rowStart ; index < rowEnd ; index++) {
+                if (ideal[index] != given[index]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of pixels which are not exactly the same.
+     */
+    static long countDifferentPixels(final int[] ideal, final int[] given, final int offset,
+            final int stride, final int width, int height) {
+        return processRows(height, width, new Rows() {
+            @Override
+            public long process(int startRow, int endRow) {
+                long count = 0;
+                for (int y = startRow ; y < endRow ; y++) {
+                    final int rowStart = offset + y * stride;
+                    final int rowEnd = rowStart + width;
+                    for (int index = rowStart ; index < rowEnd ; index++) {
+                        count += ideal[index] != given[index] ? 1 : 0;
+                    }
+                }
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of pixels whose sum of the absolute differences of the red, green and
+     * blue channels is greater than the threshold.
+     */
+    static long countPixelsAboveThreshold(final int[] ideal, final int[] given, final int offset,
+            final int stride, final int width, int height, final int threshold) {
+        return processRows(height, width, new Rows() {
+            @Override
+            public long process(int startRow, int endRow) {
+                long count = 0;
+                for (int y = startRow ; y < endRow ; y++) {
+                    final int rowStart = offset + y * stride;
+                    final int rowEnd = rowStart + width;
+                    for (int index = rowStart ; index < rowEnd ; index++) {
+                        count += getChannelError(ideal[index], given[index]) > threshold ? 1 : 0;
+                    }
+                }
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Returns the sum of the absolute differences of the red, green and blue channels.
+     */
+    static int getChannelError(int ideal, int given) {
+        return Math.abs(((ideal >> 16) & 0xFF) - ((given >> 16) & 0xFF))
+                + Math.abs(((ideal >> 8) & 0xFF) - ((given >> 8) & 0xFF))
+                + Math.abs((ideal & 0xFF) - (given & 0xFF));
+    }
+
+    /**
+     * Returns the mean squared error of the sums of the channels of the pixels.
+     *
+     * The float sum is accumulated pixel by pixel in row-major order, as it always has been,
+     * because splitting it up would round differently. Pixels with the same color add exactly
+     * zero, so they are skipped.
+     */
+    static float getMeanSquaredError(int[] ideal, int[] given, int offset, int stride,
+            int width, int height) {
+        float totalError = 0;
+        for (int y = 0 ; y < height ; y++) {
+            final int rowStart = offset + y * stride;
+            final int rowEnd = rowStart + width;
+            for (int index = rowStart ; index < rowEnd ; index++) {
+                final int idealColor = ideal[index];
+                final int givenColor = given[index];
+                if (((idealColor ^ givenColor) & 0xFFFFFF) == 0) {
+                    continue;
+                }
+                float difference = getColorSum(idealColor) - getColorSum(givenColor);
+                totalError += (difference * difference);
+            }
+        }
+        totalError /= (width * height);
+        return totalError;
+    }
+
+    private static float getColorSum(int color) {
+        return CHANNEL[(color >> 16) & 0xFF] + CHANNEL[(color >> 8) & 0xFF]
+                + CHANNEL[color & 0xFF];
+    }
+
+    /**
+     * Returns the mean structural similarity of the windows of the images which are not white
+     * in both of them, or NaN if all windows are white.
+     *
+     * The intensities of a window are computed once while it is checked for white, and its
+     * mean and variances are then summed in the same order as before. The windows of a band
+     * are independent, so bands of windows are computed in parallel, and their similarities
+     * are added up in window order afterwards.
+     */
+    static double getMeanStructuralSimilarity(final int[] ideal, final int[] given,
+            final int offset, final int stride, final int width, int height) {
+        final int windowSize = MSSIMComparer.WINDOW_SIZE;
+        final int windowsPerRow = (width + windowSize - 1) / windowSize;
+        final int windowRows = (height + windowSize - 1) / windowSize;
+        final double[] similarities = new double[windowsPerRow * windowRows];
+        final boolean[] white = new boolean[similarities.length];
+
+        processRows(windowRows, (long) width * windowSize, new Rows() {
+            @Override
+            public long process(int startRow, int endRow) {
+                final double[] idealIntensities = new double[windowSize * windowSize];
+                final double[] givenIntensities = new double[windowSize * windowSize];
+                for (int windowY = startRow ; windowY < endRow ; windowY++) {
+                    for (int windowX = 0 ; windowX < windowsPerRow ; windowX++) {
+                        final int window = windowY * windowsPerRow + windowX;
+                        final int start = offset + windowX * windowSize
+                                + windowY * windowSize * stride;
+                        if (getIntensities(ideal, given, start, stride, windowSize,
+                                idealIntensities, givenIntensities)) {
+                            white[window] = true;
+                        } else {
+                            similarities[window] = getStructuralSimilarity(idealIntensities,
+                                    givenIntensities);
+                        }
+                    }
+                }
+                return 0;
+            }
+        });
+
+        double total = 0;
+        int windows = 0;
+        for (int window = 0 ; window < similarities.length ; window++) {
+            if (!white[window]) {
+                windows++;
+                total += similarities[window];
+            }
+        }
+        if (windows == 0) {
+            return Double.NaN;
+        }
+        total /= windows;
+        return total;
+    }
+
+    /**
+     * Fills in the intensities of the pixels of a window of both images, in row-major order.
+     *
+     * @return whether all the pixels of the window are white in both images
+     */
+    private static boolean getIntensities(int[] ideal, int[] given, int start, int stride,
+            int windowSize, double[] idealIntensities, double[] givenIntensities) {
+        boolean white = true;
+        int i = 0;
+        for (int y = 0 ; y < windowSize ; y++) {
+            final int rowStart = start + y * stride;
+            for (int x = 0 ; x < windowSize ; x++) {
+                final int idealColor = ideal[rowStart + x];
+                final int givenColor = given[rowStart + x];
+                white &= (idealColor & givenColor) == WHITE;
+                idealIntensities[i] = getIntensity(idealColor);
+                givenIntensities[i] = getIntensity(givenColor);
+                i++;
+            }
+        }
+        return white;
+    }
+
+    private static double getIntensity(int color) {
+        return RED_INTENSITY[(color >> 16) & 0xFF] + GREEN_INTENSITY[(color >> 8) & 0xFF]
+                + BLUE_INTENSITY[color & 0xFF];
+    }
+
+    private static double getStructuralSimilarity(double[] intensities0, double[] intensities1) {
+        final int count = intensities0.length;
+        double mean0 = 0;
+        double mean1 = 0;
+        for (int i = 0 ; i < count ; i++) {
+            mean0 += intensities0[i];
+            mean1 += intensities1[i];
+        }
+        mean0 /= count;
+        mean1 /= count;
+
+        double var0 = 0;
+        double var1 = 0;
+        double varBoth = 0;
+        for (int i = 0 ; i < count ; i++) {
+            double v0 = intensities0[i] - mean0;
+            double v1 = intensities1[i] - mean1;
+            var0 += v0 * v0;
+            var1 += v1 * v1;
+            varBoth += v0 * v1;
+        }
+        var0 /= count - 1;
+        var1 /= count - 1;
+        varBoth /= count - 1;
+
+        double SSIM = (((2 * mean0 * mean1) + SSIM_C1)
+                * ((2 * varBoth) + SSIM_C2));
+        double denom = ((mean0 * mean0) + (mean1 * mean1) + SSIM_C1)
+                * (var0 + var1 + SSIM_C2);
+        SSIM /= denom;
+        return SSIM;
+    }
+}
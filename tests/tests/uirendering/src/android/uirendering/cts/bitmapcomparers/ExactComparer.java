@@ -35,24 +35,38 @@ public class ExactComparer extends BaseRenderScriptComparer {
      */
     public boolean verifySame(int[] ideal, int[] given, int offset, int stride, int width,
             int height) {
-        int count = 0;
+        long count = ComparisonEngine.countDifferentPixels(ideal, given, offset, stride, width,
+                height);
+        if (count > 0) {
+            logFailures(ideal, given, offset, stride, width, height);
+        }
+        Log.d(TAG, "Number of different pixels : " + count);
 
-        for (int y = 0 ; y < height ; y++) {
-            for (int x = 0 ; x < width ; x++) {
+        return (count == 0);
+    }
+
+    /**
+     * Logs the first 50 pixels which are different
+     */
+    private void logFailures(int[] ideal, int[] given, int offset, int stride, int width,
+            int height) {
+        int count = 0;
+        for (int y = 0 ; y < height && count < 50 ; y++) {
+            for (int x = 0 ; x < width && count < 50 ; x++) {
                 int index = indexFromXAndY(x, y, stride, offset);
                 if (ideal[index] != given[index]) {
-                    if (count < 50) {
-                        Log.d(TAG, "Failure on position x = " + x + " y = " + y);
-                        Log.d(TAG, "Expected color : " + Integer.toHexString(ideal[index]) +
-                                " given color : " + Integer.toHexString(given[index]));
-                    }
+                    Log.d(TAG, "Failure on position x = " + x + " y = " + y);
+                    Log.d(TAG, "Expected color : " + Integer.toHexString(ideal[index]) +
+                            " given color : " + Integer.toHexString(given[index]));
                     count++;
                 }
             }
         }
-        Log.d(TAG, "Number of different pixels : " + count);
+    }
 
-        return (count == 0);
+    @Override
+    public boolean acceptsIdentical(int width, int height) {
+        return true;
     }
 
     @Override
@@ -19,7 +19,6 @@ import com.android.cts.uirendering.R;
 import com.android.cts.uirendering.ScriptC_MeanSquaredComparer;
 
 import android.content.res.Resources;
-import android.graphics.Color;
 import android.renderscript.Allocation;
 import android.renderscript.RenderScript;
 import android.util.Log;
@@ -48,6 +47,14 @@ public class MeanSquaredComparer extends BaseRenderScriptComparer {
         return (totalError < (mErrorPerPixel));
     }
 
+    /**
+     * Identical bitmaps have no error, which passes any positive error per pixel.
+     */
+    @Override
+    public boolean acceptsIdentical(int width, int height) {
+        return mErrorPerPixel > 0;
+    }
+
     @Override
     public boolean verifySameRowsRS(Resources resources, Allocation ideal,
             Allocation given, int offset, int stride, int width, int height,
@@ -77,26 +84,6 @@ public class MeanSquaredComparer extends BaseRenderScriptComparer {
      */
     public static float getMSE(int[] ideal, int[] given, int offset, int stride, int width,
             int height) {
-        float totalError = 0;
-
-        for (int y = 0 ; y < height ; y++) {
-            for (int x = 0 ; x < width ; x++) {
-                int index = indexFromXAndY(x, y, stride, offset);
-                float idealSum = getColorSum(ideal[index]);
-                float givenSum = getColorSum(given[index]);
-                float difference = idealSum - givenSum;
-                totalError += (difference * difference);
-            }
-        }
-
-        totalError /= (width * height);
-        return totalError;
-    }
-
-    private static float getColorSum(int color) {
-        float red = Color.red(color) / 255.0f;
-        float green = Color.green(color) / 255.0f;
-        float blue = Color.blue(color) / 255.0f;
-        return (red + green + blue);
+        return ComparisonEngine.getMeanSquaredError(ideal, given, offset, stride, width, height);
     }
 }
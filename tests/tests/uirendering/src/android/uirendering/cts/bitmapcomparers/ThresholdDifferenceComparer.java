@@ -19,7 +19,6 @@ import com.android.cts.uirendering.R;
 import com.android.cts.uirendering.ScriptC_ThresholdDifferenceComparer;
 
 import android.content.res.Resources;
-import android.graphics.Color;
 import android.renderscript.Allocation;
 import android.renderscript.RenderScript;
 import android.uirendering.cts.bitmapcomparers.BaseRenderScriptComparer;
@@ -45,23 +44,35 @@ public class ThresholdDifferenceComparer extends BaseRenderScriptComparer {
     @Override
     public boolean verifySame(int[] ideal, int[] given, int offset, int stride, int width,
             int height) {
-        int differentPixels = 0;
+        long differentPixels = ComparisonEngine.countPixelsAboveThreshold(ideal, given, offset,
+                stride, width, height, mThreshold);
+        if (differentPixels > 0) {
+            logFailures(ideal, given, offset, stride, width, height);
+        }
+        Log.d(TAG, "Number of different pixels : " + differentPixels);
+        return (differentPixels == 0);
+    }
+
+    /**
+     * Identical pixels have no error, which passes any threshold that is not negative.
+     */
+    @Override
+    public boolean acceptsIdentical(int width, int height) {
+        return mThreshold >= 0;
+    }
+
+    private void logFailures(int[] ideal, int[] given, int offset, int stride, int width,
+            int height) {
         for (int y = 0 ; y < height ; y++) {
             for (int x = 0 ; x < width ; x++) {
                 int index = indexFromXAndY(x, y, stride, offset);
-                int error = Math.abs(Color.red(ideal[index]) - Color.red(given[index]));
-                error += Math.abs(Color.blue(ideal[index]) - Color.blue(given[index]));
-                error += Math.abs(Color.green(ideal[index]) - Color.green(given[index]));
-                if (error > mThreshold) {
+                if (ComparisonEngine.getChannelError(ideal[index], given[index]) > mThreshold) {
                     Log.d(TAG, "Failure at position x = " + x + " y = " + y);
                     Log.d(TAG, "Expected color " + Integer.toHexString(ideal[index]) +
                             " given color " + Integer.toHexString(given[index]));
-                    differentPixels++;
                 }
             }
         }
-        Log.d(TAG, "Number of different pixels : " + differentPixels);
-        return (differentPixels == 0);
     }
 
     @Override
@@ -33,8 +33,8 @@ public class GoldenImageVerifier extends BitmapVerifier {
 
     @Override
     public boolean verify(int[] bitmap, int offset, int stride, int width, int height) {
-        boolean success = mBitmapComparer.verifySame(mGoldenBitmapArray, bitmap, offset, stride,
-                width, height);
+        boolean success = mBitmapComparer.verifySameOrIdentical(mGoldenBitmapArray, bitmap,
+                offset, stride, width, height);
         if (!success) {
             mDifferenceBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
             int[] differences = new PassFailVisualizer().getDifferences(mGoldenBitmapArray, bitmap);
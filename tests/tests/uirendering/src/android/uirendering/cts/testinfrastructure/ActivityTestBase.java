@@ -179,8 +179,8 @@ public abstract class ActivityTestBase extends
         } else {
             bitmap1.getPixels(mSoftwareArray, 0, TEST_WIDTH, 0, 0, TEST_WIDTH, TEST_HEIGHT);
             bitmap2.getPixels(mHardwareArray, 0, TEST_WIDTH, 0, 0, TEST_WIDTH, TEST_HEIGHT);
-            success = comparer.verifySame(mSoftwareArray, mHardwareArray, 0, TEST_WIDTH, TEST_WIDTH,
-                    TEST_HEIGHT);
+            success = comparer.verifySameOrIdentical(mSoftwareArray, mHardwareArray, 0, TEST_WIDTH,
+                    TEST_WIDTH, TEST_HEIGHT);
         }
 
         if (!success) {
@@ -19,7 +19,9 @@ package com.android.cts.apicoverage;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** Representation of a class in the API with constructors and methods. */
 class ApiClass implements Comparable<ApiClass>, HasCoverage {
@@ -34,6 +36,14 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     private final List<ApiMethod> mApiMethods = new ArrayList<ApiMethod>();
 
+    /** Constructors by parameter types, the first constructor wins like in a list lookup. */
+    private final Map<List<String>, ApiConstructor> mConstructorsByParameters =
+            new HashMap<List<String>, ApiConstructor>();
+
+    /** Overloads by method name. */
+    private final Map<String, List<ApiMethod>> mMethodsByName =
+            new HashMap<String, List<ApiMethod>>();
+
     ApiClass(String name, boolean deprecated, boolean classAbstract) {
         mName = name;
         mDeprecated = deprecated;
@@ -60,15 +70,14 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void addConstructor(ApiConstructor constructor) {
         mApiConstructors.add(constructor);
+        List<String> parameterTypes = constructor.getParameterTypes();
+        if (!mConstructorsByParameters.containsKey(parameterTypes)) {
+            mConstructorsByParameters.put(parameterTypes, constructor);
+        }
     }
 
     public ApiConstructor getConstructor(List<String> parameterTypes) {
-        for (ApiConstructor constructor : mApiConstructors) {
-            if (parameterTypes.equals(constructor.getParameterTypes())) {
-                return constructor;
-            }
-        }
-        return null;
+        return mConstructorsByParameters.get(parameterTypes);
     }
 
     public Collection<ApiConstructor> getConstructors() {
@@ -77,12 +86,21 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void addMethod(ApiMethod method) {
         mApiMethods.add(method);
+        List<ApiMethod> overloads = mMethodsByName.get(method.getName());
+        if (overloads == null) {
+            overloads = new ArrayList<ApiMethod>(1);
+            mMethodsByName.put(method.getName(), overloads);
+        }
+        overloads.add(method);
     }
 
     public ApiMethod getMethod(String name, List<String> parameterTypes, String returnType) {
-        for (ApiMethod method : mApiMethods) {
-            if (name.equals(method.getName())
-                    && parameterTypes.equals(method.getParameterTypes())
+        List<ApiMethod> overloads = mMethodsByName.get(name);
+        if (overloads == null) {
+            return null;
+        }
+        for (ApiMethod method : overloads) {
+            if (parameterTypes.equals(method.getParameterTypes())
                     && returnType.equals(method.getReturnType())) {
                 return method;
             }
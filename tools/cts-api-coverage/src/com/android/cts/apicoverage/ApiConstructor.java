@@ -29,7 +29,8 @@ class ApiConstructor implements Comparable<ApiConstructor> {
 
     private final boolean mDeprecated;
 
-    private boolean mIsCovered;
+    // set by the threads scanning the test APKs
+    private volatile boolean mIsCovered;
 
     ApiConstructor(String name, List<String> parameterTypes, boolean deprecated) {
         mName = name;
@@ -31,7 +31,8 @@ class ApiMethod implements Comparable<ApiMethod> {
 
     private boolean mDeprecated;
 
-    private boolean mIsCovered;
+    // set by the threads scanning the test APKs
+    private volatile boolean mIsCovered;
 
     ApiMethod(String name, List<String> parameterTypes, String returnType, boolean deprecated) {
         mName = name;
@@ -28,8 +28,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
-
-import javax.xml.transform.TransformerException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Tool that generates a report of what Android framework methods are being called from a given
@@ -52,15 +55,23 @@ public class CtsApiCoverage {
         System.out.println("Use the Makefiles rules in CtsTestCoverage.mk to generate the report ");
         System.out.println("rather than executing this directly. If you still want to run this ");
         System.out.println("directly, then this must be used from the $ANDROID_BUILD_TOP ");
-        System.out.println("directory and dexdeps must be built via \"make dexdeps\".");
+        System.out.println("directory.");
         System.out.println();
         System.out.println("Options:");
         System.out.println("  -o FILE                output file or standard out if not given");
         System.out.println("  -f [txt|xml|html]      format of output");
-        System.out.println("  -d PATH                path to dexdeps or expected to be in $PATH");
+        System.out.println("  -d PATH                path to dexdeps, scan the APKs with dexdeps rather");
+        System.out.println("                         than in process");
+        System.out.println("  -c DIR                 directory to cache the references of the APKs in,");
+        System.out.println("                         so that only changed APKs are scanned again");
+        System.out.println("  -j THREADS             number of APKs scanned in parallel, defaults to");
+        System.out.println("                         the number of processors");
         System.out.println("  -a PATH                path to the API XML file");
         System.out.println("  -p PACKAGENAMEPREFIX   report coverage only for package that start with");
         System.out.println("  -t TITLE               report title");
+        System.out.println("  -s                     split the HTML report into an index page and one");
+        System.out.println("                         page per package, written to the directory given");
+        System.out.println("                         by -o");
         System.out.println();
         System.exit(1);
     }
@@ -69,7 +80,10 @@ public class CtsApiCoverage {
         List<File> testApks = new ArrayList<File>();
         File outputFile = null;
         int format = FORMAT_TXT;
-        String dexDeps = "dexDeps";
+        String dexDeps = null;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        File cacheDir = null;
+        boolean splitHtml = false;
         String apiXmlPath = "";
         // By default only care about packages starting with "android"
         String packageFilter = "android";
@@ -92,12 +106,25 @@ public class CtsApiCoverage {
                     }
                 } else if ("-d".equals(args[i])) {
                     dexDeps = getExpectedArg(args, ++i);
+                } else if ("-c".equals(args[i])) {
+                    cacheDir = new File(getExpectedArg(args, ++i));
+                } else if ("-j".equals(args[i])) {
+                    try {
+                        numThreads = Integer.parseInt(getExpectedArg(args, ++i));
+                    } catch (NumberFormatException e) {
+                        printUsage();
+                    }
+                    if (numThreads < 1) {
+                        printUsage();
+                    }
                 } else if ("-a".equals(args[i])) {
                     apiXmlPath = getExpectedArg(args, ++i);
                 } else if ("-p".equals(args[i])) {
                     packageFilter = getExpectedArg(args, ++i);
                 } else if ("-t".equals(args[i])) {
                     reportTitle = getExpectedArg(args, ++i);
+                } else if ("-s".equals(args[i])) {
+                    splitHtml = true;
                 } else {
                     printUsage();
                 }
@@ -105,24 +132,40 @@ public class CtsApiCoverage {
                 testApks.add(new File(args[i]));
             }
         }
+        if (splitHtml && (format != FORMAT_HTML || outputFile == null)) {
+            printUsage();
+        }
 
         /*
          * 1. Create an ApiCoverage object that is a tree of Java objects representing the API
          *    in current.xml. The object will have no information about the coverage for each
          *    constructor or method yet.
          *
-         * 2. For each provided APK, scan it using dexdeps, parse the output of dexdeps, and
-         *    call methods on the ApiCoverage object to cumulatively add coverage stats.
+         * 2. For each provided APK, read the method references of its dex files, and call
+         *    methods on the ApiCoverage object to cumulatively add coverage stats. The APKs
+         *    are scanned in parallel, unless dexdeps is used. With a cache directory, only APKs
+         *    that changed since the last run are read.
          *
          * 3. Output a report based on the coverage stats in the ApiCoverage object.
          */
 
         ApiCoverage apiCoverage = getEmptyApiCoverage(apiXmlPath);
         apiCoverage.removeEmptyAbstractClasses();
-        for (File testApk : testApks) {
-            addApiCoverage(apiCoverage, testApk, dexDeps);
+        if (dexDeps != null) {
+            for (File testApk : testApks) {
+                addApiCoverage(apiCoverage, testApk, dexDeps);
+            }
+        } else {
+            ReferenceCache cache = cacheDir != null ? new ReferenceCache(cacheDir) : null;
+            addApiCoverage(apiCoverage, testApks, cache, numThreads);
+        }
+        if (splitHtml) {
+            HtmlReport.printHtmlReport(testApks, apiCoverage, packageFilter, reportTitle,
+                    outputFile, numThreads);
+        } else {
+            outputCoverageReport(apiCoverage, testApks, outputFile, format, packageFilter,
+                    reportTitle);
         }
-        outputCoverageReport(apiCoverage, testApks, outputFile, format, packageFilter, reportTitle);
     }
 
     /** Get the argument or print out the usage and exit. */
@@ -163,6 +206,49 @@ public class CtsApiCoverage {
         return currentXmlHandler.getApi();
     }
 
+    /**
+     * Adds coverage information gleamed from the dex files of the APKs to the {@link ApiCoverage}
+     * object. APKs that cannot be read are reported and skipped.
+     *
+     * @param apiCoverage object to which the coverage statistics will be added to
+     * @param testApks containing the tests that will be scanned
+     * @param cache of the references of the APKs or null
+     * @param numThreads number of APKs to scan at the same time
+     */
+    private static void addApiCoverage(ApiCoverage apiCoverage, List<File> testApks,
+            ReferenceCache cache, int numThreads) throws InterruptedException {
+        final DexReferenceScanner scanner = new DexReferenceScanner(apiCoverage, cache);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (final File testApk : testApks) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        return scanner.scan(testApk);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                String apkPath = testApks.get(i).getPath();
+                try {
+                    if (!results.get(i).get()) {
+                        System.err.println("warning: no classes.dex in: " + apkPath);
+                    }
+                } catch (ExecutionException e) {
+                    System.err.println("warning: dex scan failed for: " + apkPath + ": "
+                            + e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        if (cache != null) {
+            System.err.println("Reused cached references of " + scanner.getNumCachedApks()
+                    + " of " + testApks.size() + " APKs");
+        }
+    }
+
     /**
      * Adds coverage information gleamed from running dexdeps on the APK to the
      * {@link ApiCoverage} object.
@@ -189,7 +275,7 @@ public class CtsApiCoverage {
 
     private static void outputCoverageReport(ApiCoverage apiCoverage, List<File> testApks,
             File outputFile, int format, String packageFilter, String reportTitle)
-                throws IOException, TransformerException, InterruptedException {
+                throws IOException {
 
         OutputStream out = outputFile != null
                 ? new FileOutputStream(outputFile)
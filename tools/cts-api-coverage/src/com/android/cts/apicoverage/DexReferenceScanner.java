@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import dex.reader.DexBuffer;
+import dex.reader.DexFileReader;
+import dex.structure.DexFile;
+import dex.structure.DexMethodReference;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the dex files of an APK and adds the methods they call to an {@link ApiCoverage} object.
+ * Like dexdeps, only references to classes not defined in the APK itself are considered. The
+ * {@link ApiCoverage} object must not be modified otherwise while APKs are scanned, but several
+ * APKs can be scanned concurrently. If a {@link ReferenceCache} is given, the references of each
+ * APK are only read once and are taken from the cache afterwards.
+ */
+class DexReferenceScanner {
+
+    private static final Pattern DEX_ENTRY_NAME = Pattern.compile("classes\\d*\\.dex");
+
+    private final ApiCoverage mApiCoverage;
+
+    private final ReferenceCache mCache;
+
+    private final AtomicInteger mNumCachedApks = new AtomicInteger();
+
+    /**
+     * @param apiCoverage to add the coverage to
+     * @param cache of the references of the APKs or null to always read the APKs
+     */
+    DexReferenceScanner(ApiCoverage apiCoverage, ReferenceCache cache) {
+        mApiCoverage = apiCoverage;
+        mCache = cache;
+    }
+
+    /**
+     * Adds the coverage of the dex files in the given APK.
+     *
+     * @param apk to scan
+     * @return false if the APK does not contain any dex files
+     */
+    public boolean scan(File apk) throws IOException {
+        List<DexMethodReference> references;
+        if (mCache == null) {
+            references = readReferences(apk);
+        } else {
+            String digest = ReferenceCache.digest(apk);
+            references = mCache.get(digest);
+            if (references != null) {
+                mNumCachedApks.incrementAndGet();
+            } else {
+                references = readReferences(apk);
+                if (references != null) {
+                    mCache.put(digest, references);
+                }
+            }
+        }
+        if (references == null) {
+            return false;
+        }
+        addCoverage(references);
+        return true;
+    }
+
+    /** Returns the number of scanned APKs whose references were taken from the cache. */
+    public int getNumCachedApks() {
+        return mNumCachedApks.get();
+    }
+
+    /**
+     * Returns the external method references of all dex files in the given APK or null if it
+     * does not contain any dex files.
+     */
+    private static List<DexMethodReference> readReferences(File apk) throws IOException {
+        List<DexMethodReference> references = null;
+        ZipFile zipFile = new ZipFile(apk);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (DEX_ENTRY_NAME.matcher(entry.getName()).matches()) {
+                    byte[] dex = readEntry(zipFile, entry);
+                    DexFile dexFile = new DexFileReader().read(new DexBuffer(dex));
+                    if (references == null) {
+                        references = new ArrayList<DexMethodReference>();
+                    }
+                    references.addAll(dexFile.getExternalMethodReferences());
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        return references;
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, ZipEntry entry) throws IOException {
+        DataInputStream in = new DataInputStream(zipFile.getInputStream(entry));
+        try {
+            byte[] bytes = new byte[(int) entry.getSize()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void addCoverage(List<DexMethodReference> references) {
+        List<String> parameterTypes = new ArrayList<String>();
+        for (DexMethodReference reference : references) {
+            ApiClass apiClass = getApiClass(reference.getDeclaringType());
+            if (apiClass == null) {
+                continue;
+            }
+
+            parameterTypes.clear();
+            for (String parameterType : reference.getParameterTypes()) {
+                parameterTypes.add(descriptorToDot(parameterType));
+            }
+            if ("<init>".equals(reference.getName())) {
+                ApiConstructor apiConstructor = apiClass.getConstructor(parameterTypes);
+                if (apiConstructor != null) {
+                    apiConstructor.setCovered(true);
+                }
+            } else {
+                ApiMethod apiMethod = apiClass.getMethod(reference.getName(), parameterTypes,
+                        descriptorToDot(reference.getReturnType()));
+                if (apiMethod != null) {
+                    apiMethod.setCovered(true);
+                }
+            }
+        }
+    }
+
+    /** Returns the class of the API with the given type descriptor or null if there is none. */
+    private ApiClass getApiClass(String descriptor) {
+        if (!descriptor.startsWith("L")) {
+            // methods of arrays such as clone() are not part of the API
+            return null;
+        }
+        int packageEnd = descriptor.lastIndexOf('/');
+        String packageName = packageEnd < 0
+                ? ""
+                : descriptor.substring(1, packageEnd).replace('/', '.');
+        ApiPackage apiPackage = mApiCoverage.getPackage(packageName);
+        if (apiPackage == null) {
+            return null;
+        }
+        // inner classes are named like "Outer.Inner" in the API
+        String className = descriptor.substring(Math.max(packageEnd, 0) + 1,
+                descriptor.length() - 1);
+        return apiPackage.getClass(className.replace('$', '.'));
+    }
+
+    /**
+     * Converts a type descriptor such as "[Ljava/util/Map$Entry;" to the notation of the API
+     * XML file such as "java.util.Map.Entry[]".
+     */
+    static String descriptorToDot(String descriptor) {
+        int dimensions = 0;
+        while (descriptor.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+
+        String type;
+        switch (descriptor.charAt(dimensions)) {
+            case 'V': type = "void"; break;
+            case 'Z': type = "boolean"; break;
+            case 'B': type = "byte"; break;
+            case 'S': type = "short"; break;
+            case 'C': type = "char"; break;
+            case 'I': type = "int"; break;
+            case 'J': type = "long"; break;
+            case 'F': type = "float"; break;
+            case 'D': type = "double"; break;
+            default:
+                type = descriptor.substring(dimensions + 1, descriptor.length() - 1)
+                        .replace('/', '.').replace('$', '.');
+                break;
+        }
+        if (dimensions == 0) {
+            return type;
+        }
+
+        StringBuilder builder = new StringBuilder(type);
+        for (int i = 0; i < dimensions; i++) {
+            builder.append("[]");
+        }
+        return builder.toString();
+    }
+}
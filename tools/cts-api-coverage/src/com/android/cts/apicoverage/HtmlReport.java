@@ -16,54 +16,365 @@
 
 package com.android.cts.apicoverage;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
-
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Class that outputs an HTML report of the {@link ApiCoverage} collected. It is the XML report
- * transformed into HTML.
+ * Class that outputs an HTML report of the {@link ApiCoverage} collected. The report contains the
+ * same information as the XML report and is written while walking the {@link ApiCoverage} object,
+ * so the size of the report does not affect the memory needed. It is either written as a single
+ * page, or as an index page with one page per package.
  */
 class HtmlReport {
 
-    public static void printHtmlReport(final List<File> testApks, final ApiCoverage apiCoverage,
-            final String packageFilter, final String reportTitle, final OutputStream out)
-                throws IOException, TransformerException {
-        final PipedOutputStream xmlOut = new PipedOutputStream();
-        final PipedInputStream xmlIn = new PipedInputStream(xmlOut);
+    private static final String INDEX_PAGE = "index.html";
+
+    private static final String HEAD =
+            "<html>\n"
+            + "<head>\n"
+            + "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">\n"
+            + "<script type=\"text/javascript\">\n"
+            + "    function toggleVisibility(id) {\n"
+            + "        element = document.getElementById(id);\n"
+            + "        if (element.style.display == \"none\") {\n"
+            + "            element.style.display = \"\";\n"
+            + "        } else {\n"
+            + "            element.style.display = \"none\";\n"
+            + "        }\n"
+            + "    }\n"
+            + "</script>\n"
+            + "<style type=\"text/css\">\n"
+            + "    body {\n"
+            + "        background-color: #CCCCCC;\n"
+            + "        font-family: sans-serif;\n"
+            + "        margin: 10px;\n"
+            + "    }\n"
+            + "\n"
+            + "    .info {\n"
+            + "        margin-bottom: 10px;\n"
+            + "    }\n"
+            + "\n"
+            + "    .apks, .package, .class {\n"
+            + "        cursor: pointer;\n"
+            + "        text-decoration: underline;\n"
+            + "    }\n"
+            + "\n"
+            + "    .packageDetails {\n"
+            + "        padding-left: 20px;\n"
+            + "    }\n"
+            + "\n"
+            + "    .classDetails {\n"
+            + "        padding-left: 40px;\n"
+            + "    }\n"
+            + "\n"
+            + "    .method {\n"
+            + "        font-family: courier;\n"
+            + "        white-space: nowrap;\n"
+            + "    }\n"
+            + "\n"
+            + "    .red {\n"
+            + "        background-color: #FF6666;\n"
+            + "    }\n"
+            + "\n"
+            + "    .yellow {\n"
+            + "        background-color: #FFFF66;\n"
+            + "    }\n"
+            + "\n"
+            + "    .green {\n"
+            + "        background-color: #66FF66;\n"
+            + "    }\n"
+            + "\n"
+            + "    .deprecated {\n"
+            + "        text-decoration: line-through;\n"
+            + "    }\n"
+            + "</style>\n"
+            + "</head>\n";
+
+    /** Prints the whole report as a single page. */
+    public static void printHtmlReport(List<File> testApks, ApiCoverage apiCoverage,
+            String packageFilter, String reportTitle, OutputStream out) throws IOException {
+        List<ApiPackage> packages = getPackages(apiCoverage, packageFilter);
+        Writer writer = newWriter(out);
+        printIndexHeader(writer, testApks, packages, reportTitle, getGeneratedTime());
+        writer.write("<ul>\n");
+        for (ApiPackage pkg : packages) {
+            String id = escape(pkg.getName());
+            printListItem(writer, "package", "toggleVisibility('" + id + "')", pkg.getName(),
+                    false, Math.round(pkg.getCoveragePercentage()), pkg.getNumCoveredMethods(),
+                    pkg.getTotalMethods());
+            writer.write("<div class=\"packageDetails\" id=\"" + id
+                    + "\" style=\"display: none\">\n");
+            printClasses(writer, pkg);
+            writer.write("</div>\n");
+        }
+        writer.write("</ul>\n</body>\n</html>\n");
+        writer.flush();
+    }
+
+    /**
+     * Prints an index page and one page per package into the given directory. The package pages
+     * are written in parallel.
+     *
+     * @param outputDir directory to write the pages to, created if it does not exist
+     * @param numThreads number of package pages to write at the same time
+     */
+    public static void printHtmlReport(List<File> testApks, ApiCoverage apiCoverage,
+            String packageFilter, final String reportTitle, final File outputDir,
+            int numThreads) throws IOException, InterruptedException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create output directory: " + outputDir);
+        }
+        List<ApiPackage> packages = getPackages(apiCoverage, packageFilter);
+        final String generatedTime = getGeneratedTime();
 
-        Thread t = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                XmlReport.printXmlReport(testApks, apiCoverage, packageFilter, reportTitle, xmlOut);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (final ApiPackage pkg : packages) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        printPackagePage(new File(outputDir, getPageName(pkg)), pkg,
+                                reportTitle, generatedTime);
+                        return null;
+                    }
+                }));
+            }
 
-                // Close the output stream to avoid "Write dead end" errors.
+            OutputStream out = new FileOutputStream(new File(outputDir, INDEX_PAGE));
+            try {
+                Writer writer = newWriter(out);
+                printIndexHeader(writer, testApks, packages, reportTitle, generatedTime);
+                writer.write("<ul>\n");
+                for (ApiPackage pkg : packages) {
+                    printListItem(writer, "package",
+                            "location.href='" + escape(getPageName(pkg)) + "'", pkg.getName(),
+                            false, Math.round(pkg.getCoveragePercentage()),
+                            pkg.getNumCoveredMethods(), pkg.getTotalMethods());
+                }
+                writer.write("</ul>\n</body>\n</html>\n");
+                writer.flush();
+            } finally {
+                out.close();
+            }
+
+            for (Future<Void> result : results) {
                 try {
-                    xmlOut.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void printPackagePage(File file, ApiPackage pkg, String reportTitle,
+            String generatedTime) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            Writer writer = newWriter(out);
+            writer.write(HEAD);
+            writer.write("<body>\n<h1>" + escape(reportTitle) + "</h1>\n");
+            writer.write("<div class=\"info\">\nGenerated: " + escape(generatedTime)
+                    + "</div>\n");
+            writer.write("<div class=\"info\">\n<a href=\"" + INDEX_PAGE
+                    + "\">All packages</a>\n</div>\n");
+            writer.write("<ul>\n");
+            String id = escape(pkg.getName());
+            printListItem(writer, "package", "toggleVisibility('" + id + "')", pkg.getName(),
+                    false, Math.round(pkg.getCoveragePercentage()), pkg.getNumCoveredMethods(),
+                    pkg.getTotalMethods());
+            writer.write("<div class=\"packageDetails\" id=\"" + id + "\">\n");
+            printClasses(writer, pkg);
+            writer.write("</div>\n</ul>\n</body>\n</html>\n");
+            writer.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Returns the packages included in the report in the order of the report. */
+    private static List<ApiPackage> getPackages(ApiCoverage apiCoverage, String packageFilter) {
+        List<ApiPackage> packages = new ArrayList<ApiPackage>();
+        for (ApiPackage pkg : apiCoverage.getPackages()) {
+            if (pkg.getName().startsWith(packageFilter) && pkg.getTotalMethods() > 0) {
+                packages.add(pkg);
+            }
+        }
+        Collections.sort(packages, new CoverageComparator());
+        return packages;
+    }
+
+    private static String getPageName(ApiPackage pkg) {
+        return pkg.getName() + ".html";
+    }
+
+    private static String getGeneratedTime() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, MMM d, yyyy h:mm a z");
+        return format.format(new Date(System.currentTimeMillis()));
+    }
+
+    private static Writer newWriter(OutputStream out) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+    }
+
+    /**
+     * Prints the head, title, total and source APKs of the report. Like in the XML report,
+     * deprecated constructors and methods do not count towards the total.
+     */
+    private static void printIndexHeader(Writer writer, List<File> testApks,
+            List<ApiPackage> packages, String reportTitle, String generatedTime)
+            throws IOException {
+        int totalMethods = 0;
+        int totalCoveredMethods = 0;
+        for (ApiPackage pkg : packages) {
+            for (ApiClass apiClass : pkg.getClasses()) {
+                for (ApiConstructor constructor : apiClass.getConstructors()) {
+                    if (!constructor.isDeprecated()) {
+                        totalMethods++;
+                        if (constructor.isCovered()) {
+                            totalCoveredMethods++;
+                        }
+                    }
+                }
+                for (ApiMethod method : apiClass.getMethods()) {
+                    if (!method.isDeprecated()) {
+                        totalMethods++;
+                        if (method.isCovered()) {
+                            totalCoveredMethods++;
+                        }
+                    }
                 }
             }
-        });
-        t.start();
+        }
+
+        writer.write(HEAD);
+        writer.write("<body>\n<h1>" + escape(reportTitle) + "</h1>\n");
+        writer.write("<div class=\"info\">\nGenerated: " + escape(generatedTime) + "</div>\n");
+        writer.write("<div class=\"total\">\nTotal:&nbsp;"
+                + Math.round((float) totalCoveredMethods / totalMethods * 100.0f)
+                + "%\n&nbsp;(" + totalCoveredMethods + "/" + totalMethods + ")\n</div>\n");
+        writer.write("<div class=\"apks\" onclick=\"toggleVisibility('sourceApks')\">\n"
+                + "Source APKs (" + testApks.size() + ")\n</div>\n");
+        writer.write("<div id=\"sourceApks\" style=\"display: none\">\n<ul>\n");
+        for (File testApk : testApks) {
+            writer.write("<li>" + escape(testApk.getPath()) + "</li>\n");
+        }
+        writer.write("</ul>\n</div>\n");
+    }
+
+    private static void printClasses(Writer writer, ApiPackage pkg) throws IOException {
+        List<ApiClass> classes = new ArrayList<ApiClass>(pkg.getClasses());
+        Collections.sort(classes, new CoverageComparator());
+        writer.write("<ul>\n");
+        for (ApiClass apiClass : classes) {
+            if (apiClass.getTotalMethods() == 0) {
+                continue;
+            }
+            // qualified, as classes of different packages may share a name
+            String id = escape(pkg.getName() + "." + apiClass.getName());
+            printListItem(writer, "class", "toggleVisibility('" + id + "')", apiClass.getName(),
+                    apiClass.isDeprecated(), Math.round(apiClass.getCoveragePercentage()),
+                    apiClass.getNumCoveredMethods(), apiClass.getTotalMethods());
+            writer.write("<div class=\"classDetails\" id=\"" + id
+                    + "\" style=\"display: none\">\n");
+            for (ApiConstructor constructor : apiClass.getConstructors()) {
+                printMethod(writer, null, constructor.getName(), constructor.getParameterTypes(),
+                        constructor.isDeprecated(), constructor.isCovered());
+            }
+            for (ApiMethod method : apiClass.getMethods()) {
+                printMethod(writer, method.getReturnType(), method.getName(),
+                        method.getParameterTypes(), method.isDeprecated(), method.isCovered());
+            }
+            writer.write("</div>\n");
+        }
+        writer.write("</ul>\n");
+    }
 
-        InputStream xsl = CtsApiCoverage.class.getResourceAsStream("/api-coverage.xsl");
-        StreamSource xslSource = new StreamSource(xsl);
-        TransformerFactory factory = TransformerFactory.newInstance();
-        Transformer transformer = factory.newTransformer(xslSource);
+    private static void printListItem(Writer writer, String bulletClass, String onClick,
+            String name, boolean deprecated, int coveragePercentage, int numCovered,
+            int numTotal) throws IOException {
+        String colorClass;
+        if (coveragePercentage <= 50) {
+            colorClass = "red";
+        } else if (coveragePercentage <= 80) {
+            colorClass = "yellow";
+        } else {
+            colorClass = "green";
+        }
+        writer.write("<li class=\"" + bulletClass + "\" onclick=\"" + onClick + "\">\n"
+                + "<span class=\"" + colorClass + (deprecated ? " deprecated" : "") + "\">"
+                + "<b>" + escape(name) + "</b>\n"
+                + "&nbsp;" + coveragePercentage + "%\n"
+                + "&nbsp;(" + numCovered + "/" + numTotal + ")\n"
+                + "</span>\n</li>\n");
+    }
+
+    /**
+     * @param returnType of the method or null for a constructor
+     */
+    private static void printMethod(Writer writer, String returnType, String name,
+            List<String> parameterTypes, boolean deprecated, boolean covered)
+            throws IOException {
+        writer.write("<span class=\"method" + (deprecated ? " deprecated" : "") + "\">");
+        writer.write(covered ? "[X]" : "[ ]");
+        if (returnType != null) {
+            writer.write("&nbsp;" + escape(returnType));
+        }
+        writer.write("<b>&nbsp;" + escape(name) + "</b>(");
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                writer.write(",&nbsp;");
+            }
+            writer.write(escape(parameterTypes.get(i)));
+        }
+        writer.write(")\n</span>\n<br>\n");
+    }
 
-        StreamSource xmlSource = new StreamSource(xmlIn);
-        StreamResult result = new StreamResult(out);
-        transformer.transform(xmlSource, result);
+    private static String escape(String text) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < text.length(); i++) {
+            String replacement;
+            switch (text.charAt(i)) {
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': replacement = "&gt;"; break;
+                case '"': replacement = "&quot;"; break;
+                case '\'': replacement = "&#39;"; break;
+                default: replacement = null; break;
+            }
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(text.length() + 16);
+                escaped.append(text, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(text.charAt(i));
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : text;
     }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import dex.structure.DexMethodReference;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Directory of the method references of APKs, keyed by the SHA-1 digest of the APK, so that only
+ * changed APKs need to be scanned again. Each file holds a table of the strings of the references
+ * followed by the references as indices into that table. Entries that cannot be read are treated
+ * as missing. Entries are written to a temporary file first and then renamed, so concurrent
+ * scans of the same APK do not see partial entries.
+ */
+class ReferenceCache {
+
+    private static final int MAGIC = 0x43545352; // "CTSR"
+
+    private static final int VERSION = 1;
+
+    private static final String SUFFIX = ".refs";
+
+    private final File mDirectory;
+
+    ReferenceCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /** Returns the hex encoded SHA-1 digest of the given file. */
+    public static String digest(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param digest of the APK as returned by {@link #digest(File)}
+     * @return the cached references of the APK or null if there are none
+     */
+    public List<DexMethodReference> get(String digest) {
+        File file = new File(mDirectory, digest + SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return read(file);
+        } catch (IOException e) {
+            System.err.println("warning: ignoring unreadable cache entry: " + file);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the references of an APK.
+     *
+     * @param digest of the APK as returned by {@link #digest(File)}
+     * @param references to store
+     */
+    public void put(String digest, List<DexMethodReference> references) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs() && !mDirectory.isDirectory()) {
+            throw new IOException("Cannot create cache directory: " + mDirectory);
+        }
+        File file = new File(mDirectory, digest + SUFFIX);
+        File tmpFile = File.createTempFile(digest, ".tmp", mDirectory);
+        try {
+            write(tmpFile, references);
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Cannot write cache entry: " + file);
+            }
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    private static void write(File file, List<DexMethodReference> references)
+            throws IOException {
+        Map<String, Integer> stringIndices = new HashMap<String, Integer>();
+        List<String> strings = new ArrayList<String>();
+        int[][] indices = new int[references.size()][];
+        for (int i = 0; i < indices.length; i++) {
+            DexMethodReference reference = references.get(i);
+            List<String> parameterTypes = reference.getParameterTypes();
+            int[] referenceIndices = new int[3 + parameterTypes.size()];
+            referenceIndices[0] = indexOf(reference.getDeclaringType(), stringIndices, strings);
+            referenceIndices[1] = indexOf(reference.getName(), stringIndices, strings);
+            referenceIndices[2] = indexOf(reference.getReturnType(), stringIndices, strings);
+            for (int j = 0; j < parameterTypes.size(); j++) {
+                referenceIndices[3 + j] = indexOf(parameterTypes.get(j), stringIndices, strings);
+            }
+            indices[i] = referenceIndices;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                out.writeUTF(string);
+            }
+            out.writeInt(indices.length);
+            for (int[] referenceIndices : indices) {
+                // a dex method has at most 255 parameters
+                out.writeByte(referenceIndices.length - 3);
+                for (int index : referenceIndices) {
+                    out.writeInt(index);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int indexOf(String string, Map<String, Integer> stringIndices,
+            List<String> strings) {
+        Integer index = stringIndices.get(string);
+        if (index == null) {
+            index = strings.size();
+            stringIndices.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+
+    private static List<DexMethodReference> read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported cache entry: " + file);
+            }
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            int numReferences = in.readInt();
+            List<DexMethodReference> references = new ArrayList<DexMethodReference>(
+                    numReferences);
+            for (int i = 0; i < numReferences; i++) {
+                String[] parameterTypes = new String[in.readUnsignedByte()];
+                String declaringType = strings[in.readInt()];
+                String name = strings[in.readInt()];
+                String returnType = strings[in.readInt()];
+                for (int j = 0; j < parameterTypes.length; j++) {
+                    parameterTypes[j] = strings[in.readInt()];
+                }
+                references.add(new CachedMethodReference(declaringType, name, returnType,
+                        Collections.unmodifiableList(Arrays.asList(parameterTypes))));
+            }
+            return references;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt cache entry: " + file);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class CachedMethodReference implements DexMethodReference {
+
+        private final String mDeclaringType;
+
+        private final String mName;
+
+        private final String mReturnType;
+
+        private final List<String> mParameterTypes;
+
+        CachedMethodReference(String declaringType, String name, String returnType,
+                List<String> parameterTypes) {
+            mDeclaringType = declaringType;
+            mName = name;
+            mReturnType = returnType;
+            mParameterTypes = parameterTypes;
+        }
+
+        @Override
+        public String getDeclaringType() {
+            return mDeclaringType;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public String getReturnType() {
+            return mReturnType;
+        }
+
+        @Override
+        public List<String> getParameterTypes() {
+            return mParameterTypes;
+        }
+    }
+}
@@ -16,37 +16,35 @@
 
 package dex.reader;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 public final class DexBuffer {
 
     private ByteBuffer b;
 
+    /**
+     * Creates a buffer that maps the given file into memory. Pages are only
+     * read as they are accessed, so the cost of opening a large file does not
+     * depend on its size.
+     */
     public DexBuffer(String fileName) throws IOException {
+        this(new File(fileName));
+    }
 
-        // FIXME channel? allocate fix size?
-        FileInputStream fis = null;
+    public DexBuffer(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
         try {
-            fis = new FileInputStream(fileName);
-
-            BufferedInputStream bis = new BufferedInputStream(fis);
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            byte[] buf = new byte[1024];
-            int len;
-            while ((len = bis.read(buf)) > 0) {
-                bos.write(buf, 0, len);
-            }
-            byte[] bytes = bos.toByteArray();
-            initialize(ByteBuffer.wrap(bytes));
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            initialize(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size()));
         } finally {
-            if (fis != null) {
-                fis.close();
-            }
+            raf.close();
         }
     }
 
@@ -179,4 +177,43 @@ public final class DexBuffer {
     public void skip(int nBytes) {
         b.position(b.position() + nBytes);
     }
+
+    /**
+     * Decodes the {@code string_data_item} at the given offset. Strings are
+     * stored in MUTF-8, which differs from standard UTF-8 in its encoding of
+     * {@code \0} and of supplementary characters. Does not change the position
+     * of this buffer, so concurrent calls are safe.
+     */
+    public String readMutf8String(int offset) {
+        int p = offset;
+        int utf16Size = 0;
+        int shift = 0;
+        int value;
+        do {
+            value = b.get(p++) & 0xFF;
+            utf16Size |= (value & 0x7F) << shift;
+            shift += 7;
+        } while ((value & 0x80) != 0);
+
+        char[] chars = new char[utf16Size];
+        for (int i = 0; i < utf16Size; i++) {
+            int a = b.get(p++) & 0xFF;
+            if (a < 0x80) {
+                chars[i] = (char) a;
+            } else if ((a & 0xE0) == 0xC0) {
+                int b1 = b.get(p++) & 0xFF;
+                chars[i] = (char) (((a & 0x1F) << 6) | (b1 & 0x3F));
+            } else if ((a & 0xF0) == 0xE0) {
+                int b1 = b.get(p++) & 0xFF;
+                int b2 = b.get(p++) & 0xFF;
+                chars[i] = (char) (((a & 0x0F) << 12) | ((b1 & 0x3F) << 6)
+                        | (b2 & 0x3F));
+            } else {
+                throw new IllegalStateException("Bad MUTF-8 byte 0x"
+                        + Integer.toHexString(a) + " in string at offset "
+                        + offset);
+            }
+        }
+        return new String(chars);
+    }
 }
@@ -30,7 +30,7 @@ import java.util.List;
     private final DexBuffer buffer;
     private byte typeAndValueArg;
     private DexEncodedValueType type;
-    private String[] stringPool;
+    private DexStringPool stringPool;
     private Object value;
     private int[] typeIds;
     private final FieldIdItem[] fieldIdItems;
@@ -45,7 +45,8 @@ import java.util.List;
      * @param fieldIdItems
      */
     public DexEncodedValueImpl(DexBuffer buffer, DexAnnotation annotation,
-            int[] typeIds, String[] stringPool, FieldIdItem[] fieldIdItems) {
+            int[] typeIds, DexStringPool stringPool,
+            FieldIdItem[] fieldIdItems) {
         this.buffer = buffer;
         this.annotation = annotation;
         this.typeIds = typeIds;
@@ -161,8 +162,8 @@ import java.util.List;
         int fieldOffset = buffer.readInt(valueArg + 1);
         FieldIdItem fieldIdItem = fieldIdItems[fieldOffset];
         // FORMAT La/b/E;!CONSTANT
-        String constantName = stringPool[fieldIdItem.name_idx];
-        String typeName = stringPool[typeIds[fieldIdItem.type_idx]];
+        String constantName = stringPool.get(fieldIdItem.name_idx);
+        String typeName = stringPool.get(typeIds[fieldIdItem.type_idx]);
         return typeName + "!" + constantName;
     }
 
@@ -186,8 +187,8 @@ import java.util.List;
         int fieldOffset = buffer.readInt(valueArg + 1);
         FieldIdItem fieldIdItem = fieldIdItems[fieldOffset];
         // FORMAT La/b/E;!CONSTANT
-        String fieldName = stringPool[fieldIdItem.name_idx];
-        String typeName = stringPool[typeIds[fieldIdItem.type_idx]];
+        String fieldName = stringPool.get(fieldIdItem.name_idx);
+        String typeName = stringPool.get(typeIds[fieldIdItem.type_idx]);
         return typeName + "!" + fieldName;
     }
 
@@ -199,7 +200,7 @@ import java.util.List;
     private Object getTypeValue(int valueArg) {
         valueArg++; // size - 1 (0...3)
         // FIXME SPEC!! states: unsigned (zero-extended) four-byte integer value
-        return stringPool[typeIds[buffer.readInt(valueArg)]];
+        return stringPool.get(typeIds[buffer.readInt(valueArg)]);
     }
 
     /**
@@ -209,7 +210,7 @@ import java.util.List;
      */
     private Object getStringValue(int valueArg) {
         valueArg++;
-        return stringPool[buffer.readInt(valueArg)];
+        return stringPool.get(buffer.readInt(valueArg));
     }
 
     /**
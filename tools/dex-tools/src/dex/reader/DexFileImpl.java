@@ -22,33 +22,79 @@ import dex.reader.DexFileReader.MethodsIdItem;
 import dex.reader.DexFileReader.ProtIdItem;
 import dex.structure.DexClass;
 import dex.structure.DexFile;
+import dex.structure.DexMethodReference;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /* package */final class DexFileImpl implements DexFile {
 
-    private final String[] stringPool;
+    private final DexStringPool stringPool;
     private final int[] typeIds;
     private ProtIdItem[] protoIdItems;
     private FieldIdItem[] fieldIdItems;
     private MethodsIdItem[] methodIdItems;
-    private ClassDefItem[] classDefItems;
+    private final int classDefsOff;
     private final DexBuffer buffer;
 
-    private List<DexClass> classes = null;
+    private final List<DexClass> classes;
+    private List<DexMethodReference> externalMethodReferences;
 
-    public DexFileImpl(DexBuffer buffer, String[] stringPool, int[] typeIds,
-            ProtIdItem[] protoIds, FieldIdItem[] fieldIdItems,
-            MethodsIdItem[] methodIdItems, ClassDefItem[] classDefItems) {
+    public DexFileImpl(DexBuffer buffer, DexStringPool stringPool,
+            int[] typeIds, ProtIdItem[] protoIds, FieldIdItem[] fieldIdItems,
+            MethodsIdItem[] methodIdItems, int classDefsOff, int nClassDefs) {
         this.buffer = buffer;
         this.stringPool = stringPool;
         this.typeIds = typeIds;
         this.protoIdItems = protoIds;
         this.fieldIdItems = fieldIdItems;
         this.methodIdItems = methodIdItems;
-        this.classDefItems = classDefItems;
+        this.classDefsOff = classDefsOff;
+        this.classes = new LazyClassList(nClassDefs);
+    }
+
+    /**
+     * A list of the classes in this file, which parses each class when it is
+     * first accessed.
+     */
+    private final class LazyClassList extends AbstractList<DexClass>
+            implements RandomAccess {
+        private final AtomicReferenceArray<DexClass> parsed;
+
+        LazyClassList(int size) {
+            parsed = new AtomicReferenceArray<DexClass>(size);
+        }
+
+        @Override
+        public DexClass get(int index) {
+            DexClass dexClass = parsed.get(index);
+            if (dexClass == null) {
+                dexClass = new DexClassImpl(buffer.createCopy(),
+                        readClassDef(index), stringPool, typeIds,
+                        protoIdItems, fieldIdItems, methodIdItems);
+                // keep the first instance if another thread won the race
+                if (!parsed.compareAndSet(index, null, dexClass)) {
+                    dexClass = parsed.get(index);
+                }
+            }
+            return dexClass;
+        }
+
+        @Override
+        public int size() {
+            return parsed.length();
+        }
+    }
+
+    private ClassDefItem readClassDef(int index) {
+        DexBuffer b = buffer.createCopy();
+        b.setPosition(classDefsOff + index * DexFileReader.CLASS_DEF_ITEM_SIZE);
+        return DexFileReader.readClassDef(b);
     }
 
     /*
@@ -56,30 +102,86 @@ import java.util.List;
      * 
      * @see dex.reader.DexFile#getDefinedClasses()
      */
-    public synchronized List<DexClass> getDefinedClasses() {
-        if (classes == null) {
-            classes = new ArrayList<DexClass>(classDefItems.length);
-            for (int i = 0; i < classDefItems.length; i++) {
-                classes.add(new DexClassImpl(buffer.createCopy(),
-                        classDefItems[i], stringPool, typeIds, protoIdItems,
-                        fieldIdItems, methodIdItems));
+    public List<DexClass> getDefinedClasses() {
+        return classes;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dex.structure.DexFile#getExternalMethodReferences()
+     */
+    public synchronized List<DexMethodReference> getExternalMethodReferences() {
+        if (externalMethodReferences == null) {
+            externalMethodReferences = Collections
+                    .unmodifiableList(readExternalMethodReferences());
+        }
+        return externalMethodReferences;
+    }
+
+    // only the class_idx of each class_def_item is needed, so the class
+    // definitions are not parsed
+    private List<DexMethodReference> readExternalMethodReferences() {
+        DexBuffer b = buffer.createCopy();
+        boolean[] definedTypes = new boolean[typeIds.length];
+        for (int i = 0; i < classes.size(); i++) {
+            b.setPosition(classDefsOff + i
+                    * DexFileReader.CLASS_DEF_ITEM_SIZE);
+            definedTypes[b.readUInt()] = true;
+        }
+
+        // most protos are shared by several methods
+        List<?>[] parameterTypes = new List<?>[protoIdItems.length];
+        List<DexMethodReference> references =
+                new ArrayList<DexMethodReference>();
+        for (MethodsIdItem method : methodIdItems) {
+            if (definedTypes[method.class_idx]) {
+                continue;
             }
+            ProtIdItem proto = protoIdItems[method.proto_idx];
+            if (parameterTypes[method.proto_idx] == null) {
+                parameterTypes[method.proto_idx] = readTypeList(b,
+                        proto.parameter_off);
+            }
+            @SuppressWarnings("unchecked")
+            List<String> parameters =
+                    (List<String>) parameterTypes[method.proto_idx];
+            references.add(new DexMethodReferenceImpl(stringPool
+                    .get(typeIds[method.class_idx]), stringPool
+                    .get(method.name_idx), stringPool
+                    .get(typeIds[proto.return_type_idx]), parameters));
         }
-        return classes;
+        return references;
+    }
+
+    // reads the type_list at the given offset, 0 denotes an empty list
+    private List<String> readTypeList(DexBuffer b, int offset) {
+        if (offset == 0) {
+            return Collections.emptyList();
+        }
+        b.setPosition(offset);
+        String[] types = new String[b.readUInt()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = stringPool.get(typeIds[b.readUShort()]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(types));
     }
 
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
-        b.append("StringPool:\n").append(Arrays.toString(stringPool));
+        b.append("StringPool:\n").append(stringPool);
         b.append("\nTypes:\n");
         for (int i = 0; i < typeIds.length; i++) {
-            b.append(stringPool[typeIds[i]] + "\n");
+            b.append(stringPool.get(typeIds[i]) + "\n");
         }
         b.append("\nProtos:\n").append(Arrays.toString(protoIdItems));
         b.append("\nFields:\n").append(Arrays.toString(fieldIdItems));
         b.append("\nMethods:\n").append(Arrays.toString(methodIdItems));
-        b.append("\nClasses:\n").append(Arrays.toString(classDefItems));
+        b.append("\nClasses:\n");
+        for (int i = 0; i < classes.size(); i++) {
+            b.append(readClassDef(i));
+        }
         return b.toString();
     }
 
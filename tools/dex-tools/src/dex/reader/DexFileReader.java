@@ -57,12 +57,11 @@ public final class DexFileReader {
 
 
     //
-    private String[] stringPool;
+    private DexStringPool stringPool;
     private int[] typeIds; // values are index of stringPool
     private ProtIdItem[] protoIdItems;
     private FieldIdItem[] fieldIdItems;
     private MethodsIdItem[] methodIdItems;
-    private ClassDefItem[] classDefItems;
 
     // starting buffer at zero
     public DexFile read(DexBuffer buffer) {
@@ -96,10 +95,11 @@ public final class DexFileReader {
         readProtos();
         readFields();
         readMethods();
-        readClasses();
+        // class defs are read when the classes are first accessed
 
         return new DexFileImpl(b.createCopy(), stringPool, typeIds,
-                protoIdItems, fieldIdItems, methodIdItems, classDefItems);
+                protoIdItems, fieldIdItems, methodIdItems, off[CLASS_DEFS],
+                size[CLASS_DEFS]);
     }
 
     // MAGIC (8, U_BYTE)
@@ -144,7 +144,7 @@ public final class DexFileReader {
         off[attribute] = b.readUInt();
     }
 
-    // reads the string pool
+    // reads the string ids, the strings themselves are decoded on demand
     private void readStrings() {
         int nStrings = size[STRING_IDS];
         b.setPosition(off[STRING_IDS]); // the first string offset is here
@@ -154,15 +154,7 @@ public final class DexFileReader {
             stringDataOffsets[i] = b.readUInt();
         }
 
-        stringPool = new String[nStrings];
-        for (int i = 0; i < stringDataOffsets.length; i++) {
-            b.setPosition(stringDataOffsets[i]); // set buffer to offset
-            // Position
-            int lenght = b.readUleb128(); // read uleb128
-            byte[] values = new byte[lenght];
-            b.readBytes(values);
-            stringPool[i] = new String(values);
-        }
+        stringPool = new DexStringPool(b.createCopy(), stringDataOffsets);
     }
 
     private void readTypeIds() {
@@ -251,23 +243,19 @@ public final class DexFileReader {
         public int static_values_off;
     }
 
-    private void readClasses() {
-        int nClassDefs = size[CLASS_DEFS];
-        b.setPosition(off[CLASS_DEFS]);
-        classDefItems = new ClassDefItem[nClassDefs];
-
-        ClassDefItem item = null;
-        for (int i = 0; i < classDefItems.length; i++) {
-            item = new ClassDefItem();
-            item.class_idx = b.readUInt();
-            item.access_flags = b.readUInt();
-            item.superclass_idx = b.readUInt();
-            item.interfaces_off = b.readUInt();
-            item.source_file_idx = b.readUInt();
-            item.annotations_off = b.readUInt();
-            item.class_data_off = b.readUInt();
-            item.static_values_off = b.readUInt();
-            classDefItems[i] = item;
-        }
+    static final int CLASS_DEF_ITEM_SIZE = 32;
+
+    // reads the class_def_item at the current position of the buffer
+    static ClassDefItem readClassDef(DexBuffer b) {
+        ClassDefItem item = new ClassDefItem();
+        item.class_idx = b.readUInt();
+        item.access_flags = b.readUInt();
+        item.superclass_idx = b.readUInt();
+        item.interfaces_off = b.readUInt();
+        item.source_file_idx = b.readUInt();
+        item.annotations_off = b.readUInt();
+        item.class_data_off = b.readUInt();
+        item.static_values_off = b.readUInt();
+        return item;
     }
 }
@@ -38,7 +38,7 @@ import dex.structure.DexParameter;
 
     private DexBuffer buffer;
     private MethodsIdItem methodsIdItem;
-    private String[] stringPool;
+    private DexStringPool stringPool;
     private int[] typeIds;
     private ProtIdItem protoIdItem;
     private List<DexParameter> parameters;
@@ -54,7 +54,7 @@ import dex.structure.DexParameter;
     public DexMethodImpl(DexBuffer buffer, DexClass declaringClass,
             MethodsIdItem methodsIdItem, ProtIdItem protoIdItem,
             int accessFlags, MethodAnnotation methodAnnotation,
-            ParameterAnnotation parameterAnnotation, String[] stringPool,
+            ParameterAnnotation parameterAnnotation, DexStringPool stringPool,
             int[] typeIds, FieldIdItem[] fieldIdItems) {
         this.buffer = buffer;
         this.declaringClass = declaringClass;
@@ -94,11 +94,11 @@ import dex.structure.DexParameter;
     }
 
     public String getName() {
-        return stringPool[methodsIdItem.name_idx];
+        return stringPool.get(methodsIdItem.name_idx);
     }
 
     public String getReturnType() {
-        return stringPool[typeIds[protoIdItem.return_type_idx]];
+        return stringPool.get(typeIds[protoIdItem.return_type_idx]);
     }
 
     public synchronized List<DexParameter> getParameters() {
@@ -115,7 +115,7 @@ import dex.structure.DexParameter;
                 }
                 for (int i = 0; i < paramTypeIdx.length; i++) {
                     parameters.add(new DexParameterImpl(buffer.createCopy(),
-                            stringPool[typeIds[paramTypeIdx[i]]],
+                            stringPool.get(typeIds[paramTypeIdx[i]]),
                             parameterIdToIndex.get(i), typeIds, stringPool,
                             fieldIdItems));
                 }
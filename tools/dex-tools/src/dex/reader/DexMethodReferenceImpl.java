@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex.reader;
+
+import dex.structure.DexMethodReference;
+
+import java.util.List;
+
+/* package */final class DexMethodReferenceImpl implements DexMethodReference {
+
+    private final String declaringType;
+    private final String name;
+    private final String returnType;
+    private final List<String> parameterTypes;
+
+    public DexMethodReferenceImpl(String declaringType, String name,
+            String returnType, List<String> parameterTypes) {
+        this.declaringType = declaringType;
+        this.name = name;
+        this.returnType = returnType;
+        this.parameterTypes = parameterTypes;
+    }
+
+    public String getDeclaringType() {
+        return declaringType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getReturnType() {
+        return returnType;
+    }
+
+    public List<String> getParameterTypes() {
+        return parameterTypes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(declaringType).append("->").append(name).append("(");
+        for (String parameterType : parameterTypes) {
+            builder.append(parameterType);
+        }
+        return builder.append(")").append(returnType).toString();
+    }
+}
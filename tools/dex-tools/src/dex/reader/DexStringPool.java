@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex.reader;
+
+/**
+ * The string ids of a dex file. Strings are only decoded when they are first
+ * requested, and cached afterwards.
+ */
+/* package */final class DexStringPool {
+
+    private final DexBuffer buffer;
+    private final int[] stringDataOffsets;
+    private final String[] strings;
+
+    DexStringPool(DexBuffer buffer, int[] stringDataOffsets) {
+        this.buffer = buffer;
+        this.stringDataOffsets = stringDataOffsets;
+        this.strings = new String[stringDataOffsets.length];
+    }
+
+    /**
+     * Returns the string with the given string id.
+     */
+    public String get(int index) {
+        String string = strings[index];
+        if (string == null) {
+            // racing threads decode the same value, and String is immutable,
+            // so no locking is needed
+            string = buffer.readMutf8String(stringDataOffsets[index]);
+            strings[index] = string;
+        }
+        return string;
+    }
+
+    public int size() {
+        return stringDataOffsets.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            b.append(get(i));
+        }
+        return b.append("]").toString();
+    }
+}
@@ -33,4 +33,14 @@ public interface DexFile extends NamedElement {
      */
     public List<DexClass> getDefinedClasses();
 
+    /**
+     * Returns the methods referenced by this {@code DexFile} which are
+     * declared by a class that is not defined in this {@code DexFile}, in the
+     * order of their method ids.
+     * 
+     * @return the methods referenced by this {@code DexFile} and defined
+     *         elsewhere
+     */
+    public List<DexMethodReference> getExternalMethodReferences();
+
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex.reader;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class DexBufferTest {
+
+    @Test
+    public void testReadMutf8String_ascii() {
+        DexBuffer buffer = new DexBuffer(new byte[] {
+                (byte) 0xFF, 3, 'a', 'b', 'c', 0});
+        assertEquals("abc", buffer.readMutf8String(1));
+    }
+
+    /**
+     * Tests the two and three byte forms, including the two byte encoding of
+     * {@code \0} and a surrogate pair, which MUTF-8 encodes as two three byte
+     * sequences.
+     */
+    @Test
+    public void testReadMutf8String_multiByte() {
+        DexBuffer buffer = new DexBuffer(new byte[] {
+                5,
+                (byte) 0xC3, (byte) 0xA9, // U+00E9
+                (byte) 0xC0, (byte) 0x80, // U+0000
+                (byte) 0xE2, (byte) 0x82, (byte) 0xAC, // U+20AC
+                (byte) 0xED, (byte) 0xA0, (byte) 0xBD, // U+D83D
+                (byte) 0xED, (byte) 0xB8, (byte) 0x80, // U+DE00
+                0});
+        assertEquals("\u00e9\u0000\u20ac\ud83d\ude00",
+                buffer.readMutf8String(0));
+    }
+
+    @Test
+    public void testReadMutf8String_keepsPosition() {
+        DexBuffer buffer = new DexBuffer(new byte[] {
+                1, 'x', 0, 0x12, 0x34});
+        buffer.setPosition(3);
+        assertEquals("x", buffer.readMutf8String(0));
+        assertEquals(0x3412, buffer.readUShort());
+    }
+}
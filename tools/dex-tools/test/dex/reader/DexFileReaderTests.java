@@ -17,6 +17,7 @@
 package dex.reader;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -38,6 +39,7 @@ import dex.structure.DexEncodedValue;
 import dex.structure.DexField;
 import dex.structure.DexFile;
 import dex.structure.DexMethod;
+import dex.structure.DexMethodReference;
 import dex.structure.DexParameter;
 
 
@@ -379,4 +381,30 @@ public class DexFileReaderTests extends DexTestsCommon {
         assertTrue(true);
     }
     
+    JavaSource R0 = new JavaSource("a.b.c.R0",
+            "package a.b.c; public class R0 {" +
+            "    public String first(java.util.List<String> l) { return l.get(0).trim(); }" +
+            "    public String second(java.util.List<String> l) { return first(l); }" +
+            "}"
+    );
+
+    /**
+     * Tests that only methods of classes not defined in the file are reported
+     * as external references.
+     */
+    @Test
+    public void testExternalMethodReferences() throws IOException {
+        DexFile dexFile = javaToDexUtil.getFrom(R0);
+        Set<String> references = new HashSet<String>();
+        for (DexMethodReference reference : dexFile.getExternalMethodReferences()) {
+            assertFalse("La/b/c/R0;".equals(reference.getDeclaringType()));
+            references.add(reference.toString());
+        }
+        assertTrue(references.contains("Ljava/lang/Object;-><init>()V"));
+        assertTrue(references.contains(
+                "Ljava/util/List;->get(I)Ljava/lang/Object;"));
+        assertTrue(references.contains(
+                "Ljava/lang/String;->trim()Ljava/lang/String;"));
+    }
+
 }
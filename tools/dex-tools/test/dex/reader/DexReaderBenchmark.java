@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex.reader;
+
+import dex.structure.DexClass;
+import dex.structure.DexField;
+import dex.structure.DexFile;
+import dex.structure.DexMethod;
+
+import java.io.IOException;
+
+/**
+ * Benchmark of {@link DexFileReader} on a multi-megabyte dex file.
+ * <p>
+ * Measures three access patterns: opening a file, looking up a single class,
+ * and walking all classes with their members. Run with
+ * {@code java dex.reader.DexReaderBenchmark [dex file] [iterations]}; the
+ * default input is {@code dex/classes0.dex}.
+ */
+public class DexReaderBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private interface Task {
+        int run(String fileName) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String fileName = args.length > 0 ? args[0] : "dex/classes0.dex";
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        measure("open", fileName, iterations, new Task() {
+            public int run(String fileName) throws IOException {
+                return read(fileName).getDefinedClasses().size();
+            }
+        });
+        measure("lookup one class", fileName, iterations, new Task() {
+            public int run(String fileName) throws IOException {
+                DexFile dexFile = read(fileName);
+                int last = dexFile.getDefinedClasses().size() - 1;
+                return dexFile.getDefinedClasses().get(last).getMethods().size();
+            }
+        });
+        measure("walk all members", fileName, iterations, new Task() {
+            public int run(String fileName) throws IOException {
+                int count = 0;
+                for (DexClass dexClass : read(fileName).getDefinedClasses()) {
+                    count += dexClass.getName().length();
+                    for (DexField field : dexClass.getFields()) {
+                        count += field.getName().length();
+                    }
+                    for (DexMethod method : dexClass.getMethods()) {
+                        count += method.getName().length();
+                    }
+                }
+                return count;
+            }
+        });
+    }
+
+    private static DexFile read(String fileName) throws IOException {
+        return new DexFileReader().read(new DexBuffer(fileName));
+    }
+
+    private static void measure(String name, String fileName, int iterations,
+            Task task) throws IOException {
+        int checksum = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            checksum += task.run(fileName);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += task.run(fileName);
+        }
+        double averageMs = (System.nanoTime() - start) / 1e6 / iterations;
+        // print the checksum so the work cannot be optimized away
+        System.out.println(String.format("%-20s %10.2f ms/op  (checksum %d)",
+                name, averageMs, checksum));
+    }
+}
@@ -32,7 +32,8 @@ public class Main {
             + " --name <name> --packages packageName{ packageName}\n"
             + "  sig --compare --from=(doclet | dex | sig) <sourcefiles>"
             + " --name <name> --to=(doclet | dex | sig) <sourcefiles>"
-            + " --name <name> --out directory"
+            + " --name <name> --out directory [--parallel]"
+            + " [--incremental stateFile]"
             + " --packages packageName{ packageName}\n  sig --help";
 
     /**
@@ -88,28 +88,125 @@ import signature.model.Modifier;
 import signature.model.impl.SigAnnotationElement;
 import signature.model.impl.SigArrayType;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * {@code ApiComparator} takes two signature models as input and creates a delta
  * model describing the differences between those.
+ * <p>
+ * Packages, and the classes of large packages, can be compared concurrently
+ * on a {@link ForkJoinPool}. The resulting delta model describes the same
+ * differences as a sequential comparison.
  */
 public class ApiComparator implements IApiComparator {
 
-    public IApiDelta compare(IApi from, IApi to) {
+    /** The number of classes of a package compared by a single task. */
+    private static final int CLASSES_PER_TASK = 16;
+
+    private final int parallelism;
+
+    /**
+     * Memoized method closures, by class definition. Only closures which do
+     * not depend on a substitution of type variables are memoized. Classes of
+     * both compared apis are equal by name, so they are kept apart by
+     * identity.
+     */
+    private final Map<IClassDefinition, MethodClosure> methodClosures =
+            Collections.synchronizedMap(
+                    new IdentityHashMap<IClassDefinition, MethodClosure>());
+
+    /** Memoized interface closures, like {@link #methodClosures}. */
+    private final Map<IClassDefinition, Set<ITypeReference>>
+            interfaceClosures = Collections.synchronizedMap(
+                    new IdentityHashMap<IClassDefinition,
+                            Set<ITypeReference>>());
+
+    /**
+     * The types which are currently compared by
+     * {@link #compareType(ITypeReference, ITypeReference, boolean)}, per
+     * thread.
+     */
+    private final ThreadLocal<TypesInComparison> typesInComparison =
+            new ThreadLocal<TypesInComparison>() {
+                @Override
+                protected TypesInComparison initialValue() {
+                    return new TypesInComparison();
+                }
+            };
+
+    /**
+     * Creates a comparator which compares packages and classes sequentially.
+     */
+    public ApiComparator() {
+        this(1);
+    }
+
+    /**
+     * Creates a comparator which compares packages and classes with the
+     * given number of threads.
+     * 
+     * @param parallelism
+     *            the number of threads, 1 to compare on the calling thread
+     *            only
+     */
+    public ApiComparator(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public IApiDelta compare(final IApi from, final IApi to) {
         assert from.getVisibility() == to.getVisibility();
+        // the memoized closures belong to the apis of a previous comparison
+        methodClosures.clear();
+        interfaceClosures.clear();
+
+        Set<IPackageDelta> packageDeltas;
+        if (parallelism == 1) {
+            packageDeltas = comparePackages(from.getPackages(),
+                    to.getPackages());
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                packageDeltas = pool.invoke(
+                        new RecursiveTask<Set<IPackageDelta>>() {
+                            @Override
+                            protected Set<IPackageDelta> compute() {
+                                return comparePackages(from.getPackages(),
+                                        to.getPackages());
+                            }
+                        });
+            } finally {
+                pool.shutdown();
+            }
+        }
 
-        Set<IPackage> fromPackages = from.getPackages();
-        Set<IPackage> toPackages = to.getPackages();
+        SigApiDelta delta = null;
+        if (packageDeltas != null) {
+            delta = new SigApiDelta(from, to);
+            delta.setPackageDeltas(packageDeltas);
+        }
+        return delta;
+    }
 
-        Set<IPackageDelta> packageDeltas = compareSets(fromPackages,
-                toPackages, new SigComparator<IPackage, IPackageDelta>() {
+    private Set<IPackageDelta> comparePackages(Set<IPackage> fromPackages,
+            Set<IPackage> toPackages) {
+        SigComparator<IPackage, IPackageDelta> comparator =
+                new SigComparator<IPackage, IPackageDelta>() {
                     public IPackageDelta createChangedDelta(IPackage from,
                             IPackage to) {
                         return comparePackage(from, to);
@@ -124,14 +221,11 @@ public class ApiComparator implements IApiComparator {
                             IPackage to) {
                         return from.getName().equals(to.getName());
                     }
-                });
-
-        SigApiDelta delta = null;
-        if (packageDeltas != null) {
-            delta = new SigApiDelta(from, to);
-            delta.setPackageDeltas(packageDeltas);
+                };
+        if (parallelism == 1) {
+            return compareSets(fromPackages, toPackages, comparator);
         }
-        return delta;
+        return compareSetsInParallel(fromPackages, toPackages, comparator, 1);
     }
 
     private IPackageDelta comparePackage(IPackage from, IPackage to) {
@@ -140,8 +234,7 @@ public class ApiComparator implements IApiComparator {
         Set<IClassDefinition> fromClasses = from.getClasses();
         Set<IClassDefinition> toClasses = to.getClasses();
 
-        Set<IClassDefinitionDelta> classDeltas = compareSets(fromClasses,
-                toClasses,
+        SigComparator<IClassDefinition, IClassDefinitionDelta> comparator =
                 new SigComparator<IClassDefinition, IClassDefinitionDelta>() {
                     public boolean considerEqualElement(IClassDefinition from,
                             IClassDefinition to) {
@@ -157,7 +250,14 @@ public class ApiComparator implements IApiComparator {
                             IClassDefinition from, IClassDefinition to) {
                         return new SigClassDefinitionDelta(from, to);
                     }
-                });
+                };
+        Set<IClassDefinitionDelta> classDeltas;
+        if (parallelism == 1) {
+            classDeltas = compareSets(fromClasses, toClasses, comparator);
+        } else {
+            classDeltas = compareSetsInParallel(fromClasses, toClasses,
+                    comparator, CLASSES_PER_TASK);
+        }
 
         SigPackageDelta delta = null;
         if (classDeltas != null) {
@@ -177,7 +277,13 @@ public class ApiComparator implements IApiComparator {
         return delta;
     }
 
-    private IClassDefinitionDelta compareClass(IClassDefinition from,
+    /**
+     * Compares two classes of the same name. Called for every pair of classes
+     * present in both apis, possibly concurrently.
+     * 
+     * @return the delta of both classes, or null if they do not differ
+     */
+    protected IClassDefinitionDelta compareClass(IClassDefinition from,
             IClassDefinition to) {
         assert from.getKind() == to.getKind();
         assert from.getName().equals(to.getName());
@@ -339,41 +445,56 @@ public class ApiComparator implements IApiComparator {
     }
 
     private Set<ITypeReference> getInterfaceClosure(IClassDefinition clazz) {
-        Set<ITypeReference> closure = new HashSet<ITypeReference>();
-        collectInterfaceClosure(ViewpointAdapter.getReferenceTo(clazz),
-                closure);
-        return closure;
+        return collectInterfaceClosure(ViewpointAdapter.getReferenceTo(clazz));
     }
 
-    private void collectInterfaceClosure(ITypeReference clazz,
-            Set<ITypeReference> closure) {
-
+    private Set<ITypeReference> collectInterfaceClosure(ITypeReference clazz) {
         IClassDefinition classDefinition = getClassDefinition(clazz);
-        Set<ITypeReference> interfaces = classDefinition.getInterfaces();
-        if (interfaces == null) {
-            return;
-        }
-        for (ITypeReference interfaze : interfaces) {
-            closure.add(interfaze);
+        IClassDefinition key = getClosureKey(classDefinition);
+        Set<ITypeReference> closure = interfaceClosures.get(key);
+        if (closure != null) {
+            return closure;
         }
 
-        ITypeReference superclass = classDefinition.getSuperClass();
-        if (superclass != null) {
-            if (superclass instanceof IParameterizedType) {
-                collectInterfaceClosure(((IParameterizedType) superclass)
-                        .getRawType(), closure);
-            } else {
-                collectInterfaceClosure(superclass, closure);
+        closure = new HashSet<ITypeReference>();
+        Set<ITypeReference> interfaces = classDefinition.getInterfaces();
+        if (interfaces != null) {
+            closure.addAll(interfaces);
+
+            ITypeReference superclass = classDefinition.getSuperClass();
+            if (superclass != null) {
+                if (superclass instanceof IParameterizedType) {
+                    closure.addAll(collectInterfaceClosure(
+                            ((IParameterizedType) superclass).getRawType()));
+                } else {
+                    closure.addAll(collectInterfaceClosure(superclass));
+                }
             }
-        }
-        for (ITypeReference interfaze : interfaces) {
-            if (interfaze instanceof IParameterizedType) {
-                collectInterfaceClosure(((IParameterizedType) interfaze)
-                        .getRawType(), closure);
-            } else {
-                collectInterfaceClosure(interfaze, closure);
+            for (ITypeReference interfaze : interfaces) {
+                if (interfaze instanceof IParameterizedType) {
+                    closure.addAll(collectInterfaceClosure(
+                            ((IParameterizedType) interfaze).getRawType()));
+                } else {
+                    closure.addAll(collectInterfaceClosure(interfaze));
+                }
             }
         }
+        if (key != null) {
+            closure = putIfAbsent(interfaceClosures, key, closure);
+        }
+        return closure;
+    }
+
+    /**
+     * Returns the key to memoize the closures of the given class with, or
+     * null if they depend on a substitution of type variables.
+     */
+    private IClassDefinition getClosureKey(IClassDefinition clazz) {
+        if (clazz instanceof ClassProjection
+                && !((ClassProjection) clazz).hasSubstitutions()) {
+            return ((ClassProjection) clazz).getOriginal();
+        }
+        return null;
     }
 
     private Set<IAnnotationDelta> compareAnnotations(Set<IAnnotation> from,
@@ -462,17 +583,19 @@ public class ApiComparator implements IApiComparator {
         assert from != null;
         assert to != null;
 
-        Set<IMethod> toMethods = new HashSet<IMethod>(to.getMethods());
-        Set<IMethod> toClosure = getMethodClosure(to);
-        Set<IMethod> fromMethods = new HashSet<IMethod>(from.getMethods());
-        Set<IMethod> fromClosure = getMethodClosure(from);
+        MethodIndex toMethods = new MethodIndex(to.getMethods());
+        MethodClosure toClosure = getMethodClosure(to);
+        MethodIndex fromMethods = new MethodIndex(from.getMethods());
+        MethodClosure fromClosure = getMethodClosure(from);
 
         Set<IMethodDelta> deltas = new HashSet<IMethodDelta>();
 
-        for (IMethod method : fromMethods) {
-            IMethod compatibleMethod = findCompatibleMethod(method, toMethods);
+        for (IMethod method : from.getMethods()) {
+            String key = getSignatureKey(method);
+            IMethod compatibleMethod = toMethods.findCompatibleMethod(method,
+                    key);
             if (compatibleMethod == null) {
-                compatibleMethod = findCompatibleMethod(method, toClosure);
+                compatibleMethod = toClosure.findCompatibleMethod(method, key);
                 if (compatibleMethod == null) {
                     deltas.add(new SigMethodDelta(method, null));
                 }
@@ -486,10 +609,13 @@ public class ApiComparator implements IApiComparator {
             }
         }
 
-        for (IMethod method : toMethods) {
-            IMethod compatibleMethod = findCompatibleMethod(method, fromMethods);
+        for (IMethod method : to.getMethods()) {
+            String key = getSignatureKey(method);
+            IMethod compatibleMethod = fromMethods.findCompatibleMethod(method,
+                    key);
             if (compatibleMethod == null) {
-                compatibleMethod = findCompatibleMethod(method, fromClosure);
+                compatibleMethod = fromClosure.findCompatibleMethod(method,
+                        key);
                 if (compatibleMethod == null) {
                     deltas.add(new SigMethodDelta(null, method));
                 }
@@ -498,38 +624,151 @@ public class ApiComparator implements IApiComparator {
         return deltas.isEmpty() ? null : deltas;
     }
 
-    private IMethod findCompatibleMethod(IMethod method, Set<IMethod> set) {
-        for (IMethod methodFromSet : set) {
-            if (equalsSignature(method, methodFromSet)) {
-                return methodFromSet;
+    /**
+     * Returns a key for the signature of the given member. Members with equal
+     * signatures according to
+     * {@link #equalsSignature(IExecutableMember, IExecutableMember)} always
+     * have the same key. A primitive parameter type only matches the same
+     * primitive type, whereas reference types may match other reference
+     * types through erasure, so the key only distinguishes the former.
+     */
+    private static String getSignatureKey(IExecutableMember member) {
+        StringBuilder key = new StringBuilder(member.getName());
+        key.append('(');
+        for (IParameter parameter : member.getParameters()) {
+            ITypeReference type = parameter.getType();
+            if (type instanceof IPrimitiveType) {
+                key.append(((IPrimitiveType) type).getName());
+            } else {
+                key.append('L');
             }
+            key.append(';');
         }
-        return null;
+        return key.toString();
     }
 
+    /**
+     * A set of methods indexed by their signature keys.
+     */
+    private final class MethodIndex {
 
-    private Set<IMethod> getMethodClosure(IClassDefinition clazz) {
-        Set<IMethod> closure = new HashSet<IMethod>();
-        collectMethods(new ClassProjection(clazz,
-                new HashMap<ITypeVariableDefinition, ITypeReference>()),
-                closure);
-        return closure;
+        private final Map<String, List<IMethod>> methodsByKey =
+                new HashMap<String, List<IMethod>>();
+
+        MethodIndex(Set<IMethod> methods) {
+            if (methods == null) {
+                return;
+            }
+            for (IMethod method : methods) {
+                String key = getSignatureKey(method);
+                List<IMethod> candidates = methodsByKey.get(key);
+                if (candidates == null) {
+                    candidates = new ArrayList<IMethod>(1);
+                    methodsByKey.put(key, candidates);
+                }
+                candidates.add(method);
+            }
+        }
+
+        IMethod findCompatibleMethod(IMethod method, String key) {
+            List<IMethod> candidates = methodsByKey.get(key);
+            if (candidates != null) {
+                for (IMethod candidate : candidates) {
+                    if (equalsSignature(method, candidate)) {
+                        return candidate;
+                    }
+                }
+            }
+            return null;
+        }
     }
 
-    private void collectMethods(IClassDefinition clazz, Set<IMethod> closure) {
-        if (clazz == null) {
-            return;
+    /**
+     * The methods of a class and all its super types. Holds the index of
+     * every type in the hierarchy once, in depth first order, so the methods
+     * of a class are found before the ones it overrides.
+     */
+    private final class MethodClosure {
+
+        private final List<MethodIndex> indexes;
+
+        MethodClosure(MethodIndex declared, List<MethodClosure> supertypes) {
+            Set<MethodIndex> added = Collections
+                    .newSetFromMap(new IdentityHashMap<MethodIndex, Boolean>());
+            indexes = new ArrayList<MethodIndex>();
+            indexes.add(declared);
+            for (MethodClosure supertype : supertypes) {
+                for (MethodIndex index : supertype.indexes) {
+                    if (added.add(index)) {
+                        indexes.add(index);
+                    }
+                }
+            }
+        }
+
+        IMethod findCompatibleMethod(IMethod method, String key) {
+            for (MethodIndex index : indexes) {
+                IMethod compatibleMethod = index.findCompatibleMethod(method,
+                        key);
+                if (compatibleMethod != null) {
+                    return compatibleMethod;
+                }
+            }
+            return null;
         }
-        if (clazz.getMethods() != null) {
-            closure.addAll(clazz.getMethods());
+    }
+
+    private MethodClosure getMethodClosure(IClassDefinition clazz) {
+        return collectMethods(new ClassProjection(clazz,
+                new HashMap<ITypeVariableDefinition, ITypeReference>()));
+    }
+
+    private MethodClosure collectMethods(IClassDefinition clazz) {
+        IClassDefinition key = getClosureKey(clazz);
+        MethodClosure closure = methodClosures.get(key);
+        if (closure != null) {
+            return closure;
         }
+
+        List<MethodClosure> supertypes = new ArrayList<MethodClosure>();
         if (clazz.getSuperClass() != null) {
-            collectMethods(getClassDefinition(clazz.getSuperClass()), closure);
+            addMethodClosure(getClassDefinition(clazz.getSuperClass()),
+                    supertypes);
         }
         if (clazz.getInterfaces() != null) {
             for (ITypeReference interfaze : clazz.getInterfaces()) {
-                collectMethods(getClassDefinition(interfaze), closure);
+                addMethodClosure(getClassDefinition(interfaze), supertypes);
+            }
+        }
+        closure = new MethodClosure(new MethodIndex(clazz.getMethods()),
+                supertypes);
+        if (key != null) {
+            closure = putIfAbsent(methodClosures, key, closure);
+        }
+        return closure;
+    }
+
+    private void addMethodClosure(IClassDefinition clazz,
+            List<MethodClosure> closures) {
+        if (clazz != null) {
+            closures.add(collectMethods(clazz));
+        }
+    }
+
+    /**
+     * Memoizes the given closure, unless another thread memoized a closure of
+     * the same class in the meantime. Returns the memoized closure, so all
+     * threads use the same one.
+     */
+    private static <V> V putIfAbsent(Map<IClassDefinition, V> closures,
+            IClassDefinition key, V closure) {
+        synchronized (closures) {
+            V memoized = closures.get(key);
+            if (memoized != null) {
+                return memoized;
             }
+            closures.put(key, closure);
+            return closure;
         }
     }
 
@@ -1242,23 +1481,29 @@ public class ApiComparator implements IApiComparator {
         return false;
     }
 
-    private Set<ITypeReference> fromComparison = new HashSet<ITypeReference>();
-    private Set<ITypeReference> toComparison = new HashSet<ITypeReference>();
+    /**
+     * The from and to types of the type comparisons in progress on a thread.
+     */
+    private static final class TypesInComparison {
 
+        private final Set<ITypeReference> fromComparison =
+                new HashSet<ITypeReference>();
+        private final Set<ITypeReference> toComparison =
+                new HashSet<ITypeReference>();
 
-    private boolean areInComparison(ITypeReference from, ITypeReference to) {
-        return fromComparison.contains(from) && toComparison.contains(to);
-    }
+        boolean areInComparison(ITypeReference from, ITypeReference to) {
+            return fromComparison.contains(from) && toComparison.contains(to);
+        }
 
-    private void markInComparison(ITypeReference from, ITypeReference to) {
-        fromComparison.add(from);
-        toComparison.add(to);
-    }
+        void markInComparison(ITypeReference from, ITypeReference to) {
+            fromComparison.add(from);
+            toComparison.add(to);
+        }
 
-    private void markFinishedComparison(ITypeReference from,
-            ITypeReference to) {
-        fromComparison.remove(from);
-        toComparison.remove(to);
+        void markFinishedComparison(ITypeReference from, ITypeReference to) {
+            fromComparison.remove(from);
+            toComparison.remove(to);
+        }
     }
 
     private ITypeReferenceDelta<? extends ITypeReference> compareType(
@@ -1270,11 +1515,12 @@ public class ApiComparator implements IApiComparator {
         if ((from == null && to != null) || (from != null && to == null)) {
             return new SigTypeDelta<ITypeReference>(from, to);
         }
-        if (areInComparison(from, to)) {
+        TypesInComparison types = typesInComparison.get();
+        if (types.areInComparison(from, to)) {
             return null;
         }
         try {
-            markInComparison(from, to);
+            types.markInComparison(from, to);
 
             if (implementInterface(from, to, IPrimitiveType.class)) {
                 return comparePrimitiveType((IPrimitiveType) from,
@@ -1312,7 +1558,7 @@ public class ApiComparator implements IApiComparator {
             }
             return new SigTypeDelta<ITypeReference>(from, to);
         } finally {
-            markFinishedComparison(from, to);
+            types.markFinishedComparison(from, to);
         }
     }
 
@@ -1358,6 +1604,20 @@ public class ApiComparator implements IApiComparator {
         throw new IllegalArgumentException("Unexpected type: " + reference);
     }
 
+    /**
+     * Returns whether both declarations are classes, constructors or methods,
+     * regardless of the implementation classes of the model.
+     */
+    private static boolean sameDeclarationKind(IGenericDeclaration from,
+            IGenericDeclaration to) {
+        boolean fromClass = from instanceof IClassDefinition;
+        boolean fromConstructor = from instanceof IConstructor;
+        boolean fromMethod = from instanceof IMethod;
+        return fromClass == to instanceof IClassDefinition
+                && fromConstructor == to instanceof IConstructor
+                && fromMethod == to instanceof IMethod;
+    }
+
     private boolean implementInterface(ITypeReference from, ITypeReference to,
             Class<?> check) {
         return check.isAssignableFrom(from.getClass())
@@ -1399,7 +1659,7 @@ public class ApiComparator implements IApiComparator {
 
         if (from != null && to != null) {
 
-            if (from.getClass() != to.getClass()) {
+            if (!sameDeclarationKind(from, to)) {
                 delta = new SigGenericDeclarationDelta(from, to);
             } else if (from instanceof IClassDefinition) {
                 IClassDefinition fromDeclaringClass = (IClassDefinition) from;
@@ -1657,6 +1917,105 @@ public class ApiComparator implements IApiComparator {
         return deltas.isEmpty() ? null : deltas;
     }
 
+    /**
+     * Like {@link #compareSets(Set, Set, SigComparator)}, but creates the
+     * deltas concurrently. The elements are matched up first, in the order
+     * of the sequential comparison. Then the deltas of the matched pairs are
+     * created in tasks of at most {@code elementsPerTask} pairs, and collected
+     * in that order again. Must be called on a thread of a
+     * {@link ForkJoinPool}.
+     */
+    private <T, S extends IDelta<? extends T>> Set<S> compareSetsInParallel(
+            Set<T> from, Set<T> to, SigComparator<T, S> comparator,
+            int elementsPerTask) {
+        List<T> fromElements = new ArrayList<T>();
+        List<T> toElements = new ArrayList<T>();
+        Set<T> toCopy = new HashSet<T>(to);
+
+        for (T fromElement : from) {
+            T toElement = null;
+            Iterator<T> toIterator = toCopy.iterator();
+            while (toElement == null && toIterator.hasNext()) {
+                T candidate = toIterator.next();
+                if (comparator.considerEqualElement(fromElement, candidate)) {
+                    toElement = candidate;
+                    toIterator.remove();
+                }
+            }
+            fromElements.add(fromElement);
+            toElements.add(toElement);
+        }
+        for (T toElement : toCopy) {
+            fromElements.add(null);
+            toElements.add(toElement);
+        }
+
+        List<S> results = new ArrayList<S>(Collections.<S> nCopies(
+                fromElements.size(), null));
+        new CompareTask<T, S>(fromElements, toElements, results, comparator,
+                0, results.size(), elementsPerTask).invoke();
+
+        Set<S> deltas = new HashSet<S>();
+        for (S delta : results) {
+            if (delta != null) {
+                deltas.add(delta);
+            }
+        }
+        return deltas.isEmpty() ? null : deltas;
+    }
+
+    /**
+     * Creates the deltas of a range of matched pairs of elements. Either
+     * element of a pair may be null, if it was added or removed.
+     */
+    private static final class CompareTask<T, S extends IDelta<? extends T>>
+            extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> fromElements;
+        private final List<T> toElements;
+        private final List<S> results;
+        private final SigComparator<T, S> comparator;
+        private final int start;
+        private final int end;
+        private final int elementsPerTask;
+
+        CompareTask(List<T> fromElements, List<T> toElements, List<S> results,
+                SigComparator<T, S> comparator, int start, int end,
+                int elementsPerTask) {
+            this.fromElements = fromElements;
+            this.toElements = toElements;
+            this.results = results;
+            this.comparator = comparator;
+            this.start = start;
+            this.end = end;
+            this.elementsPerTask = elementsPerTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > elementsPerTask) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new CompareTask<T, S>(fromElements, toElements,
+                        results, comparator, start, middle, elementsPerTask),
+                        new CompareTask<T, S>(fromElements, toElements,
+                                results, comparator, middle, end,
+                                elementsPerTask));
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                T from = fromElements.get(i);
+                T to = toElements.get(i);
+                if (from != null && to != null) {
+                    results.set(i, comparator.createChangedDelta(from, to));
+                } else {
+                    results.set(i, comparator.createAddRemoveDelta(from, to));
+                }
+            }
+        }
+    }
+
 
     private ITypeReferenceDelta<?> compareArrayType(IArrayType from,
             IArrayType to) {
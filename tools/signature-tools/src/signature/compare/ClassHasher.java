@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.compare;
+
+import signature.model.IAnnotation;
+import signature.model.IAnnotationElement;
+import signature.model.IAnnotationField;
+import signature.model.IApi;
+import signature.model.IArrayType;
+import signature.model.IClassDefinition;
+import signature.model.IClassReference;
+import signature.model.IEnumConstant;
+import signature.model.IExecutableMember;
+import signature.model.IField;
+import signature.model.IMethod;
+import signature.model.IPackage;
+import signature.model.IParameter;
+import signature.model.IParameterizedType;
+import signature.model.IPrimitiveType;
+import signature.model.ITypeReference;
+import signature.model.ITypeVariableDefinition;
+import signature.model.ITypeVariableReference;
+import signature.model.IWildcardType;
+import signature.model.Modifier;
+import signature.model.impl.Uninitialized;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes content hashes of class definitions.
+ * <p>
+ * The hash of a class covers its declaration and its members. The comparison
+ * of a class also looks into some of the classes it references: its super
+ * types, for inherited methods and interfaces, the declared exceptions, the
+ * bounds of type variables and the types of annotations. The hashes of these
+ * classes are part of the hash as well. All other referenced classes
+ * contribute only their package, name and kind, which is what the comparison
+ * uses to match them. Hashes are independent of the iteration order
+ * of the model's sets, so they may be compared across runs.
+ */
+/* package */final class ClassHasher {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // initial hashes of the kinds of elements
+    private static final long NULL = hashString("null");
+    private static final long UNSET = hashString("?");
+    private static final long SET = hashString("set");
+    private static final long LIST = hashString("list");
+    private static final long ARRAY = hashString("array");
+    private static final long CLASS_REFERENCE = hashString("class");
+    private static final long ARRAY_TYPE = hashString("[]");
+    private static final long PARAMETERIZED_TYPE = hashString("<>");
+    private static final long TYPE_VARIABLE_REFERENCE = hashString("T");
+    private static final long TYPE_VARIABLE = hashString("extends");
+    private static final long WILDCARD_TYPE = hashString("wildcard");
+    private static final long ANNOTATION = hashString("@");
+    private static final long ANNOTATION_ELEMENT = hashString("=");
+    private static final long FIELD = hashString("field");
+    private static final long ENUM_CONSTANT = hashString("enum");
+    private static final long ANNOTATION_FIELD = hashString("default");
+    private static final long METHOD = hashString("method");
+    private static final long CONSTRUCTOR = hashString("constructor");
+    private static final long PARAMETER = hashString("parameter");
+
+    /** Hashes of classes, by identity. */
+    private final Map<IClassDefinition, Long> hashes =
+            new IdentityHashMap<IClassDefinition, Long>();
+
+    /** Hashes of the names and kinds of classes, by identity. */
+    private final Map<IClassDefinition, Long> referenceHashes =
+            new IdentityHashMap<IClassDefinition, Long>();
+
+    /**
+     * The classes which are being hashed, by identity. Classes which depend
+     * on each other, e.g. annotation types which annotate each other, are
+     * hashed together as a strongly connected component, so that their hashes
+     * do not depend on the order in which they are visited.
+     */
+    private final Map<IClassDefinition, Node> nodes =
+            new IdentityHashMap<IClassDefinition, Node>();
+    private final Deque<Node> stack = new ArrayDeque<Node>();
+    private int nextIndex;
+
+    /** A class which is being hashed. */
+    private static final class Node {
+
+        final IClassDefinition clazz;
+        final long declarationHash;
+        final List<IClassDefinition> dependencies;
+        final int index;
+        int lowLink;
+        boolean onStack;
+
+        Node(IClassDefinition clazz, long declarationHash,
+                List<IClassDefinition> dependencies, int index) {
+            this.clazz = clazz;
+            this.declarationHash = declarationHash;
+            this.dependencies = dependencies;
+            this.index = index;
+            this.lowLink = index;
+        }
+    }
+
+    /**
+     * Returns the hashes of all classes of the given api, by identity.
+     */
+    Map<IClassDefinition, Long> hashClasses(IApi api) {
+        for (IPackage aPackage : api.getPackages()) {
+            for (IClassDefinition clazz : aPackage.getClasses()) {
+                getHash(clazz);
+            }
+        }
+        return Collections.unmodifiableMap(hashes);
+    }
+
+    /**
+     * Returns the hash of the given class.
+     */
+    long getHash(IClassDefinition clazz) {
+        Long hash = hashes.get(clazz);
+        if (hash == null) {
+            visit(clazz);
+            hash = hashes.get(clazz);
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes the given class and the classes it depends on, with Tarjan's
+     * algorithm for strongly connected components.
+     */
+    private Node visit(IClassDefinition clazz) {
+        Declaration declaration = new Declaration();
+        long declarationHash = declaration.hashDeclaration(clazz);
+        Node node = new Node(clazz, declarationHash,
+                declaration.dependencies, nextIndex++);
+        nodes.put(clazz, node);
+        stack.push(node);
+        node.onStack = true;
+
+        for (IClassDefinition dependency : node.dependencies) {
+            if (hashes.containsKey(dependency)) {
+                continue;
+            }
+            Node dependencyNode = nodes.get(dependency);
+            if (dependencyNode == null) {
+                dependencyNode = visit(dependency);
+                node.lowLink = Math.min(node.lowLink, dependencyNode.lowLink);
+            } else if (dependencyNode.onStack) {
+                node.lowLink = Math.min(node.lowLink, dependencyNode.index);
+            }
+        }
+
+        if (node.lowLink == node.index) {
+            Map<IClassDefinition, Node> component =
+                    new IdentityHashMap<IClassDefinition, Node>();
+            Node member;
+            do {
+                member = stack.pop();
+                member.onStack = false;
+                component.put(member.clazz, member);
+            } while (member != node);
+
+            long componentHash = 0;
+            for (Node n : component.values()) {
+                componentHash += mix(n.declarationHash);
+                for (IClassDefinition dependency : n.dependencies) {
+                    if (!component.containsKey(dependency)) {
+                        componentHash += mix(hashes.get(dependency));
+                    }
+                }
+            }
+            for (Node n : component.values()) {
+                hashes.put(n.clazz, mix(combine(n.declarationHash,
+                        componentHash)));
+                nodes.remove(n.clazz);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the 64 bit FNV-1a hash of the given string.
+     */
+    private static long hashString(String string) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < string.length(); i++) {
+            hash ^= string.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Appends a value to a hash, depending on the order of the values.
+     */
+    private static long combine(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    /**
+     * Scrambles the bits of a hash, so that sums of hashes stay well
+     * distributed.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Hashes the declaration of a class and collects the classes its
+     * comparison depends on. Every kind of element starts from a hash of its
+     * own, so that different kinds of elements hash differently. Sets are
+     * hashed independently of their iteration order.
+     */
+    private final class Declaration {
+
+        final List<IClassDefinition> dependencies =
+                new ArrayList<IClassDefinition>();
+
+        private void addDependency(ITypeReference type) {
+            if (type instanceof IParameterizedType) {
+                type = ((IParameterizedType) type).getRawType();
+            }
+            if (type instanceof IClassReference
+                    && Uninitialized.isInitialized(type)) {
+                IClassDefinition definition = ((IClassReference) type)
+                        .getClassDefinition();
+                if (definition != null
+                        && Uninitialized.isInitialized(definition)) {
+                    dependencies.add(definition);
+                }
+            }
+        }
+
+        private void addDependencies(Collection<ITypeReference> types) {
+            if (isPresent(types)) {
+                for (ITypeReference type : types) {
+                    addDependency(type);
+                }
+            }
+        }
+
+        long hashDeclaration(IClassDefinition clazz) {
+            long hash = hashString(String.valueOf(clazz.getKind()));
+            hash = combine(hash, hashClass(clazz));
+            hash = combine(hash, hashModifiers(clazz.getModifiers()));
+            hash = combine(hash, hashAnnotations(clazz.getAnnotations()));
+            hash = combine(hash, hashType(clazz.getSuperClass()));
+            hash = combine(hash, hashTypeSet(clazz.getInterfaces()));
+            hash = combine(hash, hashTypeVariables(clazz.getTypeParameters()));
+            hash = combine(hash, hashClass(clazz.getDeclaringClass()));
+            Set<IClassDefinition> innerClasses = clazz.getInnerClasses();
+            if (isPresent(innerClasses)) {
+                long sum = 0;
+                for (IClassDefinition innerClass : innerClasses) {
+                    sum += mix(hashClass(innerClass));
+                }
+                hash = combine(hash, sum);
+            } else {
+                hash = combine(hash, hashAbsent(innerClasses));
+            }
+            hash = combine(hash, hashExecutables(clazz.getConstructors()));
+            hash = combine(hash, hashExecutables(clazz.getMethods()));
+            hash = combine(hash, hashFields(clazz.getFields()));
+            hash = combine(hash, hashFields(clazz.getEnumConstants()));
+            hash = combine(hash, hashFields(clazz.getAnnotationFields()));
+            addDependency(clazz.getSuperClass());
+            addDependencies(clazz.getInterfaces());
+            return hash;
+        }
+
+        private long hashClass(IClassDefinition clazz) {
+            if (!isPresent(clazz)) {
+                return hashAbsent(clazz);
+            }
+            Long hash = referenceHashes.get(clazz);
+            if (hash == null) {
+                // what the comparison looks at to match referenced classes
+                hash = hashString(String.valueOf(clazz.getPackageName()));
+                hash = combine(hash,
+                        hashString(String.valueOf(clazz.getName())));
+                hash = combine(hash,
+                        hashString(String.valueOf(clazz.getKind())));
+                referenceHashes.put(clazz, hash);
+            }
+            return hash;
+        }
+
+        private long hashModifiers(Set<Modifier> modifiers) {
+            if (!isPresent(modifiers)) {
+                return hashAbsent(modifiers);
+            }
+            long sum = 0;
+            for (Modifier modifier : modifiers) {
+                sum += mix(hashString(modifier.name()));
+            }
+            return combine(SET, sum);
+        }
+
+        private long hashAnnotations(Set<IAnnotation> annotations) {
+            if (!isPresent(annotations)) {
+                return hashAbsent(annotations);
+            }
+            long sum = 0;
+            for (IAnnotation annotation : annotations) {
+                sum += mix(hashAnnotation(annotation));
+            }
+            return combine(SET, sum);
+        }
+
+        private long hashAnnotation(IAnnotation annotation) {
+            addDependency(annotation.getType());
+            long hash = combine(ANNOTATION, hashType(annotation.getType()));
+            Set<IAnnotationElement> elements = annotation.getElements();
+            if (!isPresent(elements)) {
+                return combine(hash, hashAbsent(elements));
+            }
+            long sum = 0;
+            for (IAnnotationElement element : elements) {
+                IAnnotationField field = element.getDeclaringField();
+                long elementHash = combine(ANNOTATION_ELEMENT,
+                        field == null ? NULL : hashString(field.getName()));
+                sum += mix(combine(elementHash, hashValue(element
+                        .getValue())));
+            }
+            return combine(hash, sum);
+        }
+
+        private long hashType(ITypeReference type) {
+            if (!isPresent(type)) {
+                return hashAbsent(type);
+            }
+            if (type instanceof IClassReference) {
+                return combine(CLASS_REFERENCE, hashClass(
+                        ((IClassReference) type).getClassDefinition()));
+            }
+            if (type instanceof IPrimitiveType) {
+                return hashString(((IPrimitiveType) type).getName());
+            }
+            if (type instanceof IParameterizedType) {
+                IParameterizedType parameterizedType =
+                        (IParameterizedType) type;
+                long hash = combine(PARAMETERIZED_TYPE,
+                        hashType(parameterizedType.getOwnerType()));
+                hash = combine(hash, hashType(parameterizedType
+                        .getRawType()));
+                return combine(hash, hashTypeList(parameterizedType
+                        .getTypeArguments()));
+            }
+            if (type instanceof ITypeVariableReference) {
+                ITypeVariableDefinition variable =
+                        ((ITypeVariableReference) type)
+                                .getTypeVariableDefinition();
+                long hash = combine(TYPE_VARIABLE_REFERENCE,
+                        hashString(variable.getName()));
+                Object declaration = variable.getGenericDeclaration();
+                if (declaration instanceof IClassDefinition) {
+                    return combine(hash,
+                            hashClass((IClassDefinition) declaration));
+                }
+                if (declaration instanceof IExecutableMember) {
+                    return combine(hash, hashString(
+                            ((IExecutableMember) declaration).getName()));
+                }
+                return combine(hash, hashAbsent(declaration));
+            }
+            if (type instanceof IArrayType) {
+                return combine(ARRAY_TYPE, hashType(((IArrayType) type)
+                        .getComponentType()));
+            }
+            if (type instanceof IWildcardType) {
+                IWildcardType wildcard = (IWildcardType) type;
+                long hash = combine(WILDCARD_TYPE, hashType(wildcard
+                        .getLowerBound()));
+                return combine(hash, hashTypeList(wildcard.getUpperBounds()));
+            }
+            return hashString(type.toString());
+        }
+
+        private long hashTypeSet(Set<ITypeReference> types) {
+            if (!isPresent(types)) {
+                return hashAbsent(types);
+            }
+            long sum = 0;
+            for (ITypeReference type : types) {
+                sum += mix(hashType(type));
+            }
+            return combine(SET, sum);
+        }
+
+        private long hashTypeList(List<ITypeReference> types) {
+            if (!isPresent(types)) {
+                return hashAbsent(types);
+            }
+            long hash = LIST;
+            for (ITypeReference type : types) {
+                hash = combine(hash, hashType(type));
+            }
+            return hash;
+        }
+
+        private long hashTypeVariables(
+                List<ITypeVariableDefinition> variables) {
+            if (!isPresent(variables)) {
+                return hashAbsent(variables);
+            }
+            long hash = LIST;
+            for (ITypeVariableDefinition variable : variables) {
+                addDependencies(variable.getUpperBounds());
+                long variableHash = combine(TYPE_VARIABLE,
+                        hashString(variable.getName()));
+                hash = combine(hash, combine(variableHash,
+                        hashTypeList(variable.getUpperBounds())));
+            }
+            return hash;
+        }
+
+        private long hashFields(Set<? extends IField> fields) {
+            if (!isPresent(fields)) {
+                return hashAbsent(fields);
+            }
+            long sum = 0;
+            for (IField field : fields) {
+                sum += mix(hashField(field));
+            }
+            return combine(SET, sum);
+        }
+
+        private long hashField(IField field) {
+            long hash = FIELD;
+            if (field instanceof IEnumConstant) {
+                int ordinal;
+                try {
+                    ordinal = ((IEnumConstant) field).getOrdinal();
+                } catch (UnsupportedOperationException e) {
+                    ordinal = -1;
+                }
+                hash = combine(ENUM_CONSTANT, ordinal);
+            } else if (field instanceof IAnnotationField) {
+                hash = combine(ANNOTATION_FIELD, hashValue(
+                        ((IAnnotationField) field).getDefaultValue()));
+            }
+            hash = combine(hash, hashModifiers(field.getModifiers()));
+            hash = combine(hash, hashAnnotations(field.getAnnotations()));
+            hash = combine(hash, hashType(field.getType()));
+            return combine(hash, hashString(field.getName()));
+        }
+
+        private long hashExecutables(
+                Set<? extends IExecutableMember> members) {
+            if (!isPresent(members)) {
+                return hashAbsent(members);
+            }
+            long sum = 0;
+            for (IExecutableMember member : members) {
+                sum += mix(hashExecutable(member));
+            }
+            return combine(SET, sum);
+        }
+
+        private long hashExecutable(IExecutableMember member) {
+            long hash = CONSTRUCTOR;
+            if (member instanceof IMethod) {
+                hash = combine(METHOD, hashType(((IMethod) member)
+                        .getReturnType()));
+            }
+            hash = combine(hash, hashModifiers(member.getModifiers()));
+            hash = combine(hash, hashAnnotations(member.getAnnotations()));
+            hash = combine(hash, hashTypeVariables(member
+                    .getTypeParameters()));
+            hash = combine(hash, hashString(member.getName()));
+            List<IParameter> parameters = member.getParameters();
+            if (isPresent(parameters)) {
+                for (IParameter parameter : parameters) {
+                    long parameterHash = combine(PARAMETER,
+                            hashAnnotations(parameter.getAnnotations()));
+                    hash = combine(hash, combine(parameterHash,
+                            hashType(parameter.getType())));
+                }
+            } else {
+                hash = combine(hash, hashAbsent(parameters));
+            }
+            hash = combine(hash, hashTypeSet(member.getExceptions()));
+            addDependencies(member.getExceptions());
+            return hash;
+        }
+
+        /**
+         * Hashes the value of an annotation element. Enum constants are
+         * hashed by type and name only.
+         */
+        private long hashValue(Object value) {
+            if (!isPresent(value)) {
+                return hashAbsent(value);
+            }
+            if (value instanceof Object[]) {
+                long hash = ARRAY;
+                for (Object element : (Object[]) value) {
+                    hash = combine(hash, hashValue(element));
+                }
+                return hash;
+            }
+            if (value instanceof IField) {
+                IField field = (IField) value;
+                return combine(hashType(field.getType()), hashString(field
+                        .getName()));
+            }
+            if (value instanceof IAnnotation) {
+                return hashAnnotation((IAnnotation) value);
+            }
+            if (value instanceof ITypeReference) {
+                return hashType((ITypeReference) value);
+            }
+            // the type tells apart values like 1 and 1L
+            return combine(hashString(value.getClass().getName()),
+                    hashString(value.toString()));
+        }
+    }
+
+    private static boolean isPresent(Object element) {
+        return element != null && Uninitialized.isInitialized(element);
+    }
+
+    private static long hashAbsent(Object element) {
+        return element == null ? NULL : UNSET;
+    }
+}
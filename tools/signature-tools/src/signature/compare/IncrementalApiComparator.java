@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.compare;
+
+import signature.compare.model.IApiDelta;
+import signature.compare.model.IClassDefinitionDelta;
+import signature.model.IApi;
+import signature.model.IClassDefinition;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link ApiComparator} which reuses the results of its previous
+ * comparison.
+ * <p>
+ * For every compared pair of classes, the comparator remembers the content
+ * hashes of both classes, see {@link ClassHasher}, and their delta. If both
+ * hashes are unchanged in the next comparison, the previous delta is reused
+ * instead of comparing the classes again. The resulting delta model describes
+ * the same differences as a full comparison.
+ * <p>
+ * The hashes can be stored with {@link #writeState(File)} and restored with
+ * {@link #readState(File)}, so that a later run can skip the classes which
+ * are unchanged and did not differ. The deltas themselves are not stored, so
+ * classes which differed are compared again in that run.
+ */
+public class IncrementalApiComparator extends ApiComparator {
+
+    private static final int STATE_MAGIC = 0x53494749; // "SIGI"
+    private static final int STATE_VERSION = 1;
+
+    /** The result of the comparison of two classes. */
+    private static final class ClassComparison {
+
+        final long fromHash;
+        final long toHash;
+        final boolean changed;
+        /** The delta, or null if unchanged or not available. */
+        final IClassDefinitionDelta delta;
+
+        ClassComparison(long fromHash, long toHash, boolean changed,
+                IClassDefinitionDelta delta) {
+            this.fromHash = fromHash;
+            this.toHash = toHash;
+            this.changed = changed;
+            this.delta = delta;
+        }
+
+        boolean isReusable(long fromHash, long toHash) {
+            return this.fromHash == fromHash && this.toHash == toHash
+                    && (!changed || delta != null);
+        }
+    }
+
+    /** The results of the previous comparison, by qualified class name. */
+    private Map<String, ClassComparison> previous =
+            new HashMap<String, ClassComparison>();
+
+    /** The results of the current comparison, by qualified class name. */
+    private Map<String, ClassComparison> current;
+
+    private Map<IClassDefinition, Long> fromHashes;
+    private Map<IClassDefinition, Long> toHashes;
+
+    private final AtomicInteger comparedClasses = new AtomicInteger();
+    private final AtomicInteger reusedClasses = new AtomicInteger();
+
+    /**
+     * Creates a comparator which compares packages and classes sequentially.
+     */
+    public IncrementalApiComparator() {
+        this(1);
+    }
+
+    /**
+     * Creates a comparator which compares packages and classes with the
+     * given number of threads.
+     *
+     * @param parallelism
+     *            the number of threads, 1 to compare on the calling thread
+     *            only
+     */
+    public IncrementalApiComparator(int parallelism) {
+        super(parallelism);
+    }
+
+    @Override
+    public IApiDelta compare(IApi from, IApi to) {
+        fromHashes = new ClassHasher().hashClasses(from);
+        toHashes = new ClassHasher().hashClasses(to);
+        current = Collections.synchronizedMap(
+                new HashMap<String, ClassComparison>());
+        comparedClasses.set(0);
+        reusedClasses.set(0);
+        try {
+            IApiDelta delta = super.compare(from, to);
+            previous = current;
+            return delta;
+        } finally {
+            current = null;
+            fromHashes = null;
+            toHashes = null;
+        }
+    }
+
+    @Override
+    protected IClassDefinitionDelta compareClass(IClassDefinition from,
+            IClassDefinition to) {
+        Long fromHash = fromHashes.get(from);
+        Long toHash = toHashes.get(to);
+        if (fromHash == null || toHash == null) {
+            // not a class of a package of the compared apis
+            return super.compareClass(from, to);
+        }
+        String name = from.getQualifiedName();
+        ClassComparison comparison = previous.get(name);
+        if (comparison != null && comparison.isReusable(fromHash, toHash)) {
+            reusedClasses.incrementAndGet();
+        } else {
+            IClassDefinitionDelta delta = super.compareClass(from, to);
+            comparison = new ClassComparison(fromHash, toHash, delta != null,
+                    delta);
+            comparedClasses.incrementAndGet();
+        }
+        current.put(name, comparison);
+        return comparison.delta;
+    }
+
+    /**
+     * Returns the number of pairs of classes compared by the last comparison.
+     */
+    public int getComparedClassCount() {
+        return comparedClasses.get();
+    }
+
+    /**
+     * Returns the number of pairs of classes whose delta the last comparison
+     * reused from the previous one.
+     */
+    public int getReusedClassCount() {
+        return reusedClasses.get();
+    }
+
+    /**
+     * Writes the class hashes of the last comparison to the given file.
+     */
+    public void writeState(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.writeInt(STATE_MAGIC);
+            out.writeInt(STATE_VERSION);
+            out.writeInt(previous.size());
+            for (Map.Entry<String, ClassComparison> entry : previous
+                    .entrySet()) {
+                ClassComparison comparison = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(comparison.fromHash);
+                out.writeLong(comparison.toHash);
+                out.writeBoolean(comparison.changed);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads class hashes written by {@link #writeState(File)}. They replace
+     * the results of the previous comparison.
+     *
+     * @throws IOException
+     *             if the file cannot be read or was written by an
+     *             incompatible version
+     */
+    public void readState(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != STATE_MAGIC) {
+                throw new IOException("Not a comparison state: " + file);
+            }
+            int version = in.readInt();
+            if (version != STATE_VERSION) {
+                throw new IOException("Unsupported comparison state version "
+                        + version + ", expected " + STATE_VERSION);
+            }
+            int count = in.readInt();
+            Map<String, ClassComparison> state =
+                    new HashMap<String, ClassComparison>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long fromHash = in.readLong();
+                long toHash = in.readLong();
+                boolean changed = in.readBoolean();
+                state.put(name, new ClassComparison(fromHash, toHash,
+                        changed, null));
+            }
+            previous = state;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -29,6 +29,7 @@ import signature.io.html.HtmlDeltaExternalizer;
 import signature.io.impl.BinaryApi;
 import signature.model.IApi;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
@@ -46,8 +47,16 @@ public class Main {
      * --to=(doclet | dex | sig) <sourcefiles>
      * --name <name>
      * --out directory
+     * [--parallel]
+     * [--incremental stateFile]
      * --packages packageName{ packageName}
      * </pre>
+     * 
+     * With {@code --parallel}, packages and classes are compared on all
+     * available processors. With {@code --incremental}, the class hashes of
+     * the comparison are stored in the given file, and classes which did not
+     * change since the run that stored them and did not differ are not
+     * compared again. The report is the same as without these options.
      */
     public static void main(String[] args) throws IOException {
         int at = 0;
@@ -129,6 +138,18 @@ public class Main {
         }
         String output = args[++at];
 
+        boolean parallel = false;
+        if ("--parallel".equals(args[at + 1])) {
+            parallel = true;
+            ++at;
+        }
+
+        File state = null;
+        if ("--incremental".equals(args[at + 1])) {
+            at += 2;
+            state = new File(args[at]);
+        }
+
         if (!"--packages".equals(args[++at])) {
             throw new UsageException();
         }
@@ -138,13 +159,37 @@ public class Main {
             packages.add(args[at]);
         }
 
-        IApiComparator comparator = new ApiComparator();
+        int parallelism = parallel ? Runtime.getRuntime()
+                .availableProcessors() : 1;
+        IApiComparator comparator;
+        IncrementalApiComparator incrementalComparator = null;
+        if (state != null) {
+            incrementalComparator = new IncrementalApiComparator(parallelism);
+            if (state.exists()) {
+                try {
+                    incrementalComparator.readState(state);
+                } catch (IOException e) {
+                    System.err.println("Ignoring comparison state " + state
+                            + ": " + e.getMessage());
+                }
+            }
+            comparator = incrementalComparator;
+        } else {
+            comparator = new ApiComparator(parallelism);
+        }
         IApi fromApi = getApi(fromType, nameFrom, fromFiles, packages);
         IApi toApi = getApi(toType, nameTo, toFiles, packages);
 
         IApiDeltaExternalizer externalizer = new HtmlDeltaExternalizer();
         System.out.println("Writing delta report to " + output);
         IApiDelta delta = comparator.compare(fromApi, toApi);
+        if (incrementalComparator != null) {
+            int reused = incrementalComparator.getReusedClassCount();
+            System.out.println("Reused " + reused + " of "
+                    + (reused + incrementalComparator.getComparedClassCount())
+                    + " class comparisons");
+            incrementalComparator.writeState(state);
+        }
         if (delta == null) {
             delta = new EmptyDelta(fromApi, toApi);
         }
@@ -46,6 +46,22 @@ public class ClassProjection implements IClassDefinition {
         this.substitutions = mapping;
     }
 
+    /**
+     * Returns the class definition this is a projection of.
+     */
+    public IClassDefinition getOriginal() {
+        return original;
+    }
+
+    /**
+     * Returns whether this projection substitutes any type variables. A
+     * projection without substitutions has the same members and super types
+     * as its original class definition.
+     */
+    public boolean hasSubstitutions() {
+        return !substitutions.isEmpty();
+    }
+
     public Set<IAnnotationField> getAnnotationFields() {
         throw new UnsupportedOperationException();
     }
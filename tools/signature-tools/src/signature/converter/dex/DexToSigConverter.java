@@ -52,6 +52,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import signature.converter.Visibility;
 import signature.model.IAnnotation;
@@ -96,11 +98,23 @@ import dex.structure.DexParameter;
 
 /**
  * Converts a set of dex files to the signature compare api.
+ * <p>
+ * Classes are converted in two phases. The header of each class (kind,
+ * modifiers, type parameters, super types and annotation fields) is converted
+ * first, on the calling thread, since converting the members of a class reads
+ * the type parameters and annotation fields of other classes. The members and
+ * annotations of all classes are then converted in parallel on a
+ * {@link ForkJoinPool}, each class by exactly one task. The resulting api does
+ * not depend on the number of threads.
  */
 public final class DexToSigConverter implements IClassInitializer {
 
+    /** Number of classes a single task converts without splitting further. */
+    private static final int CLASSES_PER_TASK = 16;
+
     private final FieldPool elementPool;
     private final TypePool factory;
+    private final int parallelism;
     private static final Set<IField> EMPTY_FIELDS = Collections.emptySet();
     private static final Set<IEnumConstant> EMPTY_ENUM_CONSTANTS = Collections
             .emptySet();
@@ -117,9 +131,25 @@ public final class DexToSigConverter implements IClassInitializer {
 
 
     /**
-     * Creates a new instance of {@link DexToSigConverter}.
+     * Creates a new instance of {@link DexToSigConverter} which uses all
+     * available processors.
      */
     public DexToSigConverter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new instance of {@link DexToSigConverter}.
+     * 
+     * @param parallelism
+     *            the number of threads to convert classes with, 1 to convert
+     *            all classes on the calling thread
+     */
+    public DexToSigConverter(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
         factory = new TypePool();
         elementPool = new FieldPool();
     }
@@ -171,11 +201,17 @@ public final class DexToSigConverter implements IClassInitializer {
             }
         }
 
+        List<DexClass> dexClasses = new ArrayList<DexClass>();
+        for (Set<DexClass> classes : packageToDexClasses.values()) {
+            dexClasses.addAll(classes);
+        }
+        convertClasses(dexClasses);
+
         Set<SigClassDefinition> allClasses = new HashSet<SigClassDefinition>();
 
         for (SigPackage aPackage : packageToDexClasses.keySet()) {
-            Set<SigClassDefinition> classes = convertClasses(packageToDexClasses
-                    .get(aPackage));
+            Set<SigClassDefinition> classes = getVisibleClasses(
+                    packageToDexClasses.get(aPackage));
             allClasses.addAll(classes);
             aPackage.setClasses(new HashSet<IClassDefinition>(classes));
         }
@@ -257,22 +293,84 @@ public final class DexToSigConverter implements IClassInitializer {
     }
 
     /**
-     * Converts a set of {@link DexClass} objects to a set of the corresponding
-     * {@link SigClassDefinition} objects.
+     * Converts all given {@link DexClass} objects but synthetic ones to the
+     * corresponding {@link SigClassDefinition} objects. Headers are converted
+     * on the calling thread, members in parallel.
      * 
      * @param dexClasses
      *            the {@link DexClass} objects
-     * @return a set of {@link DexClass} objects
      */
-    protected Set<SigClassDefinition> convertClasses(Set<DexClass> dexClasses) {
-        Set<SigClassDefinition> classes = new HashSet<SigClassDefinition>();
+    protected void convertClasses(List<DexClass> dexClasses) {
+        List<DexClass> converted = new ArrayList<DexClass>(dexClasses.size());
         for (DexClass dexClass : dexClasses) {
-            // convert all classes but synthetic, return only initialized
             if (convertAnyWay(dexClass)) {
-                SigClassDefinition sigCLass = convertClass(dexClass);
-                if (isVisible(dexClass, visibility)) {
-                    classes.add(sigCLass);
+                convertClassHeader(dexClass);
+                converted.add(dexClass);
+            }
+        }
+
+        if (parallelism == 1) {
+            for (DexClass dexClass : converted) {
+                convertClassMembers(dexClass);
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ConvertMembersTask(converted, 0, converted
+                    .size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Converts the members of a range of classes, splitting the range until it
+     * is small enough.
+     */
+    private final class ConvertMembersTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<DexClass> dexClasses;
+        private final int from;
+        private final int to;
+
+        ConvertMembersTask(List<DexClass> dexClasses, int from, int to) {
+            this.dexClasses = dexClasses;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CLASSES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    convertClassMembers(dexClasses.get(i));
                 }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ConvertMembersTask(dexClasses, from, middle),
+                        new ConvertMembersTask(dexClasses, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link SigClassDefinition} objects of all converted and
+     * visible classes in the given set.
+     * 
+     * @param dexClasses
+     *            the {@link DexClass} objects
+     * @return a set of {@link SigClassDefinition} objects
+     */
+    private Set<SigClassDefinition> getVisibleClasses(
+            Set<DexClass> dexClasses) {
+        Set<SigClassDefinition> classes = new HashSet<SigClassDefinition>();
+        for (DexClass dexClass : dexClasses) {
+            if (convertAnyWay(dexClass) && isVisible(dexClass, visibility)) {
+                classes.add(factory.getClass(getPackageName(dexClass
+                        .getName()), getClassName(dexClass.getName())));
             }
         }
         return classes;
@@ -287,6 +385,20 @@ public final class DexToSigConverter implements IClassInitializer {
      * @return the corresponding {@link SigClassDefinition}
      */
     protected SigClassDefinition convertClass(DexClass dexClass) {
+        convertClassHeader(dexClass);
+        return convertClassMembers(dexClass);
+    }
+
+    /**
+     * Converts everything of a {@link DexClass} other classes may depend on
+     * while they are converted: kind, modifiers, declaring class, type
+     * parameters, super types and annotation fields.
+     * 
+     * @param dexClass
+     *            the {@link DexClass} to convert
+     * @return the corresponding {@link SigClassDefinition}
+     */
+    private SigClassDefinition convertClassHeader(DexClass dexClass) {
         assert dexClass != null;
 
         String packageName = getPackageName(dexClass.getName());
@@ -358,6 +470,35 @@ public final class DexToSigConverter implements IClassInitializer {
             sigClass.setInterfaces(interfaces);
         }
 
+        if (isAnnotation(dexClass)) {
+            Map<String, Object> mappings = getDefaultValueMapping(dexClass);
+            Set<SigAnnotationField> annotationFields = convertAnnotationFields(
+                    dexClass.getMethods(), mappings);
+            sigClass.setAnnotationFields(new HashSet<IAnnotationField>(
+                    annotationFields));
+            addAnnotationsToAnnotationFields(dexClass.getMethods(),
+                    annotationFields);
+        } else {
+            sigClass.setAnnotationFields(EMPTY_ANNOTATION_FIELDS);
+        }
+        return sigClass;
+    }
+
+    /**
+     * Converts the constructors, fields, enum constants, methods and
+     * annotations of a {@link DexClass} whose header has already been
+     * converted.
+     * 
+     * @param dexClass
+     *            the {@link DexClass} to convert
+     * @return the corresponding {@link SigClassDefinition}
+     */
+    private SigClassDefinition convertClassMembers(DexClass dexClass) {
+        assert dexClass != null;
+
+        SigClassDefinition sigClass = factory.getClass(getPackageName(dexClass
+                .getName()), getClassName(dexClass.getName()));
+
         // constructors
         Set<SigConstructor> constructors = convertConstructors(dexClass
                 .getMethods());
@@ -371,14 +512,7 @@ public final class DexToSigConverter implements IClassInitializer {
 
 
         if (isAnnotation(dexClass)) {
-            Map<String, Object> mappings = getDefaultValueMapping(dexClass);
-            Set<SigAnnotationField> annotationFields = convertAnnotationFields(
-                    dexClass.getMethods(), mappings);
-            sigClass.setAnnotationFields(new HashSet<IAnnotationField>(
-                    annotationFields));
-            addAnnotationsToAnnotationFields(dexClass.getMethods(),
-                    annotationFields);
-
+            // annotation fields are part of the header
             sigClass.setEnumConstants(EMPTY_ENUM_CONSTANTS);
             sigClass.setFields(EMPTY_FIELDS);
 
@@ -400,14 +534,12 @@ public final class DexToSigConverter implements IClassInitializer {
 
             sigClass.setFields(fields);
             sigClass.setEnumConstants(enumConstants);
-            sigClass.setAnnotationFields(EMPTY_ANNOTATION_FIELDS);
             methods = convertMethods(dexClass.getMethods());
         } else {
             // fields
             sigClass.setFields(new HashSet<IField>(convertFields(dexClass
                     .getFields())));
             sigClass.setEnumConstants(EMPTY_ENUM_CONSTANTS);
-            sigClass.setAnnotationFields(EMPTY_ANNOTATION_FIELDS);
             methods = convertMethods(dexClass.getMethods());
         }
 
@@ -929,10 +1061,19 @@ public final class DexToSigConverter implements IClassInitializer {
         return value;
     }
 
-    public IClassDefinition initializeClass(String packageName,
+    /**
+     * Converts a class another class depends on before it is reached in
+     * {@link #convertClasses(List)}. Synchronized, since members of synthetic
+     * classes are converted here, possibly from several threads at once.
+     */
+    public synchronized IClassDefinition initializeClass(String packageName,
             String className) {
         String dexName = getDexName(packageName, className);
         DexClass dexClass = dexNameToDexClass.get(dexName);
+        if (convertAnyWay(dexClass)) {
+            // members are converted with all other classes
+            return convertClassHeader(dexClass);
+        }
         return convertClass(dexClass);
     }
 }
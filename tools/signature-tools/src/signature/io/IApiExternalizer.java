@@ -22,8 +22,8 @@ import java.io.IOException;
 
 /**
  * This interface is used to write API definitions. Possible implementations of
- * this interface use Java serialization to store the API in binary form on the
- * disk. An alternative implementation can use ASCII files.
+ * this interface store the API in a binary format on the disk. An alternative
+ * implementation can use ASCII files.
  */
 public interface IApiExternalizer {
     void externalizeApi(String loacation, IApi signature) throws IOException;
@@ -20,16 +20,48 @@ import signature.converter.Visibility;
 import signature.io.IApiExternalizer;
 import signature.io.IApiLoader;
 import signature.model.IApi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * Stores apis in the binary snapshot format, see {@link SnapshotFormat}.
+ * <p>
+ * Signature files written with Java serialization by earlier versions can
+ * still be loaded. Only the classes of the signature model may be
+ * deserialized from such files.
+ */
 public class BinaryApi implements IApiExternalizer, IApiLoader {
 
+    /** Classes which may occur in a Java serialized signature file. */
+    private static final Set<String> SERIALIZED_CLASSES = Collections
+            .unmodifiableSet(new HashSet<String>(Arrays.asList(
+                    "[Ljava.lang.Object;", "[Ljava.lang.Enum;",
+                    "java.lang.Enum", "java.lang.Number", "java.lang.String",
+                    "java.lang.Boolean", "java.lang.Byte",
+                    "java.lang.Character", "java.lang.Short",
+                    "java.lang.Integer", "java.lang.Long", "java.lang.Float",
+                    "java.lang.Double", "java.util.ArrayList",
+                    "java.util.HashSet", "java.util.Collections$EmptyList",
+                    "java.util.Collections$EmptySet",
+                    "java.util.EnumSet$SerializationProxy",
+                    "signature.converter.Visibility")));
+
+    private static final String SERIALIZED_PACKAGE = "signature.model.";
+
     public void externalizeApi(String fileName, IApi api) throws IOException {
 
         File directory = new File(fileName);
@@ -40,12 +72,13 @@ public class BinaryApi implements IApiExternalizer, IApiLoader {
         File file = new File(directory, getFileName(api));
         file.createNewFile();
 
-        ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(
                 file));
-        oos.writeObject(api);
-
-        oos.flush();
-        oos.close();
+        try {
+            new SnapshotWriter().write(api, out);
+        } finally {
+            out.close();
+        }
     }
 
     private String getFileName(IApi api) {
@@ -55,9 +88,6 @@ public class BinaryApi implements IApiExternalizer, IApiLoader {
     public IApi loadApi(String name, Visibility visibility,
             Set<String> fileNames, Set<String> packageNames) throws
             IOException {
-        System.err
-                .println("Binary signature loader ignores visibility and " +
-                        "package names.");
         if (fileNames.size() != 1) {
             throw new IllegalArgumentException(
                     "Only one file can be processed by the binary signature " +
@@ -65,19 +95,52 @@ public class BinaryApi implements IApiExternalizer, IApiLoader {
         }
         String fileName = fileNames.iterator().next();
         File file = new File(fileName);
-        ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(file));
-        IApi sig = null;
+        IApi sig;
+        if (SnapshotReader.isSnapshot(file)) {
+            System.err.println("Binary signature loader ignores visibility.");
+            sig = SnapshotReader.read(file, packageNames);
+        } else {
+            System.err.println("Binary signature loader ignores visibility " +
+                    "and package names of serialized signature files.");
+            sig = readSerialized(file);
+        }
+        if (name != null) {
+            sig.setName(name);
+        }
+        return sig;
+    }
+
+    private IApi readSerialized(File file) throws IOException {
+        ObjectInputStream ois = new SignatureInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
         try {
-            sig = (IApi) ois.readObject();
+            return (IApi) ois.readObject();
         } catch (ClassNotFoundException e) {
             throw new IllegalArgumentException(e);
+        } finally {
+            ois.close();
         }
-        if (name != null) {
-            sig.setName(name);
+    }
+
+    /**
+     * Deserializes only the classes which make up a signature.
+     */
+    private static class SignatureInputStream extends ObjectInputStream {
+
+        SignatureInputStream(InputStream in) throws IOException {
+            super(in);
         }
 
-        ois.close();
-        return sig;
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (!SERIALIZED_CLASSES.contains(name)
+                    && !name.startsWith(SERIALIZED_PACKAGE)) {
+                throw new InvalidClassException(name,
+                        "not part of a signature");
+            }
+            return super.resolveClass(desc);
+        }
     }
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.io.impl;
+
+import signature.model.IAnnotation;
+import signature.model.IAnnotationField;
+import signature.model.IClassDefinition;
+import signature.model.IConstructor;
+import signature.model.IEnumConstant;
+import signature.model.IField;
+import signature.model.IMethod;
+import signature.model.ITypeReference;
+import signature.model.ITypeVariableDefinition;
+import signature.model.Modifier;
+import signature.model.impl.SigClassDefinition;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A class definition of a snapshot. Name, package and kind are known from the
+ * start, everything else is read from the snapshot when it is first accessed.
+ */
+@SuppressWarnings("serial")
+/* package */class SnapshotClassDefinition extends SigClassDefinition {
+
+    private final SnapshotReader reader;
+    private final int id;
+    private volatile boolean loaded;
+
+    SnapshotClassDefinition(SnapshotReader reader, int id,
+            String packageName, String name) {
+        super(packageName, name);
+        this.reader = reader;
+        this.id = id;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    void setLoaded() {
+        loaded = true;
+    }
+
+    private void load() {
+        if (!loaded) {
+            reader.loadClass(this);
+        }
+    }
+
+    @Override
+    public Set<IAnnotation> getAnnotations() {
+        load();
+        return super.getAnnotations();
+    }
+
+    @Override
+    public void setAnnotations(Set<IAnnotation> annotations) {
+        load();
+        super.setAnnotations(annotations);
+    }
+
+    @Override
+    public Set<Modifier> getModifiers() {
+        load();
+        return super.getModifiers();
+    }
+
+    @Override
+    public void setModifiers(Set<Modifier> modifiers) {
+        load();
+        super.setModifiers(modifiers);
+    }
+
+    @Override
+    public Set<IClassDefinition> getInnerClasses() {
+        load();
+        return super.getInnerClasses();
+    }
+
+    @Override
+    public void setInnerClasses(Set<IClassDefinition> innerClasses) {
+        load();
+        super.setInnerClasses(innerClasses);
+    }
+
+    @Override
+    public Set<ITypeReference> getInterfaces() {
+        load();
+        return super.getInterfaces();
+    }
+
+    @Override
+    public void setInterfaces(Set<ITypeReference> interfaces) {
+        load();
+        super.setInterfaces(interfaces);
+    }
+
+    @Override
+    public Set<IMethod> getMethods() {
+        load();
+        return super.getMethods();
+    }
+
+    @Override
+    public void setMethods(Set<IMethod> methods) {
+        load();
+        super.setMethods(methods);
+    }
+
+    @Override
+    public Set<IConstructor> getConstructors() {
+        load();
+        return super.getConstructors();
+    }
+
+    @Override
+    public void setConstructors(Set<IConstructor> constructors) {
+        load();
+        super.setConstructors(constructors);
+    }
+
+    @Override
+    public ITypeReference getSuperClass() {
+        load();
+        return super.getSuperClass();
+    }
+
+    @Override
+    public void setSuperClass(ITypeReference superClass) {
+        load();
+        super.setSuperClass(superClass);
+    }
+
+    @Override
+    public IClassDefinition getDeclaringClass() {
+        load();
+        return super.getDeclaringClass();
+    }
+
+    @Override
+    public void setDeclaringClass(IClassDefinition declaringClass) {
+        load();
+        super.setDeclaringClass(declaringClass);
+    }
+
+    @Override
+    public Set<IAnnotationField> getAnnotationFields() {
+        load();
+        return super.getAnnotationFields();
+    }
+
+    @Override
+    public void setAnnotationFields(Set<IAnnotationField> annotationFields) {
+        load();
+        super.setAnnotationFields(annotationFields);
+    }
+
+    @Override
+    public Set<IField> getFields() {
+        load();
+        return super.getFields();
+    }
+
+    @Override
+    public void setFields(Set<IField> fields) {
+        load();
+        super.setFields(fields);
+    }
+
+    @Override
+    public Set<IEnumConstant> getEnumConstants() {
+        load();
+        return super.getEnumConstants();
+    }
+
+    @Override
+    public void setEnumConstants(Set<IEnumConstant> enumConstants) {
+        load();
+        super.setEnumConstants(enumConstants);
+    }
+
+    @Override
+    public List<ITypeVariableDefinition> getTypeParameters() {
+        load();
+        return super.getTypeParameters();
+    }
+
+    @Override
+    public void setTypeParameters(
+            List<ITypeVariableDefinition> typeParameters) {
+        load();
+        super.setTypeParameters(typeParameters);
+    }
+}
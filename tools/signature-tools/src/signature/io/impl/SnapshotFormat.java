@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.io.impl;
+
+/**
+ * Constants of the binary api snapshot format.
+ * <p>
+ * A snapshot starts with a header, followed by six sections. All fixed size
+ * numbers are big endian, all other numbers are unsigned LEB128.
+ *
+ * <pre>
+ * header:         magic, version, offsets of the six sections and of the
+ *                 api record (int)
+ * enums:          names of the Kind, Modifier, Visibility and primitive type
+ *                 constants, as string ids, so that stored ordinals survive
+ *                 reordering of these enums
+ * strings:        count, offset of each string (int), then the strings as
+ *                 length and UTF-8 bytes
+ * types:          count, offset of each type reference record (int)
+ * type variables: count, offset of each type variable definition record (int)
+ * members:        count, offset of each member record (int)
+ * classes:        count, then package and name (string reference), kind
+ *                 (ordinal or -1) and record offset, relative to the first
+ *                 class record, of each class (int), followed by the class
+ *                 records
+ * api:            name, visibility and packages of the api
+ * </pre>
+ *
+ * Records refer to strings, types, type variables, members and classes by
+ * their index in the respective table. References which may be null or unset
+ * are stored as {@link #NULL}, {@link #UNSET} or the index plus
+ * {@link #FIRST_INDEX}. Collection sizes use the same encoding.
+ * <p>
+ * Each class record holds the ids of the members of the class, so the
+ * members of a class are only read when the class is first used. The
+ * version must be incremented with every incompatible change of the format.
+ */
+/* package */final class SnapshotFormat {
+
+    static final int MAGIC = 0x53494753; // "SIGS"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 9 * 4;
+    static final int CLASS_ENTRY_SIZE = 4 * 4;
+
+    static final int NULL = 0;
+    static final int UNSET = 1;
+    static final int FIRST_INDEX = 2;
+
+    static final int TYPE_PRIMITIVE = 0;
+    static final int TYPE_CLASS = 1;
+    static final int TYPE_ARRAY = 2;
+    static final int TYPE_PARAMETERIZED = 3;
+    static final int TYPE_VARIABLE = 4;
+    static final int TYPE_WILDCARD = 5;
+
+    static final int MEMBER_CONSTRUCTOR = 0;
+    static final int MEMBER_METHOD = 1;
+    static final int MEMBER_FIELD = 2;
+    static final int MEMBER_ENUM_CONSTANT = 3;
+    static final int MEMBER_ANNOTATION_FIELD = 4;
+
+    static final int DECLARATION_CLASS = 0;
+    static final int DECLARATION_MEMBER = 1;
+
+    static final int VALUE_NULL = 0;
+    static final int VALUE_UNSET = 1;
+    static final int VALUE_BOOLEAN = 2;
+    static final int VALUE_BYTE = 3;
+    static final int VALUE_CHAR = 4;
+    static final int VALUE_SHORT = 5;
+    static final int VALUE_INT = 6;
+    static final int VALUE_LONG = 7;
+    static final int VALUE_FLOAT = 8;
+    static final int VALUE_DOUBLE = 9;
+    static final int VALUE_STRING = 10;
+    static final int VALUE_ARRAY = 11;
+    static final int VALUE_ANNOTATION = 12;
+    static final int VALUE_MEMBER = 13;
+    static final int VALUE_TYPE = 14;
+
+    /** The ordinal of an enum constant without a known ordinal. */
+    static final int UNKNOWN_ORDINAL = -1;
+
+    /**
+     * This class is uninstantiable.
+     */
+    private SnapshotFormat() {
+        // This space intentionally left blank.
+    }
+}
@@ -0,0 +1,680 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.io.impl;
+
+import static signature.io.impl.SnapshotFormat.*;
+
+import signature.converter.Visibility;
+import signature.model.IAnnotation;
+import signature.model.IAnnotationElement;
+import signature.model.IAnnotationField;
+import signature.model.IApi;
+import signature.model.IClassDefinition;
+import signature.model.IClassReference;
+import signature.model.IConstructor;
+import signature.model.IEnumConstant;
+import signature.model.IField;
+import signature.model.IGenericDeclaration;
+import signature.model.IMethod;
+import signature.model.IPackage;
+import signature.model.IParameter;
+import signature.model.ITypeReference;
+import signature.model.ITypeVariableDefinition;
+import signature.model.Kind;
+import signature.model.Modifier;
+import signature.model.impl.SigAnnotation;
+import signature.model.impl.SigAnnotationElement;
+import signature.model.impl.SigAnnotationField;
+import signature.model.impl.SigApi;
+import signature.model.impl.SigArrayType;
+import signature.model.impl.SigClassReference;
+import signature.model.impl.SigConstructor;
+import signature.model.impl.SigEnumConstant;
+import signature.model.impl.SigExecutableMember;
+import signature.model.impl.SigField;
+import signature.model.impl.SigMethod;
+import signature.model.impl.SigPackage;
+import signature.model.impl.SigParameter;
+import signature.model.impl.SigParameterizedType;
+import signature.model.impl.SigPrimitiveType;
+import signature.model.impl.SigTypeVariableDefinition;
+import signature.model.impl.SigTypeVariableReference;
+import signature.model.impl.SigWildcardType;
+import signature.model.impl.Uninitialized;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads an api in the snapshot format described in {@link SnapshotFormat}
+ * from a memory mapped file.
+ * <p>
+ * The api and its packages are read right away, but of the classes only
+ * name, package and kind. The rest of a class, including its members, is read
+ * when it is first accessed, see {@link SnapshotClassDefinition}. Loading is
+ * synchronized on the reader, so the api may be used from several threads.
+ */
+/* package */final class SnapshotReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int NOT_LOADED = 0;
+    private static final int LOADING = 1;
+    private static final int LOADED = 2;
+
+    private final ByteBuffer buffer;
+
+    private final int stringsOffset;
+    private final int typesOffset;
+    private final int typeVariablesOffset;
+    private final int membersOffset;
+    private final int classesOffset;
+
+    private Kind[] kinds;
+    private Modifier[] modifiers;
+    private Visibility[] visibilities;
+    private SigPrimitiveType[] primitiveTypes;
+
+    private final String[] strings;
+    private final ITypeReference[] types;
+    private final SigTypeVariableDefinition[] typeVariables;
+    private final Object[] members;
+    private final boolean[] membersInitialized;
+    private final SnapshotClassDefinition[] classes;
+    private final int[] classStates;
+
+    /**
+     * Returns whether the given file starts with the snapshot magic number.
+     */
+    static boolean isSnapshot(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return in.length() >= HEADER_SIZE && in.readInt() == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the api from the given snapshot.
+     *
+     * @param file
+     *            the snapshot
+     * @param packageNames
+     *            the names of the packages to read, or an empty set to read
+     *            all packages
+     */
+    static IApi read(File file, Set<String> packageNames) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        ByteBuffer buffer;
+        try {
+            buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    in.length());
+        } finally {
+            // the mapping stays valid after the file is closed
+            in.close();
+        }
+        return new SnapshotReader(buffer).readApi(packageNames);
+    }
+
+    private SnapshotReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an api snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported api snapshot version "
+                    + version + ", expected " + VERSION);
+        }
+        int enumsOffset = buffer.getInt(8);
+        stringsOffset = buffer.getInt(12);
+        typesOffset = buffer.getInt(16);
+        typeVariablesOffset = buffer.getInt(20);
+        membersOffset = buffer.getInt(24);
+        classesOffset = buffer.getInt(28);
+
+        strings = new String[buffer.getInt(stringsOffset)];
+        types = new ITypeReference[buffer.getInt(typesOffset)];
+        typeVariables = new SigTypeVariableDefinition[buffer
+                .getInt(typeVariablesOffset)];
+        members = new Object[buffer.getInt(membersOffset)];
+        membersInitialized = new boolean[members.length];
+        classes = new SnapshotClassDefinition[buffer.getInt(classesOffset)];
+        classStates = new int[classes.length];
+
+        Cursor in = new Cursor(enumsOffset);
+        kinds = readEnum(in, Kind.class);
+        modifiers = readEnum(in, Modifier.class);
+        visibilities = readEnum(in, Visibility.class);
+        primitiveTypes = readEnum(in, SigPrimitiveType.class);
+
+        for (int i = 0; i < classes.length; i++) {
+            int entry = classesOffset + 4 + i * CLASS_ENTRY_SIZE;
+            classes[i] = new SnapshotClassDefinition(this, i,
+                    stringReference(buffer.getInt(entry)),
+                    stringReference(buffer.getInt(entry + 4)));
+            int kind = buffer.getInt(entry + 8);
+            classes[i].setKind(kind < 0 ? null : kinds[kind]);
+        }
+    }
+
+    private <E extends Enum<E>> E[] readEnum(Cursor in, Class<E> enumClass)
+            throws IOException {
+        int count = in.readUleb128();
+        @SuppressWarnings("unchecked")
+        E[] constants = (E[]) Array.newInstance(enumClass, count);
+        for (int i = 0; i < count; i++) {
+            String name = string(in.readUleb128());
+            try {
+                constants[i] = Enum.valueOf(enumClass, name);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown " + enumClass.getSimpleName()
+                        + " " + name + " in api snapshot");
+            }
+        }
+        return constants;
+    }
+
+    private synchronized IApi readApi(Set<String> packageNames) {
+        Cursor in = new Cursor(buffer.getInt(32));
+        String name = stringReference(in.readUleb128());
+        int visibility = in.readUleb128();
+        SigApi api = new SigApi(name, visibility == NULL ? null
+                : visibilities[visibility - FIRST_INDEX]);
+
+        int size = in.readUleb128();
+        if (size == NULL || size == UNSET) {
+            api.setPackages(size == NULL ? null : Uninitialized
+                    .<Set<IPackage>> unset());
+            return api;
+        }
+        Set<IPackage> packages = new HashSet<IPackage>();
+        for (int i = 0; i < size - FIRST_INDEX; i++) {
+            SigPackage aPackage = new SigPackage(stringReference(in
+                    .readUleb128()));
+            aPackage.setAnnotations(readAnnotations(in));
+            aPackage.setClasses(this.<IClassDefinition> readClasses(in));
+            if (packageNames.isEmpty()
+                    || packageNames.contains(aPackage.getName())) {
+                packages.add(aPackage);
+            }
+        }
+        api.setPackages(packages);
+        return api;
+    }
+
+    /**
+     * Reads the given class, unless it is already read or being read by the
+     * calling thread.
+     */
+    synchronized void loadClass(SnapshotClassDefinition clazz) {
+        int id = clazz.getId();
+        if (classStates[id] != NOT_LOADED) {
+            return;
+        }
+        classStates[id] = LOADING;
+        boolean loaded = false;
+        try {
+            int classRecords = classesOffset + 4 + classes.length
+                    * CLASS_ENTRY_SIZE;
+            Cursor in = new Cursor(classRecords
+                    + buffer.getInt(classesOffset + 4 + id * CLASS_ENTRY_SIZE
+                            + 12));
+            clazz.setModifiers(readModifiers(in));
+            clazz.setAnnotations(readAnnotations(in));
+            clazz.setSuperClass(typeReference(in.readUleb128()));
+            clazz.setInterfaces(readTypeSet(in));
+            clazz.setDeclaringClass(classReference(in.readUleb128()));
+            clazz.setInnerClasses(this.<IClassDefinition> readClasses(in));
+            clazz.setTypeParameters(readTypeVariables(in));
+            clazz.setConstructors(this.<IConstructor> readMembers(in));
+            clazz.setMethods(this.<IMethod> readMembers(in));
+            clazz.setFields(this.<IField> readMembers(in));
+            clazz.setEnumConstants(this.<IEnumConstant> readMembers(in));
+            clazz.setAnnotationFields(this
+                    .<IAnnotationField> readMembers(in));
+            loaded = true;
+        } finally {
+            classStates[id] = loaded ? LOADED : NOT_LOADED;
+        }
+        clazz.setLoaded();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Set<T> readClasses(Cursor in) {
+        int size = in.readUleb128();
+        if (size == NULL || size == UNSET) {
+            return size == NULL ? null : Uninitialized.<Set<T>> unset();
+        }
+        Set<T> result = new HashSet<T>();
+        for (int i = 0; i < size - FIRST_INDEX; i++) {
+            result.add((T) classReference(in.readUleb128()));
+        }
+        return result;
+    }
+
+    /**
+     * Reads a set of members of the class being loaded, and reads the members
+     * themselves.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Set<T> readMembers(Cursor in) {
+        int size = in.readUleb128();
+        if (size == NULL || size == UNSET) {
+            return size == NULL ? null : Uninitialized.<Set<T>> unset();
+        }
+        Set<T> result = new HashSet<T>();
+        for (int i = 0; i < size - FIRST_INDEX; i++) {
+            int id = in.readUleb128();
+            result.add((T) member(id));
+            initializeMember(id);
+        }
+        return result;
+    }
+
+    private Object memberReference(int reference) {
+        if (reference == NULL || reference == UNSET) {
+            return reference == NULL ? null : Uninitialized.unset();
+        }
+        int id = reference - FIRST_INDEX;
+        Object member = member(id);
+        int owner = new Cursor(memberOffset(id)).skipUleb128().readUleb128();
+        if (owner == NULL) {
+            initializeMember(id);
+        } else {
+            loadClass(classes[owner - FIRST_INDEX]);
+        }
+        return member;
+    }
+
+    private int memberOffset(int id) {
+        return buffer.getInt(membersOffset + 4 + 4 * id);
+    }
+
+    /**
+     * Returns the member with the given id, which is only initialized by
+     * {@link #initializeMember(int)}.
+     */
+    private Object member(int id) {
+        Object member = members[id];
+        if (member == null) {
+            Cursor in = new Cursor(memberOffset(id));
+            int kind = in.readUleb128();
+            in.readUleb128();
+            String name = stringReference(in.readUleb128());
+            switch (kind) {
+            case MEMBER_CONSTRUCTOR:
+                member = new SigConstructor(name);
+                break;
+            case MEMBER_METHOD:
+                member = new SigMethod(name);
+                break;
+            case MEMBER_FIELD:
+                member = new SigField(name);
+                break;
+            case MEMBER_ENUM_CONSTANT:
+                member = new SigEnumConstant(name);
+                break;
+            case MEMBER_ANNOTATION_FIELD:
+                member = new SigAnnotationField(name);
+                break;
+            default:
+                throw new IllegalStateException("Unknown member kind " + kind);
+            }
+            members[id] = member;
+        }
+        return member;
+    }
+
+    private void initializeMember(int id) {
+        if (membersInitialized[id]) {
+            return;
+        }
+        membersInitialized[id] = true;
+        Object member = member(id);
+        Cursor in = new Cursor(memberOffset(id));
+        int kind = in.readUleb128();
+        in.readUleb128();
+        in.readUleb128();
+        if (member instanceof SigField) {
+            SigField field = (SigField) member;
+            field.setModifiers(readModifiers(in));
+            field.setAnnotations(readAnnotations(in));
+            field.setType(typeReference(in.readUleb128()));
+            if (kind == MEMBER_ANNOTATION_FIELD) {
+                ((SigAnnotationField) field).setDefaultValue(readValue(in));
+            } else if (kind == MEMBER_ENUM_CONSTANT) {
+                int ordinal = in.readUleb128() - 1;
+                if (ordinal != UNKNOWN_ORDINAL) {
+                    ((SigEnumConstant) field).setOrdinal(ordinal);
+                }
+            }
+        } else {
+            SigExecutableMember executable = (SigExecutableMember) member;
+            executable.setModifiers(readModifiers(in));
+            executable.setAnnotations(readAnnotations(in));
+            executable.setDeclaringClass(classReference(in.readUleb128()));
+            executable.setTypeParameters(readTypeVariables(in));
+            int size = in.readUleb128();
+            if (size == NULL || size == UNSET) {
+                executable.setParameters(size == NULL ? null : Uninitialized
+                        .<List<IParameter>> unset());
+            } else {
+                List<IParameter> parameters = new ArrayList<IParameter>();
+                for (int i = 0; i < size - FIRST_INDEX; i++) {
+                    SigParameter parameter = new SigParameter(
+                            typeReference(in.readUleb128()));
+                    parameter.setAnnotations(readAnnotations(in));
+                    parameters.add(parameter);
+                }
+                executable.setParameters(parameters);
+            }
+            executable.setExceptions(readTypeSet(in));
+            if (kind == MEMBER_METHOD) {
+                ((SigMethod) executable).setReturnType(typeReference(in
+                        .readUleb128()));
+            }
+        }
+    }
+
+    private Set<Modifier> readModifiers(Cursor in) {
+        int mask = in.readUleb128();
+        if (mask == NULL || mask == UNSET) {
+            return mask == NULL ? null : Uninitialized.<Set<Modifier>> unset();
+        }
+        mask -= FIRST_INDEX;
+        Set<Modifier> result = EnumSet.noneOf(Modifier.class);
+        for (int i = 0; i < modifiers.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                result.add(modifiers[i]);
+            }
+        }
+        return result;
+    }
+
+    private Set<IAnnotation> readAnnotations(Cursor in) {
+        int size = in.readUleb128();
+        if (size == NULL || size == UNSET) {
+            return size == NULL ? null : Uninitialized
+                    .<Set<IAnnotation>> unset();
+        }
+        Set<IAnnotation> annotations = new HashSet<IAnnotation>();
+        for (int i = 0; i < size - FIRST_INDEX; i++) {
+            annotations.add(readAnnotation(in));
+        }
+        return annotations;
+    }
+
+    private IAnnotation readAnnotation(Cursor in) {
+        SigAnnotation annotation = new SigAnnotation();
+        annotation.setType((IClassReference) typeReference(in.readUleb128()));
+        int size = in.readUleb128();
+        if (size == NULL || size == UNSET) {
+            annotation.setElements(size == NULL ? null : Uninitialized
+                    .<Set<IAnnotationElement>> unset());
+            return annotation;
+        }
+        Set<IAnnotationElement> elements = new HashSet<IAnnotationElement>();
+        for (int i = 0; i < size - FIRST_INDEX; i++) {
+            SigAnnotationElement element = new SigAnnotationElement();
+            element.setDeclaringField((IAnnotationField) memberReference(in
+                    .readUleb128()));
+            element.setValue(readValue(in));
+            elements.add(element);
+        }
+        annotation.setElements(elements);
+        return annotation;
+    }
+
+    private Object readValue(Cursor in) {
+        int tag = in.readUleb128();
+        switch (tag) {
+        case VALUE_NULL:
+            return null;
+        case VALUE_UNSET:
+            return Uninitialized.unset();
+        case VALUE_BOOLEAN:
+            return in.readByte() != 0;
+        case VALUE_BYTE:
+            return in.readByte();
+        case VALUE_CHAR:
+            return (char) in.readInt();
+        case VALUE_SHORT:
+            return (short) in.readInt();
+        case VALUE_INT:
+            return in.readInt();
+        case VALUE_LONG:
+            return in.readLong();
+        case VALUE_FLOAT:
+            return Float.intBitsToFloat(in.readInt());
+        case VALUE_DOUBLE:
+            return Double.longBitsToDouble(in.readLong());
+        case VALUE_STRING:
+            return string(in.readUleb128());
+        case VALUE_ARRAY: {
+            Object[] values = new Object[in.readUleb128()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue(in);
+            }
+            return values;
+        }
+        case VALUE_ANNOTATION:
+            return readAnnotation(in);
+        case VALUE_MEMBER:
+            return memberReference(in.readUleb128());
+        case VALUE_TYPE:
+            return typeReference(in.readUleb128());
+        default:
+            throw new IllegalStateException("Unknown value tag " + tag);
+        }
+    }
+
+    private Set<ITypeReference> readTypeSet(Cursor in) {
+        int size = in.readUleb128();
+        if (size == NULL || size == UNSET) {
+            return size == NULL ? null : Uninitialized
+                    .<Set<ITypeReference>> unset();
+        }
+        Set<ITypeReference> result = new HashSet<ITypeReference>();
+        for (int i = 0; i < size - FIRST_INDEX; i++) {
+            result.add(typeReference(in.readUleb128()));
+        }
+        return result;
+    }
+
+    private List<ITypeReference> readTypeList(Cursor in) {
+        int size = in.readUleb128();
+        if (size == NULL || size == UNSET) {
+            return size == NULL ? null : Uninitialized
+                    .<List<ITypeReference>> unset();
+        }
+        List<ITypeReference> result = new ArrayList<ITypeReference>();
+        for (int i = 0; i < size - FIRST_INDEX; i++) {
+            result.add(typeReference(in.readUleb128()));
+        }
+        return result;
+    }
+
+    private List<ITypeVariableDefinition> readTypeVariables(Cursor in) {
+        int size = in.readUleb128();
+        if (size == NULL || size == UNSET) {
+            return size == NULL ? null : Uninitialized
+                    .<List<ITypeVariableDefinition>> unset();
+        }
+        List<ITypeVariableDefinition> result =
+                new ArrayList<ITypeVariableDefinition>();
+        for (int i = 0; i < size - FIRST_INDEX; i++) {
+            result.add(typeVariable(in.readUleb128()));
+        }
+        return result;
+    }
+
+    private ITypeVariableDefinition typeVariable(int id) {
+        SigTypeVariableDefinition typeVariable = typeVariables[id];
+        if (typeVariable != null) {
+            return typeVariable;
+        }
+        Cursor in = new Cursor(buffer.getInt(typeVariablesOffset + 4 + 4
+                * id));
+        String name = stringReference(in.readUleb128());
+        int declarationKind = in.readUleb128();
+        IGenericDeclaration declaration;
+        if (declarationKind == DECLARATION_CLASS) {
+            declaration = classReference(in.readUleb128());
+        } else {
+            declaration = (IGenericDeclaration) memberReference(in
+                    .readUleb128());
+        }
+        // reading the declaring member may have read this variable already
+        if (typeVariables[id] != null) {
+            return typeVariables[id];
+        }
+        typeVariable = new SigTypeVariableDefinition(name, declaration);
+        // the bounds may refer to the variable itself
+        typeVariables[id] = typeVariable;
+        typeVariable.setUpperBounds(readTypeList(in));
+        return typeVariable;
+    }
+
+    private IClassDefinition classReference(int reference) {
+        if (reference == NULL || reference == UNSET) {
+            return reference == NULL ? null : Uninitialized
+                    .<IClassDefinition> unset();
+        }
+        return classes[reference - FIRST_INDEX];
+    }
+
+    private ITypeReference typeReference(int reference) {
+        if (reference == NULL || reference == UNSET) {
+            return reference == NULL ? null : Uninitialized
+                    .<ITypeReference> unset();
+        }
+        int id = reference - FIRST_INDEX;
+        ITypeReference type = types[id];
+        if (type == null) {
+            type = readType(new Cursor(buffer.getInt(typesOffset + 4 + 4
+                    * id)));
+            types[id] = type;
+        }
+        return type;
+    }
+
+    private ITypeReference readType(Cursor in) {
+        int tag = in.readUleb128();
+        switch (tag) {
+        case TYPE_PRIMITIVE:
+            return primitiveTypes[in.readUleb128()];
+        case TYPE_CLASS:
+            return new SigClassReference(classReference(in.readUleb128()));
+        case TYPE_ARRAY:
+            return new SigArrayType(typeReference(in.readUleb128()));
+        case TYPE_PARAMETERIZED: {
+            ITypeReference ownerType = typeReference(in.readUleb128());
+            IClassReference rawType = (IClassReference) typeReference(in
+                    .readUleb128());
+            return new SigParameterizedType(ownerType, rawType,
+                    readTypeList(in));
+        }
+        case TYPE_VARIABLE:
+            return new SigTypeVariableReference(typeVariable(in
+                    .readUleb128()));
+        case TYPE_WILDCARD: {
+            ITypeReference lowerBound = typeReference(in.readUleb128());
+            return new SigWildcardType(lowerBound, readTypeList(in));
+        }
+        default:
+            throw new IllegalStateException("Unknown type tag " + tag);
+        }
+    }
+
+    private String stringReference(int reference) {
+        return reference == NULL ? null : string(reference - FIRST_INDEX);
+    }
+
+    private String string(int id) {
+        String string = strings[id];
+        if (string == null) {
+            Cursor in = new Cursor(buffer.getInt(stringsOffset + 4 + 4 * id));
+            byte[] bytes = new byte[in.readUleb128()];
+            ByteBuffer data = buffer.duplicate();
+            data.position(in.position);
+            data.get(bytes);
+            string = new String(bytes, UTF_8);
+            strings[id] = string;
+        }
+        return string;
+    }
+
+    /**
+     * A read position in the snapshot. Reading a record may require reading
+     * other records, so every record is read with its own cursor.
+     */
+    private final class Cursor {
+
+        private int position;
+
+        Cursor(int position) {
+            this.position = position;
+        }
+
+        int readUleb128() {
+            int result = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = buffer.get(position++) & 0xFF;
+                result |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return result;
+        }
+
+        Cursor skipUleb128() {
+            while ((buffer.get(position++) & 0x80) != 0) {
+                // skip continuation bytes
+            }
+            return this;
+        }
+
+        byte readByte() {
+            return buffer.get(position++);
+        }
+
+        int readInt() {
+            int value = buffer.getInt(position);
+            position += 4;
+            return value;
+        }
+
+        long readLong() {
+            long value = buffer.getLong(position);
+            position += 8;
+            return value;
+        }
+    }
+}
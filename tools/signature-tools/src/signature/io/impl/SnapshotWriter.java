@@ -0,0 +1,678 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.io.impl;
+
+import static signature.io.impl.SnapshotFormat.*;
+
+import signature.converter.Visibility;
+import signature.model.IAnnotation;
+import signature.model.IAnnotationElement;
+import signature.model.IAnnotationField;
+import signature.model.IApi;
+import signature.model.IArrayType;
+import signature.model.IClassDefinition;
+import signature.model.IClassReference;
+import signature.model.IConstructor;
+import signature.model.IEnumConstant;
+import signature.model.IExecutableMember;
+import signature.model.IField;
+import signature.model.IGenericDeclaration;
+import signature.model.IMethod;
+import signature.model.IPackage;
+import signature.model.IParameter;
+import signature.model.IParameterizedType;
+import signature.model.IPrimitiveType;
+import signature.model.ITypeReference;
+import signature.model.ITypeVariableDefinition;
+import signature.model.ITypeVariableReference;
+import signature.model.IWildcardType;
+import signature.model.Kind;
+import signature.model.Modifier;
+import signature.model.impl.SigPrimitiveType;
+import signature.model.impl.Uninitialized;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes an api in the snapshot format described in {@link SnapshotFormat}.
+ * <p>
+ * Every class, member and type variable definition reachable from the api is
+ * written once, so the object graph read back has the same shape. Equal type
+ * references are only written once.
+ */
+/* package */final class SnapshotWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final Map<String, Integer> stringIds =
+            new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+
+    /** Type ids by type, and by record, which is unique for equal types. */
+    private final Map<ITypeReference, Integer> typeIds =
+            new IdentityHashMap<ITypeReference, Integer>();
+    private final Map<String, Integer> typeIdsByRecord =
+            new HashMap<String, Integer>();
+    private final List<byte[]> typeRecords = new ArrayList<byte[]>();
+
+    private final Map<ITypeVariableDefinition, Integer> typeVariableIds =
+            new IdentityHashMap<ITypeVariableDefinition, Integer>();
+    private final List<ITypeVariableDefinition> typeVariables =
+            new ArrayList<ITypeVariableDefinition>();
+    private final List<byte[]> typeVariableRecords = new ArrayList<byte[]>();
+
+    private final Map<Object, Integer> memberIds =
+            new IdentityHashMap<Object, Integer>();
+    private final List<Object> members = new ArrayList<Object>();
+    /** The class id of each member, -1 if the class is not known. */
+    private final List<Integer> memberOwners = new ArrayList<Integer>();
+    private final List<byte[]> memberRecords = new ArrayList<byte[]>();
+
+    private final Map<IClassDefinition, Integer> classIds =
+            new IdentityHashMap<IClassDefinition, Integer>();
+    private final List<IClassDefinition> classes =
+            new ArrayList<IClassDefinition>();
+    private final List<byte[]> classRecords = new ArrayList<byte[]>();
+
+    /**
+     * Writes the given api to the given stream.
+     */
+    public void write(IApi api, OutputStream stream) throws IOException {
+        RecordOutput apiRecord = new RecordOutput();
+        apiRecord.writeReference(stringReference(api.getName()));
+        Visibility visibility = api.getVisibility();
+        apiRecord.writeReference(visibility == null ? NULL
+                : visibility.ordinal() + FIRST_INDEX);
+        Collection<IPackage> packages = api.getPackages();
+        apiRecord.writeSize(packages);
+        if (isPresent(packages)) {
+            for (IPackage aPackage : packages) {
+                writePackage(apiRecord, aPackage);
+            }
+        }
+
+        // writing a record may reach further classes, members and type
+        // variables
+        int classesWritten = 0;
+        int membersWritten = 0;
+        int typeVariablesWritten = 0;
+        while (classesWritten < classes.size()
+                || membersWritten < members.size()
+                || typeVariablesWritten < typeVariables.size()) {
+            if (classesWritten < classes.size()) {
+                classRecords.add(writeClass(classes.get(classesWritten++)));
+            } else if (membersWritten < members.size()) {
+                memberRecords.add(writeMember(membersWritten++));
+            } else {
+                typeVariableRecords.add(writeTypeVariable(typeVariables
+                        .get(typeVariablesWritten++)));
+            }
+        }
+
+        RecordOutput enums = new RecordOutput();
+        writeEnum(enums, Kind.values());
+        writeEnum(enums, Modifier.values());
+        writeEnum(enums, Visibility.values());
+        writeEnum(enums, SigPrimitiveType.values());
+
+        // the class table refers to strings, so it is assembled before the
+        // string table
+        RecordOutput classTable = new RecordOutput();
+        int recordOffset = 0;
+        classTable.writeInt(classes.size());
+        for (int i = 0; i < classes.size(); i++) {
+            IClassDefinition clazz = classes.get(i);
+            Kind kind = clazz.getKind();
+            classTable.writeInt(stringReference(clazz.getPackageName()));
+            classTable.writeInt(stringReference(clazz.getName()));
+            classTable.writeInt(kind == null ? -1 : kind.ordinal());
+            classTable.writeInt(recordOffset);
+            recordOffset += classRecords.get(i).length;
+        }
+
+        List<byte[]> stringRecords = new ArrayList<byte[]>(strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(UTF_8);
+            RecordOutput record = new RecordOutput();
+            record.writeUleb128(bytes.length);
+            record.write(bytes);
+            stringRecords.add(record.toByteArray());
+        }
+
+        DataOutputStream out = new DataOutputStream(stream);
+        int enumsOffset = HEADER_SIZE;
+        int stringsOffset = enumsOffset + enums.size();
+        int typesOffset = stringsOffset + getTableSize(stringRecords);
+        int typeVariablesOffset = typesOffset + getTableSize(typeRecords);
+        int membersOffset = typeVariablesOffset
+                + getTableSize(typeVariableRecords);
+        int classesOffset = membersOffset + getTableSize(memberRecords);
+        int apiOffset = classesOffset + 4 + classes.size() * CLASS_ENTRY_SIZE;
+        for (byte[] record : classRecords) {
+            apiOffset += record.length;
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(enumsOffset);
+        out.writeInt(stringsOffset);
+        out.writeInt(typesOffset);
+        out.writeInt(typeVariablesOffset);
+        out.writeInt(membersOffset);
+        out.writeInt(classesOffset);
+        out.writeInt(apiOffset);
+        enums.writeTo(out);
+        writeTable(out, stringsOffset, stringRecords);
+        writeTable(out, typesOffset, typeRecords);
+        writeTable(out, typeVariablesOffset, typeVariableRecords);
+        writeTable(out, membersOffset, memberRecords);
+
+        classTable.writeTo(out);
+        for (byte[] record : classRecords) {
+            out.write(record);
+        }
+        apiRecord.writeTo(out);
+        out.flush();
+    }
+
+    private void writePackage(RecordOutput out, IPackage aPackage) {
+        out.writeReference(stringReference(aPackage.getName()));
+        writeAnnotations(out, aPackage.getAnnotations());
+        Collection<IClassDefinition> packageClasses = aPackage.getClasses();
+        out.writeSize(packageClasses);
+        if (isPresent(packageClasses)) {
+            for (IClassDefinition clazz : packageClasses) {
+                out.writeReference(classReference(clazz));
+            }
+        }
+    }
+
+    private static int getTableSize(List<byte[]> records) {
+        int size = 4 + 4 * records.size();
+        for (byte[] record : records) {
+            size += record.length;
+        }
+        return size;
+    }
+
+    private static void writeTable(DataOutputStream out, int tableOffset,
+            List<byte[]> records) throws IOException {
+        out.writeInt(records.size());
+        int recordOffset = tableOffset + 4 + 4 * records.size();
+        for (byte[] record : records) {
+            out.writeInt(recordOffset);
+            recordOffset += record.length;
+        }
+        for (byte[] record : records) {
+            out.write(record);
+        }
+    }
+
+    private void writeEnum(RecordOutput out, Enum<?>[] constants) {
+        out.writeUleb128(constants.length);
+        for (Enum<?> constant : constants) {
+            out.writeUleb128(stringId(constant.name()));
+        }
+    }
+
+    private byte[] writeClass(IClassDefinition clazz) {
+        int id = classIds.get(clazz);
+        RecordOutput out = new RecordOutput();
+        writeModifiers(out, clazz.getModifiers());
+        writeAnnotations(out, clazz.getAnnotations());
+        out.writeReference(typeReference(clazz.getSuperClass()));
+        writeTypes(out, clazz.getInterfaces());
+        out.writeReference(classReference(clazz.getDeclaringClass()));
+        out.writeSize(clazz.getInnerClasses());
+        if (isPresent(clazz.getInnerClasses())) {
+            for (IClassDefinition innerClass : clazz.getInnerClasses()) {
+                out.writeReference(classReference(innerClass));
+            }
+        }
+        writeTypeVariables(out, clazz.getTypeParameters());
+        writeMembers(out, clazz.getConstructors(), id);
+        writeMembers(out, clazz.getMethods(), id);
+        writeMembers(out, clazz.getFields(), id);
+        writeMembers(out, clazz.getEnumConstants(), id);
+        writeMembers(out, clazz.getAnnotationFields(), id);
+        return out.toByteArray();
+    }
+
+    private void writeMembers(RecordOutput out, Collection<?> classMembers,
+            int classId) {
+        out.writeSize(classMembers);
+        if (isPresent(classMembers)) {
+            for (Object member : classMembers) {
+                out.writeUleb128(memberId(member, classId));
+            }
+        }
+    }
+
+    private byte[] writeMember(int id) {
+        Object member = members.get(id);
+        int owner = memberOwners.get(id);
+        RecordOutput out = new RecordOutput();
+        if (member instanceof IField) {
+            IField field = (IField) member;
+            if (member instanceof IAnnotationField) {
+                out.writeUleb128(MEMBER_ANNOTATION_FIELD);
+            } else if (member instanceof IEnumConstant) {
+                out.writeUleb128(MEMBER_ENUM_CONSTANT);
+            } else {
+                out.writeUleb128(MEMBER_FIELD);
+            }
+            out.writeReference(owner < 0 ? NULL : owner + FIRST_INDEX);
+            out.writeReference(stringReference(field.getName()));
+            writeModifiers(out, field.getModifiers());
+            writeAnnotations(out, field.getAnnotations());
+            out.writeReference(typeReference(field.getType()));
+            if (member instanceof IAnnotationField) {
+                writeValue(out, ((IAnnotationField) member).getDefaultValue());
+            } else if (member instanceof IEnumConstant) {
+                int ordinal;
+                try {
+                    ordinal = ((IEnumConstant) member).getOrdinal();
+                } catch (UnsupportedOperationException e) {
+                    ordinal = UNKNOWN_ORDINAL;
+                }
+                out.writeUleb128(ordinal + 1);
+            }
+        } else if (member instanceof IExecutableMember) {
+            IExecutableMember executable = (IExecutableMember) member;
+            if (member instanceof IConstructor) {
+                out.writeUleb128(MEMBER_CONSTRUCTOR);
+            } else if (member instanceof IMethod) {
+                out.writeUleb128(MEMBER_METHOD);
+            } else {
+                throw new IllegalArgumentException("unsupported member "
+                        + member.getClass());
+            }
+            out.writeReference(owner < 0 ? NULL : owner + FIRST_INDEX);
+            out.writeReference(stringReference(executable.getName()));
+            writeModifiers(out, executable.getModifiers());
+            writeAnnotations(out, executable.getAnnotations());
+            out.writeReference(classReference(executable.getDeclaringClass()));
+            writeTypeVariables(out, executable.getTypeParameters());
+            List<IParameter> parameters = executable.getParameters();
+            out.writeSize(parameters);
+            if (isPresent(parameters)) {
+                for (IParameter parameter : parameters) {
+                    out.writeReference(typeReference(parameter.getType()));
+                    writeAnnotations(out, parameter.getAnnotations());
+                }
+            }
+            writeTypes(out, executable.getExceptions());
+            if (member instanceof IMethod) {
+                out.writeReference(typeReference(((IMethod) member)
+                        .getReturnType()));
+            }
+        } else {
+            throw new IllegalArgumentException("unsupported member "
+                    + member.getClass());
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] writeTypeVariable(ITypeVariableDefinition typeVariable) {
+        RecordOutput out = new RecordOutput();
+        out.writeReference(stringReference(typeVariable.getName()));
+        IGenericDeclaration declaration = typeVariable.getGenericDeclaration();
+        if (declaration == null || declaration instanceof IClassDefinition) {
+            out.writeUleb128(DECLARATION_CLASS);
+            out.writeReference(classReference((IClassDefinition) declaration));
+        } else if (declaration instanceof IExecutableMember) {
+            out.writeUleb128(DECLARATION_MEMBER);
+            out.writeReference(memberReference(declaration, declaration
+                    .getDeclaringClass()));
+        } else {
+            throw new IllegalArgumentException("unsupported declaration "
+                    + declaration.getClass());
+        }
+        writeTypes(out, typeVariable.getUpperBounds());
+        return out.toByteArray();
+    }
+
+    private void writeAnnotations(RecordOutput out,
+            Collection<IAnnotation> annotations) {
+        out.writeSize(annotations);
+        if (isPresent(annotations)) {
+            for (IAnnotation annotation : annotations) {
+                writeAnnotation(out, annotation);
+            }
+        }
+    }
+
+    private void writeAnnotation(RecordOutput out, IAnnotation annotation) {
+        IClassReference type = annotation.getType();
+        out.writeReference(typeReference(type));
+        Collection<IAnnotationElement> elements = annotation.getElements();
+        out.writeSize(elements);
+        if (isPresent(elements)) {
+            IClassDefinition annotationClass = type == null ? null : type
+                    .getClassDefinition();
+            for (IAnnotationElement element : elements) {
+                out.writeReference(memberReference(element
+                        .getDeclaringField(), annotationClass));
+                writeValue(out, element.getValue());
+            }
+        }
+    }
+
+    private void writeValue(RecordOutput out, Object value) {
+        if (value == null) {
+            out.writeUleb128(VALUE_NULL);
+        } else if (!Uninitialized.isInitialized(value)) {
+            out.writeUleb128(VALUE_UNSET);
+        } else if (value instanceof Boolean) {
+            out.writeUleb128(VALUE_BOOLEAN);
+            out.write(((Boolean) value) ? 1 : 0);
+        } else if (value instanceof Byte) {
+            out.writeUleb128(VALUE_BYTE);
+            out.write((Byte) value);
+        } else if (value instanceof Character) {
+            out.writeUleb128(VALUE_CHAR);
+            out.writeInt((Character) value);
+        } else if (value instanceof Short) {
+            out.writeUleb128(VALUE_SHORT);
+            out.writeInt((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeUleb128(VALUE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeUleb128(VALUE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeUleb128(VALUE_FLOAT);
+            out.writeInt(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Double) {
+            out.writeUleb128(VALUE_DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof String) {
+            out.writeUleb128(VALUE_STRING);
+            out.writeUleb128(stringId((String) value));
+        } else if (value instanceof Object[]) {
+            Object[] values = (Object[]) value;
+            out.writeUleb128(VALUE_ARRAY);
+            out.writeUleb128(values.length);
+            for (Object element : values) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof IAnnotation) {
+            out.writeUleb128(VALUE_ANNOTATION);
+            writeAnnotation(out, (IAnnotation) value);
+        } else if (value instanceof IField) {
+            IField field = (IField) value;
+            // the type of an enum constant is the class declaring it
+            ITypeReference type = field.getType();
+            out.writeUleb128(VALUE_MEMBER);
+            out.writeReference(memberReference(field,
+                    type instanceof IClassReference ? ((IClassReference) type)
+                            .getClassDefinition() : null));
+        } else if (value instanceof ITypeReference) {
+            out.writeUleb128(VALUE_TYPE);
+            out.writeReference(typeReference((ITypeReference) value));
+        } else {
+            throw new IllegalArgumentException("unsupported value "
+                    + value.getClass());
+        }
+    }
+
+    private void writeModifiers(RecordOutput out,
+            Collection<Modifier> modifiers) {
+        if (modifiers == null) {
+            out.writeUleb128(NULL);
+        } else if (!Uninitialized.isInitialized(modifiers)) {
+            out.writeUleb128(UNSET);
+        } else {
+            int mask = 0;
+            for (Modifier modifier : modifiers) {
+                mask |= 1 << modifier.ordinal();
+            }
+            out.writeUleb128(mask + FIRST_INDEX);
+        }
+    }
+
+    private void writeTypes(RecordOutput out,
+            Collection<ITypeReference> types) {
+        out.writeSize(types);
+        if (isPresent(types)) {
+            for (ITypeReference type : types) {
+                out.writeReference(typeReference(type));
+            }
+        }
+    }
+
+    private void writeTypeVariables(RecordOutput out,
+            List<ITypeVariableDefinition> variables) {
+        out.writeSize(variables);
+        if (isPresent(variables)) {
+            for (ITypeVariableDefinition variable : variables) {
+                out.writeUleb128(typeVariableId(variable));
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given object is neither null nor unset.
+     */
+    private static boolean isPresent(Object object) {
+        return object != null && Uninitialized.isInitialized(object);
+    }
+
+    /**
+     * Returns the encoded reference to the given object with the given id.
+     */
+    private static int reference(Object object, int id) {
+        if (object == null) {
+            return NULL;
+        }
+        if (!Uninitialized.isInitialized(object)) {
+            return UNSET;
+        }
+        return id + FIRST_INDEX;
+    }
+
+    private int stringId(String string) {
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+        return id;
+    }
+
+    private int stringReference(String string) {
+        return string == null ? NULL : stringId(string) + FIRST_INDEX;
+    }
+
+    private int classReference(IClassDefinition clazz) {
+        return isPresent(clazz) ? classId(clazz) + FIRST_INDEX : reference(
+                clazz, 0);
+    }
+
+    /**
+     * Returns the id of the given class. A new class is queued to be written,
+     * and its members get ids, so that references to them from annotations
+     * can be resolved before the class is written.
+     */
+    private int classId(IClassDefinition clazz) {
+        Integer id = classIds.get(clazz);
+        if (id == null) {
+            id = classes.size();
+            classes.add(clazz);
+            classIds.put(clazz, id);
+            addMembers(clazz.getConstructors(), id);
+            addMembers(clazz.getMethods(), id);
+            addMembers(clazz.getFields(), id);
+            addMembers(clazz.getEnumConstants(), id);
+            addMembers(clazz.getAnnotationFields(), id);
+        }
+        return id;
+    }
+
+    private void addMembers(Collection<?> classMembers, int classId) {
+        if (isPresent(classMembers)) {
+            for (Object member : classMembers) {
+                memberId(member, classId);
+            }
+        }
+    }
+
+    private int memberId(Object member, int classId) {
+        Integer id = memberIds.get(member);
+        if (id == null) {
+            id = members.size();
+            members.add(member);
+            memberOwners.add(classId);
+            memberIds.put(member, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the encoded reference to the given member. If the member is
+     * not known yet, it is looked up in the given class, which probably
+     * declares it. Members not found there are written without a class.
+     */
+    private int memberReference(Object member, IClassDefinition clazz) {
+        if (!isPresent(member)) {
+            return reference(member, 0);
+        }
+        if (!memberIds.containsKey(member) && isPresent(clazz)) {
+            classId(clazz);
+        }
+        return memberId(member, -1) + FIRST_INDEX;
+    }
+
+    private int typeVariableId(ITypeVariableDefinition variable) {
+        Integer id = typeVariableIds.get(variable);
+        if (id == null) {
+            id = typeVariables.size();
+            typeVariables.add(variable);
+            typeVariableIds.put(variable, id);
+        }
+        return id;
+    }
+
+    private int typeReference(ITypeReference type) {
+        return isPresent(type) ? typeId(type) + FIRST_INDEX : reference(type,
+                0);
+    }
+
+    private int typeId(ITypeReference type) {
+        Integer id = typeIds.get(type);
+        if (id != null) {
+            return id;
+        }
+
+        RecordOutput out = new RecordOutput();
+        if (type instanceof IPrimitiveType) {
+            out.writeUleb128(TYPE_PRIMITIVE);
+            out.writeUleb128(SigPrimitiveType.valueOfTypeName(
+                    ((IPrimitiveType) type).getName()).ordinal());
+        } else if (type instanceof IClassReference) {
+            out.writeUleb128(TYPE_CLASS);
+            out.writeReference(classReference(((IClassReference) type)
+                    .getClassDefinition()));
+        } else if (type instanceof IArrayType) {
+            out.writeUleb128(TYPE_ARRAY);
+            out.writeReference(typeReference(((IArrayType) type)
+                    .getComponentType()));
+        } else if (type instanceof IParameterizedType) {
+            IParameterizedType parameterizedType = (IParameterizedType) type;
+            out.writeUleb128(TYPE_PARAMETERIZED);
+            out.writeReference(typeReference(parameterizedType
+                    .getOwnerType()));
+            out.writeReference(typeReference(parameterizedType.getRawType()));
+            writeTypes(out, parameterizedType.getTypeArguments());
+        } else if (type instanceof ITypeVariableReference) {
+            out.writeUleb128(TYPE_VARIABLE);
+            out.writeUleb128(typeVariableId(((ITypeVariableReference) type)
+                    .getTypeVariableDefinition()));
+        } else if (type instanceof IWildcardType) {
+            IWildcardType wildcardType = (IWildcardType) type;
+            out.writeUleb128(TYPE_WILDCARD);
+            out.writeReference(typeReference(wildcardType.getLowerBound()));
+            writeTypes(out, wildcardType.getUpperBounds());
+        } else {
+            throw new IllegalArgumentException("unsupported type "
+                    + type.getClass());
+        }
+
+        byte[] record = out.toByteArray();
+        String key = new String(record, ISO_8859_1);
+        id = typeIdsByRecord.get(key);
+        if (id == null) {
+            id = typeRecords.size();
+            typeRecords.add(record);
+            typeIdsByRecord.put(key, id);
+        }
+        typeIds.put(type, id);
+        return id;
+    }
+
+    /**
+     * A record under construction.
+     */
+    private static final class RecordOutput extends ByteArrayOutputStream {
+
+        void writeUleb128(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        /**
+         * Writes an encoded reference, or a size encoded like one.
+         */
+        void writeReference(int reference) {
+            writeUleb128(reference);
+        }
+
+        void writeSize(Collection<?> collection) {
+            writeReference(reference(collection, collection == null
+                    || !Uninitialized.isInitialized(collection) ? 0
+                    : collection.size()));
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+    }
+}
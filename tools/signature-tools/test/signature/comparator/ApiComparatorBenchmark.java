@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.comparator;
+
+import signature.compare.ApiComparator;
+import signature.compare.model.IApiDelta;
+import signature.compare.model.IPackageDelta;
+import signature.comparator.util.GeneratedApis;
+import signature.model.impl.SigApi;
+
+/**
+ * Benchmark of {@link ApiComparator} on two large generated apis.
+ * <p>
+ * Both apis are created by {@link GeneratedApis} with the same seed, and a
+ * small fraction of the methods of the second api is removed, added or
+ * changed, so the comparison produces deltas. Run with
+ * {@code java signature.comparator.ApiComparatorBenchmark [iterations]
+ * [parallelism]}.
+ */
+public class ApiComparatorBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 2;
+
+    private static final int PACKAGES = 40;
+    private static final double MUTATION_RATE = 0.02;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        SigApi from = createApi("from", 42, 0);
+        SigApi to = createApi("to", 42, MUTATION_RATE);
+
+        int checksum = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            checksum += compare(from, to, parallelism);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += compare(from, to, parallelism);
+        }
+        double averageMs = (System.nanoTime() - start) / 1e6 / iterations;
+        // print the checksum so the work cannot be optimized away
+        System.out.println(String.format(
+                "compare %d classes, %d threads %10.2f ms/op  (checksum %d)",
+                PACKAGES * (GeneratedApis.INTERFACES_PER_PACKAGE
+                        + GeneratedApis.CLASSES_PER_PACKAGE),
+                parallelism, averageMs, checksum));
+    }
+
+    private static int compare(SigApi from, SigApi to, int parallelism) {
+        IApiDelta delta = new ApiComparator(parallelism).compare(from, to);
+        int count = 0;
+        for (IPackageDelta packageDelta : delta.getPackageDeltas()) {
+            count += packageDelta.getClassDeltas().size();
+        }
+        return count;
+    }
+
+    private static SigApi createApi(String name, long seed,
+            double mutationRate) {
+        return GeneratedApis.createApi(name, seed, mutationRate, PACKAGES);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.comparator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import signature.compare.ApiComparator;
+import signature.compare.IncrementalApiComparator;
+import signature.compare.model.IApiDelta;
+import signature.comparator.util.GeneratedApis;
+import signature.comparator.util.ReportPages;
+import signature.model.IApi;
+import signature.model.IClassDefinition;
+import signature.model.IClassReference;
+import signature.model.IMethod;
+import signature.model.IPackage;
+import signature.model.IParameter;
+import signature.model.Kind;
+import signature.model.impl.SigClassDefinition;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests that an {@link IncrementalApiComparator} produces the same report as
+ * a full comparison.
+ */
+public class IncrementalApiComparatorTest {
+
+    @Test
+    public void compareUnchangedTest() {
+        IncrementalApiComparator comparator = new IncrementalApiComparator();
+        IApi from = GeneratedApis.createApi("from", 7, 0, 4);
+        IApi to = GeneratedApis.createApi("to", 7, 0.02, 4);
+        comparator.compare(from, to);
+        int classes = comparator.getComparedClassCount();
+        assertTrue(classes > 0);
+
+        // rebuilt apis with the same content
+        from = GeneratedApis.createApi("from", 7, 0, 4);
+        to = GeneratedApis.createApi("to", 7, 0.02, 4);
+        assertEquals(ReportPages.render(new ApiComparator().compare(from, to)),
+                ReportPages.render(comparator.compare(from, to)));
+        assertEquals(0, comparator.getComparedClassCount());
+        assertEquals(classes, comparator.getReusedClassCount());
+    }
+
+    @Test
+    public void compareChangedTest() {
+        IncrementalApiComparator comparator = new IncrementalApiComparator();
+        IApi from = GeneratedApis.createApi("from", 7, 0, 4);
+        comparator.compare(from, GeneratedApis.createApi("to", 7, 0.02, 4));
+
+        IApi to = GeneratedApis.createApi("to", 7, 0.01, 4);
+        assertEquals(ReportPages.render(new ApiComparator().compare(from, to)),
+                ReportPages.render(comparator.compare(from, to)));
+        assertTrue(comparator.getComparedClassCount() > 0);
+        assertTrue(comparator.getReusedClassCount() > 0);
+    }
+
+    @Test
+    public void compareWithStateTest() throws IOException {
+        IApi from = GeneratedApis.createApi("from", 7, 0, 4);
+        IApi to = GeneratedApis.createApi("to", 7, 0.02, 4);
+        File state = File.createTempFile("comparison", ".state");
+        try {
+            IncrementalApiComparator comparator =
+                    new IncrementalApiComparator();
+            comparator.compare(from, to);
+            comparator.writeState(state);
+
+            comparator = new IncrementalApiComparator(2);
+            comparator.readState(state);
+            assertEquals(ReportPages.render(new ApiComparator()
+                    .compare(from, to)), ReportPages.render(comparator.compare(
+                    from, to)));
+            // only the classes which differ are compared again
+            assertTrue(comparator.getReusedClassCount() > 0);
+            assertTrue(comparator.getComparedClassCount() > 0);
+        } finally {
+            state.delete();
+        }
+    }
+
+    @Test
+    public void compareReferencedKindChangedTest() {
+        IncrementalApiComparator comparator = new IncrementalApiComparator();
+        IApi from = GeneratedApis.createApi("from", 7, 0, 4);
+        comparator.compare(from, GeneratedApis.createApi("to", 7, 0, 4));
+
+        // java.lang.String is only referenced by parameters, it is not part
+        // of the api itself
+        IApi to = GeneratedApis.createApi("to", 7, 0, 4);
+        SigClassDefinition string = findParameterClass(to, "java.lang.String");
+        string.setKind(Kind.INTERFACE);
+        IApiDelta delta = comparator.compare(from, to);
+        assertNotNull(delta);
+        assertEquals(ReportPages.render(new ApiComparator().compare(from, to)),
+                ReportPages.render(delta));
+    }
+
+    private static SigClassDefinition findParameterClass(IApi api,
+            String qualifiedName) {
+        for (IPackage aPackage : api.getPackages()) {
+            for (IClassDefinition clazz : aPackage.getClasses()) {
+                for (IMethod method : clazz.getMethods()) {
+                    for (IParameter parameter : method.getParameters()) {
+                        if (parameter.getType() instanceof IClassReference) {
+                            IClassDefinition type = ((IClassReference)
+                                    parameter.getType()).getClassDefinition();
+                            if (qualifiedName.equals(type.getQualifiedName())) {
+                                return (SigClassDefinition) type;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        throw new AssertionError(qualifiedName + " is not referenced");
+    }
+
+    @Test
+    public void compareEqualTest() {
+        IncrementalApiComparator comparator = new IncrementalApiComparator();
+        IApi from = GeneratedApis.createApi("from", 7, 0, 4);
+        IApi to = GeneratedApis.createApi("to", 7, 0, 4);
+        assertNull(comparator.compare(from, to));
+        assertNull(comparator.compare(from, to));
+        assertEquals(0, comparator.getComparedClassCount());
+    }
+}
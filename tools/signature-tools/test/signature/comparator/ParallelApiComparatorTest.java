@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.comparator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import signature.compare.ApiComparator;
+import signature.comparator.util.GeneratedApis;
+import signature.comparator.util.ReportPages;
+import signature.model.IApi;
+
+import java.util.Map;
+
+/**
+ * Tests that a parallel {@link ApiComparator} produces the same report as a
+ * sequential one.
+ */
+public class ParallelApiComparatorTest {
+
+    @Test
+    public void compareParallelTest() {
+        IApi from = GeneratedApis.createApi("from", 7, 0, 10);
+        IApi to = GeneratedApis.createApi("to", 7, 0.02, 10);
+
+        Map<String, String> expected = ReportPages.render(new ApiComparator()
+                .compare(from, to));
+        assertFalse(expected.isEmpty());
+        for (int parallelism : new int[] {2, 4, 8}) {
+            assertEquals(expected, ReportPages.render(new ApiComparator(
+                    parallelism).compare(from, to)));
+        }
+    }
+
+    @Test
+    public void compareParallelEqualTest() {
+        IApi from = GeneratedApis.createApi("from", 7, 0, 10);
+        IApi to = GeneratedApis.createApi("to", 7, 0, 10);
+        assertNull(new ApiComparator(4).compare(from, to));
+    }
+}
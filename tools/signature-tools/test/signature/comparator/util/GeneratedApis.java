@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.comparator.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import signature.converter.Visibility;
+import signature.model.IAnnotationField;
+import signature.model.IClassDefinition;
+import signature.model.IConstructor;
+import signature.model.IEnumConstant;
+import signature.model.IField;
+import signature.model.IMethod;
+import signature.model.IPackage;
+import signature.model.IParameter;
+import signature.model.ITypeReference;
+import signature.model.ITypeVariableDefinition;
+import signature.model.Kind;
+import signature.model.Modifier;
+import signature.model.impl.SigApi;
+import signature.model.impl.SigClassDefinition;
+import signature.model.impl.SigClassReference;
+import signature.model.impl.SigMethod;
+import signature.model.impl.SigPackage;
+import signature.model.impl.SigParameter;
+import signature.model.impl.SigPrimitiveType;
+
+/**
+ * Generates large synthetic apis for the comparator tests and benchmark.
+ * <p>
+ * The apis have deep super class chains, interface hierarchies and
+ * overloaded methods. A fraction of the methods can be removed, added or
+ * changed, so that comparing two apis produces deltas.
+ */
+public final class GeneratedApis {
+
+    public static final int INTERFACES_PER_PACKAGE = 10;
+    public static final int CLASSES_PER_PACKAGE = 50;
+    private static final int METHODS_PER_TYPE = 25;
+
+    private static final String[] METHOD_NAMES = {"get", "set", "add",
+            "remove", "contains", "put", "find", "update", "create", "apply"};
+    private static final SigPrimitiveType[] PRIMITIVE_TYPES = {
+            SigPrimitiveType.BOOLEAN_TYPE, SigPrimitiveType.INT_TYPE,
+            SigPrimitiveType.LONG_TYPE, SigPrimitiveType.FLOAT_TYPE,
+            SigPrimitiveType.DOUBLE_TYPE};
+
+    private GeneratedApis() {
+    }
+
+    /**
+     * Creates an api. Apis created with the same seed have the same classes
+     * and differ only in the methods affected by the mutation rate.
+     */
+    public static SigApi createApi(String name, long seed,
+            double mutationRate, int packageCount) {
+        Random random = new Random(seed);
+        Random mutations = new Random(seed + 1);
+
+        SigClassDefinition object = new SigClassDefinition("java.lang",
+                "Object");
+        initializeType(object, Kind.CLASS, null);
+        SigClassDefinition string = new SigClassDefinition("java.lang",
+                "String");
+        initializeType(string, Kind.CLASS, new SigClassReference(object));
+
+        List<SigClassDefinition> interfaces =
+                new ArrayList<SigClassDefinition>();
+        List<SigClassDefinition> classes = new ArrayList<SigClassDefinition>();
+        Set<IPackage> packages = new HashSet<IPackage>();
+        for (int p = 0; p < packageCount; p++) {
+            String packageName = "p" + p;
+            Set<IClassDefinition> packageClasses =
+                    new HashSet<IClassDefinition>();
+
+            for (int i = 0; i < INTERFACES_PER_PACKAGE; i++) {
+                SigClassDefinition interfaze = new SigClassDefinition(
+                        packageName, "I" + i);
+                initializeType(interfaze, Kind.INTERFACE, null);
+                interfaze.setInterfaces(pickInterfaces(random, interfaces));
+                interfaces.add(interfaze);
+                packageClasses.add(interfaze);
+            }
+
+            for (int c = 0; c < CLASSES_PER_PACKAGE; c++) {
+                SigClassDefinition clazz = new SigClassDefinition(packageName,
+                        "C" + c);
+                // most classes extend one of the previous ones, which results
+                // in super class chains of several dozen classes
+                SigClassDefinition superClass = classes.isEmpty()
+                        || random.nextInt(10) == 0 ? object : classes
+                        .get(classes.size() - 1 - random.nextInt(Math.min(
+                                classes.size(), 20)));
+                initializeType(clazz, Kind.CLASS, new SigClassReference(
+                        superClass));
+                clazz.setInterfaces(pickInterfaces(random, interfaces));
+                classes.add(clazz);
+                packageClasses.add(clazz);
+            }
+
+            SigPackage sigPackage = new SigPackage(packageName);
+            sigPackage.setClasses(packageClasses);
+            packages.add(sigPackage);
+        }
+
+        List<SigClassDefinition> parameterTypes =
+                new ArrayList<SigClassDefinition>(classes);
+        parameterTypes.add(string);
+        for (SigClassDefinition type : interfaces) {
+            addMethods(type, random, mutations, mutationRate, parameterTypes);
+        }
+        for (SigClassDefinition type : classes) {
+            addMethods(type, random, mutations, mutationRate, parameterTypes);
+        }
+
+        SigApi api = new SigApi(name, Visibility.PUBLIC);
+        api.setPackages(packages);
+        return api;
+    }
+
+    private static void initializeType(SigClassDefinition type, Kind kind,
+            ITypeReference superClass) {
+        type.setKind(kind);
+        type.setModifiers(kind == Kind.INTERFACE ? EnumSet.of(Modifier.PUBLIC,
+                Modifier.ABSTRACT) : EnumSet.of(Modifier.PUBLIC));
+        type.setSuperClass(superClass);
+        type.setInterfaces(Collections.<ITypeReference> emptySet());
+        type.setTypeParameters(Collections
+                .<ITypeVariableDefinition> emptyList());
+        type.setDeclaringClass(null);
+        type.setInnerClasses(Collections.<IClassDefinition> emptySet());
+        type.setConstructors(Collections.<IConstructor> emptySet());
+        type.setFields(Collections.<IField> emptySet());
+        type.setEnumConstants(Collections.<IEnumConstant> emptySet());
+        type.setAnnotationFields(Collections.<IAnnotationField> emptySet());
+        type.setMethods(Collections.<IMethod> emptySet());
+    }
+
+    private static Set<ITypeReference> pickInterfaces(Random random,
+            List<SigClassDefinition> interfaces) {
+        Set<ITypeReference> picked = new HashSet<ITypeReference>();
+        int count = interfaces.isEmpty() ? 0 : random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            picked.add(new SigClassReference(interfaces.get(random
+                    .nextInt(interfaces.size()))));
+        }
+        return picked;
+    }
+
+    private static void addMethods(SigClassDefinition type, Random random,
+            Random mutations, double mutationRate,
+            List<SigClassDefinition> parameterTypes) {
+        Set<IMethod> methods = new HashSet<IMethod>();
+        Set<String> signatures = new HashSet<String>();
+        for (int m = 0; m < METHODS_PER_TYPE; m++) {
+            // draw the complete method first, so that mutations do not change
+            // the classes generated afterwards
+            String name = METHOD_NAMES[random.nextInt(METHOD_NAMES.length)];
+            List<ITypeReference> types = new ArrayList<ITypeReference>();
+            int parameterCount = random.nextInt(4);
+            for (int i = 0; i < parameterCount; i++) {
+                types.add(pickType(random, parameterTypes));
+            }
+            // methods with the same signature return the same type, unless
+            // mutated, as overriding methods usually do
+            ITypeReference returnType = PRIMITIVE_TYPES[Math.abs((name + types)
+                    .hashCode()) % PRIMITIVE_TYPES.length];
+
+            if (mutations.nextDouble() < mutationRate) {
+                switch (mutations.nextInt(3)) {
+                case 0:
+                    // removed
+                    continue;
+                case 1:
+                    types.add(SigPrimitiveType.INT_TYPE);
+                    break;
+                default:
+                    returnType = SigPrimitiveType.LONG_TYPE;
+                    break;
+                }
+            }
+
+            if (!signatures.add(name + types)) {
+                continue;
+            }
+            SigMethod method = new SigMethod(name);
+            method.setModifiers(type.getKind() == Kind.INTERFACE ? EnumSet.of(
+                    Modifier.PUBLIC, Modifier.ABSTRACT) : EnumSet
+                    .of(Modifier.PUBLIC));
+            List<IParameter> parameters = new ArrayList<IParameter>();
+            for (ITypeReference parameterType : types) {
+                parameters.add(new SigParameter(parameterType));
+            }
+            method.setParameters(parameters);
+            method.setReturnType(returnType);
+            method.setExceptions(Collections.<ITypeReference> emptySet());
+            method.setTypeParameters(Collections
+                    .<ITypeVariableDefinition> emptyList());
+            method.setDeclaringClass(type);
+            methods.add(method);
+        }
+        type.setMethods(methods);
+    }
+
+    private static ITypeReference pickType(Random random,
+            List<SigClassDefinition> parameterTypes) {
+        if (random.nextBoolean()) {
+            return PRIMITIVE_TYPES[random.nextInt(PRIMITIVE_TYPES.length)];
+        }
+        return new SigClassReference(parameterTypes.get(random
+                .nextInt(parameterTypes.size())));
+    }
+}
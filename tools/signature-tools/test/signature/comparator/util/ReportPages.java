@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.comparator.util;
+
+import signature.compare.model.IApiDelta;
+import signature.compare.model.IClassDefinitionDelta;
+import signature.compare.model.IPackageDelta;
+import signature.io.html.ApiOverviewPage;
+import signature.io.html.ClassOverviewPage;
+import signature.io.html.PackageOverviewPage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Renders the html report of a delta, so that tests can check that two
+ * comparisons report the same.
+ */
+public final class ReportPages {
+
+    private ReportPages() {
+    }
+
+    /**
+     * Renders the pages of the html report, without the creation time, by
+     * package and class name.
+     */
+    public static Map<String, String> render(IApiDelta delta) {
+        Map<String, String> commonInfos = new HashMap<String, String>();
+        commonInfos.put("creation_time", "");
+        commonInfos.put("from_desc", delta.getFrom().getName());
+        commonInfos.put("to_desc", delta.getTo().getName());
+
+        Map<String, String> pages = new TreeMap<String, String>();
+        StringBuilder content = new StringBuilder();
+        new ApiOverviewPage(delta, commonInfos).writeTo(content);
+        pages.put("", content.toString());
+        for (IPackageDelta packageDelta : delta.getPackageDeltas()) {
+            String packageName = packageDelta.getFrom() != null ? packageDelta
+                    .getFrom().getName() : packageDelta.getTo().getName();
+            content = new StringBuilder();
+            new PackageOverviewPage(packageDelta, commonInfos)
+                    .writeTo(content);
+            pages.put(packageName, content.toString());
+            if (packageDelta.getClassDeltas() == null) {
+                continue;
+            }
+            for (IClassDefinitionDelta classDelta : packageDelta
+                    .getClassDeltas()) {
+                String className = classDelta.getFrom() != null ? classDelta
+                        .getFrom().getName() : classDelta.getTo().getName();
+                content = new StringBuilder();
+                new ClassOverviewPage(classDelta, commonInfos)
+                        .writeTo(content);
+                pages.put(packageName + "." + className, content.toString());
+            }
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.converter.dex;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import signature.compare.ApiComparator;
+import signature.converter.Visibility;
+import signature.model.IApi;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Tests that converting in parallel results in the same api as converting on
+ * a single thread.
+ */
+public class DexToSigConverterTest {
+
+    private static final String DEX_FILE = "../dex-tools/dex/classes0.dex";
+
+    @Test
+    public void convertInParallelTest() throws IOException {
+        for (Visibility visibility : Visibility.values()) {
+            IApi sequential = convert(1, visibility);
+            assertFalse(sequential.getPackages().isEmpty());
+            assertNull(new ApiComparator().compare(sequential, convert(4,
+                    visibility)));
+        }
+    }
+
+    private static IApi convert(int parallelism, Visibility visibility)
+            throws IOException {
+        // new dex files for every conversion, so that no state is shared
+        return new DexToSigConverter(parallelism).convertApi("Dex Tests",
+                DexUtil.getDexFiles(Collections.singleton(DEX_FILE)),
+                visibility);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package signature.io.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import signature.compare.ApiComparator;
+import signature.model.IApi;
+import signature.model.IPackage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+public class BinaryApiTest {
+
+    private static final String LEGACY_SPEC = "spec/android.spec";
+
+    @Test
+    public void roundTripLegacySpecTest() throws IOException {
+        IApi api = load(new File(LEGACY_SPEC), Collections.<String> emptySet());
+        IApi loaded = roundTrip(api, Collections.<String> emptySet());
+        assertEquals(api.getName(), loaded.getName());
+        assertNull(new ApiComparator().compare(api, loaded));
+        assertNull(new ApiComparator().compare(loaded, api));
+    }
+
+    @Test
+    public void packageNamesTest() throws IOException {
+        IApi api = load(new File(LEGACY_SPEC), Collections.<String> emptySet());
+        IApi loaded = roundTrip(api, Collections.singleton("java.lang"));
+        assertEquals(1, loaded.getPackages().size());
+        IPackage aPackage = loaded.getPackages().iterator().next();
+        assertEquals("java.lang", aPackage.getName());
+        assertTrue(aPackage.getClasses().size() > 0);
+    }
+
+    @Test(expected = InvalidClassException.class)
+    public void rejectForeignSerializedClassTest() throws IOException {
+        File file = File.createTempFile("foreign", ".sig");
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(
+                    new FileOutputStream(file));
+            out.writeObject(new Date());
+            out.close();
+            load(file, Collections.<String> emptySet());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static IApi roundTrip(IApi api, Set<String> packageNames)
+            throws IOException {
+        File directory = File.createTempFile("snapshot", "");
+        directory.delete();
+        try {
+            new BinaryApi().externalizeApi(directory.getPath(), api);
+            File[] files = directory.listFiles();
+            assertEquals(1, files.length);
+            assertTrue(SnapshotReader.isSnapshot(files[0]));
+            return load(files[0], packageNames);
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    private static IApi load(File file, Set<String> packageNames)
+            throws IOException {
+        return new BinaryApi().loadApi(null, null, Collections
+                .singleton(file.getPath()), packageNames);
+    }
+}
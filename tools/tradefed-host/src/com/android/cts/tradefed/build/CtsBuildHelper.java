@@ -130,6 +130,13 @@ public class CtsBuildHelper {
         return new File(getRepositoryDir(), "logs");
     }
 
+    /**
+     * @return a {@link File} representing the directory to store cached device info in.
+     */
+    public File getDeviceInfoCacheDir() {
+        return new File(getRepositoryDir(), "device-info-cache");
+    }
+
     /**
      * @return a {@link File} representing the test cases directory
      */
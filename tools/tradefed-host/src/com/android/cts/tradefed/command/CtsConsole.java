@@ -17,19 +17,34 @@ package com.android.cts.tradefed.command;
 
 import com.android.cts.tradefed.build.CtsBuildHelper;
 import com.android.cts.tradefed.build.CtsBuildProvider;
+import com.android.cts.tradefed.command.MultiDeviceExecutor.DeviceStatus;
+import com.android.cts.tradefed.result.CtsXmlResultReporter;
 import com.android.cts.tradefed.result.ITestResultRepo;
 import com.android.cts.tradefed.result.ITestSummary;
+import com.android.cts.tradefed.result.LogRestorer;
+import com.android.cts.tradefed.result.PerfRegressionAnalyzer;
 import com.android.cts.tradefed.result.PlanCreator;
 import com.android.cts.tradefed.result.TestResultRepo;
+import com.android.cts.tradefed.testtype.CtsPackageRunner;
 import com.android.cts.tradefed.testtype.ITestPackageRepo;
 import com.android.cts.tradefed.testtype.TestPackageRepo;
 import com.android.cts.util.AbiUtils;
+import com.android.tradefed.build.FolderBuildInfo;
+import com.android.tradefed.build.IFolderBuildInfo;
 import com.android.tradefed.command.Console;
 import com.android.tradefed.config.ArgsOptionParser;
 import com.android.tradefed.config.ConfigurationException;
+import com.android.tradefed.config.GlobalConfiguration;
+import com.android.tradefed.config.Option;
+import com.android.tradefed.config.Option.Importance;
+import com.android.tradefed.device.FreeDeviceState;
+import com.android.tradefed.device.IDeviceManager;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.util.ArrayUtil;
 import com.android.tradefed.util.FileUtil;
 import com.android.tradefed.util.RegexTrie;
 import com.android.tradefed.util.TableFormatter;
+import com.android.tradefed.util.xml.AbstractXmlParser.ParseException;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -47,6 +62,9 @@ import java.util.Set;
 public class CtsConsole extends Console {
 
     protected static final String ADD_PATTERN = "a(?:dd)?";
+    protected static final String ANALYZE_PATTERN = "an(?:alyze)?";
+    protected static final String MULTI_PATTERN = "mu(?:lti)?";
+    protected static final String RESTORE_PATTERN = "rest(?:ore)?";
 
     private CtsBuildHelper mCtsBuild = null;
 
@@ -126,6 +144,86 @@ public class CtsConsole extends Console {
                 "%s help:" + LINE_SEPARATOR +
                 "\tderivedplan      Add a derived plan" + LINE_SEPARATOR,
                 ADD_PATTERN));
+
+        ArgRunnable<CaptureList> analyzePerfCommand = new ArgRunnable<CaptureList>() {
+            @Override
+            public void run(CaptureList args) {
+                // Skip 2 tokens to get past analyzePattern and "perf"
+                String[] flatArgs = new String[args.size() - 2];
+                for (int i = 2; i < args.size(); i++) {
+                    flatArgs[i - 2] = args.get(i).get(0);
+                }
+                CtsBuildHelper ctsBuild = getCtsBuild();
+                if (ctsBuild != null) {
+                    analyzePerf(ctsBuild, flatArgs);
+                }
+            }
+        };
+        trie.put(analyzePerfCommand, ANALYZE_PATTERN, "p(?:erf)?", null);
+        commandHelp.put(ANALYZE_PATTERN, String.format(
+                "%s help:" + LINE_SEPARATOR +
+                "\tperf      Detect performance regressions against earlier sessions" +
+                LINE_SEPARATOR, ANALYZE_PATTERN));
+
+        ArgRunnable<CaptureList> restoreLogsCommand = new ArgRunnable<CaptureList>() {
+            @Override
+            public void run(CaptureList args) {
+                // Skip 2 tokens to get past restorePattern and "logs"
+                String[] flatArgs = new String[args.size() - 2];
+                for (int i = 2; i < args.size(); i++) {
+                    flatArgs[i - 2] = args.get(i).get(0);
+                }
+                CtsBuildHelper ctsBuild = getCtsBuild();
+                if (ctsBuild != null) {
+                    restoreLogs(ctsBuild, flatArgs);
+                }
+            }
+        };
+        trie.put(restoreLogsCommand, RESTORE_PATTERN, "l(?:ogs)?", null);
+        commandHelp.put(RESTORE_PATTERN, String.format(
+                "%s help:" + LINE_SEPARATOR +
+                "\tlogs      Restore the logs of a session saved with --dedup-logs" +
+                LINE_SEPARATOR, RESTORE_PATTERN));
+
+        ArgRunnable<CaptureList> multiRunCommand = new ArgRunnable<CaptureList>() {
+            @Override
+            public void run(CaptureList args) {
+                // Skip 2 tokens to get past multiPattern and "run"
+                String[] flatArgs = new String[args.size() - 2];
+                for (int i = 2; i < args.size(); i++) {
+                    flatArgs[i - 2] = args.get(i).get(0);
+                }
+                CtsBuildHelper ctsBuild = getCtsBuild();
+                if (ctsBuild != null) {
+                    multiRun(ctsBuild, flatArgs);
+                }
+            }
+        };
+        trie.put(multiRunCommand, MULTI_PATTERN, "r(?:un)?", null);
+        commandHelp.put(MULTI_PATTERN, String.format(
+                "%s help:" + LINE_SEPARATOR +
+                "\trun      Run a plan on all available devices, merging results into one " +
+                "session" + LINE_SEPARATOR, MULTI_PATTERN));
+    }
+
+    /**
+     * Options of the 'multi run' command.
+     */
+    private static class MultiRunOptions {
+        @Option(name = "plan", description = "the test plan to run.",
+                importance = Importance.IF_UNSET)
+        private String mPlanName = null;
+
+        @Option(name = "max-devices", description = "the maximum number of devices to use.")
+        private int mMaxDevices = Integer.MAX_VALUE;
+
+        @Option(name = "progress-interval", description =
+                "the interval in seconds between progress tables. 0 to disable.")
+        private int mProgressIntervalSec = 30;
+
+        @Option(name = "skip-device-info", description =
+                "flag to not collect info from device.")
+        private boolean mSkipDeviceInfo = false;
     }
 
     @Override
@@ -174,10 +272,28 @@ public class CtsConsole extends Console {
         helpBuilder.append("  add derivedplan --plan plane_name --session/-s session_id -r ");
         helpBuilder.append("[pass/fail/notExecuted/timeout]: derive a plan from the given ");
         helpBuilder.append("session\n");
+        helpBuilder.append("Analyze:\n");
+        helpBuilder.append("  an/analyze p/perf [--session/-s session_id] ");
+        helpBuilder.append("[--baseline-sessions count]: compare the performance results of a ");
+        helpBuilder.append("session against earlier sessions\n");
+        helpBuilder.append("Restore:\n");
+        helpBuilder.append("  rest/restore l/logs --session/-s session_id: restore the logs of a ");
+        helpBuilder.append("session saved with --dedup-logs next to their manifests\n");
+        helpBuilder.append("Multi:\n");
+        helpBuilder.append("  mu/multi r/run --plan test_plan_name [--max-devices count]: run a ");
+        helpBuilder.append("plan on all available devices at once, showing live progress and ");
+        helpBuilder.append("merging the results into a single session. Result reporter options ");
+        helpBuilder.append("such as --dedup-logs are accepted as well\n");
         helpBuilder.append("Dump:\n");
         helpBuilder.append("  d/dump l/logs: dump the tradefed logs for all running invocations\n");
         helpBuilder.append("Options:\n");
         helpBuilder.append("  --disable-reboot : Do not reboot device after running some amount of tests.\n");
+        helpBuilder.append("  --trace-invocation : Write a timing trace of the invocation to the ");
+        helpBuilder.append("result directory.\n");
+        helpBuilder.append("  --reuse-device-info : Reuse the device info collected by an ");
+        helpBuilder.append("earlier run if the device build and properties are unchanged.\n");
+        helpBuilder.append("  --dedup-logs : Store test logs once per distinct content in the ");
+        helpBuilder.append("results log store.\n");
         return helpBuilder.toString();
     }
 
@@ -230,6 +346,108 @@ public class CtsConsole extends Console {
         }
     }
 
+    private void analyzePerf(CtsBuildHelper ctsBuild, String[] flatArgs) {
+        PerfRegressionAnalyzer analyzer = new PerfRegressionAnalyzer();
+        try {
+            ArgsOptionParser optionParser = new ArgsOptionParser(analyzer);
+            optionParser.parse(Arrays.asList(flatArgs));
+            analyzer.analyzeAndReport(new TestResultRepo(ctsBuild.getResultsDir()),
+                    new PrintWriter(System.out, true));
+        } catch (ConfigurationException e) {
+            printLine("Error: " + e.getMessage());
+            printLine(ArgsOptionParser.getOptionHelp(false, analyzer));
+        }
+    }
+
+    private void restoreLogs(CtsBuildHelper ctsBuild, String[] flatArgs) {
+        LogRestorer restorer = new LogRestorer();
+        try {
+            ArgsOptionParser optionParser = new ArgsOptionParser(restorer);
+            optionParser.parse(Arrays.asList(flatArgs));
+            restorer.restore(new TestResultRepo(ctsBuild.getResultsDir()),
+                    ctsBuild.getResultsDir(), ctsBuild.getLogsDir(),
+                    new PrintWriter(System.out, true));
+        } catch (ConfigurationException e) {
+            printLine("Error: " + e.getMessage());
+            printLine(ArgsOptionParser.getOptionHelp(false, restorer));
+        }
+    }
+
+    private void multiRun(final CtsBuildHelper ctsBuild, String[] flatArgs) {
+        final MultiRunOptions options = new MultiRunOptions();
+        // the reporter takes its own options, such as --dedup-logs, from the same command line
+        final CtsXmlResultReporter reporter = new CtsXmlResultReporter();
+        final IFolderBuildInfo buildInfo = new FolderBuildInfo(
+                CtsBuildProvider.CTS_BUILD_VERSION, "cts", "cts");
+        buildInfo.setRootDir(ctsBuild.getRootDir());
+        final CtsPackageRunner runner;
+        try {
+            ArgsOptionParser optionParser = new ArgsOptionParser(options, reporter);
+            optionParser.parse(Arrays.asList(flatArgs));
+            if (options.mPlanName == null) {
+                throw new ConfigurationException("Missing --plan");
+            }
+            runner = new CtsPackageRunner(buildInfo, options.mPlanName, options.mSkipDeviceInfo);
+        } catch (ConfigurationException e) {
+            printLine("Error: " + e.getMessage());
+            printLine(ArgsOptionParser.getOptionHelp(false, options));
+            printLine(ArgsOptionParser.getOptionHelp(false, reporter));
+            return;
+        } catch (FileNotFoundException e) {
+            printLine("Error: " + e.getMessage());
+            return;
+        } catch (ParseException e) {
+            printLine(String.format("Error: failed to parse plan %s", options.mPlanName));
+            return;
+        }
+
+        final IDeviceManager deviceManager = GlobalConfiguration.getDeviceManagerInstance();
+        final List<ITestDevice> devices = new ArrayList<ITestDevice>();
+        ITestDevice device;
+        while (devices.size() < options.mMaxDevices
+                && (device = deviceManager.allocateDevice(0)) != null) {
+            devices.add(device);
+        }
+        if (devices.isEmpty()) {
+            printLine("No available devices");
+            return;
+        }
+        List<String> serials = new ArrayList<String>(devices.size());
+        for (ITestDevice d : devices) {
+            serials.add(d.getSerialNumber());
+        }
+        printLine(String.format("Running plan %s on %d devices: %s", options.mPlanName,
+                devices.size(), ArrayUtil.join(", ", serials)));
+        buildInfo.setDeviceSerial(ArrayUtil.join(",", serials));
+
+        // run in the background so the console remains usable
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long startTime = System.currentTimeMillis();
+                reporter.invocationStarted(buildInfo);
+                MultiDeviceExecutor executor = new MultiDeviceExecutor(runner,
+                        options.mProgressIntervalSec * 1000L);
+                try {
+                    executor.run(devices, runner.getPackageNames(), reporter,
+                            new PrintWriter(System.out, true));
+                } catch (InterruptedException e) {
+                    printLine("Multi device run interrupted");
+                } finally {
+                    reporter.invocationEnded(System.currentTimeMillis() - startTime);
+                    Map<ITestDevice, DeviceStatus> statuses = executor.getDeviceStatuses();
+                    for (ITestDevice d : devices) {
+                        FreeDeviceState state = statuses.get(d) == DeviceStatus.UNAVAILABLE
+                                ? FreeDeviceState.UNAVAILABLE : FreeDeviceState.AVAILABLE;
+                        deviceManager.freeDevice(d, state);
+                    }
+                }
+            }
+        }, "multi-device-run");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     private CtsBuildHelper getCtsBuild() {
         if (mCtsBuild == null) {
             String ctsInstallPath = System.getProperty("CTS_ROOT");
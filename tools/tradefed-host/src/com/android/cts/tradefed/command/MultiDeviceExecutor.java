@@ -0,0 +1,511 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.command;
+
+import com.android.ddmlib.testrunner.TestIdentifier;
+import com.android.tradefed.device.DeviceNotAvailableException;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.log.LogUtil.CLog;
+import com.android.tradefed.result.FileInputStreamSource;
+import com.android.tradefed.result.ITestInvocationListener;
+import com.android.tradefed.result.InputStreamSource;
+import com.android.tradefed.result.LogDataType;
+import com.android.tradefed.result.ResultForwarder;
+import com.android.tradefed.util.FileUtil;
+import com.android.tradefed.util.StreamUtil;
+import com.android.tradefed.util.TableFormatter;
+import com.android.tradefed.util.TimeUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a list of test packages on several devices at once from within the console.
+ * <p/>
+ * Packages are handed out from a shared queue, so faster devices take on more of the work. The
+ * events of each package are buffered per device and forwarded to a single listener in one
+ * block once the package completes, so a single {@link ITestInvocationListener} such as the
+ * CTS result reporter can merge all devices into one session. If a device becomes unavailable,
+ * its current package is discarded and handed to another device.
+ * <p/>
+ * While running, an aggregated progress table is printed periodically.
+ */
+public class MultiDeviceExecutor {
+
+    /**
+     * Runs a single test package on a device.
+     */
+    public interface IPackageRunner {
+        /**
+         * Run the given package, reporting all results to the listener.
+         */
+        public void run(ITestDevice device, String packageName, ITestInvocationListener listener)
+                throws DeviceNotAvailableException;
+    }
+
+    enum DeviceStatus {
+        IDLE, RUNNING, DONE, UNAVAILABLE
+    }
+
+    /**
+     * Progress of a single device. Updated by its worker thread, read by the progress printer.
+     */
+    static class DeviceProgress {
+        private final String mSerial;
+        private DeviceStatus mStatus = DeviceStatus.IDLE;
+        private String mPackageName = null;
+        private int mPackagesDone = 0;
+        private int mTestsDone = 0;
+        private int mTestsFailed = 0;
+
+        DeviceProgress(String serial) {
+            mSerial = serial;
+        }
+
+        synchronized void setStatus(DeviceStatus status, String packageName) {
+            mStatus = status;
+            mPackageName = packageName;
+        }
+
+        synchronized void packageDone(int tests, int failed) {
+            mPackagesDone++;
+            mTestsDone += tests;
+            mTestsFailed += failed;
+        }
+
+        synchronized DeviceStatus getStatus() {
+            return mStatus;
+        }
+
+        synchronized int getPackagesDone() {
+            return mPackagesDone;
+        }
+
+        synchronized int getTestsDone() {
+            return mTestsDone;
+        }
+
+        synchronized int getTestsFailed() {
+            return mTestsFailed;
+        }
+
+        synchronized List<String> toRow(double elapsedSec) {
+            return Arrays.asList(mSerial, mStatus.name(), mPackageName == null ? "-" : mPackageName,
+                    Integer.toString(mPackagesDone), Integer.toString(mTestsDone),
+                    Integer.toString(mTestsFailed),
+                    String.format("%.1f", elapsedSec > 0 ? mTestsDone / elapsedSec : 0.0));
+        }
+    }
+
+    private final IPackageRunner mRunner;
+    private final long mProgressIntervalMs;
+    private final List<ITestDevice> mDevices = new ArrayList<ITestDevice>();
+    private final List<DeviceProgress> mProgress = new ArrayList<DeviceProgress>();
+    private int mTotalPackages = 0;
+    private long mStartTime = 0;
+
+    /**
+     * @param runner the {@link IPackageRunner} to run each package with
+     * @param progressIntervalMs the interval between progress tables. 0 disables them
+     */
+    public MultiDeviceExecutor(IPackageRunner runner, long progressIntervalMs) {
+        mRunner = runner;
+        mProgressIntervalMs = progressIntervalMs;
+    }
+
+    /**
+     * Run the packages on the devices, and wait until all packages have run or all devices
+     * became unavailable.
+     *
+     * @param devices the devices to run on
+     * @param packageNames the packages to run, in dispatch order
+     * @param listener the listener that receives the merged results
+     * @param out where to print progress to
+     * @return the names of the packages that could not be run
+     */
+    public List<String> run(List<ITestDevice> devices, List<String> packageNames,
+            ITestInvocationListener listener, final PrintWriter out)
+            throws InterruptedException {
+        final BlockingDeque<String> queue = new LinkedBlockingDeque<String>(packageNames);
+        final AtomicInteger remaining = new AtomicInteger(packageNames.size());
+        final Object listenerLock = new Object();
+        mTotalPackages = packageNames.size();
+        mStartTime = System.currentTimeMillis();
+        mDevices.clear();
+        mProgress.clear();
+
+        List<Thread> workers = new ArrayList<Thread>(devices.size());
+        for (ITestDevice device : devices) {
+            DeviceProgress progress = new DeviceProgress(device.getSerialNumber());
+            mDevices.add(device);
+            mProgress.add(progress);
+            Thread worker = new Thread(new DeviceWorker(device, progress, queue, remaining,
+                    listener, listenerLock), "multi-device-" + device.getSerialNumber());
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+
+        ScheduledExecutorService printer = null;
+        if (mProgressIntervalMs > 0) {
+            printer = Executors.newSingleThreadScheduledExecutor();
+            printer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    printProgress(out);
+                }
+            }, mProgressIntervalMs, mProgressIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } finally {
+            if (printer != null) {
+                printer.shutdownNow();
+            }
+        }
+        printProgress(out);
+        List<String> notRun = new ArrayList<String>(queue);
+        if (!notRun.isEmpty()) {
+            CLog.w("%d packages could not be run: all devices became unavailable",
+                    notRun.size());
+        }
+        return notRun;
+    }
+
+    /**
+     * Print the per-device progress table, followed by the aggregated totals.
+     */
+    void printProgress(PrintWriter out) {
+        long elapsedMs = System.currentTimeMillis() - mStartTime;
+        double elapsedSec = elapsedMs / 1000.0;
+        List<List<String>> table = new ArrayList<List<String>>();
+        table.add(Arrays.asList("Device", "Status", "Package", "Packages", "Tests", "Failed",
+                "Tests/s"));
+        int packagesDone = 0;
+        int testsDone = 0;
+        int testsFailed = 0;
+        int activeDevices = 0;
+        for (DeviceProgress progress : mProgress) {
+            table.add(progress.toRow(elapsedSec));
+            packagesDone += progress.getPackagesDone();
+            testsDone += progress.getTestsDone();
+            testsFailed += progress.getTestsFailed();
+            DeviceStatus status = progress.getStatus();
+            if (status == DeviceStatus.IDLE || status == DeviceStatus.RUNNING) {
+                activeDevices++;
+            }
+        }
+        String eta = "-";
+        if (packagesDone > 0 && activeDevices > 0) {
+            eta = TimeUtil.formatElapsedTime(
+                    elapsedMs * (mTotalPackages - packagesDone) / packagesDone);
+        }
+        table.add(Arrays.asList("Total", String.format("%d active", activeDevices), "",
+                String.format("%d/%d", packagesDone, mTotalPackages),
+                Integer.toString(testsDone), Integer.toString(testsFailed),
+                String.format("%.1f", elapsedSec > 0 ? testsDone / elapsedSec : 0.0)));
+        new TableFormatter().displayTable(table, out);
+        out.println(String.format("Elapsed %s, ETA %s", TimeUtil.formatElapsedTime(elapsedMs),
+                eta));
+        out.flush();
+    }
+
+    /**
+     * Get the status of each device of the last run. Devices that became unavailable are
+     * reported as {@link DeviceStatus#UNAVAILABLE}, so they can be freed accordingly.
+     *
+     * @return the {@link DeviceStatus} of each device, in device order
+     */
+    Map<ITestDevice, DeviceStatus> getDeviceStatuses() {
+        Map<ITestDevice, DeviceStatus> statuses = new LinkedHashMap<ITestDevice, DeviceStatus>();
+        for (int i = 0; i < mDevices.size(); i++) {
+            statuses.put(mDevices.get(i), mProgress.get(i).getStatus());
+        }
+        return statuses;
+    }
+
+    /**
+     * @return the {@link DeviceProgress} of each device, in device order
+     */
+    List<DeviceProgress> getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * Takes packages from the queue and runs them on a single device until the queue is drained
+     * or the device becomes unavailable.
+     */
+    private class DeviceWorker implements Runnable {
+        private final ITestDevice mDevice;
+        private final DeviceProgress mDeviceProgress;
+        private final BlockingDeque<String> mQueue;
+        private final AtomicInteger mRemaining;
+        private final ITestInvocationListener mListener;
+        private final Object mListenerLock;
+
+        DeviceWorker(ITestDevice device, DeviceProgress progress, BlockingDeque<String> queue,
+                AtomicInteger remaining, ITestInvocationListener listener, Object listenerLock) {
+            mDevice = device;
+            mDeviceProgress = progress;
+            mQueue = queue;
+            mRemaining = remaining;
+            mListener = listener;
+            mListenerLock = listenerLock;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // a package handed back by a failing device may still show up, so keep polling
+                // until every package has completed
+                while (mRemaining.get() > 0) {
+                    String packageName = mQueue.pollFirst(100, TimeUnit.MILLISECONDS);
+                    if (packageName == null) {
+                        continue;
+                    }
+                    mDeviceProgress.setStatus(DeviceStatus.RUNNING, packageName);
+                    BufferingForwarder buffer = new BufferingForwarder(mListener, mListenerLock);
+                    try {
+                        mRunner.run(mDevice, packageName, buffer);
+                    } catch (DeviceNotAvailableException e) {
+                        CLog.e("Device %s became unavailable while running %s",
+                                mDevice.getSerialNumber(), packageName);
+                        buffer.discard();
+                        mQueue.addFirst(packageName);
+                        mDeviceProgress.setStatus(DeviceStatus.UNAVAILABLE, null);
+                        return;
+                    } catch (RuntimeException e) {
+                        CLog.e("Failed to run %s on %s", packageName, mDevice.getSerialNumber());
+                        CLog.e(e);
+                    }
+                    try {
+                        buffer.flush();
+                    } catch (RuntimeException e) {
+                        CLog.e("Failed to report results of %s", packageName);
+                        CLog.e(e);
+                    }
+                    mDeviceProgress.packageDone(buffer.getTestCount(), buffer.getFailedCount());
+                    mDeviceProgress.setStatus(DeviceStatus.IDLE, null);
+                    mRemaining.decrementAndGet();
+                }
+                mDeviceProgress.setStatus(DeviceStatus.DONE, null);
+            } catch (InterruptedException e) {
+                mDeviceProgress.setStatus(DeviceStatus.DONE, null);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A single buffered listener call.
+     */
+    private static abstract class Event {
+        abstract void replay(ITestInvocationListener listener);
+    }
+
+    /**
+     * Buffers the test run events of one package, and forwards them to the shared listener in
+     * one block on {@link #flush()}. The data source of a log is only valid during the call, so
+     * logs are saved to temporary files, which are replayed in order with the other events.
+     */
+    static class BufferingForwarder extends ResultForwarder {
+        private final ITestInvocationListener mListener;
+        private final Object mLock;
+        private final List<Event> mEvents = new ArrayList<Event>();
+        private final List<File> mLogFiles = new ArrayList<File>();
+        private int mTestCount = 0;
+        private int mFailedCount = 0;
+
+        BufferingForwarder(ITestInvocationListener listener, Object lock) {
+            super(listener);
+            mListener = listener;
+            mLock = lock;
+        }
+
+        @Override
+        public void testLog(final String dataName, final LogDataType dataType,
+                InputStreamSource dataStream) {
+            final File logFile;
+            InputStream logStream = null;
+            try {
+                logFile = FileUtil.createTempFile("buffered_log_", "." + dataType.getFileExt());
+                mLogFiles.add(logFile);
+                logStream = dataStream.createInputStream();
+                FileUtil.writeToFile(logStream, logFile);
+            } catch (IOException e) {
+                CLog.e("Failed to buffer log %s", dataName);
+                CLog.e(e);
+                return;
+            } finally {
+                StreamUtil.close(logStream);
+            }
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    InputStreamSource source = new FileInputStreamSource(logFile);
+                    try {
+                        listener.testLog(dataName, dataType, source);
+                    } finally {
+                        source.cancel();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void testRunStarted(final String runName, final int testCount) {
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    listener.testRunStarted(runName, testCount);
+                }
+            });
+        }
+
+        @Override
+        public void testStarted(final TestIdentifier test) {
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    listener.testStarted(test);
+                }
+            });
+        }
+
+        @Override
+        public void testFailed(final TestIdentifier test, final String trace) {
+            mFailedCount++;
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    listener.testFailed(test, trace);
+                }
+            });
+        }
+
+        @Override
+        public void testAssumptionFailure(final TestIdentifier test, final String trace) {
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    listener.testAssumptionFailure(test, trace);
+                }
+            });
+        }
+
+        @Override
+        public void testIgnored(final TestIdentifier test) {
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    listener.testIgnored(test);
+                }
+            });
+        }
+
+        @Override
+        public void testEnded(final TestIdentifier test, final Map<String, String> testMetrics) {
+            mTestCount++;
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    listener.testEnded(test, testMetrics);
+                }
+            });
+        }
+
+        @Override
+        public void testRunFailed(final String errorMessage) {
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    listener.testRunFailed(errorMessage);
+                }
+            });
+        }
+
+        @Override
+        public void testRunStopped(final long elapsedTime) {
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    listener.testRunStopped(elapsedTime);
+                }
+            });
+        }
+
+        @Override
+        public void testRunEnded(final long elapsedTime, final Map<String, String> runMetrics) {
+            mEvents.add(new Event() {
+                @Override
+                void replay(ITestInvocationListener listener) {
+                    listener.testRunEnded(elapsedTime, runMetrics);
+                }
+            });
+        }
+
+        /**
+         * Forward all buffered events to the shared listener.
+         */
+        void flush() {
+            try {
+                synchronized (mLock) {
+                    for (Event event : mEvents) {
+                        event.replay(mListener);
+                    }
+                }
+            } finally {
+                discard();
+            }
+        }
+
+        /**
+         * Drop all buffered events, and delete the saved logs.
+         */
+        void discard() {
+            mEvents.clear();
+            for (File logFile : mLogFiles) {
+                FileUtil.deleteFile(logFile);
+            }
+            mLogFiles.clear();
+        }
+
+        int getTestCount() {
+            return mTestCount;
+        }
+
+        int getFailedCount() {
+            return mFailedCount;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.device;
+
+import com.android.cts.util.AbiUtils;
+import com.android.tradefed.device.DeviceNotAvailableException;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.log.LogUtil.CLog;
+import com.android.tradefed.result.ITestInvocationListener;
+import com.android.tradefed.result.ResultForwarder;
+import com.android.tradefed.util.StreamUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Host side cache of the metrics reported by the device info collector instrumentation.
+ * <p/>
+ * Entries are keyed by device serial, build fingerprint and ABI. Before an entry is reused, the
+ * device is probed with a single <code>getprop</code> call, and the entry is only used if all
+ * {@link #PROBE_PROPERTIES} still have the values they had when the entry was recorded.
+ */
+public class DeviceInfoCache {
+
+    static final String FINGERPRINT_PROPERTY = "ro.build.fingerprint";
+
+    /** Properties that must be unchanged for a cached entry to be used. */
+    static final String[] PROBE_PROPERTIES = {
+        FINGERPRINT_PROPERTY,
+        "ro.build.date.utc",
+        "ro.serialno",
+        "ro.sf.lcd_density",
+        "ro.opengles.version",
+        "ro.crypto.state",
+        "gsm.operator.alpha",
+        "gsm.sim.operator.alpha",
+        "persist.sys.locale",
+    };
+
+    private static final String PROBE_PREFIX = "probe.";
+    private static final String METRIC_PREFIX = "metric.";
+    private static final Pattern PROP_PATTERN = Pattern.compile("^\\[(.*)\\]: \\[(.*)\\]$",
+            Pattern.MULTILINE);
+
+    private final File mCacheDir;
+
+    /**
+     * @param cacheDir the directory to store cache entries in. Created if necessary.
+     */
+    public DeviceInfoCache(File cacheDir) {
+        mCacheDir = cacheDir;
+    }
+
+    /**
+     * Read the {@link #PROBE_PROPERTIES} from the device in a single shell command.
+     *
+     * @return a map of property name to value. Missing properties map to an empty string.
+     */
+    public Map<String, String> probe(ITestDevice device) throws DeviceNotAvailableException {
+        String output = device.executeShellCommand("getprop");
+        Map<String, String> allProps = new HashMap<String, String>();
+        if (output != null) {
+            Matcher m = PROP_PATTERN.matcher(output.replace("\r", ""));
+            while (m.find()) {
+                allProps.put(m.group(1), m.group(2));
+            }
+        }
+        Map<String, String> probe = new LinkedHashMap<String, String>();
+        for (String prop : PROBE_PROPERTIES) {
+            String value = allProps.get(prop);
+            probe.put(prop, value == null ? "" : value);
+        }
+        return probe;
+    }
+
+    /**
+     * Get the cached metrics for the given device state.
+     *
+     * @param serial the device serial
+     * @param abi the ABI the info was collected for
+     * @param probe the result of {@link #probe(ITestDevice)}
+     * @return the cached run metrics, or <code>null</code> if there is no valid entry
+     */
+    public Map<String, String> get(String serial, String abi, Map<String, String> probe) {
+        if (probe.get(FINGERPRINT_PROPERTY).isEmpty()) {
+            return null;
+        }
+        File file = getEntryFile(serial, abi, probe.get(FINGERPRINT_PROPERTY));
+        if (!file.exists()) {
+            return null;
+        }
+        Properties entry = new Properties();
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            entry.load(in);
+        } catch (IOException e) {
+            CLog.w("Failed to read device info cache %s", file);
+            return null;
+        } finally {
+            StreamUtil.close(in);
+        }
+        Map<String, String> metrics = new HashMap<String, String>();
+        for (String name : entry.stringPropertyNames()) {
+            if (name.startsWith(METRIC_PREFIX)) {
+                metrics.put(name.substring(METRIC_PREFIX.length()), entry.getProperty(name));
+            }
+        }
+        for (Map.Entry<String, String> prop : probe.entrySet()) {
+            if (!prop.getValue().equals(entry.getProperty(PROBE_PREFIX + prop.getKey()))) {
+                CLog.d("Device info cache for %s is stale: %s changed", serial, prop.getKey());
+                return null;
+            }
+        }
+        return metrics.isEmpty() ? null : metrics;
+    }
+
+    /**
+     * Store the metrics collected for the given device state.
+     */
+    public void put(String serial, String abi, Map<String, String> probe,
+            Map<String, String> metrics) {
+        if (probe.get(FINGERPRINT_PROPERTY).isEmpty() || metrics.isEmpty()) {
+            return;
+        }
+        Properties entry = new Properties();
+        for (Map.Entry<String, String> prop : probe.entrySet()) {
+            entry.setProperty(PROBE_PREFIX + prop.getKey(), prop.getValue());
+        }
+        for (Map.Entry<String, String> metric : metrics.entrySet()) {
+            entry.setProperty(METRIC_PREFIX + metric.getKey(), metric.getValue());
+        }
+        mCacheDir.mkdirs();
+        File file = getEntryFile(serial, abi, probe.get(FINGERPRINT_PROPERTY));
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            entry.store(out, "CTS device info cache");
+        } catch (IOException e) {
+            CLog.w("Failed to write device info cache %s", file);
+        } finally {
+            StreamUtil.close(out);
+        }
+    }
+
+    /**
+     * Replay cached metrics to the listener as if the device info collector had been run.
+     */
+    public static void replay(String abi, Map<String, String> metrics,
+            ITestInvocationListener listener) {
+        listener.testRunStarted(AbiUtils.createId(abi, DeviceInfoCollector.APP_PACKAGE_NAME), 0);
+        listener.testRunEnded(0, Collections.unmodifiableMap(metrics));
+    }
+
+    private File getEntryFile(String serial, String abi, String fingerprint) {
+        String name = String.format("%s_%s_%08x.properties", serial, abi,
+                fingerprint.hashCode());
+        return new File(mCacheDir, name.replaceAll("[^\\w.-]", "_"));
+    }
+
+    /**
+     * A {@link ResultForwarder} that captures the run metrics reported by the device info
+     * collector, unless the run failed.
+     */
+    static class MetricsRecorder extends ResultForwarder {
+        private Map<String, String> mMetrics = null;
+        private boolean mFailed = false;
+
+        MetricsRecorder(ITestInvocationListener listener) {
+            super(listener);
+        }
+
+        @Override
+        public void testRunFailed(String errorMessage) {
+            mFailed = true;
+            super.testRunFailed(errorMessage);
+        }
+
+        @Override
+        public void testRunEnded(long elapsedTime, Map<String, String> runMetrics) {
+            mMetrics = new HashMap<String, String>(runMetrics);
+            super.testRunEnded(elapsedTime, runMetrics);
+        }
+
+        /**
+         * @return the captured metrics, or <code>null</code> if collection failed
+         */
+        Map<String, String> getMetrics() {
+            return mFailed ? null : mMetrics;
+        }
+    }
+}
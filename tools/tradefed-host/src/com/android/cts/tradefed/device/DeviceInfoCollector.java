@@ -15,6 +15,8 @@
  */
 package com.android.cts.tradefed.device;
 
+import com.android.cts.tradefed.util.InvocationTracer;
+import com.android.cts.tradefed.util.InvocationTracer.Span;
 import com.android.cts.util.AbiUtils;
 import com.android.ddmlib.Log;
 import com.android.tradefed.device.DeviceNotAvailableException;
@@ -24,6 +26,7 @@ import com.android.tradefed.testtype.InstrumentationTest;
 
 import java.io.File;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -56,6 +59,41 @@ public class DeviceInfoCollector {
      */
     public static void collectDeviceInfo(ITestDevice device, String abi, File testApkDir,
             ITestInvocationListener listener) throws DeviceNotAvailableException {
+        collectDeviceInfo(device, abi, testApkDir, listener, null);
+    }
+
+    /**
+     * Same as {@link #collectDeviceInfo(ITestDevice, String, File, ITestInvocationListener)},
+     * but replays the metrics from the given {@link DeviceInfoCache} when the device state has
+     * not changed since they were recorded, and records them otherwise.
+     *
+     * @param cache the {@link DeviceInfoCache} to use, or <code>null</code> to always collect
+     */
+    public static void collectDeviceInfo(ITestDevice device, String abi, File testApkDir,
+            ITestInvocationListener listener, DeviceInfoCache cache)
+            throws DeviceNotAvailableException {
+        if (cache == null) {
+            runCollector(device, abi, testApkDir, listener);
+            return;
+        }
+        String serial = device.getSerialNumber();
+        Map<String, String> probe = cache.probe(device);
+        Map<String, String> metrics = cache.get(serial, abi, probe);
+        if (metrics != null) {
+            Log.i(LOG_TAG, String.format("Reusing cached device info for %s", serial));
+            DeviceInfoCache.replay(abi, metrics, listener);
+            return;
+        }
+        DeviceInfoCache.MetricsRecorder recorder = new DeviceInfoCache.MetricsRecorder(listener);
+        runCollector(device, abi, testApkDir, recorder);
+        metrics = recorder.getMetrics();
+        if (metrics != null) {
+            cache.put(serial, abi, probe, metrics);
+        }
+    }
+
+    private static void runCollector(ITestDevice device, String abi, File testApkDir,
+            ITestInvocationListener listener) throws DeviceNotAvailableException {
         File apkFile = new File(testApkDir, String.format("%s.apk", APK_NAME));
         if (!apkFile.exists()) {
             Log.e(LOG_TAG, String.format("Could not find %s", apkFile.getAbsolutePath()));
@@ -70,6 +108,11 @@ public class DeviceInfoCollector {
         instrTest.setPackageName(APP_PACKAGE_NAME);
         instrTest.setRunName(AbiUtils.createId(abi, APP_PACKAGE_NAME));
         instrTest.setRunnerName(INSTRUMENTATION_NAME);
-        instrTest.run(listener);
+        Span span = InvocationTracer.begin(InvocationTracer.DEVICE_INFO, APK_NAME);
+        try {
+            instrTest.run(listener);
+        } finally {
+            span.end();
+        }
     }
 }
@@ -19,6 +19,8 @@ package com.android.cts.tradefed.result;
 import com.android.cts.tradefed.build.CtsBuildHelper;
 import com.android.cts.tradefed.device.DeviceInfoCollector;
 import com.android.cts.tradefed.testtype.CtsTest;
+import com.android.cts.tradefed.util.InvocationTracer;
+import com.android.cts.tradefed.util.InvocationTracer.Span;
 import com.android.ddmlib.Log;
 import com.android.ddmlib.Log.LogLevel;
 import com.android.ddmlib.testrunner.TestIdentifier;
@@ -97,6 +99,15 @@ public class CtsXmlResultReporter
     @Option(name = "include-test-log-tags", description = "Include test log tags in XML report.")
     private boolean mIncludeTestLogTags = false;
 
+    @Option(name = "trace-invocation", description = "Record where the invocation time is " +
+            "spent, and write a Chrome trace and a timing summary to the result directory.")
+    private boolean mTraceInvocation = false;
+
+    @Option(name = "dedup-logs", description = "Store test logs in a content addressed " +
+            "store under the results directory, so identical log content is only stored once. " +
+            "Use 'restore logs' in the console to get the logs of a session back.")
+    private boolean mDedupLogs = false;
+
     protected IBuildInfo mBuildInfo;
     private String mStartTime;
     private String mDeviceSerial;
@@ -108,6 +119,8 @@ public class CtsXmlResultReporter
     private File mLogDir;
     private String mSuiteName;
     private String mReferenceUrl;
+    private Span mInvocationSpan = null;
+    private LogStore mLogStore = null;
 
     public void setReportDir(File reportDir) {
         mReportDir = reportDir;
@@ -131,6 +144,10 @@ public class CtsXmlResultReporter
         CtsBuildHelper ctsBuildHelper = getBuildHelper(ctsBuild);
         mDeviceSerial = buildInfo.getDeviceSerial() == null ? "unknown_device" :
             buildInfo.getDeviceSerial();
+        if (mTraceInvocation) {
+            InvocationTracer.enable(mDeviceSerial);
+            mInvocationSpan = InvocationTracer.begin(InvocationTracer.INVOCATION, "invocation");
+        }
         if (mContinueSessionId != null) {
             CLog.d("Continuing session %d", mContinueSessionId);
             // reuse existing directory
@@ -160,6 +177,19 @@ public class CtsXmlResultReporter
         File rootLogDir = getBuildHelper(ctsBuild).getLogsDir();
         mLogDir = new File(rootLogDir, mReportDir.getName());
         mLogDir.mkdirs();
+        if (mDedupLogs) {
+            mLogStore = new LogStore(new File(ctsBuildHelper.getResultsDir(), LogStore.DIR_NAME));
+            try {
+                // drop the chunks of sessions that have been deleted
+                long freed = mLogStore.sweep(rootLogDir);
+                if (freed > 0) {
+                    logResult("Log store: removed %d bytes of unreferenced chunks", freed);
+                }
+            } catch (IOException e) {
+                CLog.e("Failed to clean up the log store");
+                CLog.e(e);
+            }
+        }
     }
 
     /**
@@ -215,12 +245,36 @@ public class CtsXmlResultReporter
      */
     @Override
     public void testLog(String dataName, LogDataType dataType, InputStreamSource dataStream) {
+        Span span = InvocationTracer.begin(InvocationTracer.ARTIFACTS, dataName);
         try {
-            File logFile = getLogFileSaver().saveAndZipLogData(dataName, dataType,
-                    dataStream.createInputStream());
-            logResult(String.format("Saved log %s", logFile.getName()));
+            if (mLogStore != null) {
+                saveToLogStore(dataName, dataType, dataStream);
+            } else {
+                File logFile = getLogFileSaver().saveAndZipLogData(dataName, dataType,
+                        dataStream.createInputStream());
+                logResult(String.format("Saved log %s", logFile.getName()));
+            }
         } catch (IOException e) {
             CLog.e("Failed to write log for %s", dataName);
+        } finally {
+            span.end();
+        }
+    }
+
+    private void saveToLogStore(String dataName, LogDataType dataType,
+            InputStreamSource dataStream) throws IOException {
+        InputStream in = dataStream.createInputStream();
+        try {
+            File manifest = mLogStore.save(mLogDir, dataName, dataType, in);
+            logResult(String.format("Saved log %s", manifest.getName()));
+            if (mIncludeTestLogTags && mCurrentTest != null) {
+                TestLog log = TestLog.fromDataName(dataName, manifest.toURI().toString());
+                if (log != null) {
+                    mCurrentTest.addTestLog(log);
+                }
+            }
+        } finally {
+            StreamUtil.close(in);
         }
     }
 
@@ -315,10 +369,15 @@ public class CtsXmlResultReporter
      */
     @Override
     public void testRunEnded(long elapsedTime, Map<String, String> runMetrics) {
-        if (mIsDeviceInfoRun) {
-            mResults.populateDeviceInfoMetrics(runMetrics);
-        } else {
-            mCurrentPkgResult.populateMetrics(runMetrics);
+        Span span = InvocationTracer.begin(InvocationTracer.RESULTS, "populateMetrics");
+        try {
+            if (mIsDeviceInfoRun) {
+                mResults.populateDeviceInfoMetrics(runMetrics);
+            } else {
+                mCurrentPkgResult.populateMetrics(runMetrics);
+            }
+        } finally {
+            span.end();
         }
     }
 
@@ -330,19 +389,60 @@ public class CtsXmlResultReporter
         if (mReportDir == null || mStartTime == null) {
             // invocationStarted must have failed, abort
             CLog.w("Unable to create XML report");
+            if (mInvocationSpan != null) {
+                InvocationTracer.disable();
+            }
             return;
         }
 
         File reportFile = getResultFile(mReportDir);
-        createXmlResult(reportFile, mStartTime, elapsedTime);
-        copyFormattingFiles(mReportDir);
-        zipResults(mReportDir);
+        Span span = InvocationTracer.begin(InvocationTracer.RESULTS, TEST_RESULT_FILE_NAME);
+        try {
+            createXmlResult(reportFile, mStartTime, elapsedTime);
+            copyFormattingFiles(mReportDir);
+        } finally {
+            span.end();
+        }
+        span = InvocationTracer.begin(InvocationTracer.ZIP, mReportDir.getName());
+        try {
+            zipResults(mReportDir);
+        } finally {
+            span.end();
+        }
+
+        if (mLogStore != null) {
+            logResult("Log store: %d bytes of logs, %d bytes of new chunks written",
+                    mLogStore.getBytesLogged(), mLogStore.getBytesWritten());
+        }
 
         try {
             mReporter.reportResult(reportFile, mReferenceUrl);
         } catch (IOException e) {
             CLog.e(e);
         }
+        exportTrace();
+    }
+
+    /**
+     * Write the invocation trace, if enabled, to the result directory and stop tracing.
+     */
+    private void exportTrace() {
+        if (mInvocationSpan == null) {
+            return;
+        }
+        mInvocationSpan.end();
+        mInvocationSpan = null;
+        InvocationTracer tracer = InvocationTracer.disable();
+        if (tracer == null) {
+            return;
+        }
+        try {
+            tracer.export(mReportDir);
+            logResult("Saved invocation trace to %s", mReportDir.getName());
+        } catch (IOException e) {
+            CLog.e("Failed to write invocation trace");
+            CLog.e(e);
+        }
     }
 
     private void logResult(String format, Object... args) {
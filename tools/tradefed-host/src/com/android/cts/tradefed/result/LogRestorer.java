@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.tradefed.config.ConfigurationException;
+import com.android.tradefed.config.Option;
+import com.android.tradefed.config.Option.Importance;
+import com.android.tradefed.log.LogUtil.CLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Restores the logs of a session that were saved with --dedup-logs, so they can be viewed.
+ * <p/>
+ * Each log is written next to the manifest its TestLog entry points at, under the same name
+ * without the manifest suffix.
+ */
+public class LogRestorer {
+
+    @Option(name = "session", shortName = 's', description = "the session id to restore the " +
+            "logs of.", importance = Importance.IF_UNSET)
+    private Integer mSessionId = null;
+
+    /**
+     * Restore the logs of the session.
+     *
+     * @param repo the {@link ITestResultRepo} holding the sessions
+     * @param resultsDir the results directory, which holds the log store
+     * @param logsDir the directory holding the log directories of all sessions
+     * @param output the {@link PrintWriter} to print the outcome to
+     * @throws ConfigurationException if the session does not exist
+     */
+    public void restore(ITestResultRepo repo, File resultsDir, File logsDir, PrintWriter output)
+            throws ConfigurationException {
+        if (mSessionId == null) {
+            throw new ConfigurationException("Missing --session");
+        }
+        if (mSessionId < 0 || mSessionId >= repo.getSessionCount()) {
+            throw new ConfigurationException(String.format("Could not find session with id %d",
+                    mSessionId));
+        }
+        File logDir = new File(logsDir, repo.getReportDir(mSessionId).getName());
+        LogStore store = new LogStore(new File(resultsDir, LogStore.DIR_NAME));
+        try {
+            int restored = store.restoreAll(logDir);
+            output.println(String.format("Restored %d logs to %s", restored,
+                    logDir.getAbsolutePath()));
+        } catch (IOException e) {
+            CLog.e("Failed to restore the logs of session %d", mSessionId);
+            CLog.e(e);
+        }
+        output.flush();
+    }
+}
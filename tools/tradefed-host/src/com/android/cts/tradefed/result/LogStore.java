@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.tradefed.result.LogDataType;
+import com.android.tradefed.util.FileUtil;
+import com.android.tradefed.util.StreamUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A content addressed store for test logs.
+ * <p/>
+ * Logs are split into content defined chunks while they are streamed in, using a gear rolling
+ * hash, so identical logs as well as logs that share long runs of content (such as logcat dumps
+ * of consecutive failures) share their chunks. Each distinct chunk is stored once under its
+ * SHA-1. Chunks that deflate well are stored deflated, others such as screenshots are stored as
+ * they are, and are copied back with {@link FileChannel#transferTo} on restore. For every saved
+ * log a small manifest listing its chunks is written to the session log directory.
+ * <p/>
+ * Chunks are not reference counted. Instead {@link #sweep} deletes the chunks that no manifest
+ * refers to any more, e.g. after sessions were deleted.
+ */
+class LogStore {
+
+    static final String DIR_NAME = "logstore";
+    static final String MANIFEST_SUFFIX = ".chunks";
+    private static final String MANIFEST_VERSION = "1";
+
+    /** The first byte of a chunk file, telling how its content is stored. */
+    private static final byte CHUNK_RAW = 'R';
+    private static final byte CHUNK_DEFLATED = 'D';
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Chunks that were stored or reused more recently are never swept, since a concurrent
+     * invocation may be about to write a manifest that refers to them.
+     */
+    static final long SWEEP_GRACE_PERIOD_MS = 60 * 60 * 1000;
+
+    private static final int MIN_CHUNK_SIZE = 2 * 1024;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+    // cut a chunk when the low 13 bits of the rolling hash are zero, i.e. every 8KB on average.
+    // Chunks much larger than that rarely survive the edits between two logcat dumps or
+    // bugreports, which leaves little to deduplicate.
+    private static final long BOUNDARY_MASK = (1L << 13) - 1;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final long[] GEAR = new long[256];
+    static {
+        // a fixed seed keeps chunk boundaries stable across runs, which deduplication relies on
+        Random random = new Random(0x6c6f6773746f7265L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final File mChunkDir;
+    private final AtomicLong mBytesLogged = new AtomicLong();
+    private final AtomicLong mBytesWritten = new AtomicLong();
+
+    /**
+     * @param storeDir the root directory of the store. Created if necessary.
+     */
+    LogStore(File storeDir) {
+        mChunkDir = new File(storeDir, "chunks");
+    }
+
+    /**
+     * Save a log into the store.
+     *
+     * @param logDir the directory to write the manifest to
+     * @param dataName the name of the log
+     * @param dataType the {@link LogDataType} of the log
+     * @param in the log content. Not closed by this method.
+     * @return the manifest {@link File} that references the stored content
+     * @throws IOException
+     */
+    File save(File logDir, String dataName, LogDataType dataType, InputStream in)
+            throws IOException {
+        MessageDigest digest = createDigest();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        List<String> chunks = new ArrayList<String>();
+        long totalSize = 0;
+        try {
+            ReadableByteChannel channel = Channels.newChannel(in);
+            ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            byte[] read = readBuffer.array();
+            byte[] chunk = new byte[MAX_CHUNK_SIZE];
+            byte[] deflated = new byte[MAX_CHUNK_SIZE + MAX_CHUNK_SIZE / 100 + 64];
+            int chunkSize = 0;
+            long hash = 0;
+            while (channel.read(readBuffer) >= 0) {
+                int count = readBuffer.position();
+                for (int i = 0; i < count; i++) {
+                    byte b = read[i];
+                    chunk[chunkSize++] = b;
+                    hash = (hash << 1) + GEAR[b & 0xff];
+                    if ((chunkSize >= MIN_CHUNK_SIZE && (hash & BOUNDARY_MASK) == 0)
+                            || chunkSize == MAX_CHUNK_SIZE) {
+                        chunks.add(storeChunk(chunk, chunkSize, digest, deflater, deflated));
+                        totalSize += chunkSize;
+                        chunkSize = 0;
+                        hash = 0;
+                    }
+                }
+                readBuffer.clear();
+            }
+            if (chunkSize > 0 || chunks.isEmpty()) {
+                chunks.add(storeChunk(chunk, chunkSize, digest, deflater, deflated));
+                totalSize += chunkSize;
+            }
+        } finally {
+            deflater.end();
+        }
+        mBytesLogged.addAndGet(totalSize);
+        return writeManifest(logDir, dataName, dataType, totalSize, chunks);
+    }
+
+    /**
+     * Open the content of a saved log.
+     *
+     * @param manifest the manifest {@link File} returned by
+     * {@link #save(File, String, LogDataType, InputStream)}
+     * @return an {@link InputStream} of the original log content
+     * @throws IOException if the manifest or any of its chunks cannot be read
+     */
+    InputStream open(File manifest) throws IOException {
+        List<InputStream> streams = new ArrayList<InputStream>();
+        try {
+            for (String hash : readManifest(manifest)) {
+                InputStream in = new BufferedInputStream(new FileInputStream(
+                        getExistingChunkFile(hash, manifest)));
+                streams.add(in);
+                int encoding = in.read();
+                if (encoding == CHUNK_DEFLATED) {
+                    streams.set(streams.size() - 1, new InflaterInputStream(in));
+                } else if (encoding != CHUNK_RAW) {
+                    throw new IOException(String.format("Invalid chunk %s", hash));
+                }
+            }
+        } catch (IOException e) {
+            for (InputStream stream : streams) {
+                StreamUtil.close(stream);
+            }
+            throw e;
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * Restore a saved log to a regular file.
+     *
+     * @param manifest the manifest {@link File} returned by
+     * {@link #save(File, String, LogDataType, InputStream)}
+     * @param destFile the {@link File} to write the original log content to
+     * @throws IOException if the manifest or any of its chunks cannot be read, or the log
+     * cannot be written
+     */
+    void restore(File manifest, File destFile) throws IOException {
+        List<String> chunks = readManifest(manifest);
+        FileOutputStream out = new FileOutputStream(destFile);
+        try {
+            FileChannel outChannel = out.getChannel();
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            for (String hash : chunks) {
+                FileInputStream in = new FileInputStream(getExistingChunkFile(hash, manifest));
+                try {
+                    FileChannel inChannel = in.getChannel();
+                    int encoding = in.read();
+                    if (encoding == CHUNK_RAW) {
+                        long position = 1;
+                        long size = inChannel.size();
+                        while (position < size) {
+                            position += inChannel.transferTo(position, size - position,
+                                    outChannel);
+                        }
+                    } else if (encoding == CHUNK_DEFLATED) {
+                        InputStream inflater = new InflaterInputStream(in);
+                        int count;
+                        while ((count = inflater.read(buffer)) != -1) {
+                            out.write(buffer, 0, count);
+                        }
+                    } else {
+                        throw new IOException(String.format("Invalid chunk %s", hash));
+                    }
+                } finally {
+                    StreamUtil.close(in);
+                }
+            }
+        } catch (IOException e) {
+            StreamUtil.close(out);
+            destFile.delete();
+            throw e;
+        }
+        StreamUtil.close(out);
+    }
+
+    /**
+     * Restore all logs of a session log directory next to their manifests, under the name of
+     * the manifest without its {@link #MANIFEST_SUFFIX}. Logs that were restored already are
+     * skipped.
+     *
+     * @return the number of logs restored
+     * @throws IOException if a log cannot be restored
+     */
+    int restoreAll(File logDir) throws IOException {
+        int restored = 0;
+        for (File manifest : listManifests(logDir)) {
+            String name = manifest.getName();
+            File destFile = new File(manifest.getParentFile(),
+                    name.substring(0, name.length() - MANIFEST_SUFFIX.length()));
+            if (!destFile.exists()) {
+                restore(manifest, destFile);
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Delete the chunks that are not referenced by any manifest below the given directory, as
+     * well as leftover temporary files. Chunks modified within {@link #SWEEP_GRACE_PERIOD_MS}
+     * are kept.
+     *
+     * @param logsRootDir the directory holding the log directories of all sessions
+     * @return the number of bytes freed
+     * @throws IOException if a manifest cannot be read. Nothing is deleted in that case.
+     */
+    long sweep(File logsRootDir) throws IOException {
+        Set<String> referenced = new HashSet<String>();
+        for (File manifest : listManifests(logsRootDir)) {
+            referenced.addAll(readManifest(manifest));
+        }
+        long cutoff = System.currentTimeMillis() - SWEEP_GRACE_PERIOD_MS;
+        long freed = 0;
+        File[] prefixDirs = mChunkDir.listFiles();
+        if (prefixDirs == null) {
+            return 0;
+        }
+        for (File prefixDir : prefixDirs) {
+            File[] chunkFiles = prefixDir.listFiles();
+            if (chunkFiles == null) {
+                continue;
+            }
+            for (File chunkFile : chunkFiles) {
+                String name = chunkFile.getName();
+                boolean unused = name.endsWith(TMP_SUFFIX) || !referenced.contains(name);
+                if (unused && chunkFile.lastModified() < cutoff) {
+                    long size = chunkFile.length();
+                    if (chunkFile.delete()) {
+                        freed += size;
+                    }
+                }
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * @return the total size of all logs saved with this instance
+     */
+    long getBytesLogged() {
+        return mBytesLogged.get();
+    }
+
+    /**
+     * @return the number of bytes this instance actually wrote for new chunks
+     */
+    long getBytesWritten() {
+        return mBytesWritten.get();
+    }
+
+    private String storeChunk(byte[] chunk, int size, MessageDigest digest, Deflater deflater,
+            byte[] deflated) throws IOException {
+        digest.reset();
+        digest.update(chunk, 0, size);
+        String hash = toHex(digest.digest());
+        File chunkFile = getChunkFile(hash);
+        // refresh the modification time of a reused chunk, so a concurrent sweep keeps it
+        if (chunkFile.setLastModified(System.currentTimeMillis())) {
+            return hash;
+        }
+        deflater.reset();
+        deflater.setInput(chunk, 0, size);
+        deflater.finish();
+        int deflatedSize = 0;
+        while (!deflater.finished()) {
+            deflatedSize += deflater.deflate(deflated, deflatedSize,
+                    deflated.length - deflatedSize);
+        }
+        // keep the chunk as it is unless deflating saves at least an eighth
+        ByteBuffer content;
+        ByteBuffer header = ByteBuffer.allocate(1);
+        if (deflatedSize < size - size / 8) {
+            header.put(CHUNK_DEFLATED);
+            content = ByteBuffer.wrap(deflated, 0, deflatedSize);
+        } else {
+            header.put(CHUNK_RAW);
+            content = ByteBuffer.wrap(chunk, 0, size);
+        }
+        header.flip();
+        long chunkFileSize = 1 + content.remaining();
+        File dir = chunkFile.getParentFile();
+        dir.mkdirs();
+        // write to a temp file first, so readers never see a partially written chunk
+        File tmpFile = FileUtil.createTempFile(hash, TMP_SUFFIX, dir);
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer[] buffers = new ByteBuffer[] {header, content};
+            while (header.hasRemaining() || content.hasRemaining()) {
+                channel.write(buffers);
+            }
+        } finally {
+            StreamUtil.close(out);
+        }
+        if (tmpFile.renameTo(chunkFile)) {
+            mBytesWritten.addAndGet(chunkFileSize);
+        } else {
+            // another invocation stored the same chunk concurrently
+            tmpFile.delete();
+        }
+        return hash;
+    }
+
+    private File writeManifest(File logDir, String dataName, LogDataType dataType,
+            long totalSize, List<String> chunks) throws IOException {
+        logDir.mkdirs();
+        File manifest = FileUtil.createTempFile(dataName + "_",
+                "." + dataType.getFileExt() + MANIFEST_SUFFIX, logDir);
+        BufferedWriter writer = new BufferedWriter(new FileWriter(manifest));
+        try {
+            writer.write(MANIFEST_VERSION + " " + totalSize);
+            writer.newLine();
+            for (String chunk : chunks) {
+                writer.write(chunk);
+                writer.newLine();
+            }
+        } finally {
+            StreamUtil.close(writer);
+        }
+        return manifest;
+    }
+
+    private File getChunkFile(String hash) {
+        return new File(new File(mChunkDir, hash.substring(0, 2)), hash);
+    }
+
+    private File getExistingChunkFile(String hash, File manifest) throws FileNotFoundException {
+        File chunkFile = getChunkFile(hash);
+        if (!chunkFile.exists()) {
+            throw new FileNotFoundException(String.format(
+                    "Missing chunk %s of log manifest %s", hash, manifest));
+        }
+        return chunkFile;
+    }
+
+    /**
+     * @return the chunk hashes listed in the given manifest, in order
+     */
+    private static List<String> readManifest(File manifest) throws IOException {
+        List<String> chunks = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(manifest));
+        try {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith(MANIFEST_VERSION + " ")) {
+                throw new IOException(String.format("Invalid log manifest %s", manifest));
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunks.add(line);
+            }
+        } finally {
+            StreamUtil.close(reader);
+        }
+        return chunks;
+    }
+
+    /**
+     * @return all manifests in the given directory and its sub directories
+     */
+    private static List<File> listManifests(File dir) {
+        List<File> manifests = new ArrayList<File>();
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory() || file.getName().endsWith(MANIFEST_SUFFIX);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    manifests.addAll(listManifests(file));
+                } else {
+                    manifests.add(file);
+                }
+            }
+        }
+        return manifests;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.tradefed.log.LogUtil.CLog;
+import com.android.tradefed.util.StreamUtil;
+import com.android.tradefed.util.xml.AbstractXmlParser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the {@link PerfSeries} of a stored session.
+ * <p/>
+ * The extracted series are cached in a small text file next to the result XML, so that each
+ * session's XML only has to be parsed once no matter how often the sessions are analyzed. The
+ * cache is invalidated when the size or modification time of the result XML changes.
+ */
+class PerfMetricStore {
+
+    static final String CACHE_FILE_NAME = "perf_metrics.cache";
+
+    private static final String CACHE_VERSION = "1";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String VALUE_SEPARATOR = " ";
+
+    /**
+     * The {@link PerfSeries} of one session.
+     */
+    static class SessionMetrics {
+        private final String mFingerprint;
+        private final List<PerfSeries> mSeries;
+
+        SessionMetrics(String fingerprint, List<PerfSeries> series) {
+            mFingerprint = fingerprint;
+            mSeries = series;
+        }
+
+        public String getFingerprint() {
+            return mFingerprint;
+        }
+
+        public List<PerfSeries> getSeries() {
+            return mSeries;
+        }
+    }
+
+    /**
+     * Load the performance metrics for the given result directory.
+     *
+     * @param resultDir the session's result directory
+     * @return the {@link SessionMetrics} or <code>null</code> if the result could not be read
+     */
+    public SessionMetrics load(File resultDir) {
+        File resultFile = new File(resultDir, CtsXmlResultReporter.TEST_RESULT_FILE_NAME);
+        File cacheFile = new File(resultDir, CACHE_FILE_NAME);
+        String stamp = getStamp(resultFile);
+        if (cacheFile.exists()) {
+            try {
+                SessionMetrics metrics = readCache(cacheFile, stamp);
+                if (metrics != null) {
+                    return metrics;
+                }
+            } catch (IOException e) {
+                CLog.w("Failed to read perf cache %s: %s", cacheFile, e.getMessage());
+            }
+        }
+        SessionMetrics metrics = parse(resultFile);
+        if (metrics != null) {
+            try {
+                writeCache(cacheFile, stamp, metrics);
+            } catch (IOException e) {
+                // not fatal, the result will just be parsed again next time
+                CLog.w("Failed to write perf cache %s: %s", cacheFile, e.getMessage());
+            }
+        }
+        return metrics;
+    }
+
+    private SessionMetrics parse(File resultFile) {
+        PerfResultParser parser = new PerfResultParser();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(resultFile));
+            parser.parse(reader);
+            return new SessionMetrics(parser.getFingerprint(), parser.getSeries());
+        } catch (IOException e) {
+            CLog.e("Could not read result file %s", resultFile);
+        } catch (ParseException e) {
+            CLog.e("Failed to parse result file %s", resultFile);
+        } finally {
+            StreamUtil.close(reader);
+        }
+        return null;
+    }
+
+    private static String getStamp(File resultFile) {
+        return String.format("%s %d %d", CACHE_VERSION, resultFile.length(),
+                resultFile.lastModified());
+    }
+
+    /**
+     * Read the cache file.
+     *
+     * @return the cached {@link SessionMetrics} or <code>null</code> if the cache is stale
+     */
+    private SessionMetrics readCache(File cacheFile, String stamp) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(cacheFile));
+        try {
+            if (!stamp.equals(reader.readLine())) {
+                return null;
+            }
+            String fingerprint = reader.readLine();
+            if (fingerprint == null) {
+                return null;
+            }
+            List<PerfSeries> series = new ArrayList<PerfSeries>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(FIELD_SEPARATOR, -1);
+                if (fields.length != 7) {
+                    return null;
+                }
+                String[] valueStrings = fields[6].split(VALUE_SEPARATOR);
+                double[] values = new double[valueStrings.length];
+                try {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = Double.parseDouble(valueStrings[i]);
+                    }
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                series.add(new PerfSeries(fields[0], fields[1], fields[2], fields[3], fields[4],
+                        fields[5], values));
+            }
+            return new SessionMetrics(fingerprint, series);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void writeCache(File cacheFile, String stamp, SessionMetrics metrics)
+            throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(cacheFile));
+        try {
+            writer.write(stamp);
+            writer.newLine();
+            writer.write(sanitize(metrics.getFingerprint()));
+            writer.newLine();
+            for (PerfSeries s : metrics.getSeries()) {
+                writer.write(sanitize(s.getAbi()));
+                writer.write(FIELD_SEPARATOR);
+                writer.write(sanitize(s.getTestName()));
+                writer.write(FIELD_SEPARATOR);
+                writer.write(sanitize(s.getSource()));
+                writer.write(FIELD_SEPARATOR);
+                writer.write(sanitize(s.getMessage()));
+                writer.write(FIELD_SEPARATOR);
+                writer.write(sanitize(s.getScoreType()));
+                writer.write(FIELD_SEPARATOR);
+                writer.write(sanitize(s.getUnit()));
+                writer.write(FIELD_SEPARATOR);
+                double[] values = s.getValues();
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        writer.write(VALUE_SEPARATOR);
+                    }
+                    writer.write(Double.toString(values[i]));
+                }
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Replace characters that would break the line based cache format.
+     */
+    private static String sanitize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
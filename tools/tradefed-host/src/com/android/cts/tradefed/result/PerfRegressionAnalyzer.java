@@ -0,0 +1,557 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.cts.tradefed.result.PerfMetricStore.SessionMetrics;
+import com.android.cts.util.ResultType;
+import com.android.json.stream.JsonWriter;
+import com.android.tradefed.config.ConfigurationException;
+import com.android.tradefed.config.Option;
+import com.android.tradefed.log.LogUtil.CLog;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detects performance regressions by comparing the ReportLog series of a session against a
+ * rolling baseline built from the preceding sessions in a {@link ITestResultRepo}.
+ * <p/>
+ * Series are matched by ABI, test, measurement and device, where the device is the
+ * brand/product/device part of the build fingerprint, so that successive builds of the same
+ * device are compared with each other. The values of a series are compared with a one-sided
+ * Mann-Whitney U test in the direction the score type considers worse. A series with a single
+ * value, such as a summary, cannot be significant in a rank test against a few baseline sessions,
+ * so its value is instead compared with a normal distribution fitted to the baseline values.
+ * <p/>
+ * Sessions are loaded one at a time, newest first, through {@link PerfMetricStore}, and only
+ * until the baseline is filled, so the cost does not grow with the size of the repository.
+ */
+public class PerfRegressionAnalyzer {
+
+    static final String JSON_REPORT_NAME = "perf_regressions.json";
+    static final String HTML_REPORT_NAME = "perf_regressions.html";
+
+    @Option(name = "session", shortName = 's',
+            description = "the session id to analyze. Defaults to the latest session.")
+    private Integer mSessionId = null;
+
+    @Option(name = "baseline-sessions",
+            description = "the number of earlier sessions that make up the baseline.")
+    private int mBaselineSessions = 5;
+
+    @Option(name = "max-lookback",
+            description = "the maximum number of earlier sessions to read to fill the baseline.")
+    private int mMaxLookback = 50;
+
+    @Option(name = "alpha", description = "the significance level of the regression test.")
+    private double mAlpha = 0.01;
+
+    @Option(name = "min-change",
+            description = "the minimum relative change of the median to report, e.g. 0.05.")
+    private double mMinChange = 0.05;
+
+    private final PerfMetricStore mStore = new PerfMetricStore();
+
+    /**
+     * The comparison of one series against its baseline.
+     */
+    public static class PerfComparison {
+        private final PerfSeries mSeries;
+        private final String mFingerprint;
+        private final int mBaselineSessions;
+        private final double mBaselineMedian;
+        private final double mMedian;
+        private final double mChange;
+        private final double mPValue;
+        private final boolean mRegression;
+
+        PerfComparison(PerfSeries series, String fingerprint, int baselineSessions,
+                double baselineMedian, double median, double change, double pValue,
+                boolean regression) {
+            mSeries = series;
+            mFingerprint = fingerprint;
+            mBaselineSessions = baselineSessions;
+            mBaselineMedian = baselineMedian;
+            mMedian = median;
+            mChange = change;
+            mPValue = pValue;
+            mRegression = regression;
+        }
+
+        public String getAbi() {
+            return mSeries.getAbi();
+        }
+
+        public String getTestName() {
+            return mSeries.getTestName();
+        }
+
+        public String getMessage() {
+            return mSeries.getMessage();
+        }
+
+        public String getUnit() {
+            return mSeries.getUnit();
+        }
+
+        public String getScoreType() {
+            return mSeries.getScoreType();
+        }
+
+        public boolean isSummary() {
+            return mSeries.isSummary();
+        }
+
+        public String getFingerprint() {
+            return mFingerprint;
+        }
+
+        public int getBaselineSessions() {
+            return mBaselineSessions;
+        }
+
+        public double getBaselineMedian() {
+            return mBaselineMedian;
+        }
+
+        public double getMedian() {
+            return mMedian;
+        }
+
+        /**
+         * @return the relative change of the median against the baseline median
+         */
+        public double getChange() {
+            return mChange;
+        }
+
+        public double getPValue() {
+            return mPValue;
+        }
+
+        public boolean isRegression() {
+            return mRegression;
+        }
+    }
+
+    /**
+     * Create an empty {@link PerfRegressionAnalyzer}.
+     * <p/>
+     * {@link Option} fields may be populated via
+     * {@link com.android.tradefed.config.ArgsOptionParser}
+     */
+    public PerfRegressionAnalyzer() {
+    }
+
+    /**
+     * Create a {@link PerfRegressionAnalyzer} using the specified option values.
+     */
+    public PerfRegressionAnalyzer(int baselineSessions, double alpha, double minChange) {
+        mBaselineSessions = baselineSessions;
+        mAlpha = alpha;
+        mMinChange = minChange;
+    }
+
+    /**
+     * Analyze a session and write the JSON and HTML reports into its result directory.
+     *
+     * @param repo the {@link ITestResultRepo} holding the sessions
+     * @param output the {@link PrintWriter} to display the regressions on
+     * @throws ConfigurationException if the session to analyze does not exist
+     */
+    public void analyzeAndReport(ITestResultRepo repo, PrintWriter output)
+            throws ConfigurationException {
+        int sessionId = getSessionId(repo);
+        List<PerfComparison> comparisons = analyze(repo, sessionId);
+        int regressions = 0;
+        for (PerfComparison c : comparisons) {
+            if (c.isRegression()) {
+                regressions++;
+                output.println(String.format(
+                        "REGRESSION %s %s '%s': %s -> %s %s (%+.1f%%, p=%.2g)", c.getAbi(),
+                        c.getTestName(), c.getMessage(), c.getBaselineMedian(), c.getMedian(),
+                        c.getUnit(), c.getChange() * 100, c.getPValue()));
+            }
+        }
+        output.println(String.format("Session %d: compared %d series, found %d regressions",
+                sessionId, comparisons.size(), regressions));
+        File reportDir = repo.getReportDir(sessionId);
+        try {
+            writeJsonReport(new File(reportDir, JSON_REPORT_NAME), sessionId, comparisons);
+            writeHtmlReport(new File(reportDir, HTML_REPORT_NAME), sessionId, comparisons);
+            output.println(String.format("Reports written to %s", reportDir.getAbsolutePath()));
+        } catch (IOException e) {
+            CLog.e("Failed to write perf regression report");
+            CLog.e(e);
+        }
+        output.flush();
+    }
+
+    private int getSessionId(ITestResultRepo repo) throws ConfigurationException {
+        int count = repo.getSessionCount();
+        if (count == 0) {
+            throw new ConfigurationException("No sessions found");
+        }
+        if (mSessionId == null) {
+            return count - 1;
+        }
+        if (mSessionId < 0 || mSessionId >= count) {
+            throw new ConfigurationException(String.format("Could not find session with id %d",
+                    mSessionId));
+        }
+        return mSessionId;
+    }
+
+    /**
+     * Compare every series of the given session against its baseline.
+     *
+     * @param repo the {@link ITestResultRepo} holding the sessions
+     * @param sessionId the session to analyze
+     * @return the {@link PerfComparison}s of all series that have a baseline
+     */
+    public List<PerfComparison> analyze(ITestResultRepo repo, int sessionId) {
+        List<PerfComparison> comparisons = new ArrayList<PerfComparison>();
+        SessionMetrics current = mStore.load(repo.getReportDir(sessionId));
+        if (current == null) {
+            return comparisons;
+        }
+        String device = getDevice(current.getFingerprint());
+        Map<String, PerfSeries> currentSeries = new LinkedHashMap<String, PerfSeries>();
+        for (PerfSeries s : current.getSeries()) {
+            currentSeries.put(s.getKey(), merge(currentSeries.get(s.getKey()), s));
+        }
+
+        // baseline values per series key, and the number of sessions that contributed to them
+        Map<String, List<double[]>> baseline = new HashMap<String, List<double[]>>();
+        int filled = 0;
+        int oldest = Math.max(0, sessionId - mMaxLookback);
+        for (int id = sessionId - 1; id >= oldest && filled < currentSeries.size(); id--) {
+            SessionMetrics previous = mStore.load(repo.getReportDir(id));
+            if (previous == null || !device.equals(getDevice(previous.getFingerprint()))) {
+                continue;
+            }
+            // a series may be reported more than once per session; count each session once
+            Map<String, double[]> sessionValues = new HashMap<String, double[]>();
+            for (PerfSeries s : previous.getSeries()) {
+                if (currentSeries.containsKey(s.getKey())) {
+                    sessionValues.put(s.getKey(), concat(sessionValues.get(s.getKey()),
+                            s.getValues()));
+                }
+            }
+            for (Map.Entry<String, double[]> entry : sessionValues.entrySet()) {
+                List<double[]> values = baseline.get(entry.getKey());
+                if (values == null) {
+                    values = new ArrayList<double[]>();
+                    baseline.put(entry.getKey(), values);
+                }
+                if (values.size() < mBaselineSessions) {
+                    values.add(entry.getValue());
+                    if (values.size() == mBaselineSessions) {
+                        filled++;
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, PerfSeries> entry : currentSeries.entrySet()) {
+            List<double[]> values = baseline.get(entry.getKey());
+            if (values != null) {
+                comparisons.add(compare(entry.getValue(), current.getFingerprint(), values));
+            }
+        }
+        return comparisons;
+    }
+
+    private PerfComparison compare(PerfSeries series, String fingerprint,
+            List<double[]> baselineValues) {
+        double[] baseline = new double[0];
+        for (double[] values : baselineValues) {
+            baseline = concat(baseline, values);
+        }
+        double[] current = series.getValues();
+        double baselineMedian = median(baseline);
+        double median = median(current);
+        double change = baselineMedian == 0 ? 0 : (median - baselineMedian)
+                / Math.abs(baselineMedian);
+
+        ResultType type = getResultType(series.getScoreType());
+        double pValue = 1.0;
+        boolean regression = false;
+        if (type == ResultType.HIGHER_BETTER) {
+            pValue = pValue(current, baseline, true);
+            regression = pValue < mAlpha && -change >= mMinChange;
+        } else if (type == ResultType.LOWER_BETTER) {
+            pValue = pValue(current, baseline, false);
+            regression = pValue < mAlpha && change >= mMinChange;
+        }
+        return new PerfComparison(series, fingerprint, baselineValues.size(), baselineMedian,
+                median, change, pValue, regression);
+    }
+
+    private static ResultType getResultType(String scoreType) {
+        for (ResultType type : ResultType.values()) {
+            if (type.getXmlString().equals(scoreType)) {
+                return type;
+            }
+        }
+        return ResultType.NEUTRAL;
+    }
+
+    /**
+     * Return the brand/product/device part of a build fingerprint.
+     */
+    static String getDevice(String fingerprint) {
+        int index = fingerprint.indexOf(':');
+        return index < 0 ? fingerprint : fingerprint.substring(0, index);
+    }
+
+    private static PerfSeries merge(PerfSeries existing, PerfSeries series) {
+        if (existing == null) {
+            return series;
+        }
+        return new PerfSeries(series.getAbi(), series.getTestName(), series.getSource(),
+                series.getMessage(), series.getScoreType(), series.getUnit(),
+                concat(existing.getValues(), series.getValues()));
+    }
+
+    private static double[] concat(double[] first, double[] second) {
+        if (first == null) {
+            return second;
+        }
+        double[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    static double median(double[] values) {
+        double[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        if (sorted.length % 2 == 1) {
+            return sorted[mid];
+        }
+        return (sorted[mid - 1] + sorted[mid]) / 2.0;
+    }
+
+    /**
+     * One-sided test of whether a sample tends to be smaller or larger than a reference sample.
+     * <p/>
+     * With a single value, the smallest p-value the Mann-Whitney U test can give is
+     * 1 / (n2 + 1), e.g. 0.17 against five baseline sessions, so that value is tested with
+     * {@link #zScorePValue} instead.
+     */
+    static double pValue(double[] sample, double[] reference, boolean less) {
+        if (sample.length == 1) {
+            return zScorePValue(sample[0], reference, less);
+        }
+        return mannWhitneyPValue(sample, reference, less);
+    }
+
+    /**
+     * One-sided test of a single value against a reference sample, assuming the reference is
+     * normally distributed. The standard deviation of the reference is widened by the
+     * uncertainty of its mean, as for a prediction interval of one new value.
+     *
+     * @param value the value under test
+     * @param reference the reference sample
+     * @param less <code>true</code> to test whether <var>value</var> is smaller than the
+     *            <var>reference</var>, <code>false</code> to test whether it is larger
+     * @return the p-value, or 1 if the reference has fewer than two values
+     */
+    static double zScorePValue(double value, double[] reference, boolean less) {
+        int n = reference.length;
+        if (n < 2) {
+            return 1.0;
+        }
+        double mean = 0;
+        for (double v : reference) {
+            mean += v;
+        }
+        mean /= n;
+        double squares = 0;
+        for (double v : reference) {
+            squares += (v - mean) * (v - mean);
+        }
+        double sigma = Math.sqrt(squares / (n - 1) * (1 + 1.0 / n));
+        if (sigma == 0) {
+            // a constant reference, any change in the tested direction is significant
+            boolean worse = less ? value < mean : value > mean;
+            return worse ? 0.0 : 1.0;
+        }
+        double z = (value - mean) / sigma;
+        return less ? normalCdf(z) : 1.0 - normalCdf(z);
+    }
+
+    /**
+     * One-sided Mann-Whitney U test, using the normal approximation with tie and continuity
+     * correction.
+     *
+     * @param sample the sample under test
+     * @param reference the reference sample
+     * @param less <code>true</code> to test whether <var>sample</var> tends to be smaller than
+     *            <var>reference</var>, <code>false</code> to test whether it tends to be larger
+     * @return the p-value
+     */
+    static double mannWhitneyPValue(double[] sample, double[] reference, boolean less) {
+        int n1 = sample.length;
+        int n2 = reference.length;
+        int n = n1 + n2;
+        if (n1 == 0 || n2 == 0) {
+            return 1.0;
+        }
+        // sort all values, remembering which sample they came from
+        double[][] all = new double[n][];
+        for (int i = 0; i < n1; i++) {
+            all[i] = new double[] { sample[i], 1 };
+        }
+        for (int i = 0; i < n2; i++) {
+            all[n1 + i] = new double[] { reference[i], 0 };
+        }
+        Arrays.sort(all, new Comparator<double[]>() {
+            @Override
+            public int compare(double[] lhs, double[] rhs) {
+                return Double.compare(lhs[0], rhs[0]);
+            }
+        });
+        double rankSum = 0;
+        double tieCorrection = 0;
+        int i = 0;
+        while (i < n) {
+            int j = i;
+            while (j + 1 < n && all[j + 1][0] == all[i][0]) {
+                j++;
+            }
+            // average of the 1-based ranks i+1..j+1
+            double rank = (i + j + 2) / 2.0;
+            int ties = j - i + 1;
+            tieCorrection += (double) ties * ties * ties - ties;
+            for (int k = i; k <= j; k++) {
+                if (all[k][1] == 1) {
+                    rankSum += rank;
+                }
+            }
+            i = j + 1;
+        }
+        double u = rankSum - n1 * (n1 + 1) / 2.0;
+        double mean = n1 * (double) n2 / 2.0;
+        double variance = n1 * (double) n2 / 12.0 * ((n + 1) - tieCorrection / (n * (n - 1.0)));
+        if (variance <= 0) {
+            return 1.0;
+        }
+        double sigma = Math.sqrt(variance);
+        if (less) {
+            return normalCdf((u - mean + 0.5) / sigma);
+        }
+        return 1.0 - normalCdf((u - mean - 0.5) / sigma);
+    }
+
+    /**
+     * Standard normal cumulative distribution function.
+     */
+    static double normalCdf(double z) {
+        return 0.5 * erfc(-z / Math.sqrt(2.0));
+    }
+
+    /**
+     * Complementary error function, with a fractional error below 1.2e-7.
+     */
+    private static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1.0 / (1.0 + 0.5 * z);
+        double ans = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196
+                + t * (0.09678418 + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398
+                + t * (1.48851587 + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? ans : 2.0 - ans;
+    }
+
+    private void writeJsonReport(File file, int sessionId, List<PerfComparison> comparisons)
+            throws IOException {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new FileWriter(file)));
+        try {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("session").value(sessionId);
+            writer.name("alpha").value(mAlpha);
+            writer.name("minChange").value(mMinChange);
+            writer.name("comparisons").beginArray();
+            for (PerfComparison c : comparisons) {
+                writer.beginObject();
+                writer.name("abi").value(c.getAbi());
+                writer.name("test").value(c.getTestName());
+                writer.name("series").value(c.isSummary() ? "summary" : "detail");
+                writer.name("message").value(c.getMessage());
+                writer.name("scoreType").value(c.getScoreType());
+                writer.name("unit").value(c.getUnit());
+                writer.name("fingerprint").value(c.getFingerprint());
+                writer.name("baselineSessions").value(c.getBaselineSessions());
+                writer.name("baselineMedian").value(c.getBaselineMedian());
+                writer.name("median").value(c.getMedian());
+                writer.name("change").value(c.getChange());
+                writer.name("pValue").value(c.getPValue());
+                writer.name("regression").value(c.isRegression());
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeHtmlReport(File file, int sessionId, List<PerfComparison> comparisons)
+            throws IOException {
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try {
+            writer.println("<html><head><title>CTS performance regressions</title>");
+            writer.println("<style>td,th{padding:2px 6px;border:1px solid #ccc}"
+                    + ".regression{background:#fa8072}</style></head><body>");
+            writer.println(String.format("<h2>Session %d</h2>", sessionId));
+            writer.println(String.format("<p>alpha=%s, min change=%s</p>", mAlpha, mMinChange));
+            writer.println("<table><tr><th>ABI</th><th>Test</th><th>Measurement</th>"
+                    + "<th>Baseline median</th><th>Median</th><th>Unit</th><th>Change</th>"
+                    + "<th>p-value</th><th>Baseline sessions</th></tr>");
+            for (PerfComparison c : comparisons) {
+                writer.println(String.format("<tr%s><td>%s</td><td>%s</td><td>%s</td><td>%s</td>"
+                        + "<td>%s</td><td>%s</td><td>%+.1f%%</td><td>%.2g</td><td>%d</td></tr>",
+                        c.isRegression() ? " class=\"regression\"" : "", escape(c.getAbi()),
+                        escape(c.getTestName()), escape(c.getMessage()), c.getBaselineMedian(),
+                        c.getMedian(), escape(c.getUnit()), c.getChange() * 100, c.getPValue(),
+                        c.getBaselineSessions()));
+            }
+            writer.println("</table></body></html>");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.tradefed.log.LogUtil.CLog;
+import com.android.tradefed.util.ArrayUtil;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.tests.getinfo.DeviceInfoConstants;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Streaming parser that extracts the performance series of a CTS result XML.
+ * <p/>
+ * Unlike {@link TestResults}, this does not build the result tree in memory, so it is cheap
+ * enough to run over many stored sessions.
+ */
+class PerfResultParser extends AbstractXmlPullParser {
+
+    private static final String SUITE_TAG = "TestSuite";
+    private static final String CASE_TAG = "TestCase";
+    private static final String TEST_TAG = "Test";
+    private static final String SUMMARY_TAG = "Summary";
+    private static final String VALUEARRAY_TAG = "ValueArray";
+    private static final String VALUE_TAG = "Value";
+    private static final String NAME_ATTR = "name";
+    private static final String ABI_ATTR = "abi";
+    private static final String MESSAGE_ATTR = "message";
+    private static final String SCORETYPE_ATTR = "scoreType";
+    private static final String UNIT_ATTR = "unit";
+    private static final String SOURCE_ATTR = "source";
+
+    private String mFingerprint = "unknown";
+    private List<PerfSeries> mSeries = new ArrayList<PerfSeries>();
+
+    /**
+     * @return the build fingerprint of the device the result was generated on
+     */
+    public String getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * @return the parsed {@link PerfSeries}, in document order
+     */
+    public List<PerfSeries> getSeries() {
+        return mSeries;
+    }
+
+    @Override
+    void parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+        Deque<String> suiteNames = new LinkedList<String>();
+        String abi = null;
+        String testName = null;
+        String source = null;
+        String message = null;
+        String scoreType = null;
+        String unit = null;
+        List<Double> values = null;
+
+        int eventType = parser.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                String tag = parser.getName();
+                if (tag.equals(DeviceInfoResult.BUILD_TAG)) {
+                    String fingerprint = getAttribute(parser,
+                            DeviceInfoConstants.BUILD_FINGERPRINT);
+                    if (fingerprint != null) {
+                        mFingerprint = fingerprint;
+                    }
+                } else if (tag.equals(TestPackageResult.TAG)) {
+                    abi = getAttribute(parser, ABI_ATTR);
+                } else if (tag.equals(SUITE_TAG) || tag.equals(CASE_TAG)) {
+                    suiteNames.addLast(getAttribute(parser, NAME_ATTR));
+                } else if (tag.equals(TEST_TAG)) {
+                    testName = String.format("%s#%s", ArrayUtil.join(".", suiteNames),
+                            getAttribute(parser, NAME_ATTR));
+                } else if (testName != null && tag.equals(SUMMARY_TAG)) {
+                    // the top-level Summary tag is ignored since it is outside of any Test
+                    String msg = getAttribute(parser, MESSAGE_ATTR);
+                    String type = getAttribute(parser, SCORETYPE_ATTR);
+                    String u = getAttribute(parser, UNIT_ATTR);
+                    double[] value = parseValue(parser.nextText());
+                    if (value != null) {
+                        mSeries.add(new PerfSeries(abi, testName, PerfSeries.SUMMARY_SOURCE, msg,
+                                type, u, value));
+                    }
+                } else if (testName != null && tag.equals(VALUEARRAY_TAG)) {
+                    source = getAttribute(parser, SOURCE_ATTR);
+                    message = getAttribute(parser, MESSAGE_ATTR);
+                    scoreType = getAttribute(parser, SCORETYPE_ATTR);
+                    unit = getAttribute(parser, UNIT_ATTR);
+                    values = new ArrayList<Double>();
+                } else if (values != null && tag.equals(VALUE_TAG)) {
+                    double[] value = parseValue(parser.nextText());
+                    if (value != null) {
+                        values.add(value[0]);
+                    }
+                }
+            } else if (eventType == XmlPullParser.END_TAG) {
+                String tag = parser.getName();
+                if (tag.equals(SUITE_TAG) || tag.equals(CASE_TAG)) {
+                    suiteNames.pollLast();
+                } else if (tag.equals(TEST_TAG)) {
+                    testName = null;
+                } else if (values != null && tag.equals(VALUEARRAY_TAG)) {
+                    if (!values.isEmpty()) {
+                        mSeries.add(new PerfSeries(abi, testName, source, message, scoreType,
+                                unit, toArray(values)));
+                    }
+                    values = null;
+                }
+            }
+            eventType = parser.next();
+        }
+    }
+
+    /**
+     * Parse a single numeric value.
+     *
+     * @return a one element array, or <code>null</code> if the value could not be parsed
+     */
+    private static double[] parseValue(String text) {
+        try {
+            double value = Double.parseDouble(text.trim());
+            if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                return new double[] { value };
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        CLog.w("Ignoring invalid perf value '%s'", text);
+        return null;
+    }
+
+    private static double[] toArray(List<Double> values) {
+        double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+/**
+ * A single performance measurement series of a test, as reported through ReportLog.
+ * <p/>
+ * A series is either the "Summary" value of a test or one "ValueArray" of its "Details".
+ */
+class PerfSeries {
+
+    /** Source used for the summary series of a test. */
+    static final String SUMMARY_SOURCE = "summary";
+
+    private final String mAbi;
+    private final String mTestName;
+    private final String mSource;
+    private final String mMessage;
+    private final String mScoreType;
+    private final String mUnit;
+    private final double[] mValues;
+
+    /**
+     * @param abi the ABI the test was run with
+     * @param testName the full test name, in class#method form
+     * @param source {@link #SUMMARY_SOURCE} or the ReportLog source of a detail array
+     * @param message the user visible description of the measurement
+     * @param scoreType the score type, as reported by {@link com.android.cts.util.ResultType}
+     * @param unit the unit of the values
+     * @param values the measured values
+     */
+    PerfSeries(String abi, String testName, String source, String message, String scoreType,
+            String unit, double[] values) {
+        mAbi = abi;
+        mTestName = testName;
+        mSource = source;
+        mMessage = message;
+        mScoreType = scoreType;
+        mUnit = unit;
+        mValues = values;
+    }
+
+    public String getAbi() {
+        return mAbi;
+    }
+
+    public String getTestName() {
+        return mTestName;
+    }
+
+    public String getSource() {
+        return mSource;
+    }
+
+    public String getMessage() {
+        return mMessage;
+    }
+
+    public String getScoreType() {
+        return mScoreType;
+    }
+
+    public String getUnit() {
+        return mUnit;
+    }
+
+    public double[] getValues() {
+        return mValues;
+    }
+
+    public boolean isSummary() {
+        return SUMMARY_SOURCE.equals(mSource);
+    }
+
+    /**
+     * Return the key identifying this series across sessions.
+     * <p/>
+     * Detail sources contain line numbers that change between builds, so details are keyed by
+     * their message rather than their source.
+     */
+    public String getKey() {
+        return String.format("%s|%s|%s|%s", mAbi, mTestName, isSummary() ? SUMMARY_SOURCE :
+                "detail", mMessage);
+    }
+}
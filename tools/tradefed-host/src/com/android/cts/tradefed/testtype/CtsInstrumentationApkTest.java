@@ -16,6 +16,8 @@
 package com.android.cts.tradefed.testtype;
 
 import com.android.cts.tradefed.build.CtsBuildHelper;
+import com.android.cts.tradefed.util.InvocationTracer;
+import com.android.cts.tradefed.util.InvocationTracer.Span;
 import com.android.cts.util.AbiUtils;
 import com.android.ddmlib.Log;
 import com.android.tradefed.build.IBuildInfo;
@@ -91,6 +93,7 @@ public class CtsInstrumentationApkTest extends InstrumentationTest implements IB
         for (String apkFileName : mInstallFileNames) {
             Log.d(LOG_TAG, String.format("Installing %s on %s", apkFileName,
                     testDevice.getSerialNumber()));
+            Span span = InvocationTracer.begin(InvocationTracer.INSTALL, apkFileName);
             try {
                 File apkFile = mCtsBuild.getTestApp(apkFileName);
                 String errorCode = null;
@@ -104,6 +107,8 @@ public class CtsInstrumentationApkTest extends InstrumentationTest implements IB
             } catch (FileNotFoundException e) {
                 Log.e(LOG_TAG, String.format("Could not find file %s", apkFileName));
                 success = false;
+            } finally {
+                span.end();
             }
         }
         if (success) {
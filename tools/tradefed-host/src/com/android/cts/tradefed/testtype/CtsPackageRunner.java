@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.testtype;
+
+import com.android.cts.tradefed.build.CtsBuildHelper;
+import com.android.cts.tradefed.command.MultiDeviceExecutor.IPackageRunner;
+import com.android.cts.util.AbiUtils;
+import com.android.tradefed.build.IFolderBuildInfo;
+import com.android.tradefed.device.DeviceNotAvailableException;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.result.ITestInvocationListener;
+import com.android.tradefed.util.StreamUtil;
+import com.android.tradefed.util.xml.AbstractXmlParser.ParseException;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link IPackageRunner} that runs a single package of a CTS plan with {@link CtsTest}.
+ * <p/>
+ * The test filters of the plan still apply, since the package is run as the plan with all other
+ * packages excluded. Device info is only collected along with the first package that runs
+ * successfully.
+ */
+public class CtsPackageRunner implements IPackageRunner {
+
+    private final IFolderBuildInfo mBuildInfo;
+    private final String mPlanName;
+    private final List<String> mPackageNames;
+    private final AtomicBoolean mCollectDeviceInfo;
+
+    /**
+     * @param buildInfo the {@link IFolderBuildInfo} of the CTS install, which is passed on to
+     *            every {@link CtsTest} and the tests it runs
+     * @param planName the name of the plan to run
+     * @param skipDeviceInfo <code>true</code> to not collect device info at all
+     * @throws FileNotFoundException if the plan does not exist
+     * @throws ParseException if the plan could not be parsed
+     * @throws IllegalArgumentException if <var>buildInfo</var> is not a valid CTS build
+     */
+    public CtsPackageRunner(IFolderBuildInfo buildInfo, String planName, boolean skipDeviceInfo)
+            throws FileNotFoundException, ParseException {
+        mBuildInfo = buildInfo;
+        mPlanName = planName;
+        mPackageNames = parsePackageNames(CtsBuildHelper.createBuildHelper(buildInfo), planName);
+        mCollectDeviceInfo = new AtomicBoolean(!skipDeviceInfo);
+    }
+
+    /**
+     * @return the names of the packages in the plan, in the order of the plan's test ids
+     */
+    public List<String> getPackageNames() {
+        return mPackageNames;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run(ITestDevice device, String packageName, ITestInvocationListener listener)
+            throws DeviceNotAvailableException {
+        CtsTest test = createCtsTest();
+        test.setDevice(device);
+        test.setBuild(mBuildInfo);
+        test.setPlanName(mPlanName);
+        // claim the device info collection, so concurrent runs do not collect it as well
+        boolean collectDeviceInfo = mCollectDeviceInfo.getAndSet(false);
+        test.setSkipDeviceInfo(!collectDeviceInfo);
+        for (String otherPackage : mPackageNames) {
+            if (!otherPackage.equals(packageName)) {
+                test.addExcludedPackageName(otherPackage);
+            }
+        }
+        boolean success = false;
+        try {
+            test.run(listener);
+            success = true;
+        } finally {
+            if (collectDeviceInfo && !success) {
+                // the results of a failed run are discarded, so let the next run collect it
+                mCollectDeviceInfo.set(true);
+            }
+        }
+    }
+
+    /**
+     * Creates the {@link CtsTest} that runs a package.
+     * <p/>
+     * Exposed so unit tests can mock the test package repository.
+     */
+    CtsTest createCtsTest() {
+        return new CtsTest();
+    }
+
+    private static List<String> parsePackageNames(CtsBuildHelper ctsBuild, String planName)
+            throws FileNotFoundException, ParseException {
+        ITestPlan plan = new TestPlan(planName, AbiUtils.getAbisSupportedByCts());
+        InputStream planStream = new BufferedInputStream(new FileInputStream(
+                ctsBuild.getTestPlanFile(planName)));
+        try {
+            plan.parse(planStream);
+        } finally {
+            StreamUtil.close(planStream);
+        }
+        // a package appears once per ABI in the plan
+        Set<String> names = new LinkedHashSet<String>();
+        for (String testId : plan.getTestIds()) {
+            names.add(AbiUtils.parseTestName(testId));
+        }
+        return new ArrayList<String>(names);
+    }
+}
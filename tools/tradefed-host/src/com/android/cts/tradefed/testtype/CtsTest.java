@@ -17,9 +17,12 @@
 package com.android.cts.tradefed.testtype;
 
 import com.android.cts.tradefed.build.CtsBuildHelper;
+import com.android.cts.tradefed.device.DeviceInfoCache;
 import com.android.cts.tradefed.device.DeviceInfoCollector;
 import com.android.cts.tradefed.result.CtsTestStatus;
 import com.android.cts.tradefed.result.PlanCreator;
+import com.android.cts.tradefed.util.InvocationTracer;
+import com.android.cts.tradefed.util.InvocationTracer.Span;
 import com.android.cts.util.AbiUtils;
 import com.android.ddmlib.Log;
 import com.android.ddmlib.Log.LogLevel;
@@ -122,6 +125,11 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
         "the test report.")
     private boolean mSkipDeviceInfo = false;
 
+    @Option(name = "reuse-device-info", description =
+        "flag to reuse the device info collected by a previous run on the same device and build, " +
+        "as long as a quick probe of the device properties shows no change.")
+    private boolean mReuseDeviceInfo = false;
+
     @Option(name = "resume", description =
         "flag to attempt to automatically resume aborted test run on another connected device. ")
     private boolean mResume = false;
@@ -527,7 +535,13 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
                 }
 
                 forwardPackageDetails(testPackage.getPackageDef(), listener);
-                test.run(filterMap.get(testPackage.getPackageDef().getId()));
+                Span span = InvocationTracer.begin(InvocationTracer.TEST_RUN,
+                        testPackage.getPackageDef().getId());
+                try {
+                    test.run(filterMap.get(testPackage.getPackageDef().getId()));
+                } finally {
+                    span.end();
+                }
                 if (i < mTestPackageList.size() - 1) {
                     TestPackage nextPackage = mTestPackageList.get(i + 1);
                     rebootIfNecessary(testPackage, nextPackage);
@@ -538,11 +552,13 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
             }
 
             if (mScreenshot) {
+                Span span = InvocationTracer.begin(InvocationTracer.ARTIFACTS, "screenshot");
                 InputStreamSource screenshotSource = getDevice().getScreenshot();
                 try {
                     listener.testLog("screenshot", LogDataType.PNG, screenshotSource);
                 } finally {
                     screenshotSource.cancel();
+                    span.end();
                 }
             }
 
@@ -643,17 +659,22 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
         options.setOnlineTimeout(TIMEOUT_MS);
         mDevice.setOptions(options);
 
-        mDevice.reboot();
-
-        // restore default values
-        options.setRebootTimeout(rebootTimeout);
-        options.setOnlineTimeout(onlineTimeout);
-        mDevice.setOptions(options);
-        Log.i(LOG_TAG, "Rebooting done");
+        Span span = InvocationTracer.begin(InvocationTracer.REBOOT, "reboot");
         try {
-            Thread.sleep(mRebootWaitTimeMSec);
-        } catch (InterruptedException e) {
-            Log.i(LOG_TAG, "Boot wait interrupted");
+            mDevice.reboot();
+
+            // restore default values
+            options.setRebootTimeout(rebootTimeout);
+            options.setOnlineTimeout(onlineTimeout);
+            mDevice.setOptions(options);
+            Log.i(LOG_TAG, "Rebooting done");
+            try {
+                Thread.sleep(mRebootWaitTimeMSec);
+            } catch (InterruptedException e) {
+                Log.i(LOG_TAG, "Boot wait interrupted");
+            }
+        } finally {
+            span.end();
         }
     }
 
@@ -886,6 +907,7 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
         }
         Log.logAndDisplay(LogLevel.INFO, LOG_TAG, "Installing prerequisites");
         for (String apkName : prerequisiteApks) {
+            Span span = InvocationTracer.begin(InvocationTracer.INSTALL, apkName);
             try {
                 File apkFile = mCtsBuild.getTestApp(apkName);
                 String[] options = {AbiUtils.createAbiFlag(abi.getName())};
@@ -895,6 +917,8 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
                 }
             } catch (FileNotFoundException e) {
                 CLog.e("Could not find test apk %s", apkName);
+            } finally {
+                span.end();
             }
         }
     }
@@ -946,7 +970,10 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
             ITestInvocationListener listener) throws DeviceNotAvailableException {
         if (!mSkipDeviceInfo) {
             String abi = AbiFormatter.getDefaultAbi(device, "");
-            DeviceInfoCollector.collectDeviceInfo(device, abi, ctsBuild.getTestCasesDir(), listener);
+            DeviceInfoCache cache = mReuseDeviceInfo
+                    ? new DeviceInfoCache(ctsBuild.getDeviceInfoCacheDir()) : null;
+            DeviceInfoCollector.collectDeviceInfo(device, abi, ctsBuild.getTestCasesDir(), listener,
+                    cache);
         }
     }
 
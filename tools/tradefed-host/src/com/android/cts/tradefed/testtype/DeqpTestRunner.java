@@ -1,6 +1,8 @@
 package com.android.cts.tradefed.testtype;
 
 import com.android.cts.tradefed.build.CtsBuildHelper;
+import com.android.cts.tradefed.util.InvocationTracer;
+import com.android.cts.tradefed.util.InvocationTracer.Span;
 import com.android.cts.util.AbiUtils;
 import com.android.ddmlib.MultiLineReceiver;
 import com.android.ddmlib.testrunner.TestIdentifier;
@@ -453,6 +455,7 @@ public class DeqpTestRunner implements IBuildReceiver, IDeviceTest, IRemoteTest
      * Install dEQP OnDevice Package
      */
     private void installTestApk() throws DeviceNotAvailableException {
+        Span span = InvocationTracer.begin(InvocationTracer.INSTALL, DEQP_ONDEVICE_APK);
         try {
             File apkFile = mCtsBuild.getTestApp(DEQP_ONDEVICE_APK);
             String[] options = {AbiUtils.createAbiFlag(mAbi.getName())};
@@ -462,6 +465,8 @@ public class DeqpTestRunner implements IBuildReceiver, IDeviceTest, IRemoteTest
             }
         } catch (FileNotFoundException e) {
             CLog.e("Could not find test apk %s", DEQP_ONDEVICE_APK);
+        } finally {
+            span.end();
         }
     }
 
@@ -17,6 +17,8 @@
 package com.android.cts.tradefed.testtype;
 
 import com.android.cts.tradefed.build.CtsBuildHelper;
+import com.android.cts.tradefed.util.InvocationTracer;
+import com.android.cts.tradefed.util.InvocationTracer.Span;
 import com.android.ddmlib.testrunner.ITestRunListener;
 import com.android.tradefed.build.IBuildInfo;
 import com.android.tradefed.device.DeviceNotAvailableException;
@@ -68,7 +70,14 @@ public class GeeTest implements IBuildReceiver, IDeviceTest, IRemoteTest {
 
     @Override
     public void run(ITestInvocationListener listener) throws DeviceNotAvailableException {
-        if (installTest()) {
+        Span span = InvocationTracer.begin(InvocationTracer.INSTALL, mExeName);
+        boolean installed;
+        try {
+            installed = installTest();
+        } finally {
+            span.end();
+        }
+        if (installed) {
             runTest(listener);
         } else {
             CLog.e("Failed to install native tests");
@@ -17,6 +17,8 @@
 package com.android.cts.tradefed.testtype;
 
 import com.android.cts.tradefed.build.CtsBuildHelper;
+import com.android.cts.tradefed.util.InvocationTracer;
+import com.android.cts.tradefed.util.InvocationTracer.Span;
 import com.android.cts.util.AbiUtils;
 import com.android.ddmlib.testrunner.ITestRunListener;
 import com.android.tradefed.build.IBuildInfo;
@@ -81,7 +83,14 @@ public class WrappedGTest implements IBuildReceiver, IDeviceTest, IRemoteTest {
 
     @Override
     public void run(ITestInvocationListener listener) throws DeviceNotAvailableException {
-        if (installTest()) {
+        Span span = InvocationTracer.begin(InvocationTracer.INSTALL, mName);
+        boolean installed;
+        try {
+            installed = installTest();
+        } finally {
+            span.end();
+        }
+        if (installed) {
             runTest(listener);
             uninstallTest();
         } else {
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.util;
+
+import com.android.json.stream.JsonWriter;
+import com.android.tradefed.util.TableFormatter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lightweight in-process tracer that records where the wall time of an invocation goes.
+ * <p/>
+ * Tracing is enabled for the calling invocation thread, and the threads it starts, with
+ * {@link #enable(String)}. Since each invocation runs on its own thread against a single device,
+ * this gives one trace per device without having to pass the tracer around. Code records phases
+ * with
+ * <pre>
+ * Span span = InvocationTracer.begin(InvocationTracer.INSTALL, apkName);
+ * try {
+ *     ...
+ * } finally {
+ *     span.end();
+ * }
+ * </pre>
+ * When tracing is disabled, {@link #begin} returns a shared no-op {@link Span}, so the cost is
+ * a single thread local lookup and no allocation.
+ * <p/>
+ * The recorded spans can be exported as Chrome trace JSON (viewable in chrome://tracing) and as
+ * a per-phase summary table.
+ */
+public class InvocationTracer {
+
+    public static final String INVOCATION = "invocation";
+    public static final String INSTALL = "install";
+    public static final String REBOOT = "reboot";
+    public static final String DEVICE_INFO = "device-info";
+    public static final String TEST_RUN = "test-run";
+    public static final String RESULTS = "results";
+    public static final String ARTIFACTS = "artifacts";
+    public static final String ZIP = "zip";
+
+    static final String TRACE_FILE_FORMAT = "trace_%s.json";
+    static final String SUMMARY_FILE_FORMAT = "trace_summary_%s.txt";
+
+    // inheritable so that helper threads started by the invocation are traced too
+    private static final InheritableThreadLocal<InvocationTracer> sTracer =
+            new InheritableThreadLocal<InvocationTracer>();
+
+    private static final Span NO_OP_SPAN = new Span(null, null, null);
+
+    /**
+     * A traced phase. Must be ended exactly once, typically in a finally block.
+     */
+    public static class Span {
+        private final InvocationTracer mTracer;
+        private final String mCategory;
+        private final String mName;
+        private final long mThreadId;
+        private final long mStartNs;
+
+        private Span(InvocationTracer tracer, String category, String name) {
+            mTracer = tracer;
+            mCategory = category;
+            mName = name;
+            if (tracer != null) {
+                mThreadId = Thread.currentThread().getId();
+                mStartNs = System.nanoTime();
+            } else {
+                mThreadId = 0;
+                mStartNs = 0;
+            }
+        }
+
+        /**
+         * Record the end of this span.
+         */
+        public void end() {
+            if (mTracer != null) {
+                mTracer.record(this, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * A completed span.
+     */
+    private static class Event {
+        final String mCategory;
+        final String mName;
+        final long mThreadId;
+        final long mStartNs;
+        final long mDurationNs;
+
+        Event(Span span, long endNs) {
+            mCategory = span.mCategory;
+            mName = span.mName;
+            mThreadId = span.mThreadId;
+            mStartNs = span.mStartNs;
+            mDurationNs = endNs - span.mStartNs;
+        }
+    }
+
+    private final String mSerial;
+    private final long mOriginNs;
+    private final List<Event> mEvents = new ArrayList<Event>();
+
+    private InvocationTracer(String serial) {
+        mSerial = serial;
+        mOriginNs = System.nanoTime();
+    }
+
+    /**
+     * Enable tracing for the current thread. Has no effect if tracing is already enabled.
+     *
+     * @param serial the serial of the device the invocation runs on, used to label the trace
+     * @return the active {@link InvocationTracer}
+     */
+    public static InvocationTracer enable(String serial) {
+        InvocationTracer tracer = sTracer.get();
+        if (tracer == null) {
+            tracer = new InvocationTracer(serial);
+            sTracer.set(tracer);
+        }
+        return tracer;
+    }
+
+    /**
+     * Disable tracing for the current thread.
+     *
+     * @return the {@link InvocationTracer} that was active, or <code>null</code>
+     */
+    public static InvocationTracer disable() {
+        InvocationTracer tracer = sTracer.get();
+        sTracer.remove();
+        return tracer;
+    }
+
+    /**
+     * @return <code>true</code> if tracing is enabled for the current thread
+     */
+    public static boolean isEnabled() {
+        return sTracer.get() != null;
+    }
+
+    /**
+     * Begin a span on the current thread.
+     *
+     * @param category the phase, e.g. {@link #INSTALL}
+     * @param name the specific item, e.g. the apk name
+     * @return the {@link Span} to end when the phase completes
+     */
+    public static Span begin(String category, String name) {
+        InvocationTracer tracer = sTracer.get();
+        if (tracer == null) {
+            return NO_OP_SPAN;
+        }
+        return new Span(tracer, category, name);
+    }
+
+    private synchronized void record(Span span, long endNs) {
+        mEvents.add(new Event(span, endNs));
+    }
+
+    private synchronized List<Event> getEvents() {
+        return new ArrayList<Event>(mEvents);
+    }
+
+    /**
+     * Write the Chrome trace JSON and the summary table into the given directory.
+     *
+     * @param dir the directory to write to, usually the result directory
+     * @throws IOException
+     */
+    public void export(File dir) throws IOException {
+        String fileSerial = mSerial.replaceAll("[^\\w.-]", "_");
+        List<Event> events = getEvents();
+        writeChromeTrace(new File(dir, String.format(TRACE_FILE_FORMAT, fileSerial)), events);
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(
+                new File(dir, String.format(SUMMARY_FILE_FORMAT, fileSerial)))));
+        try {
+            writeSummary(writer, events);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write the per-phase summary table.
+     */
+    public void writeSummary(PrintWriter writer) {
+        writeSummary(writer, getEvents());
+    }
+
+    private void writeChromeTrace(File file, List<Event> events) throws IOException {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new FileWriter(file)));
+        try {
+            writer.beginObject();
+            writer.name("displayTimeUnit").value("ms");
+            writer.name("traceEvents").beginArray();
+            writer.beginObject();
+            writer.name("name").value("process_name");
+            writer.name("ph").value("M");
+            writer.name("pid").value(1);
+            writer.name("args").beginObject().name("name").value(mSerial).endObject();
+            writer.endObject();
+            for (Event event : events) {
+                writer.beginObject();
+                writer.name("name").value(event.mName);
+                writer.name("cat").value(event.mCategory);
+                writer.name("ph").value("X");
+                writer.name("pid").value(1);
+                writer.name("tid").value(event.mThreadId);
+                writer.name("ts").value((event.mStartNs - mOriginNs) / 1000);
+                writer.name("dur").value(event.mDurationNs / 1000);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeSummary(PrintWriter writer, List<Event> events) {
+        // phases may nest, e.g. installs within a test run, so percentages need not add up
+        Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+        long invocationNs = 0;
+        for (Event event : events) {
+            if (INVOCATION.equals(event.mCategory)) {
+                invocationNs = Math.max(invocationNs, event.mDurationNs);
+                continue;
+            }
+            long[] total = totals.get(event.mCategory);
+            if (total == null) {
+                total = new long[2];
+                totals.put(event.mCategory, total);
+            }
+            total[0]++;
+            total[1] += event.mDurationNs;
+        }
+        List<Map.Entry<String, long[]>> sorted =
+                new ArrayList<Map.Entry<String, long[]>>(totals.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> lhs, Map.Entry<String, long[]> rhs) {
+                return Long.compare(rhs.getValue()[1], lhs.getValue()[1]);
+            }
+        });
+
+        List<List<String>> table = new ArrayList<List<String>>();
+        table.add(Arrays.asList("Phase", "Count", "Total (s)", "Invocation %"));
+        for (Map.Entry<String, long[]> entry : sorted) {
+            long totalNs = entry.getValue()[1];
+            table.add(Arrays.asList(entry.getKey(), Long.toString(entry.getValue()[0]),
+                    String.format("%.3f", totalNs / 1e9),
+                    invocationNs > 0 ? String.format("%.1f", 100.0 * totalNs / invocationNs)
+                            : "-"));
+        }
+        table.add(Arrays.asList(INVOCATION, "1", String.format("%.3f", invocationNs / 1e9),
+                "100.0"));
+        writer.println(String.format("Invocation timing for %s", mSerial));
+        new TableFormatter().displayTable(table, writer);
+        writer.flush();
+    }
+}
@@ -15,14 +15,19 @@
  */
 package com.android.cts.tradefed;
 
+import com.android.cts.tradefed.command.MultiDeviceExecutorTest;
+import com.android.cts.tradefed.device.DeviceInfoCacheTest;
 import com.android.cts.tradefed.result.CtsXmlResultReporterTest;
 import com.android.cts.tradefed.result.DeviceInfoResultTest;
+import com.android.cts.tradefed.result.LogStoreTest;
+import com.android.cts.tradefed.result.PerfRegressionAnalyzerTest;
 import com.android.cts.tradefed.result.TestPackageResultTest;
 import com.android.cts.tradefed.result.TestResultsTest;
 import com.android.cts.tradefed.result.TestSummaryXmlTest;
 import com.android.cts.tradefed.result.TestTest;
 import com.android.cts.tradefed.result.TestLogTest;
 import com.android.cts.tradefed.testtype.Abi;
+import com.android.cts.tradefed.testtype.CtsPackageRunnerTest;
 import com.android.cts.tradefed.testtype.CtsTestTest;
 import com.android.cts.tradefed.testtype.DeqpTestRunnerTest;
 import com.android.cts.tradefed.testtype.JarHostTestTest;
@@ -31,6 +36,7 @@ import com.android.cts.tradefed.testtype.TestPackageDefTest;
 import com.android.cts.tradefed.testtype.TestPackageXmlParserTest;
 import com.android.cts.tradefed.testtype.TestPlanTest;
 import com.android.cts.tradefed.testtype.WrappedGTestResultParserTest;
+import com.android.cts.tradefed.util.InvocationTracerTest;
 import com.android.tradefed.testtype.IAbi;
 
 import junit.framework.Test;
@@ -49,9 +55,17 @@ public class UnitTests extends TestSuite {
     public UnitTests() {
         super();
 
+        // command package
+        addTestSuite(MultiDeviceExecutorTest.class);
+
+        // device package
+        addTestSuite(DeviceInfoCacheTest.class);
+
         // result package
         addTestSuite(CtsXmlResultReporterTest.class);
         addTestSuite(DeviceInfoResultTest.class);
+        addTestSuite(LogStoreTest.class);
+        addTestSuite(PerfRegressionAnalyzerTest.class);
         addTestSuite(TestPackageResultTest.class);
         addTestSuite(TestResultsTest.class);
         addTestSuite(TestSummaryXmlTest.class);
@@ -59,6 +73,7 @@ public class UnitTests extends TestSuite {
         addTestSuite(TestLogTest.class);
 
         // testtype package
+        addTestSuite(CtsPackageRunnerTest.class);
         addTestSuite(CtsTestTest.class);
         addTestSuite(JarHostTestTest.class);
         addTestSuite(TestFilterTest.class);
@@ -67,6 +82,9 @@ public class UnitTests extends TestSuite {
         addTestSuite(TestPlanTest.class);
         addTestSuite(WrappedGTestResultParserTest.class);
         addTestSuite(DeqpTestRunnerTest.class);
+
+        // util package
+        addTestSuite(InvocationTracerTest.class);
     }
 
     public static Test suite() {
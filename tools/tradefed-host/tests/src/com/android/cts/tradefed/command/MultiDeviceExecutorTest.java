@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.command;
+
+import com.android.cts.tradefed.command.MultiDeviceExecutor.DeviceProgress;
+import com.android.cts.tradefed.command.MultiDeviceExecutor.DeviceStatus;
+import com.android.cts.tradefed.command.MultiDeviceExecutor.IPackageRunner;
+import com.android.ddmlib.testrunner.TestIdentifier;
+import com.android.tradefed.device.DeviceNotAvailableException;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.result.ByteArrayInputStreamSource;
+import com.android.tradefed.result.CollectingTestListener;
+import com.android.tradefed.result.ITestInvocationListener;
+import com.android.tradefed.result.InputStreamSource;
+import com.android.tradefed.result.LogDataType;
+import com.android.tradefed.util.StreamUtil;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link MultiDeviceExecutor}, using simulated devices.
+ */
+public class MultiDeviceExecutorTest extends TestCase {
+
+    private static final int TESTS_PER_PACKAGE = 5;
+
+    /**
+     * A runner that reports a fixed number of passing tests, each with a log holding the name of
+     * the test, and fails with {@link DeviceNotAvailableException} for the devices in
+     * {@link #mBrokenSerials}.
+     */
+    private static class FakeRunner implements IPackageRunner {
+        private final Set<String> mBrokenSerials = new HashSet<String>();
+
+        @Override
+        public void run(ITestDevice device, String packageName, ITestInvocationListener listener)
+                throws DeviceNotAvailableException {
+            listener.testRunStarted(packageName, TESTS_PER_PACKAGE);
+            for (int i = 0; i < TESTS_PER_PACKAGE; i++) {
+                TestIdentifier test = new TestIdentifier(packageName + ".Test", "test" + i);
+                listener.testStarted(test);
+                listener.testLog(test.toString(), LogDataType.TEXT,
+                        new ByteArrayInputStreamSource(test.toString().getBytes()));
+                if (mBrokenSerials.contains(device.getSerialNumber())) {
+                    throw new DeviceNotAvailableException();
+                }
+                Thread.yield();
+                listener.testEnded(test, Collections.<String, String>emptyMap());
+            }
+            listener.testRunEnded(0, Collections.<String, String>emptyMap());
+        }
+    }
+
+    /**
+     * A listener that checks that test runs are never interleaved, and that each log arrives
+     * while its test is running. Violations are recorded rather than asserted, since the
+     * listener is called from the device threads.
+     */
+    private static class CheckingListener extends CollectingTestListener {
+        private boolean mInterleaved = false;
+        private boolean mMisplacedLog = false;
+        private String mCurrentRun = null;
+        private TestIdentifier mCurrentTest = null;
+        private Map<String, Integer> mRunCounts = new HashMap<String, Integer>();
+        private int mTestCount = 0;
+        private int mLogCount = 0;
+
+        @Override
+        public void testRunStarted(String name, int numTests) {
+            mInterleaved |= mCurrentRun != null;
+            mCurrentRun = name;
+            Integer count = mRunCounts.get(name);
+            mRunCounts.put(name, count == null ? 1 : count + 1);
+            super.testRunStarted(name, numTests);
+        }
+
+        @Override
+        public void testStarted(TestIdentifier test) {
+            mCurrentTest = test;
+            super.testStarted(test);
+        }
+
+        @Override
+        public void testLog(String dataName, LogDataType dataType,
+                InputStreamSource dataStream) {
+            mLogCount++;
+            InputStream stream = dataStream.createInputStream();
+            try {
+                mMisplacedLog |= mCurrentTest == null
+                        || !mCurrentTest.toString().equals(StreamUtil.getStringFromStream(stream));
+            } catch (IOException e) {
+                mMisplacedLog = true;
+            } finally {
+                StreamUtil.close(stream);
+            }
+        }
+
+        @Override
+        public void testEnded(TestIdentifier test, Map<String, String> testMetrics) {
+            mInterleaved |= mCurrentRun == null || !test.getClassName().startsWith(mCurrentRun);
+            mCurrentTest = null;
+            mTestCount++;
+            super.testEnded(test, testMetrics);
+        }
+
+        @Override
+        public void testRunEnded(long elapsedTime, Map<String, String> runMetrics) {
+            mInterleaved |= mCurrentRun == null;
+            mCurrentRun = null;
+            super.testRunEnded(elapsedTime, runMetrics);
+        }
+    }
+
+    private FakeRunner mRunner;
+    private CheckingListener mListener;
+    private StringWriter mOutput;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRunner = new FakeRunner();
+        mListener = new CheckingListener();
+        mOutput = new StringWriter();
+    }
+
+    /**
+     * Test that every package runs exactly once on 50 devices, with runs merged in blocks.
+     */
+    public void testRun_manyDevices() throws Exception {
+        List<ITestDevice> devices = createDevices(50);
+        List<String> packages = createPackages(400);
+        MultiDeviceExecutor executor = new MultiDeviceExecutor(mRunner, 0);
+        List<String> notRun = executor.run(devices, packages, mListener,
+                new PrintWriter(mOutput));
+        assertTrue(notRun.isEmpty());
+        assertFalse(mListener.mInterleaved);
+        assertFalse(mListener.mMisplacedLog);
+        assertEquals(packages.size(), mListener.mRunCounts.size());
+        for (Integer count : mListener.mRunCounts.values()) {
+            assertEquals(1, count.intValue());
+        }
+        assertEquals(packages.size() * TESTS_PER_PACKAGE, mListener.mTestCount);
+        int packagesDone = 0;
+        for (DeviceProgress progress : executor.getProgress()) {
+            assertEquals(DeviceStatus.DONE, progress.getStatus());
+            packagesDone += progress.getPackagesDone();
+        }
+        assertEquals(packages.size(), packagesDone);
+        assertTrue(mOutput.toString().contains(String.format("%d/%d", packages.size(),
+                packages.size())));
+    }
+
+    /**
+     * Test that the packages of a device that becomes unavailable are run on other devices, and
+     * that its partial results are dropped.
+     */
+    public void testRun_deviceUnavailable() throws Exception {
+        List<ITestDevice> devices = createDevices(4);
+        mRunner.mBrokenSerials.add("fake-1");
+        List<String> packages = createPackages(20);
+        MultiDeviceExecutor executor = new MultiDeviceExecutor(mRunner, 0);
+        assertTrue(executor.run(devices, packages, mListener, new PrintWriter(mOutput))
+                .isEmpty());
+        assertEquals(packages.size(), mListener.mRunCounts.size());
+        assertEquals(packages.size() * TESTS_PER_PACKAGE, mListener.mTestCount);
+        assertEquals(DeviceStatus.UNAVAILABLE, executor.getProgress().get(1).getStatus());
+        assertEquals(0, executor.getProgress().get(1).getPackagesDone());
+        // the logs of the discarded package are dropped as well
+        assertFalse(mListener.mMisplacedLog);
+        assertEquals(packages.size() * TESTS_PER_PACKAGE, mListener.mLogCount);
+        Map<ITestDevice, DeviceStatus> statuses = executor.getDeviceStatuses();
+        assertEquals(DeviceStatus.UNAVAILABLE, statuses.get(devices.get(1)));
+        assertEquals(DeviceStatus.DONE, statuses.get(devices.get(0)));
+    }
+
+    /**
+     * Test that packages are reported as not run when all devices become unavailable.
+     */
+    public void testRun_allDevicesUnavailable() throws Exception {
+        List<ITestDevice> devices = createDevices(2);
+        mRunner.mBrokenSerials.add("fake-0");
+        mRunner.mBrokenSerials.add("fake-1");
+        List<String> packages = createPackages(3);
+        MultiDeviceExecutor executor = new MultiDeviceExecutor(mRunner, 0);
+        List<String> notRun = executor.run(devices, packages, mListener,
+                new PrintWriter(mOutput));
+        // the order of the returned packages depends on when each device failed
+        assertEquals(new HashSet<String>(packages), new HashSet<String>(notRun));
+        assertEquals(packages.size(), notRun.size());
+        assertEquals(0, mListener.mTestCount);
+        assertEquals(0, mListener.mLogCount);
+    }
+
+    private static List<ITestDevice> createDevices(int count) {
+        List<ITestDevice> devices = new ArrayList<ITestDevice>(count);
+        for (int i = 0; i < count; i++) {
+            ITestDevice device = EasyMock.createNiceMock(ITestDevice.class);
+            EasyMock.expect(device.getSerialNumber()).andStubReturn("fake-" + i);
+            EasyMock.replay(device);
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    private static List<String> createPackages(int count) {
+        List<String> packages = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            packages.add(String.format("android.fake%03d", i));
+        }
+        return packages;
+    }
+}
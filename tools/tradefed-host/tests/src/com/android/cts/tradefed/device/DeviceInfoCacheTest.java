@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.device;
+
+import com.android.cts.util.AbiUtils;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.result.ITestInvocationListener;
+import com.android.tradefed.util.FileUtil;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link DeviceInfoCache}.
+ */
+public class DeviceInfoCacheTest extends TestCase {
+
+    private static final String SERIAL = "serial:5555";
+    private static final String ABI = "armeabi-v7a";
+    private static final String GETPROP =
+            "[ro.build.fingerprint]: [brand/product/device:5.0/1/1:user/keys]\r\n" +
+            "[ro.build.date.utc]: [1420070400]\r\n" +
+            "[ro.serialno]: [serial]\r\n" +
+            "[ro.sf.lcd_density]: [320]\r\n";
+
+    private File mCacheDir;
+    private DeviceInfoCache mCache;
+    private ITestDevice mMockDevice;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCacheDir = FileUtil.createTempDir("device-info-cache");
+        mCache = new DeviceInfoCache(mCacheDir);
+        mMockDevice = EasyMock.createMock(ITestDevice.class);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.recursiveDelete(mCacheDir);
+        super.tearDown();
+    }
+
+    public void testProbe() throws Exception {
+        Map<String, String> probe = probe(GETPROP);
+        assertEquals("brand/product/device:5.0/1/1:user/keys",
+                probe.get(DeviceInfoCache.FINGERPRINT_PROPERTY));
+        assertEquals("320", probe.get("ro.sf.lcd_density"));
+        assertEquals("", probe.get("ro.crypto.state"));
+        assertEquals(DeviceInfoCache.PROBE_PROPERTIES.length, probe.size());
+    }
+
+    /**
+     * Test that a stored entry is returned for an unchanged device.
+     */
+    public void testPutGet() throws Exception {
+        Map<String, String> probe = probe(GETPROP);
+        assertNull(mCache.get(SERIAL, ABI, probe));
+        mCache.put(SERIAL, ABI, probe, createMetrics());
+        assertEquals(createMetrics(), mCache.get(SERIAL, ABI, probe));
+        assertNull(mCache.get(SERIAL, "x86", probe));
+    }
+
+    /**
+     * Test that an entry is not used once a probed property changes.
+     */
+    public void testGet_stale() throws Exception {
+        mCache.put(SERIAL, ABI, probe(GETPROP), createMetrics());
+        Map<String, String> probe = probe(GETPROP.replace("[320]", "[480]"));
+        assertNull(mCache.get(SERIAL, ABI, probe));
+    }
+
+    /**
+     * Test that nothing is cached when the fingerprint is unknown.
+     */
+    public void testPut_noFingerprint() throws Exception {
+        Map<String, String> probe = probe("");
+        mCache.put(SERIAL, ABI, probe, createMetrics());
+        assertNull(mCache.get(SERIAL, ABI, probe));
+        assertEquals(0, mCacheDir.listFiles().length);
+    }
+
+    public void testReplay() {
+        ITestInvocationListener listener = EasyMock.createMock(ITestInvocationListener.class);
+        listener.testRunStarted(AbiUtils.createId(ABI, DeviceInfoCollector.APP_PACKAGE_NAME), 0);
+        listener.testRunEnded(0, createMetrics());
+        EasyMock.replay(listener);
+        DeviceInfoCache.replay(ABI, createMetrics(), listener);
+        EasyMock.verify(listener);
+    }
+
+    private Map<String, String> probe(String getprop) throws Exception {
+        EasyMock.reset(mMockDevice);
+        EasyMock.expect(mMockDevice.executeShellCommand("getprop")).andReturn(getprop);
+        EasyMock.replay(mMockDevice);
+        Map<String, String> probe = mCache.probe(mMockDevice);
+        EasyMock.verify(mMockDevice);
+        return probe;
+    }
+
+    private static Map<String, String> createMetrics() {
+        Map<String, String> metrics = new HashMap<String, String>();
+        metrics.put("build_fingerprint", "brand/product/device:5.0/1/1:user/keys");
+        metrics.put("screen_density", "320");
+        return metrics;
+    }
+}
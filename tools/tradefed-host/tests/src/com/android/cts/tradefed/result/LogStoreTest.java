@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.tradefed.result.LogDataType;
+import com.android.tradefed.util.FileUtil;
+import com.android.tradefed.util.StreamUtil;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link LogStore}.
+ */
+public class LogStoreTest extends TestCase {
+
+    private File mStoreDir;
+    private File mLogDir;
+    private LogStore mStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mStoreDir = FileUtil.createTempDir("logstore");
+        mLogDir = FileUtil.createTempDir("logs");
+        mStore = new LogStore(mStoreDir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.recursiveDelete(mStoreDir);
+        FileUtil.recursiveDelete(mLogDir);
+        super.tearDown();
+    }
+
+    /**
+     * Test that a saved log can be read back unchanged.
+     */
+    public void testSaveOpen() throws Exception {
+        byte[] data = createData(1, 1024 * 1024);
+        File manifest = save("logcat-test", data);
+        assertTrue(manifest.getName().startsWith("logcat-test_"));
+        assertTrue(manifest.getName().endsWith(LogStore.MANIFEST_SUFFIX));
+        assertTrue(Arrays.equals(data, read(manifest)));
+        assertEquals(data.length, mStore.getBytesLogged());
+    }
+
+    public void testSaveOpen_empty() throws Exception {
+        File manifest = save("logcat-empty", new byte[0]);
+        assertEquals(0, read(manifest).length);
+    }
+
+    /**
+     * Test that identical logs are only stored once.
+     */
+    public void testSave_duplicate() throws Exception {
+        byte[] data = createData(2, 512 * 1024);
+        File first = save("bug-1", data);
+        long written = mStore.getBytesWritten();
+        File second = save("bug-2", data);
+        assertFalse(first.equals(second));
+        assertEquals(written, mStore.getBytesWritten());
+        assertTrue(Arrays.equals(data, read(second)));
+    }
+
+    /**
+     * Test that logs sharing a long prefix share most of their chunks.
+     */
+    public void testSave_sharedPrefix() throws Exception {
+        byte[] prefix = createData(3, 2 * 1024 * 1024);
+        byte[] suffix = createData(4, 64 * 1024);
+        byte[] longer = new byte[prefix.length + suffix.length];
+        System.arraycopy(prefix, 0, longer, 0, prefix.length);
+        System.arraycopy(suffix, 0, longer, prefix.length, suffix.length);
+
+        save("logcat-1", prefix);
+        long written = mStore.getBytesWritten();
+        File manifest = save("logcat-2", longer);
+        // only the chunks at the end of the prefix and the suffix itself are new
+        assertTrue(mStore.getBytesWritten() - written < written / 4);
+        assertTrue(Arrays.equals(longer, read(manifest)));
+    }
+
+    /**
+     * Test that compressible logs are stored deflated, and incompressible ones as they are.
+     */
+    public void testSave_encoding() throws Exception {
+        byte[] text = createText(5, 512 * 1024);
+        File textManifest = save("logcat-text", text);
+        assertTrue(mStore.getBytesWritten() < text.length / 2);
+        assertTrue(Arrays.equals(text, read(textManifest)));
+
+        long written = mStore.getBytesWritten();
+        byte[] data = createData(6, 512 * 1024);
+        File dataManifest = save("screenshot", data);
+        // one header byte per chunk
+        assertTrue(mStore.getBytesWritten() - written < data.length + 64);
+        assertTrue(Arrays.equals(data, read(dataManifest)));
+    }
+
+    /**
+     * Test that logs are restored to regular files, whichever way their chunks are stored.
+     */
+    public void testRestore() throws Exception {
+        byte[] text = createText(7, 300 * 1024);
+        byte[] data = createData(8, 300 * 1024);
+        File textManifest = save("logcat-restore", text);
+        File dataManifest = save("screenshot-restore", data);
+        File destFile = new File(mLogDir, "restored");
+        mStore.restore(textManifest, destFile);
+        assertTrue(Arrays.equals(text, readFile(destFile)));
+        mStore.restore(dataManifest, destFile);
+        assertTrue(Arrays.equals(data, readFile(destFile)));
+    }
+
+    /**
+     * Test that all logs of a session are restored next to their manifests, and only once.
+     */
+    public void testRestoreAll() throws Exception {
+        byte[] data = createData(9, 100 * 1024);
+        File manifest = save("logcat-all", data);
+        assertEquals(1, mStore.restoreAll(mLogDir));
+        String name = manifest.getName();
+        File restored = new File(mLogDir,
+                name.substring(0, name.length() - LogStore.MANIFEST_SUFFIX.length()));
+        assertTrue(Arrays.equals(data, readFile(restored)));
+        assertEquals(0, mStore.restoreAll(mLogDir));
+    }
+
+    /**
+     * Test that a sweep deletes the old chunks no manifest refers to, and keeps all others.
+     */
+    public void testSweep() throws Exception {
+        byte[] shared = createData(10, 512 * 1024);
+        byte[] unique = createData(11, 512 * 1024);
+        File keptManifest = save("logcat-kept", shared);
+        File deletedManifest = save("logcat-deleted", unique);
+        long written = mStore.getBytesWritten();
+
+        // recent chunks survive even if they are unreferenced
+        assertTrue(deletedManifest.delete());
+        assertEquals(0, mStore.sweep(mLogDir));
+
+        setChunkTimes(System.currentTimeMillis() - 2 * LogStore.SWEEP_GRACE_PERIOD_MS);
+        long freed = mStore.sweep(mLogDir);
+        assertTrue(freed > unique.length / 2);
+        assertTrue(freed < written);
+        assertTrue(Arrays.equals(shared, read(keptManifest)));
+        assertEquals(0, mStore.sweep(mLogDir));
+
+        // a chunk reused by a new log is kept although it is old
+        setChunkTimes(System.currentTimeMillis() - 2 * LogStore.SWEEP_GRACE_PERIOD_MS);
+        assertTrue(keptManifest.delete());
+        File newManifest = save("logcat-new", shared);
+        assertTrue(newManifest.delete());
+        assertEquals(0, mStore.sweep(mLogDir));
+    }
+
+    private void setChunkTimes(long time) {
+        for (File prefixDir : new File(mStoreDir, "chunks").listFiles()) {
+            for (File chunkFile : prefixDir.listFiles()) {
+                assertTrue(chunkFile.setLastModified(time));
+            }
+        }
+    }
+
+    private File save(String dataName, byte[] data) throws Exception {
+        return mStore.save(mLogDir, dataName, LogDataType.TEXT, new ByteArrayInputStream(data));
+    }
+
+    private byte[] read(File manifest) throws Exception {
+        InputStream in = mStore.open(manifest);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamUtil.copyStreams(in, out);
+            return out.toByteArray();
+        } finally {
+            StreamUtil.close(in);
+        }
+    }
+
+    private static byte[] readFile(File file) throws Exception {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamUtil.copyStreams(in, out);
+            return out.toByteArray();
+        } finally {
+            StreamUtil.close(in);
+        }
+    }
+
+    /**
+     * Create compressible test data that looks like a logcat.
+     */
+    private static byte[] createText(long seed, int size) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder(size + 128);
+        while (builder.length() < size) {
+            builder.append(String.format("01-01 00:00:%02d.%03d  %5d  %5d I Tag%d: message %d%n",
+                    random.nextInt(60), random.nextInt(1000), random.nextInt(32768),
+                    random.nextInt(32768), random.nextInt(20), random.nextInt(1000)));
+        }
+        return builder.substring(0, size).getBytes();
+    }
+
+    /**
+     * Create incompressible test data, so that stored sizes reflect deduplication only.
+     */
+    private static byte[] createData(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
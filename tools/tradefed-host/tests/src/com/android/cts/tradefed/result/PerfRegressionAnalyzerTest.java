@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.cts.tradefed.result.PerfRegressionAnalyzer.PerfComparison;
+import com.android.tradefed.util.FileUtil;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Unit tests for {@link PerfRegressionAnalyzer}.
+ */
+public class PerfRegressionAnalyzerTest extends TestCase {
+
+    private static final String RESULT_TEMPLATE =
+        "<TestResult>" +
+            "<DeviceInfo><BuildInfo build_fingerprint=\"%s\"/></DeviceInfo>" +
+            "<Summary failed=\"0\" notExecuted=\"0\" pass=\"1\" timeout=\"0\"/>" +
+            "<TestPackage abi=\"armeabi-v7a\" appPackageName=\"com.android.cts.dram\">" +
+                "<TestSuite name=\"com\"><TestSuite name=\"android\">" +
+                    "<TestCase name=\"BandwidthTest\">" +
+                        "<Test name=\"testMemcpy\" result=\"pass\">" +
+                            "<Summary message=\"bandwidth\" scoreType=\"higher_better\" " +
+                                    "unit=\"mbps\">%s</Summary>" +
+                            "<Details>" +
+                                "<ValueArray source=\"BandwidthTest#testMemcpy:98\" " +
+                                        "message=\"samples\" scoreType=\"higher_better\" " +
+                                        "unit=\"mbps\">%s</ValueArray>" +
+                            "</Details>" +
+                        "</Test>" +
+                    "</TestCase>" +
+                "</TestSuite></TestSuite>" +
+            "</TestPackage>" +
+        "</TestResult>";
+
+    private File mResultsDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResultsDir = FileUtil.createTempDir("perf-results");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.recursiveDelete(mResultsDir);
+        super.tearDown();
+    }
+
+    /**
+     * Test that summaries and details are extracted with their test name and ABI.
+     */
+    public void testParse() throws Exception {
+        PerfResultParser parser = new PerfResultParser();
+        parser.parse(new StringReader(createResult("brand/product/device:5.0/1/1:user/keys",
+                100, 99, 100, 101)));
+        assertEquals("brand/product/device:5.0/1/1:user/keys", parser.getFingerprint());
+        List<PerfSeries> series = parser.getSeries();
+        assertEquals(2, series.size());
+        assertTrue(series.get(0).isSummary());
+        assertEquals("com.android.BandwidthTest#testMemcpy", series.get(0).getTestName());
+        assertEquals("armeabi-v7a", series.get(0).getAbi());
+        assertEquals(100.0, series.get(0).getValues()[0]);
+        assertFalse(series.get(1).isSummary());
+        assertEquals("samples", series.get(1).getMessage());
+        assertEquals(3, series.get(1).getValues().length);
+    }
+
+    public void testMannWhitney() {
+        double[] low = {1, 2, 3, 4, 5, 6, 7, 8};
+        double[] high = {11, 12, 13, 14, 15, 16, 17, 18};
+        assertTrue(PerfRegressionAnalyzer.mannWhitneyPValue(low, high, true) < 0.01);
+        assertTrue(PerfRegressionAnalyzer.mannWhitneyPValue(low, high, false) > 0.99);
+        // identical samples are never significant
+        assertTrue(PerfRegressionAnalyzer.mannWhitneyPValue(low, low, true) > 0.4);
+    }
+
+    public void testZScore() {
+        double[] reference = {98, 99, 100, 101, 102};
+        assertTrue(PerfRegressionAnalyzer.zScorePValue(90, reference, true) < 0.01);
+        assertTrue(PerfRegressionAnalyzer.zScorePValue(90, reference, false) > 0.99);
+        assertEquals(0.5, PerfRegressionAnalyzer.zScorePValue(100, reference, true), 1e-6);
+        // a single value is tested against the reference instead of ranked in it
+        assertTrue(PerfRegressionAnalyzer.pValue(new double[] {90}, reference, true) < 0.01);
+        // nothing is known about the spread of a single reference value
+        assertEquals(1.0, PerfRegressionAnalyzer.zScorePValue(90, new double[] {100}, true));
+    }
+
+    /**
+     * Test that a drop in a higher-better detail series is reported against the baseline.
+     */
+    public void testAnalyze_regression() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            writeSession(i, "brand/product/device:5.0/" + i + "/1:user/keys", 100, 98, 99, 100,
+                    101, 102, 100, 99);
+        }
+        writeSession(3, "brand/product/device:5.0/3/1:user/keys", 80, 79, 80, 81, 80, 78, 82,
+                80);
+        TestResultRepo repo = new TestResultRepo(mResultsDir);
+        PerfRegressionAnalyzer analyzer = new PerfRegressionAnalyzer(3, 0.01, 0.05);
+        List<PerfComparison> comparisons = analyzer.analyze(repo, 3);
+        assertEquals(2, comparisons.size());
+        PerfComparison summary = comparisons.get(0);
+        assertTrue(summary.isSummary());
+        assertTrue(summary.isRegression());
+        PerfComparison detail = comparisons.get(1);
+        assertFalse(detail.isSummary());
+        assertEquals(3, detail.getBaselineSessions());
+        assertTrue(detail.isRegression());
+        assertTrue(detail.getChange() < -0.15);
+        // the extracted series are cached next to the result
+        assertTrue(new File(repo.getReportDir(3), PerfMetricStore.CACHE_FILE_NAME).exists());
+        assertEquals(2, analyzer.analyze(repo, 3).size());
+    }
+
+    /**
+     * Test that a summary is only reported when it drops well outside of its baseline spread.
+     */
+    public void testAnalyze_summary() throws Exception {
+        // a noisy baseline followed by a drop, then a steady baseline followed by the same drop
+        double[] summaries = {80, 120, 100, 85, 98, 102, 100, 85};
+        for (int i = 0; i < summaries.length; i++) {
+            writeSession(i, "brand/product/device:5.0/" + i + "/1:user/keys", summaries[i], 100);
+        }
+        TestResultRepo repo = new TestResultRepo(mResultsDir);
+        PerfRegressionAnalyzer analyzer = new PerfRegressionAnalyzer(3, 0.01, 0.05);
+        PerfComparison summary = analyzer.analyze(repo, 3).get(0);
+        assertTrue(summary.isSummary());
+        assertTrue(summary.getChange() < -0.05);
+        assertFalse(summary.isRegression());
+        summary = analyzer.analyze(repo, 7).get(0);
+        assertTrue(summary.isRegression());
+    }
+
+    /**
+     * Test that sessions from a different device are not used as baseline.
+     */
+    public void testAnalyze_otherDevice() throws Exception {
+        writeSession(0, "brand/other/device:5.0/0/1:user/keys", 100, 100, 100, 100);
+        writeSession(1, "brand/product/device:5.0/1/1:user/keys", 80, 80, 80, 80);
+        TestResultRepo repo = new TestResultRepo(mResultsDir);
+        assertTrue(new PerfRegressionAnalyzer().analyze(repo, 1).isEmpty());
+    }
+
+    private void writeSession(int id, String fingerprint, double summary, double... values)
+            throws IOException {
+        File dir = new File(mResultsDir, String.format("2015.01.01_00.00.%02d", id));
+        assertTrue(dir.mkdirs());
+        FileUtil.writeToFile(createResult(fingerprint, summary, values),
+                new File(dir, CtsXmlResultReporter.TEST_RESULT_FILE_NAME));
+    }
+
+    private static String createResult(String fingerprint, double summary, double... values) {
+        StringBuilder details = new StringBuilder();
+        for (double v : values) {
+            details.append("<Value>").append(v).append("</Value>");
+        }
+        return String.format(RESULT_TEMPLATE, fingerprint, summary, details);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.testtype;
+
+import com.android.cts.tradefed.UnitTests;
+import com.android.cts.tradefed.build.CtsBuildHelper;
+import com.android.cts.util.AbiUtils;
+import com.android.ddmlib.testrunner.TestIdentifier;
+import com.android.tradefed.build.FolderBuildInfo;
+import com.android.tradefed.build.IBuildInfo;
+import com.android.tradefed.build.IFolderBuildInfo;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.result.ITestInvocationListener;
+import com.android.tradefed.testtype.IBuildReceiver;
+import com.android.tradefed.testtype.IRemoteTest;
+import com.android.tradefed.util.FileUtil;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link CtsPackageRunner}.
+ * <p/>
+ * The packages are run by a real {@link CtsTest} on a plan in a temporary CTS install. Only the
+ * test package repository and the device are mocked out.
+ */
+public class CtsPackageRunnerTest extends TestCase {
+
+    private static final String PLAN_NAME = "CTS";
+    private static final String PACKAGE_NAME = "test-name";
+    private static final String OTHER_PACKAGE_NAME = "other-test-name";
+    private static final String ID = AbiUtils.createId(UnitTests.ABI.getName(), PACKAGE_NAME);
+    private static final String PLAN = "<TestPlan version=\"1.0\">"
+            + String.format("<Entry name=\"%s\" abi=\"%s\" />", PACKAGE_NAME,
+                    UnitTests.ABI.getName())
+            + String.format("<Entry name=\"%s\" abi=\"%s\" />", OTHER_PACKAGE_NAME,
+                    UnitTests.ABI.getName())
+            + "</TestPlan>";
+
+    private File mRootDir;
+    private IFolderBuildInfo mBuildInfo;
+    private ITestPackageRepo mMockRepo;
+    private ITestPackageDef mMockPackageDef;
+    private ITestDevice mMockDevice;
+    private ITestInvocationListener mMockListener;
+    private BuildReceivingTest mPackageTest;
+
+    /**
+     * A package test that records the build it was given.
+     */
+    private static class BuildReceivingTest implements IRemoteTest, IBuildReceiver {
+        private IBuildInfo mBuild = null;
+        private boolean mRun = false;
+
+        @Override
+        public void setBuild(IBuildInfo build) {
+            mBuild = build;
+        }
+
+        @Override
+        public void run(ITestInvocationListener listener) {
+            mRun = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRootDir = FileUtil.createTempDir("cts-root");
+        CtsBuildHelper ctsBuild = new CtsBuildHelper(mRootDir);
+        ctsBuild.getTestCasesDir().mkdirs();
+        ctsBuild.getTestPlansDir().mkdirs();
+        FileUtil.writeToFile(PLAN, ctsBuild.getTestPlanFile(PLAN_NAME));
+        mBuildInfo = new FolderBuildInfo("build", "cts", "cts");
+        mBuildInfo.setRootDir(mRootDir);
+
+        mMockRepo = EasyMock.createMock(ITestPackageRepo.class);
+        mMockPackageDef = EasyMock.createNiceMock(ITestPackageDef.class);
+        mMockDevice = EasyMock.createMock(ITestDevice.class);
+        mMockListener = EasyMock.createNiceMock(ITestInvocationListener.class);
+        mPackageTest = new BuildReceivingTest();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.recursiveDelete(mRootDir);
+        super.tearDown();
+    }
+
+    /**
+     * Test that {@link CtsPackageRunner} reads the packages of the plan, ordered by test id.
+     */
+    public void testGetPackageNames() throws Exception {
+        CtsPackageRunner runner = new CtsPackageRunner(mBuildInfo, PLAN_NAME, true);
+        assertEquals(Arrays.asList(OTHER_PACKAGE_NAME, PACKAGE_NAME), runner.getPackageNames());
+    }
+
+    /**
+     * Test that a package run by {@link CtsPackageRunner#run} receives the build, as it does in
+     * a normal invocation, and that the other packages of the plan are excluded.
+     */
+    public void testRun_build() throws Exception {
+        List<TestIdentifier> tests = new ArrayList<TestIdentifier>();
+        tests.add(new TestIdentifier("CLASS_NAME", "TEST_NAME"));
+        EasyMock.expect(mMockDevice.getProperty("ro.product.cpu.abilist"))
+                .andReturn(UnitTests.ABI.getName()).anyTimes();
+        EasyMock.expect(mMockRepo.getTestPackage(ID)).andReturn(mMockPackageDef);
+        EasyMock.expect(mMockPackageDef.createTest((File) EasyMock.anyObject()))
+                .andReturn(mPackageTest);
+        EasyMock.expect(mMockPackageDef.getTests()).andStubReturn(tests);
+        EasyMock.expect(mMockPackageDef.getName()).andStubReturn(PACKAGE_NAME);
+        EasyMock.expect(mMockPackageDef.getAbi()).andStubReturn(UnitTests.ABI);
+        EasyMock.expect(mMockPackageDef.getId()).andStubReturn(ID);
+        EasyMock.expect(mMockPackageDef.getDigest()).andStubReturn("digest");
+        EasyMock.replay(mMockRepo, mMockPackageDef, mMockDevice, mMockListener);
+
+        CtsPackageRunner runner = new CtsPackageRunner(mBuildInfo, PLAN_NAME, true) {
+            @Override
+            CtsTest createCtsTest() {
+                return new CtsTest() {
+                    @Override
+                    ITestPackageRepo createTestCaseRepo() {
+                        return mMockRepo;
+                    }
+                };
+            }
+        };
+        runner.run(mMockDevice, PACKAGE_NAME, mMockListener);
+
+        EasyMock.verify(mMockRepo, mMockPackageDef, mMockDevice);
+        assertTrue(mPackageTest.mRun);
+        assertSame(mBuildInfo, mPackageTest.mBuild);
+    }
+
+    /**
+     * Test that {@link CtsPackageRunner} rejects an install without the CTS folders.
+     */
+    public void testInvalidBuild() throws Exception {
+        FileUtil.recursiveDelete(mRootDir);
+        try {
+            new CtsPackageRunner(mBuildInfo, PLAN_NAME, true);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
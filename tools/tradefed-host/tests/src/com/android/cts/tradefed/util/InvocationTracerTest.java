@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.util;
+
+import com.android.cts.tradefed.util.InvocationTracer.Span;
+import com.android.tradefed.util.FileUtil;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for {@link InvocationTracer}.
+ */
+public class InvocationTracerTest extends TestCase {
+
+    private static final String SERIAL = "serial:5555";
+
+    @Override
+    protected void tearDown() throws Exception {
+        InvocationTracer.disable();
+        super.tearDown();
+    }
+
+    /**
+     * Test that spans are not recorded when tracing is disabled.
+     */
+    public void testBegin_disabled() {
+        assertFalse(InvocationTracer.isEnabled());
+        Span first = InvocationTracer.begin(InvocationTracer.INSTALL, "a.apk");
+        Span second = InvocationTracer.begin(InvocationTracer.INSTALL, "b.apk");
+        // the shared no-op span is returned
+        assertSame(first, second);
+        first.end();
+    }
+
+    /**
+     * Test that recorded spans are summarized per phase and exported to the given directory.
+     */
+    public void testExport() throws Exception {
+        InvocationTracer tracer = InvocationTracer.enable(SERIAL);
+        assertSame(tracer, InvocationTracer.enable(SERIAL));
+        Span invocation = InvocationTracer.begin(InvocationTracer.INVOCATION, "inv");
+        InvocationTracer.begin(InvocationTracer.INSTALL, "a.apk").end();
+        InvocationTracer.begin(InvocationTracer.INSTALL, "b.apk").end();
+        InvocationTracer.begin(InvocationTracer.REBOOT, "reboot").end();
+        invocation.end();
+
+        StringWriter summary = new StringWriter();
+        tracer.writeSummary(new PrintWriter(summary));
+        assertTrue(summary.toString().contains(InvocationTracer.INSTALL));
+        assertTrue(summary.toString().contains(InvocationTracer.REBOOT));
+
+        File dir = FileUtil.createTempDir("trace");
+        try {
+            tracer.export(dir);
+            File trace = new File(dir, String.format(InvocationTracer.TRACE_FILE_FORMAT,
+                    "serial_5555"));
+            assertTrue(trace.exists());
+            String json = FileUtil.readStringFromFile(trace);
+            assertTrue(json.contains("\"traceEvents\""));
+            assertTrue(json.contains("\"b.apk\""));
+            assertTrue(new File(dir, String.format(InvocationTracer.SUMMARY_FILE_FORMAT,
+                    "serial_5555")).exists());
+        } finally {
+            FileUtil.recursiveDelete(dir);
+        }
+    }
+}